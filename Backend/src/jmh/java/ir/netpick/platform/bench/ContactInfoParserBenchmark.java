@@ -0,0 +1,47 @@
+package ir.netpick.platform.bench;
+
+import ir.netpick.platform.mailmine.model.Contact;
+import ir.netpick.platform.mailmine.parser.ContactInfoParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contact extraction from a stored page, once per scraped page
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class ContactInfoParserBenchmark {
+
+    @Param({ "contact-page.html", "listing-page.html" })
+    public String fixture;
+
+    private String html;
+
+    @Setup
+    public void load() {
+        html = Fixtures.read(fixture);
+        if (ContactInfoParser.parse(html).getEmails().isEmpty()) {
+            throw new IllegalStateException("Fixture " + fixture + " has no emails to find");
+        }
+    }
+
+    @Benchmark
+    public Contact parse() {
+        return ContactInfoParser.parse(html);
+    }
+}
@@ -0,0 +1,60 @@
+package ir.netpick.platform.bench;
+
+import ir.netpick.platform.gatekeeper.jwt.JWTKeyRotationService;
+import ir.netpick.platform.gatekeeper.jwt.JWTUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access token verification as done by the JWT filter on every request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class JwtParseBenchmark {
+
+    private JWTUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void issue() throws Exception {
+        // Only the current key is used, so no Redis behind the rotation service
+        JWTKeyRotationService keys = new JWTKeyRotationService(null);
+        setField(keys, "primarySecretKey", "benchmark-secret-key-with-at-least-256-bits!!");
+        Method init = JWTKeyRotationService.class.getDeclaredMethod("initializeKeys");
+        init.setAccessible(true);
+        init.invoke(keys);
+
+        jwtUtil = new JWTUtil(keys);
+        setField(jwtUtil, "issuer", "netpick");
+        setField(jwtUtil, "accessTokenExpirationMinutes", 60L);
+        token = jwtUtil.issueToken("benchmark@netpick.ir", List.of("ROLE_USER", "ROLE_ADMIN"));
+    }
+
+    private static void setField(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Benchmark
+    public String getSubject() {
+        return jwtUtil.getSubject(token);
+    }
+}
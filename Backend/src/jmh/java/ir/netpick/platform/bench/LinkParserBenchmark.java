@@ -0,0 +1,63 @@
+package ir.netpick.platform.bench;
+
+import ir.netpick.platform.mailmine.model.LinkResult;
+import ir.netpick.platform.mailmine.parser.LinkParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Link extraction from one Custom Search response page, from a String and
+ * from the buffers a WebClient response arrives in
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class LinkParserBenchmark {
+
+    // Netty's default receive chunk
+    private static final int CHUNK = 8 * 1024;
+
+    private String body;
+    private byte[] bytes;
+
+    @Setup
+    public void load() {
+        body = Fixtures.read("cse-response.json");
+        bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (LinkParser.parse(body).size() != 10 || parseBuffers().size() != 10) {
+            throw new IllegalStateException("Expected 10 results in the CSE fixture");
+        }
+    }
+
+    @Benchmark
+    public List<LinkResult> parse() {
+        return LinkParser.parse(body);
+    }
+
+    @Benchmark
+    public List<LinkResult> parseBuffers() {
+        Flux<DataBuffer> buffers = Flux.range(0, (bytes.length + CHUNK - 1) / CHUNK)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(
+                        ByteBuffer.wrap(bytes, i * CHUNK, Math.min(CHUNK, bytes.length - i * CHUNK))));
+        return LinkParser.parse(buffers).block();
+    }
+}
@@ -0,0 +1,58 @@
+package ir.netpick.platform.bench;
+
+import ir.netpick.platform.mailmine.model.Proxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proxy URL decoding as done on subscription import, per protocol and for a
+ * whole mixed subscription list
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class ProxyUrlBenchmark {
+
+    @Param({ "vless://", "vmess://", "ss://", "trojan://", "socks5://" })
+    public String protocol;
+
+    private List<String> subscription;
+    private String url;
+
+    @Setup
+    public void load() {
+        subscription = Fixtures.lines("subscription.txt");
+        url = subscription.stream().filter(line -> line.startsWith(protocol)).findFirst()
+                .orElseThrow(() -> new IllegalStateException("No " + protocol + " line in the subscription fixture"));
+        subscription.forEach(Proxy::fromUrl);
+    }
+
+    @Benchmark
+    public Proxy fromUrl() {
+        return Proxy.fromUrl(url);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void subscription(Blackhole blackhole) {
+        for (String line : subscription) {
+            blackhole.consume(Proxy.fromUrl(line));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ir.netpick.platform.bench;
+
+import ir.netpick.platform.financefarm.validation.ShebaValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheba validation over a mix of valid numbers, bad checksums and spaced input
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class ShebaValidatorBenchmark {
+
+    private static final int SIZE = 256;
+
+    private String[] inputs;
+    private int next;
+
+    @Setup
+    public void generate() {
+        Random random = new Random(42);
+        List<String> valid = new ArrayList<>();
+        while (valid.size() < SIZE / 2) {
+            String sheba = withCheckDigits(digits(random, 22));
+            if (ShebaValidator.isValidIranianSheba(sheba)) {
+                valid.add(sheba);
+            }
+        }
+
+        List<String> mixed = new ArrayList<>();
+        for (int i = 0; i < valid.size(); i++) {
+            String sheba = valid.get(i);
+            mixed.add(sheba);
+            mixed.add(switch (i % 3) {
+                case 0 -> sheba.substring(0, 25) + (char) ('0' + (sheba.charAt(25) - '0' + 1) % 10);
+                case 1 -> sheba.replaceAll("(.{4})", "$1 ").trim();
+                default -> sheba.toLowerCase();
+            });
+        }
+        inputs = mixed.toArray(String[]::new);
+    }
+
+    @Benchmark
+    public boolean isValidIranianSheba() {
+        String input = inputs[next];
+        next = (next + 1) % inputs.length;
+        return ShebaValidator.isValidIranianSheba(input);
+    }
+
+    private static String digits(Random random, int length) {
+        StringBuilder digits = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            digits.append(random.nextInt(10));
+        }
+        return digits.toString();
+    }
+
+    // ISO 13616 check digits; "IR" is 1827
+    private static String withCheckDigits(String bban) {
+        int check = 98 - new BigInteger(bban + "182700").mod(BigInteger.valueOf(97)).intValue();
+        return "IR" + (check < 10 ? "0" : "") + check + bban;
+    }
+}
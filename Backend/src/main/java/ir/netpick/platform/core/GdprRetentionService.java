@@ -1,5 +1,6 @@
 package ir.netpick.platform.core;
 
+import ir.netpick.platform.core.lock.SchedulerLock;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -96,6 +97,7 @@ public class GdprRetentionService {
      * Scheduled cleanup — runs daily at 2 AM.
      */
     @Scheduled(cron = "0 0 2 * * ?")
+    @SchedulerLock(name = "gdpr-retention", leaseSeconds = 1800)
     public void scheduledCleanup() {
         log.info("Starting scheduled GDPR retention cleanup");
         try {
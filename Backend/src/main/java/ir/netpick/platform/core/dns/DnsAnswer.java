@@ -0,0 +1,55 @@
+package ir.netpick.platform.core.dns;
+
+import java.util.List;
+
+/**
+ * Result of one lookup. Values are normalised per type: MX answers are the
+ * exchange host names in preference order (a null MX is {@code "."}), TXT
+ * answers are the record strings joined, A answers are addresses.
+ *
+ * @param ttlSeconds how long the answer may be cached, -1 when the server did not say
+ * @param error      reason of an {@link Status#ERROR} answer
+ */
+public record DnsAnswer(Status status, List<String> values, long ttlSeconds, String error) {
+
+    public enum Status {
+        FOUND,
+        // The name does not exist
+        NX_DOMAIN,
+        // The name exists but has no record of this type
+        NO_DATA,
+        // Timeout, SERVFAIL, refused, unparsable name...
+        ERROR
+    }
+
+    public static DnsAnswer found(List<String> values, long ttlSeconds) {
+        return new DnsAnswer(Status.FOUND, List.copyOf(values), ttlSeconds, null);
+    }
+
+    public static DnsAnswer nxDomain(long ttlSeconds) {
+        return new DnsAnswer(Status.NX_DOMAIN, List.of(), ttlSeconds, null);
+    }
+
+    public static DnsAnswer noData(long ttlSeconds) {
+        return new DnsAnswer(Status.NO_DATA, List.of(), ttlSeconds, null);
+    }
+
+    public static DnsAnswer error(String error) {
+        return new DnsAnswer(Status.ERROR, List.of(), -1, error);
+    }
+
+    public boolean isFound() {
+        return status == Status.FOUND;
+    }
+
+    /**
+     * Definitive "no such record" (as opposed to a failed lookup)
+     */
+    public boolean isNegative() {
+        return status == Status.NX_DOMAIN || status == Status.NO_DATA;
+    }
+
+    DnsAnswer withTtl(long ttlSeconds) {
+        return new DnsAnswer(status, values, ttlSeconds, error);
+    }
+}
@@ -0,0 +1,13 @@
+package ir.netpick.platform.core.dns;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends a single query to the network, without caching. Failures should
+ * complete with an {@link DnsAnswer.Status#ERROR} answer rather than
+ * exceptionally; {@link DnsResolver} handles either.
+ */
+public interface DnsBackend {
+
+    CompletableFuture<DnsAnswer> query(String name, DnsRecordType type);
+}
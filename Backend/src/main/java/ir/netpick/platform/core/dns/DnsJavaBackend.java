@@ -0,0 +1,131 @@
+package ir.netpick.platform.core.dns;
+
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.ExtendedResolver;
+import org.xbill.DNS.MXRecord;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Asynchronous lookups over UDP (TCP for truncated answers) with dnsjava.
+ * Uses the system's name servers unless {@code dns.servers} lists others
+ * ({@code host} or {@code host:port}). Unlike JNDI, answers carry their TTLs,
+ * and the negative TTL is taken from the SOA record (RFC 2308).
+ */
+@Slf4j
+@Component
+public class DnsJavaBackend implements DnsBackend {
+
+    private final Resolver resolver;
+
+    public DnsJavaBackend(@Value("${dns.servers:}") List<String> servers,
+            @Value("${dns.timeout-ms:2000}") long timeoutMs,
+            @Value("${dns.retries:1}") int retries) throws UnknownHostException {
+        List<Resolver> configured = new ArrayList<>();
+        for (String server : servers) {
+            if (!server.isBlank()) {
+                configured.add(new SimpleResolver(address(server.trim())));
+            }
+        }
+        ExtendedResolver extended = configured.isEmpty() ? new ExtendedResolver() : new ExtendedResolver(configured);
+        extended.setTimeout(Duration.ofMillis(timeoutMs));
+        extended.setRetries(retries);
+        this.resolver = extended;
+        log.info("DNS lookups go to {}", configured.isEmpty() ? "the system resolvers" : servers);
+    }
+
+    @Override
+    public CompletableFuture<DnsAnswer> query(String name, DnsRecordType type) {
+        Message query;
+        try {
+            query = Message.newQuery(Record.newRecord(Name.fromString(name, Name.root), typeCode(type), DClass.IN));
+        } catch (TextParseException e) {
+            return CompletableFuture.completedFuture(DnsAnswer.error("Invalid name: " + e.getMessage()));
+        }
+        return resolver.sendAsync(query).toCompletableFuture()
+                .thenApply(response -> toAnswer(response, type))
+                .exceptionally(e -> DnsAnswer.error(e.getClass().getSimpleName() + ": " + e.getMessage()));
+    }
+
+    private static DnsAnswer toAnswer(Message response, DnsRecordType type) {
+        int rcode = response.getRcode();
+        if (rcode == Rcode.NXDOMAIN) {
+            return DnsAnswer.nxDomain(negativeTtl(response));
+        }
+        if (rcode != Rcode.NOERROR) {
+            return DnsAnswer.error(Rcode.string(rcode));
+        }
+
+        // The answer section can also hold the CNAME chain that led here
+        List<Record> records = response.getSection(Section.ANSWER).stream()
+                .filter(record -> record.getType() == typeCode(type))
+                .toList();
+        if (records.isEmpty()) {
+            return DnsAnswer.noData(negativeTtl(response));
+        }
+
+        long ttl = records.stream().mapToLong(Record::getTTL).min().orElse(-1);
+        List<String> values = switch (type) {
+            case MX -> records.stream()
+                    .map(MXRecord.class::cast)
+                    .sorted(Comparator.comparingInt(MXRecord::getPriority)
+                            .thenComparing(mx -> mx.getTarget().toString()))
+                    .map(mx -> mx.getTarget().equals(Name.root) ? "." : mx.getTarget().toString(true).toLowerCase())
+                    .toList();
+            case TXT -> records.stream()
+                    .map(record -> String.join("", ((TXTRecord) record).getStrings()))
+                    .toList();
+            case A -> records.stream()
+                    .map(record -> ((ARecord) record).getAddress().getHostAddress())
+                    .toList();
+        };
+        return DnsAnswer.found(values, ttl);
+    }
+
+    private static long negativeTtl(Message response) {
+        return response.getSection(Section.AUTHORITY).stream()
+                .filter(SOARecord.class::isInstance)
+                .map(SOARecord.class::cast)
+                .mapToLong(soa -> Math.min(soa.getTTL(), soa.getMinimum()))
+                .findFirst()
+                .orElse(-1);
+    }
+
+    private static int typeCode(DnsRecordType type) {
+        return switch (type) {
+            case A -> Type.A;
+            case MX -> Type.MX;
+            case TXT -> Type.TXT;
+        };
+    }
+
+    private static InetSocketAddress address(String server) {
+        int colon = server.lastIndexOf(':');
+        if (colon > 0 && server.indexOf(':') == colon) {
+            return new InetSocketAddress(server.substring(0, colon), Integer.parseInt(server.substring(colon + 1)));
+        }
+        return new InetSocketAddress(server, 53);
+    }
+}
@@ -0,0 +1,10 @@
+package ir.netpick.platform.core.dns;
+
+/**
+ * Record types the resolver looks up
+ */
+public enum DnsRecordType {
+    A,
+    MX,
+    TXT
+}
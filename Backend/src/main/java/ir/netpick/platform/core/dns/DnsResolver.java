@@ -0,0 +1,184 @@
+package ir.netpick.platform.core.dns;
+
+import java.net.IDN;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caching front of the {@link DnsBackend}. Answers are kept for their TTL,
+ * clamped to {@code [min-ttl, max-ttl]}; negative answers (NXDOMAIN, no
+ * records of the type) for the SOA's negative TTL capped at
+ * {@code negative-ttl}, and failed lookups briefly for {@code error-ttl} so a
+ * dead server is not asked again for every address of the same domain.
+ * Concurrent lookups of the same name and type share one query, and every
+ * query is bounded by {@code dns.query-timeout-ms} overall.
+ */
+@Slf4j
+@Service
+public class DnsResolver {
+
+    private final DnsBackend backend;
+    private final Map<Key, Cached> cache = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<DnsAnswer>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${dns.cache.min-ttl-seconds:60}")
+    private long minTtlSeconds;
+
+    @Value("${dns.cache.max-ttl-seconds:86400}")
+    private long maxTtlSeconds;
+
+    // Also used for negative answers without an SOA record
+    @Value("${dns.cache.negative-ttl-seconds:900}")
+    private long negativeTtlSeconds;
+
+    @Value("${dns.cache.error-ttl-seconds:30}")
+    private long errorTtlSeconds;
+
+    @Value("${dns.cache.max-entries:200000}")
+    private int maxEntries;
+
+    // Overall limit per lookup, retries included
+    @Value("${dns.query-timeout-ms:5000}")
+    private long queryTimeoutMs;
+
+    public DnsResolver(DnsBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Look up a record, from the cache when possible. Never completes
+     * exceptionally: failures and timeouts yield an {@link DnsAnswer.Status#ERROR} answer.
+     */
+    public CompletableFuture<DnsAnswer> resolve(String name, DnsRecordType type) {
+        Optional<String> normalized = normalize(name);
+        if (normalized.isEmpty()) {
+            return CompletableFuture.completedFuture(DnsAnswer.error("Invalid name: " + name));
+        }
+        Key key = new Key(normalized.get(), type);
+
+        Cached cached = cache.get(key);
+        long now = System.nanoTime();
+        if (cached != null && cached.expiresAt - now > 0) {
+            return CompletableFuture.completedFuture(
+                    cached.answer.withTtl(TimeUnit.NANOSECONDS.toSeconds(cached.expiresAt - now)));
+        }
+
+        CompletableFuture<DnsAnswer> pending = new CompletableFuture<>();
+        CompletableFuture<DnsAnswer> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture<DnsAnswer> query;
+        try {
+            query = backend.query(key.name, type);
+        } catch (RuntimeException e) {
+            query = CompletableFuture.failedFuture(e);
+        }
+        query.orTimeout(queryTimeoutMs, TimeUnit.MILLISECONDS)
+                .handle((answer, error) -> answer != null ? answer : DnsAnswer.error(describe(error)))
+                .thenAccept(answer -> {
+                    store(key, answer);
+                    inFlight.remove(key, pending);
+                    pending.complete(answer);
+                });
+        return pending;
+    }
+
+    /**
+     * Blocking variant of {@link #resolve}; returns within the query timeout
+     */
+    public DnsAnswer lookup(String name, DnsRecordType type) {
+        return resolve(name, type).join();
+    }
+
+    public int cacheSize() {
+        return cache.size();
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    private void store(Key key, DnsAnswer answer) {
+        long ttl = switch (answer.status()) {
+            case FOUND -> clamp(answer.ttlSeconds() < 0 ? minTtlSeconds : answer.ttlSeconds());
+            case NX_DOMAIN, NO_DATA -> answer.ttlSeconds() < 0 ? negativeTtlSeconds
+                    : Math.min(clamp(answer.ttlSeconds()), negativeTtlSeconds);
+            case ERROR -> errorTtlSeconds;
+        };
+        if (ttl <= 0) {
+            cache.remove(key);
+            return;
+        }
+        if (answer.status() == DnsAnswer.Status.ERROR) {
+            log.debug("DNS lookup of {} {} failed: {}", key.name, key.type, answer.error());
+        }
+        if (cache.size() >= maxEntries) {
+            evictExpired();
+        }
+        if (cache.size() < maxEntries) {
+            cache.put(key, new Cached(answer, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttl)));
+        }
+    }
+
+    private long clamp(long ttl) {
+        return Math.max(minTtlSeconds, Math.min(maxTtlSeconds, ttl));
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        cache.values().removeIf(cached -> cached.expiresAt - now <= 0);
+        if (cache.size() >= maxEntries) {
+            // Still full of live entries: start over rather than stop caching
+            log.info("DNS cache reached {} entries; clearing it", cache.size());
+            cache.clear();
+        }
+    }
+
+    private static String describe(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            return "Timed out";
+        }
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+
+    /**
+     * Lower-case ASCII (punycode) form without the trailing dot
+     */
+    static Optional<String> normalize(String name) {
+        if (name == null) {
+            return Optional.empty();
+        }
+        String trimmed = name.trim();
+        if (trimmed.endsWith(".")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        if (trimmed.isEmpty() || trimmed.length() > 253) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(IDN.toASCII(trimmed, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private record Key(String name, DnsRecordType type) {
+    }
+
+    private record Cached(DnsAnswer answer, long expiresAt) {
+    }
+}
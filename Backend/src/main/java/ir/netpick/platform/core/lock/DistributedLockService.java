@@ -0,0 +1,127 @@
+package ir.netpick.platform.core.lock;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lease locks shared by all replicas, kept in Redis, or in the database when
+ * Redis is disabled. The store is chosen once at startup: falling back per
+ * acquisition would let two replicas hold the same lock in different stores.
+ * While the store is unreachable no lock is granted and the run is skipped.
+ * A held lease is extended in the background until it is closed.
+ * <p>
+ * Metrics: {@code scheduler.lock.acquisitions} (by name and result; "error"
+ * when the store failed),
+ * {@code scheduler.lock.held} (time held), {@code scheduler.lock.extensions}
+ * (by result; "lost" means another replica may now run the job too) and the
+ * {@code scheduler.lock.active} gauge.
+ */
+@Slf4j
+@Service
+public class DistributedLockService {
+
+    private final LockProvider provider;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger active = new AtomicInteger();
+    private final ScheduledExecutorService extender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lock-lease-extender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DistributedLockService(ObjectProvider<RedisLockProvider> redisProvider, JdbcLockProvider jdbcProvider,
+            MeterRegistry meterRegistry) {
+        LockProvider redis = redisProvider.getIfAvailable();
+        this.provider = redis != null ? redis : jdbcProvider;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("scheduler.lock.active", active);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        extender.shutdownNow();
+    }
+
+    /**
+     * Take the lock if no replica holds it
+     *
+     * @return the held lease, to be closed when done; empty if the lock is
+     * busy or its store is unreachable
+     */
+    public Optional<Lease> tryAcquire(String name, Duration lease) {
+        Optional<String> token;
+        try {
+            token = provider.tryAcquire(name, lease);
+        } catch (DataAccessException e) {
+            log.warn("Lock store unavailable for {}, skipping this run: {}", name, e.getMessage());
+            meterRegistry.counter("scheduler.lock.acquisitions", "name", name, "result", "error").increment();
+            return Optional.empty();
+        }
+
+        meterRegistry.counter("scheduler.lock.acquisitions", "name", name,
+                "result", token.isPresent() ? "acquired" : "busy").increment();
+        if (token.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Lease(name, lease, token.get()));
+    }
+
+    /**
+     * A held lock; extended every third of its lease until closed
+     */
+    public final class Lease implements AutoCloseable {
+        private final String name;
+        private final String token;
+        private final Timer.Sample held;
+        private final ScheduledFuture<?> extension;
+
+        private Lease(String name, Duration lease, String token) {
+            this.name = name;
+            this.token = token;
+            this.held = Timer.start(meterRegistry);
+            long period = Math.max(1000, lease.toMillis() / 3);
+            this.extension = extender.scheduleAtFixedRate(() -> extend(lease), period, period, TimeUnit.MILLISECONDS);
+            active.incrementAndGet();
+        }
+
+        private void extend(Duration lease) {
+            String result;
+            try {
+                result = provider.extend(name, token, lease) ? "extended" : "lost";
+            } catch (Exception e) {
+                log.warn("Failed to extend lock {}: {}", name, e.getMessage());
+                result = "error";
+            }
+            if (result.equals("lost")) {
+                log.warn("Lock {} was lost while held; another replica may run the same job", name);
+                extension.cancel(false);
+            }
+            meterRegistry.counter("scheduler.lock.extensions", "name", name, "result", result).increment();
+        }
+
+        @Override
+        public void close() {
+            extension.cancel(false);
+            active.decrementAndGet();
+            held.stop(meterRegistry.timer("scheduler.lock.held", "name", name));
+            try {
+                provider.release(name, token);
+            } catch (Exception e) {
+                log.warn("Failed to release lock {}; it expires with its lease: {}", name, e.getMessage());
+            }
+        }
+    }
+}
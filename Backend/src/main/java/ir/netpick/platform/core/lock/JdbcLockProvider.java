@@ -0,0 +1,66 @@
+package ir.netpick.platform.core.lock;
+
+import ir.netpick.platform.core.util.InstanceId;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Lease locks as rows of the {@code scheduler_lock} table: a lock is taken
+ * over by a conditional update once its lease has run out, or created by an
+ * insert that the primary key makes fail while another replica holds it.
+ * Works on any database; used when Redis is disabled.
+ */
+@Component
+@RequiredArgsConstructor
+public class JdbcLockProvider implements LockProvider {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Optional<String> tryAcquire(String name, Duration lease) {
+        String token = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp until = Timestamp.valueOf(now.plus(lease));
+
+        int updated = jdbcTemplate.update("""
+                UPDATE scheduler_lock SET token = ?, locked_by = ?, locked_at = ?, locked_until = ?
+                WHERE name = ? AND locked_until <= ?""",
+                token, InstanceId.get(), Timestamp.valueOf(now), until, name, Timestamp.valueOf(now));
+        if (updated == 1) {
+            return Optional.of(token);
+        }
+
+        try {
+            jdbcTemplate.update("""
+                    INSERT INTO scheduler_lock (name, token, locked_by, locked_at, locked_until)
+                    VALUES (?, ?, ?, ?, ?)""",
+                    name, token, InstanceId.get(), Timestamp.valueOf(now), until);
+            return Optional.of(token);
+        } catch (DataIntegrityViolationException e) {
+            return Optional.empty(); // Row exists and its lease is still running
+        }
+    }
+
+    @Override
+    public boolean extend(String name, String token, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        return jdbcTemplate.update("""
+                UPDATE scheduler_lock SET locked_until = ?
+                WHERE name = ? AND token = ? AND locked_until > ?""",
+                Timestamp.valueOf(now.plus(lease)), name, token, Timestamp.valueOf(now)) == 1;
+    }
+
+    @Override
+    public void release(String name, String token) {
+        jdbcTemplate.update("UPDATE scheduler_lock SET locked_until = ? WHERE name = ? AND token = ?",
+                Timestamp.valueOf(LocalDateTime.now()), name, token);
+    }
+}
@@ -0,0 +1,25 @@
+package ir.netpick.platform.core.lock;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Storage of lease locks. A lock is held by whoever owns the token returned
+ * on acquisition, until the lease runs out or the lock is released.
+ */
+public interface LockProvider {
+
+    /**
+     * @return the owner's token, or empty if the lock is held by someone else
+     */
+    Optional<String> tryAcquire(String name, Duration lease);
+
+    /**
+     * Push the lease out again
+     *
+     * @return false if the lock was lost (lease expired and taken over)
+     */
+    boolean extend(String name, String token, Duration lease);
+
+    void release(String name, String token);
+}
@@ -0,0 +1,65 @@
+package ir.netpick.platform.core.lock;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Lease locks as {@code SET NX PX} keys holding the owner's token. Extend
+ * and release only touch the key while it still holds that token.
+ * Controlled by property: scheduler.lock.use-redis=true (default)
+ */
+@Component
+@ConditionalOnProperty(name = "scheduler.lock.use-redis", havingValue = "true", matchIfMissing = true)
+public class RedisLockProvider implements LockProvider {
+
+    private static final String KEY_PREFIX = "lock:";
+
+    private static final RedisScript<Long> EXTEND = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                return redis.call('pexpire', KEYS[1], ARGV[2])
+            end
+            return 0""", Long.class);
+
+    /**
+     * Delete {@code KEYS[1]} only while it holds {@code ARGV[1]}; also used for
+     * other keys guarded by an owner token
+     */
+    public static final RedisScript<Long> COMPARE_AND_DELETE = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                return redis.call('del', KEYS[1])
+            end
+            return 0""", Long.class);
+
+    private final StringRedisTemplate redis;
+
+    public RedisLockProvider(RedisConnectionFactory connectionFactory) {
+        this.redis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @Override
+    public Optional<String> tryAcquire(String name, Duration lease) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redis.opsForValue().setIfAbsent(KEY_PREFIX + name, token, lease);
+        return Boolean.TRUE.equals(acquired) ? Optional.of(token) : Optional.empty();
+    }
+
+    @Override
+    public boolean extend(String name, String token, Duration lease) {
+        Long extended = redis.execute(EXTEND, List.of(KEY_PREFIX + name), token, String.valueOf(lease.toMillis()));
+        return extended != null && extended == 1;
+    }
+
+    @Override
+    public void release(String name, String token) {
+        redis.execute(COMPARE_AND_DELETE, List.of(KEY_PREFIX + name), token);
+    }
+}
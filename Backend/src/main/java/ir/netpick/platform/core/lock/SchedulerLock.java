@@ -0,0 +1,29 @@
+package ir.netpick.platform.core.lock;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Run the annotated (scheduled) method on one replica at a time. Replicas
+ * that find the lock held skip the run. The lease is extended while the
+ * method runs, so a long run keeps it; a replica that dies loses it when the
+ * lease expires.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SchedulerLock {
+
+    /**
+     * Lock name, unique per job
+     */
+    String name();
+
+    /**
+     * Lease length; renewed every third of it while the method runs
+     */
+    long leaseSeconds() default 300;
+}
@@ -0,0 +1,41 @@
+package ir.netpick.platform.core.lock;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Runs {@link SchedulerLock} methods only on the replica that gets the lock.
+ * Ordered first, so the lock is held around any transaction of the method.
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class SchedulerLockAspect {
+
+    private final DistributedLockService lockService;
+
+    @Around("@annotation(schedulerLock)")
+    public Object runLocked(ProceedingJoinPoint joinPoint, SchedulerLock schedulerLock) throws Throwable {
+        Optional<DistributedLockService.Lease> lease = lockService.tryAcquire(schedulerLock.name(),
+                Duration.ofSeconds(schedulerLock.leaseSeconds()));
+        if (lease.isEmpty()) {
+            log.debug("Skipping {}: lock {} is held by another replica or unavailable",
+                    joinPoint.getSignature().toShortString(), schedulerLock.name());
+            return null;
+        }
+        try (DistributedLockService.Lease held = lease.get()) {
+            return joinPoint.proceed();
+        }
+    }
+}
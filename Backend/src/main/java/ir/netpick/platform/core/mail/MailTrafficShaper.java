@@ -0,0 +1,296 @@
+package ir.netpick.platform.core.mail;
+
+import ir.netpick.platform.core.dns.DnsAnswer;
+import ir.netpick.platform.core.dns.DnsRecordType;
+import ir.netpick.platform.core.dns.DnsResolver;
+import jakarta.mail.MessagingException;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSenderFailedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Paces outgoing mail per recipient provider, so a bulk send does not hit
+ * Gmail, Outlook or Yahoo with a burst they answer with 421/450.
+ * <p>
+ * Recipients are keyed by their MX: hosts matching a configured provider's
+ * {@code mx-suffixes} share that provider's limits, all others are limited
+ * per MX domain with the defaults. Each provider gets a rate with a small
+ * burst allowance and a concurrency limit. A message over the limit is not
+ * refused but given a reserved slot to come back at, so a backlog for one
+ * provider is spread at its rate while other providers' mail goes ahead.
+ * <p>
+ * A deferral (any 4xx reply) multiplies the provider's rate by
+ * {@code decrease-factor} and pauses it, longer for every deferral in a row;
+ * delivered messages raise the rate back towards the configured one.
+ * <p>
+ * The state is kept per instance: replicas do not see each other's sends,
+ * reservations or pauses. With {@code replicas} set to the number of sending
+ * instances, each one is held to that share of every configured rate, burst
+ * and concurrency limit, so together they stay within the provider's limits.
+ */
+@Slf4j
+@Component
+public class MailTrafficShaper {
+
+    private static final String UNKNOWN = "unknown";
+    private static final Pattern REPLY_CODE = Pattern.compile("^\\s*([2-5]\\d\\d)(?:[\\s-]|$)");
+    // Reservations not taken up by then belong to items that were cancelled or lost
+    private static final long STALE_RESERVATION_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+    private final DnsResolver dnsResolver;
+    private final MailTrafficShaperProperties properties;
+    private final Map<String, ProviderState> states = new ConcurrentHashMap<>();
+    private LongSupplier clock = System::nanoTime;
+
+    public MailTrafficShaper(DnsResolver dnsResolver, MailTrafficShaperProperties properties) {
+        this.dnsResolver = dnsResolver;
+        this.properties = properties;
+    }
+
+    /**
+     * Outcome of {@link #tryAcquire}: either admitted, to be followed by
+     * {@link #release}, or the time to wait before asking again
+     */
+    public record Admission(String provider, Duration retryAfter) {
+
+        static final Admission UNSHAPED = new Admission(null, Duration.ZERO);
+
+        public boolean admitted() {
+            return retryAfter.isZero();
+        }
+    }
+
+    public record ProviderStatus(String provider, double ratePerMinute, int inFlight, int reserved,
+            Duration pausedFor, int deferralsInRow) {
+    }
+
+    /**
+     * Ask to send the message now. The id identifies the message across
+     * attempts, so one sent away returns to its reserved slot rather than
+     * the back of the line.
+     */
+    public Admission tryAcquire(UUID messageId, String recipient) {
+        if (!properties.isEnabled()) {
+            return Admission.UNSHAPED;
+        }
+        String provider = providerOf(recipient);
+        long wait = state(provider).acquire(messageId, clock.getAsLong());
+        return new Admission(provider, Duration.ofNanos(wait));
+    }
+
+    /**
+     * End an admitted send; {@code failure} is null when it was delivered
+     */
+    public void release(Admission admission, Throwable failure) {
+        if (admission.provider() == null || !admission.admitted()) {
+            return;
+        }
+        ProviderState state = states.get(admission.provider());
+        if (state == null) {
+            return;
+        }
+        Integer code = failure != null ? replyCode(failure) : null;
+        state.release(failure == null, code != null && code / 100 == 4, code, clock.getAsLong());
+    }
+
+    /**
+     * Provider the recipient's mail goes to: a configured provider name, or
+     * the domain of its primary MX host
+     */
+    public String providerOf(String recipient) {
+        if (recipient == null || recipient.lastIndexOf('@') < 0) {
+            return UNKNOWN;
+        }
+        String domain = recipient.substring(recipient.lastIndexOf('@') + 1).trim().toLowerCase(Locale.ROOT);
+        if (domain.isEmpty()) {
+            return UNKNOWN;
+        }
+        DnsAnswer mx = dnsResolver.lookup(domain, DnsRecordType.MX);
+        String host = mx.isFound() && !mx.values().equals(List.of(".")) ? mx.values().get(0) : domain;
+        host = host.toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+
+        for (Map.Entry<String, MailTrafficShaperProperties.Provider> provider : properties.getProviders().entrySet()) {
+            for (String suffix : provider.getValue().getMxSuffixes()) {
+                String normalized = suffix.toLowerCase(Locale.ROOT);
+                if (host.equals(normalized) || host.endsWith("." + normalized)) {
+                    return provider.getKey();
+                }
+            }
+        }
+        // mx1.example.com and mx2.example.com are one provider
+        int dot = host.indexOf('.');
+        return dot > 0 && host.indexOf('.', dot + 1) > 0 ? host.substring(dot + 1) : host;
+    }
+
+    public List<ProviderStatus> status() {
+        long now = clock.getAsLong();
+        return states.values().stream()
+                .map(state -> state.status(now))
+                .sorted(Comparator.comparing(ProviderStatus::provider))
+                .toList();
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void evictStale() {
+        long now = clock.getAsLong();
+        states.values().forEach(state -> state.evictStale(now));
+    }
+
+    /**
+     * SMTP reply code of the failure or one of its causes, if it has one
+     */
+    static Integer replyCode(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SMTPSendFailedException e) {
+                return e.getReturnCode();
+            }
+            if (cause instanceof SMTPAddressFailedException e) {
+                return e.getReturnCode();
+            }
+            if (cause instanceof SMTPSenderFailedException e) {
+                return e.getReturnCode();
+            }
+            if (cause instanceof MessagingException && cause.getMessage() != null) {
+                Matcher matcher = REPLY_CODE.matcher(cause.getMessage());
+                if (matcher.find()) {
+                    return Integer.parseInt(matcher.group(1));
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    private ProviderState state(String provider) {
+        return states.computeIfAbsent(provider, name -> {
+            MailTrafficShaperProperties.Policy policy = properties.getProviders().containsKey(name)
+                    ? properties.getProviders().get(name)
+                    : properties.getDefaults();
+            return new ProviderState(name, policy, clock.getAsLong());
+        });
+    }
+
+    private final class ProviderState {
+
+        private final String name;
+        private final MailTrafficShaperProperties.Policy policy;
+        // Reserved slot start per message sent away to come back later
+        private final Map<UUID, Long> reservations = new HashMap<>();
+        private double ratePerMinute;
+        private long nextSlot;
+        private long pausedUntil;
+        private int inFlight;
+        private int deferralsInRow;
+
+        ProviderState(String name, MailTrafficShaperProperties.Policy policy, long now) {
+            this.name = name;
+            this.policy = policy;
+            this.ratePerMinute = configuredRate();
+            this.nextSlot = now - tolerance(interval());
+            this.pausedUntil = now;
+        }
+
+        /**
+         * Zero when admitted, otherwise nanoseconds to wait
+         */
+        synchronized long acquire(UUID messageId, long now) {
+            long interval = interval();
+            boolean paused = pausedUntil - now > 0;
+
+            Long reserved = reservations.get(messageId);
+            if (reserved != null && !paused) {
+                if (reserved - now > 0) {
+                    return reserved - now;
+                }
+                if (inFlight < concurrency()) {
+                    reservations.remove(messageId);
+                    inFlight++;
+                    return 0;
+                }
+                // Its slot came but every connection to the provider is busy
+                return interval;
+            }
+            if (reserved != null) {
+                // Slots handed out before a pause are void
+                reservations.remove(messageId);
+            }
+
+            long slot = Math.max(nextSlot, now - tolerance(interval));
+            if (paused) {
+                slot = Math.max(slot, pausedUntil);
+            }
+            nextSlot = slot + interval;
+            if (slot - now <= 0 && inFlight < concurrency()) {
+                inFlight++;
+                return 0;
+            }
+            reservations.put(messageId, slot);
+            return Math.max(slot - now, interval);
+        }
+
+        synchronized void release(boolean delivered, boolean deferred, Integer code, long now) {
+            inFlight = Math.max(0, inFlight - 1);
+            if (deferred) {
+                deferralsInRow++;
+                double floor = Math.min(properties.getMinRatePerMinute() / replicas(), configuredRate());
+                ratePerMinute = Math.max(floor, ratePerMinute * properties.getDecreaseFactor());
+                long pauseSeconds = Math.min(properties.getMaxPauseSeconds(),
+                        properties.getDeferralPauseSeconds() << Math.min(deferralsInRow - 1, 20));
+                pausedUntil = Math.max(pausedUntil, now + TimeUnit.SECONDS.toNanos(pauseSeconds));
+                log.warn("{} deferred a message ({}); sending to it at {}/min after a {} s pause",
+                        name, code, Math.round(ratePerMinute), pauseSeconds);
+            } else if (delivered) {
+                deferralsInRow = 0;
+                ratePerMinute = Math.min(configuredRate(),
+                        ratePerMinute + properties.getRecoveryPerSuccess() / replicas());
+            }
+        }
+
+        synchronized void evictStale(long now) {
+            reservations.values().removeIf(slot -> now - slot > STALE_RESERVATION_NANOS);
+        }
+
+        synchronized ProviderStatus status(long now) {
+            return new ProviderStatus(name, ratePerMinute, inFlight, reservations.size(),
+                    Duration.ofNanos(Math.max(0, pausedUntil - now)), deferralsInRow);
+        }
+
+        private long interval() {
+            return (long) (TimeUnit.MINUTES.toNanos(1) / Math.max(ratePerMinute, 0.01));
+        }
+
+        // A provider left alone long enough may take a whole burst at once
+        private long tolerance(long interval) {
+            return (Math.max(1, policy.getBurst() / replicas()) - 1) * interval;
+        }
+
+        private int concurrency() {
+            return Math.max(1, policy.getConcurrency() / replicas());
+        }
+
+        // This instance's share of the provider's rate
+        private double configuredRate() {
+            return policy.getRatePerMinute() / replicas();
+        }
+
+        private int replicas() {
+            return Math.max(1, properties.getReplicas());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ir.netpick.platform.core.mail;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sending limits per recipient mail provider, see {@link MailTrafficShaper}
+ */
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "mail-shaper")
+public class MailTrafficShaperProperties {
+
+    private boolean enabled = true;
+
+    // Instances sending mail; each shapes on its own and takes this share of every limit
+    private int replicas = 1;
+
+    // Limits of providers without an entry, applied per MX domain
+    private Policy defaults = new Policy(60, 2, 5);
+
+    // Keyed by provider name, e.g. gmail
+    private Map<String, Provider> providers = new LinkedHashMap<>();
+
+    // A deferral multiplies the provider's rate by this, down to min-rate-per-minute
+    private double decreaseFactor = 0.5;
+    private double minRatePerMinute = 6;
+
+    // Each delivered message raises a slowed-down rate by this much, up to the configured rate
+    private double recoveryPerSuccess = 1;
+
+    // Pause after a deferral, doubled for every further deferral in a row
+    private long deferralPauseSeconds = 30;
+    private long maxPauseSeconds = 900;
+
+    @Setter
+    @Getter
+    public static class Policy {
+
+        private double ratePerMinute;
+        // Messages in flight to the provider at once
+        private int concurrency;
+        // Messages that may go out back to back after a quiet period
+        private int burst;
+
+        public Policy() {
+        }
+
+        public Policy(double ratePerMinute, int concurrency, int burst) {
+            this.ratePerMinute = ratePerMinute;
+            this.concurrency = concurrency;
+            this.burst = burst;
+        }
+    }
+
+    @Setter
+    @Getter
+    public static class Provider extends Policy {
+
+        // MX hosts ending in one of these belong to the provider
+        private List<String> mxSuffixes = new ArrayList<>();
+    }
+}
@@ -0,0 +1,302 @@
+package ir.netpick.platform.core.mail;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Pool of connected, authenticated SMTP transports to the {@code spring.mail}
+ * server, so TLS and AUTH are paid once per connection rather than once per
+ * message as with {@code JavaMailSender.send}.
+ * <p>
+ * At most {@code max-connections} transports are open at a time. A transport
+ * is retired after {@code max-messages-per-connection} messages or
+ * {@code max-lifetime-ms}, checked with NOOP when it sat idle longer than
+ * {@code validate-after-idle-ms}, and closed once idle for
+ * {@code idle-timeout-ms}. A send that fails because the server dropped the
+ * connection is retried once on a fresh one.
+ */
+@Slf4j
+@Component
+public class SmtpTransportPool {
+
+    private final JavaMailSenderImpl mailSender;
+    // Most recently used first: the likeliest to still be connected
+    private final BlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private Semaphore permits;
+    private volatile boolean closed;
+
+    @Value("${mail-transport.max-connections:4}")
+    private int maxConnections;
+
+    // Many providers refuse more messages on one connection (Gmail at about 100)
+    @Value("${mail-transport.max-messages-per-connection:100}")
+    private int maxMessagesPerConnection;
+
+    @Value("${mail-transport.max-lifetime-ms:600000}")
+    private long maxLifetimeMs;
+
+    @Value("${mail-transport.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${mail-transport.validate-after-idle-ms:5000}")
+    private long validateAfterIdleMs;
+
+    // How long a send waits for a free connection
+    @Value("${mail-transport.borrow-timeout-ms:30000}")
+    private long borrowTimeoutMs;
+
+    public SmtpTransportPool(JavaMailSenderImpl mailSender) {
+        this.mailSender = mailSender;
+    }
+
+    /**
+     * Send one message over a pooled connection
+     */
+    public void send(MimeMessage message) throws MessagingException {
+        PooledTransport pooled = borrow();
+        try {
+            deliver(pooled, message);
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Send the messages over up to {@code max-connections} connections in
+     * parallel, each connection sending many of them. Messages that fail are
+     * passed to {@code onFailure}; returns how many were sent.
+     */
+    public int sendAll(List<MimeMessage> messages, BiConsumer<MimeMessage, Exception> onFailure) {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+        int workers = Math.min(maxConnections, messages.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < workers; i++) {
+                executor.execute(() -> {
+                    PooledTransport pooled = null;
+                    try {
+                        int index;
+                        while ((index = next.getAndIncrement()) < messages.size()) {
+                            MimeMessage message = messages.get(index);
+                            try {
+                                if (pooled == null) {
+                                    pooled = borrow();
+                                } else if (isSpent(pooled)) {
+                                    // Past its message limit: swap it for a fresh one
+                                    release(pooled);
+                                    pooled = null;
+                                    pooled = borrow();
+                                }
+                                deliver(pooled, message);
+                                delivered.incrementAndGet();
+                            } catch (MessagingException | RuntimeException e) {
+                                onFailure.accept(message, e);
+                            }
+                        }
+                    } finally {
+                        if (pooled != null) {
+                            release(pooled);
+                        }
+                    }
+                });
+            }
+        }
+        return delivered.get();
+    }
+
+    public int connectionsOpened() {
+        return opened.get();
+    }
+
+    public long messagesSent() {
+        return sent.get();
+    }
+
+    /**
+     * Close connections that sat idle too long, before the server drops them
+     */
+    @Scheduled(fixedDelayString = "${mail-transport.evict-interval-ms:30000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (PooledTransport pooled : idle) {
+            if ((now - pooled.lastUsedAt >= idleTimeoutMs || now - pooled.createdAt >= maxLifetimeMs)
+                    && idle.remove(pooled)) {
+                close(pooled);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            close(pooled);
+        }
+    }
+
+    /**
+     * Send on the given connection; if it turns out the server had dropped
+     * it, reconnect and send once more
+     */
+    private void deliver(PooledTransport pooled, MimeMessage message) throws MessagingException {
+        prepare(message);
+        try {
+            pooled.send(message);
+        } catch (MessagingException e) {
+            if (pooled.transport.isConnected()) {
+                // Rejected message or recipients; the connection is still good
+                throw e;
+            }
+            log.debug("SMTP connection dropped ({}); retrying on a new one", e.getMessage());
+            close(pooled);
+            pooled.broken = true;
+            pooled.reconnect(connect());
+            try {
+                pooled.send(message);
+            } catch (MessagingException retryError) {
+                pooled.broken = !pooled.transport.isConnected();
+                throw retryError;
+            }
+        }
+        sent.incrementAndGet();
+    }
+
+    private PooledTransport borrow() throws MessagingException {
+        try {
+            if (!permits().tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new MessagingException("No SMTP connection free within " + borrowTimeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for an SMTP connection", e);
+        }
+        try {
+            PooledTransport pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled;
+                }
+                close(pooled);
+            }
+            return new PooledTransport(connect());
+        } catch (MessagingException | RuntimeException e) {
+            permits().release();
+            throw e;
+        }
+    }
+
+    private void release(PooledTransport pooled) {
+        try {
+            if (closed || pooled.broken || isSpent(pooled)) {
+                close(pooled);
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits().release();
+        }
+    }
+
+    private boolean isSpent(PooledTransport pooled) {
+        return pooled.messages >= maxMessagesPerConnection
+                || System.currentTimeMillis() - pooled.createdAt >= maxLifetimeMs;
+    }
+
+    private boolean isUsable(PooledTransport pooled) {
+        if (isSpent(pooled)) {
+            return false;
+        }
+        // Transport.isConnected() sends NOOP to the server
+        return System.currentTimeMillis() - pooled.lastUsedAt < validateAfterIdleMs || pooled.transport.isConnected();
+    }
+
+    private Transport connect() throws MessagingException {
+        Session session = mailSender.getSession();
+        String protocol = mailSender.getProtocol();
+        if (protocol == null) {
+            protocol = session.getProperty("mail.transport.protocol");
+        }
+        Transport transport = session.getTransport(protocol != null ? protocol : "smtp");
+        String username = mailSender.getUsername();
+        String password = mailSender.getPassword();
+        transport.connect(mailSender.getHost(), mailSender.getPort(),
+                username == null || username.isEmpty() ? null : username,
+                password == null || password.isEmpty() ? null : password);
+        opened.incrementAndGet();
+        return transport;
+    }
+
+    private void close(PooledTransport pooled) {
+        try {
+            pooled.transport.close();
+        } catch (MessagingException e) {
+            log.debug("Closing SMTP connection failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * What {@code JavaMailSenderImpl} does before sending: date the message
+     * and keep a Message-ID set by the caller
+     */
+    private static void prepare(MimeMessage message) throws MessagingException {
+        if (message.getSentDate() == null) {
+            message.setSentDate(new Date());
+        }
+        String messageId = message.getMessageID();
+        message.saveChanges();
+        if (messageId != null) {
+            message.setHeader("Message-ID", messageId);
+        }
+    }
+
+    private synchronized Semaphore permits() {
+        if (permits == null) {
+            permits = new Semaphore(Math.max(1, maxConnections));
+        }
+        return permits;
+    }
+
+    private static final class PooledTransport {
+        private Transport transport;
+        private long createdAt;
+        private long lastUsedAt;
+        private int messages;
+        private boolean broken;
+
+        PooledTransport(Transport transport) {
+            reconnect(transport);
+        }
+
+        void reconnect(Transport transport) {
+            this.transport = transport;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsedAt = createdAt;
+            this.messages = 0;
+            this.broken = false;
+        }
+
+        void send(MimeMessage message) throws MessagingException {
+            messages++;
+            lastUsedAt = System.currentTimeMillis();
+            transport.sendMessage(message, message.getAllRecipients());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ir.netpick.platform.core.util;
+
+import java.net.InetAddress;
+
+/**
+ * Identifies this process among the replicas of the application, for
+ * diagnostics in shared state (locks, pipeline workers).
+ */
+public final class InstanceId {
+
+    private static final String VALUE = hostName() + ":" + ProcessHandle.current().pid();
+
+    private InstanceId() {
+    }
+
+    public static String get() {
+        return VALUE;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ir.netpick.platform.financefarm.service;
 
+import ir.netpick.platform.core.lock.SchedulerLock;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
@@ -95,6 +96,7 @@ public class TseExchangeRateService {
      * Update rates daily at 9 AM Iran time.
      */
     @Scheduled(cron = "0 0 9 * * ?")
+    @SchedulerLock(name = "tse-exchange-rates")
     @CacheEvict(value = "exchangeRates", allEntries = true)
     public void updateRates() {
         log.info("Updating exchange rates from TSE");
@@ -22,6 +22,11 @@ import java.util.concurrent.TimeUnit;
  * Service for JWT key rotation with grace period support.
  * Maintains multiple signing keys and rotates them periodically.
  * Old keys are kept for verification during grace period.
+ * <p>
+ * Every instance holds its own signing key, so every instance rotates its own:
+ * the check runs on all replicas and goes by when this instance's key was
+ * created. Keys are published to Redis so other instances can verify tokens
+ * signed with them.
  */
 @Slf4j
 @Service
@@ -41,6 +46,7 @@ public class JWTKeyRotationService {
     // Current active key
     private volatile Key activeSigningKey;
     private volatile String activeKeyId;
+    private volatile long activeKeyCreatedAt;
 
     // Old keys kept for verification during grace period
     private final ConcurrentHashMap<String, Key> verificationKeys = new ConcurrentHashMap<>();
@@ -61,6 +67,7 @@ public class JWTKeyRotationService {
         }
         activeKeyId = UUID.randomUUID().toString();
         activeSigningKey = Keys.hmacShaKeyFor(primarySecretKey.getBytes(StandardCharsets.UTF_8));
+        activeKeyCreatedAt = System.currentTimeMillis();
         log.info("Initialized JWT signing key with ID: {}", activeKeyId);
     }
 
@@ -103,39 +110,31 @@ public class JWTKeyRotationService {
     }
 
     /**
-     * Rotate signing key periodically
+     * Rotate signing key periodically. Not a cluster-wide job: the key being
+     * rotated lives in this instance's memory, so every replica runs it.
      */
     @Scheduled(cron = "0 0 0 * * ?") // Daily at midnight
     public void rotateKeyIfNeeded() {
-        String storedKeyId = (String) redisTemplate.opsForValue().get("jwt:active-key-id");
-        String storedTimestamp = (String) redisTemplate.opsForValue().get("jwt:key-created-at");
-
-        if (storedKeyId == null) {
-            // First time setup
+        if (redisTemplate.opsForValue().get("jwt:keys:" + activeKeyId) == null) {
+            // First run with this key
             storeActiveKey();
-            return;
         }
 
-        // Check if rotation needed
-        if (storedTimestamp != null) {
-            long createdAt = Long.parseLong(storedTimestamp);
-            long now = System.currentTimeMillis();
-            long rotationMs = Duration.ofDays(keyRotationDays).toMillis();
-
-            if (now - createdAt > rotationMs) {
-                performKeyRotation();
-            }
+        long rotationMs = Duration.ofDays(keyRotationDays).toMillis();
+        if (System.currentTimeMillis() - activeKeyCreatedAt > rotationMs) {
+            performKeyRotation();
         }
     }
 
     private void storeActiveKey() {
         redisTemplate.opsForValue().set("jwt:active-key-id", activeKeyId);
-        redisTemplate.opsForValue().set("jwt:key-created-at", String.valueOf(System.currentTimeMillis()));
+        redisTemplate.opsForValue().set("jwt:key-created-at", String.valueOf(activeKeyCreatedAt));
         
         // Persist active key bytes to Redis for cross-instance verification
         if (activeSigningKey != null) {
             byte[] keyBytes = activeSigningKey.getEncoded();
-            redisTemplate.opsForValue().set("jwt:keys:" + activeKeyId, keyBytes);
+            redisTemplate.opsForValue().set("jwt:keys:" + activeKeyId, keyBytes,
+                    Duration.ofDays(keyRotationDays + gracePeriodDays + 1));
         }
     }
 
@@ -155,10 +154,10 @@ public class JWTKeyRotationService {
         // Generate NEW random key for actual key rotation
         activeKeyId = UUID.randomUUID().toString();
         activeSigningKey = Keys.hmacShaKeyFor(generateRandomKeyBytes());
+        activeKeyCreatedAt = System.currentTimeMillis();
 
-        // Update Redis
-        redisTemplate.opsForValue().set("jwt:active-key-id", activeKeyId);
-        redisTemplate.opsForValue().set("jwt:key-created-at", String.valueOf(System.currentTimeMillis()));
+        // Update Redis, so other instances can verify tokens signed with the new key
+        storeActiveKey();
 
         // Schedule cleanup of old key after grace period
         cleanupOldKeyAfterGracePeriod(oldKeyId);
@@ -1,5 +1,6 @@
 package ir.netpick.platform.gatekeeper.service;
 
+import ir.netpick.platform.core.lock.SchedulerLock;
 import ir.netpick.platform.gatekeeper.dto.DeviceSessionDTO;
 import ir.netpick.platform.gatekeeper.model.DeviceSession;
 import ir.netpick.platform.gatekeeper.model.RefreshToken;
@@ -130,6 +131,7 @@ public class DeviceSessionService {
     }
 
     @Scheduled(cron = "0 */30 * * * ?")
+    @SchedulerLock(name = "device-session-cleanup")
     @Transactional
     public void cleanupExpiredSessions() {
         int count = deviceSessionRepository.cleanupExpiredSessions();
@@ -1,5 +1,6 @@
 package ir.netpick.platform.gatekeeper.service;
 
+import ir.netpick.platform.core.lock.SchedulerLock;
 import ir.netpick.platform.gatekeeper.exception.InvalidTokenException;
 import ir.netpick.platform.gatekeeper.model.RefreshToken;
 import ir.netpick.platform.gatekeeper.model.User;
@@ -170,6 +171,7 @@ public class RefreshTokenService {
      * Runs daily at 3 AM.
      */
     @Scheduled(cron = "0 0 3 * * ?")
+    @SchedulerLock(name = "refresh-token-cleanup")
     @Transactional
     public void cleanupExpiredTokens() {
         log.info("Starting refresh token cleanup job");
@@ -22,6 +22,38 @@ public class ScrapeConstants {
             "netflix.com",
     };
 
+    // TLDs whose sites tend to publish contact details (local business registries, etc.)
+    public static final String[] PRIORITY_TLD_HINTS = {
+            ".ir",
+            ".co.ir",
+            ".org",
+            ".biz",
+    };
+
+    // URL path fragments that usually point at a contact or team page
+    public static final String[] PRIORITY_PATH_HINTS = {
+            "contact",
+            "about",
+            "team",
+            "staff",
+            "impressum",
+            "support",
+            "tamas",
+            "darbare",
+    };
+
+    // Words in a result's title or snippet that suggest the page lists contact details
+    public static final String[] PRIORITY_TEXT_HINTS = {
+            "@",
+            "email",
+            "e-mail",
+            "contact",
+            "phone",
+            "ایمیل",
+            "تماس",
+            "تلفن",
+    };
+
 }
 
 
@@ -1,6 +1,7 @@
 package ir.netpick.platform.mailmine.controller;
 
 import ir.netpick.platform.mailmine.dto.ApiKeyRequest;
+import ir.netpick.platform.mailmine.service.base.ApiKeyQuotaService;
 import ir.netpick.platform.mailmine.service.base.ApiKeyService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -16,6 +17,7 @@ import java.util.UUID;
 public class ApiKeyController {
 
     private final ApiKeyService ApiKeyService;
+    private final ApiKeyQuotaService apiKeyQuotaService;
 
     @GetMapping("")
     public ResponseEntity<?> getApiKeys(@RequestParam(defaultValue = "1") Integer page) {
@@ -32,6 +34,11 @@ public class ApiKeyController {
         return ResponseEntity.ok().body(ApiKeyService.allKeysIncludingDeleted(page));
     }
 
+    @GetMapping("/quota")
+    public ResponseEntity<?> getQuota() {
+        return ResponseEntity.ok().body(apiKeyQuotaService.quotaReport());
+    }
+
     @GetMapping("{id}")
     public ResponseEntity<?> getApiKey(@PathVariable UUID id) {
         return ResponseEntity.ok().body(ApiKeyService.getKey(id));
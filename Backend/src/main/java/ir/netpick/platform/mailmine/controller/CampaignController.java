@@ -1,5 +1,7 @@
 package ir.netpick.platform.mailmine.controller;
 
+import ir.netpick.platform.mailmine.dto.AudienceImportReport;
+import ir.netpick.platform.mailmine.dto.AudienceQuery;
 import ir.netpick.platform.mailmine.model.Campaign;
 import ir.netpick.platform.mailmine.service.CampaignService;
 import lombok.RequiredArgsConstructor;
@@ -10,7 +12,10 @@ import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -58,6 +63,22 @@ public class CampaignController {
         return ResponseEntity.ok(campaignService.addRecipients(id, emails));
     }
 
+    @PostMapping("/{id}/recipients/query")
+    public ResponseEntity<AudienceImportReport> addRecipientsFromContacts(
+            @PathVariable UUID id,
+            @RequestBody AudienceQuery query) {
+        return ResponseEntity.ok(campaignService.addRecipientsFromContacts(id, query));
+    }
+
+    @PostMapping("/{id}/recipients/import")
+    public ResponseEntity<AudienceImportReport> importRecipients(
+            @PathVariable UUID id,
+            @RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream csv = file.getInputStream()) {
+            return ResponseEntity.ok(campaignService.importRecipients(id, csv));
+        }
+    }
+
     @PostMapping("/{id}/schedule")
     public ResponseEntity<Campaign> scheduleCampaign(
             @PathVariable UUID id,
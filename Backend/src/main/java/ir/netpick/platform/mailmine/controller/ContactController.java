@@ -1,12 +1,23 @@
 package ir.netpick.platform.mailmine.controller;
 
+import ir.netpick.platform.mailmine.export.ContactExportFormat;
+import ir.netpick.platform.mailmine.service.base.ContactExportService;
 import ir.netpick.platform.mailmine.service.base.ContactService;
+import ir.netpick.platform.mailmine.service.base.EmailVerificationService;
+import ir.netpick.platform.mailmine.verify.VerificationResult;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 
 @RequiredArgsConstructor
 @RestController
@@ -14,6 +25,8 @@ import java.util.UUID;
 @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
 public class ContactController {
     private final ContactService contactService;
+    private final ContactExportService contactExportService;
+    private final EmailVerificationService emailVerificationService;
 
     @GetMapping
     public ResponseEntity<?> allContacts(@RequestParam(defaultValue = "1") int page) {
@@ -33,6 +46,50 @@ public class ContactController {
                 .body(contactService.allContactsIncludingDeleted(page));
     }
 
+    /**
+     * Stream all contacts as csv, ndjson or xlsx. CSV and NDJSON are gzipped
+     * when the client accepts it; {@code after} resumes an interrupted export
+     * after the last contact id received.
+     */
+    @GetMapping("/export")
+    public void exportContacts(@RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) UUID after,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+        ContactExportFormat exportFormat = ContactExportFormat.of(format);
+        boolean gzip = exportFormat.compressible() && acceptEncoding != null && acceptEncoding.contains("gzip");
+        String cursor = after != null ? after.toString() : null;
+
+        response.setContentType(exportFormat.contentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("contacts-" + LocalDate.now() + "." + exportFormat.extension())
+                .build().toString());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!gzip) {
+            contactExportService.export(exportFormat, cursor, response.getOutputStream());
+            return;
+        }
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        // Sync flush, so every exported page reaches the client right away
+        try (GZIPOutputStream out = new GZIPOutputStream(response.getOutputStream(), 64 * 1024, true)) {
+            contactExportService.export(exportFormat, cursor, out);
+        }
+    }
+
+    /**
+     * Verify the mailboxes of up to {@code limit} unverified contacts now,
+     * rather than waiting for the scheduled run
+     */
+    @PostMapping("/verify")
+    public ResponseEntity<?> verifyContacts(@RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(emailVerificationService.verifyContacts(limit));
+    }
+
+    @PostMapping("/verify/addresses")
+    public ResponseEntity<List<VerificationResult>> verifyAddresses(@RequestBody List<String> addresses) {
+        return ResponseEntity.ok(emailVerificationService.verifyAddresses(addresses));
+    }
+
     @GetMapping("{id}")
     public ResponseEntity<?> getContact(@PathVariable UUID id) {
         return ResponseEntity.ok()
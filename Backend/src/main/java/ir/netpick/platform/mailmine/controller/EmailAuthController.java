@@ -1,12 +1,15 @@
 package ir.netpick.platform.mailmine.controller;
 
+import ir.netpick.platform.mailmine.dto.DomainValidationReport;
 import ir.netpick.platform.mailmine.service.EmailAuthValidationService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/v1/mailmine/email-auth")
@@ -25,6 +28,19 @@ public class EmailAuthController {
     public ResponseEntity<Map<String, Object>> validateEmail(@RequestParam String email) {
         return ResponseEntity.ok(validationService.validateFromEmail(email));
     }
+
+    /**
+     * Check MX, SPF and DMARC of many domains at once; entries may be domains or email addresses
+     */
+    @PostMapping("/validate-batch")
+    public ResponseEntity<DomainValidationReport> validateBatch(@RequestBody List<String> entries) {
+        return ResponseEntity.ok(validationService.validateDomains(entries));
+    }
+
+    @GetMapping("/campaigns/{campaignId}/validate")
+    public ResponseEntity<DomainValidationReport> validateCampaign(@PathVariable UUID campaignId) {
+        return ResponseEntity.ok(validationService.validateCampaignRecipients(campaignId));
+    }
 }
 
 
@@ -1,10 +1,13 @@
 package ir.netpick.platform.mailmine.controller;
 
 import ir.netpick.platform.mailmine.service.base.PipelineService;
+import ir.netpick.platform.mailmine.service.orch.PipelineProgressTracker;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.UUID;
 
@@ -14,6 +17,7 @@ import java.util.UUID;
 @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
 public class PipelineController {
     private final PipelineService pipelineService;
+    private final PipelineProgressTracker progressTracker;
 
     @GetMapping
     public ResponseEntity<?> allPipelines(@RequestParam(defaultValue = "1") int page) {
@@ -39,6 +43,15 @@ public class PipelineController {
                 .body(pipelineService.getPipeline(id));
     }
 
+    /**
+     * Live progress: a "progress" event per interval while the pipeline runs,
+     * then a final "complete" event
+     */
+    @GetMapping(value = "{id}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamProgress(@PathVariable UUID id) {
+        return progressTracker.subscribe(id);
+    }
+
     @GetMapping("/deleted/{id}")
     public ResponseEntity<?> getDeletedPipeline(@PathVariable UUID id) {
         return ResponseEntity.ok()
@@ -8,8 +8,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/v1/scrape")
@@ -17,13 +19,15 @@ import java.util.Set;
 @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
 public class ScrapeController {
 
+    private static final Set<PipelineStageEnum> JOINABLE_STEPS = Set.of(
+            PipelineStageEnum.SCRAPER_STARTED, PipelineStageEnum.PARSER_STARTED);
+
     private final ScrapeOrchestrationService orchestrationService;
 
     @PostMapping("start_google")
     public ResponseEntity<Map<String, String>> startSearch() {
-        if (orchestrationService.hasActivePipeline()) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("error", "A pipeline is already running"));
+        if (!orchestrationService.tryReserveSlot()) {
+            return tooManyPipelines();
         }
         orchestrationService.executeSteps(Set.of(PipelineStageEnum.API_CALLER_STARTED));
         return ResponseEntity.accepted()
@@ -32,9 +36,8 @@ public class ScrapeController {
 
     @PostMapping("start_scrape")
     public ResponseEntity<Map<String, String>> startScrapping() {
-        if (orchestrationService.hasActivePipeline()) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("error", "A pipeline is already running"));
+        if (!orchestrationService.tryReserveSlot()) {
+            return tooManyPipelines();
         }
         orchestrationService.executeSteps(Set.of(PipelineStageEnum.SCRAPER_STARTED));
         return ResponseEntity.accepted()
@@ -43,9 +46,8 @@ public class ScrapeController {
 
     @PostMapping("start_extract")
     public ResponseEntity<Map<String, String>> startExtract() {
-        if (orchestrationService.hasActivePipeline()) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("error", "A pipeline is already running"));
+        if (!orchestrationService.tryReserveSlot()) {
+            return tooManyPipelines();
         }
         orchestrationService.executeSteps(Set.of(PipelineStageEnum.PARSER_STARTED));
         return ResponseEntity.accepted()
@@ -53,66 +55,100 @@ public class ScrapeController {
     }
 
     @PostMapping("execute_steps")
-    public ResponseEntity<Map<String, String>> executeSteps(@RequestBody Set<PipelineStageEnum> steps) {
-        if (orchestrationService.hasActivePipeline()) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("error", "A pipeline is already running"));
+    public ResponseEntity<Map<String, String>> executeSteps(@RequestBody Set<PipelineStageEnum> steps,
+            @RequestParam(defaultValue = "${scraper.pipeline.streaming:false}") boolean streaming,
+            @RequestParam(required = false) Integer lanes,
+            @RequestParam(required = false) Integer proxies) {
+        if (!orchestrationService.tryReserveSlot()) {
+            return tooManyPipelines();
         }
-        orchestrationService.executeSteps(steps);
+        orchestrationService.executeSteps(steps, streaming, orchestrationService.quota(lanes, proxies));
         return ResponseEntity.accepted()
                 .body(Map.of("message", "Pipeline started with steps: " + steps));
     }
 
     @PostMapping("execute_all")
-    public ResponseEntity<Map<String, String>> executeAll() {
-        if (orchestrationService.hasActivePipeline()) {
-            return ResponseEntity.badRequest()
-                    .body(Map.of("error", "A pipeline is already running"));
+    public ResponseEntity<Map<String, String>> executeAll(
+            @RequestParam(defaultValue = "${scraper.pipeline.streaming:false}") boolean streaming,
+            @RequestParam(required = false) Integer lanes,
+            @RequestParam(required = false) Integer proxies) {
+        if (!orchestrationService.tryReserveSlot()) {
+            return tooManyPipelines();
         }
-        orchestrationService.executeAllSteps();
+        orchestrationService.executeAllSteps(streaming, orchestrationService.quota(lanes, proxies));
         return ResponseEntity.accepted()
                 .body(Map.of("message", "Full pipeline started"));
     }
 
+    /**
+     * Put this instance to work on the scrape and/or parse stage of a pipeline
+     * running elsewhere in the cluster
+     */
+    @PostMapping("join")
+    public ResponseEntity<Map<String, String>> joinPipeline(@RequestParam UUID pipelineId,
+            @RequestBody Set<PipelineStageEnum> steps,
+            @RequestParam(required = false) Integer lanes,
+            @RequestParam(required = false) Integer proxies) {
+        if (steps.isEmpty() || !JOINABLE_STEPS.containsAll(steps)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Only " + JOINABLE_STEPS + " can be joined"));
+        }
+        if (!orchestrationService.getActivePipelineIds().contains(pipelineId)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Pipeline " + pipelineId + " is not running"));
+        }
+        if (orchestrationService.isRunningHere(pipelineId)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Pipeline " + pipelineId + " already runs on this instance"));
+        }
+        if (!orchestrationService.tryReserveSlot()) {
+            return tooManyPipelines();
+        }
+        orchestrationService.joinPipeline(pipelineId, steps, orchestrationService.quota(lanes, proxies));
+        return ResponseEntity.accepted()
+                .body(Map.of("message", "Joined pipeline " + pipelineId + " with steps: " + steps));
+    }
+
+    private ResponseEntity<Map<String, String>> tooManyPipelines() {
+        return ResponseEntity.badRequest()
+                .body(Map.of("error", "Already running " + orchestrationService.getMaxConcurrent()
+                        + " pipelines, the configured maximum"));
+    }
+
     // ==================== Pipeline Control Endpoints ====================
+    // The pipelineId may be omitted while a single pipeline is running
 
     @PostMapping("pause")
-    public ResponseEntity<Pipeline> pausePipeline() {
-        Pipeline pipeline = orchestrationService.pauseCurrentPipeline();
+    public ResponseEntity<Pipeline> pausePipeline(@RequestParam(required = false) UUID pipelineId) {
+        Pipeline pipeline = orchestrationService.pausePipeline(pipelineId);
         return ResponseEntity.ok(pipeline);
     }
 
     @PostMapping("resume")
-    public ResponseEntity<Pipeline> resumePipeline() {
-        Pipeline pipeline = orchestrationService.resumeCurrentPipeline();
+    public ResponseEntity<Pipeline> resumePipeline(@RequestParam(required = false) UUID pipelineId) {
+        Pipeline pipeline = orchestrationService.resumePipeline(pipelineId);
         return ResponseEntity.ok(pipeline);
     }
 
     @PostMapping("skip")
-    public ResponseEntity<Pipeline> skipCurrentStep() {
-        Pipeline pipeline = orchestrationService.skipCurrentStep();
+    public ResponseEntity<Pipeline> skipCurrentStep(@RequestParam(required = false) UUID pipelineId) {
+        Pipeline pipeline = orchestrationService.skipCurrentStep(pipelineId);
         return ResponseEntity.ok(pipeline);
     }
 
     @PostMapping("cancel")
-    public ResponseEntity<Pipeline> cancelPipeline() {
-        Pipeline pipeline = orchestrationService.cancelCurrentPipeline();
+    public ResponseEntity<Pipeline> cancelPipeline(@RequestParam(required = false) UUID pipelineId) {
+        Pipeline pipeline = orchestrationService.cancelPipeline(pipelineId);
         return ResponseEntity.ok(pipeline);
     }
 
     @GetMapping("status")
     public ResponseEntity<Map<String, Object>> getPipelineStatus() {
-        boolean active = orchestrationService.hasActivePipeline();
+        List<UUID> active = orchestrationService.getActivePipelineIds();
         return ResponseEntity.ok(Map.of(
-                "active", active,
-                "message", active ? "Pipeline is running" : "No active pipeline"));
+                "active", !active.isEmpty(),
+                "activePipelines", active,
+                "maxConcurrent", orchestrationService.getMaxConcurrent(),
+                "message", active.isEmpty() ? "No active pipeline" : active.size() + " pipeline(s) running"));
     }
 }
-
-
-
-
-
-
-
-
@@ -2,7 +2,6 @@ package ir.netpick.platform.mailmine.controller;
 
 import ir.netpick.platform.mailmine.dto.SearchQueryResponse;
 import ir.netpick.platform.mailmine.mapper.SearchQueryDTOMapper;
-import ir.netpick.platform.mailmine.model.SearchQuery;
 import ir.netpick.platform.mailmine.service.mid.SearchQueryGenerator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -39,11 +38,15 @@ public class SearchQueryGeneratorController {
     @PostMapping("/save")
     public ResponseEntity<Map<String, Object>> generateAndSaveQueries(@RequestBody GenerateRequest request) {
         int count = Math.min(request.count() != null ? request.count() : 10, 50);
-        List<SearchQuery> saved = searchQueryGenerator.generateAndSaveQueries(request.topic(), request.target(), count);
-        List<SearchQueryResponse> responses = saved.stream().map(searchQueryDTOMapper).toList();
+        SearchQueryGenerator.GeneratedQueries result = searchQueryGenerator.generateAndSaveQueries(
+                request.topic(), request.target(), count);
+        List<SearchQueryResponse> responses = result.saved().stream().map(searchQueryDTOMapper).toList();
         return ResponseEntity.ok(Map.of(
                 "queries", responses,
-                "saved", saved.size()));
+                "saved", result.saved().size(),
+                "generated", result.generated(),
+                "duplicates", result.duplicates(),
+                "duplicateRate", result.duplicateRate()));
     }
 
     /**
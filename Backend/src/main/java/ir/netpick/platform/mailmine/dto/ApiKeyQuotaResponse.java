@@ -0,0 +1,15 @@
+package ir.netpick.platform.mailmine.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record ApiKeyQuotaResponse(
+                UUID id,
+                String description,
+                int dailyQuota,
+                int usedToday,
+                int remaining,
+                boolean exhausted,
+                LocalDateTime predictedExhaustion) {
+
+}
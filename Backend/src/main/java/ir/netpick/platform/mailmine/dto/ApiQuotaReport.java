@@ -0,0 +1,15 @@
+package ir.netpick.platform.mailmine.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record ApiQuotaReport(
+                int totalQuota,
+                int usedToday,
+                int remaining,
+                int runBudget,
+                LocalDateTime resetsAt,
+                LocalDateTime predictedExhaustion,
+                List<ApiKeyQuotaResponse> keys) {
+
+}
@@ -0,0 +1,16 @@
+package ir.netpick.platform.mailmine.dto;
+
+/**
+ * Outcome of adding recipients to a campaign. {@code rows} and
+ * {@code invalid} count uploaded lines and are zero for contact queries;
+ * addresses already on the campaign or suppressed are not {@code added}.
+ */
+public record AudienceImportReport(
+                long rows,
+                long invalid,
+                long added,
+                long updated,
+                int totalRecipients,
+                long elapsedMs) {
+
+}
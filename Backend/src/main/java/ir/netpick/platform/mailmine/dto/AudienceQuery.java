@@ -0,0 +1,25 @@
+package ir.netpick.platform.mailmine.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import ir.netpick.platform.mailmine.verify.VerificationStatus;
+
+/**
+ * Contacts to add to a campaign. Every filter given must match; null or
+ * empty filters are ignored.
+ *
+ * @param tag                  name of an email tag on a message the address sent
+ * @param domain               email domain of the address
+ * @param verificationStatuses contact verification statuses to take
+ * @param includeUnverified    also take contacts not verified yet
+ * @param sourceQueryId        search query whose results the contact was scraped from
+ */
+public record AudienceQuery(
+                String tag,
+                String domain,
+                List<VerificationStatus> verificationStatuses,
+                boolean includeUnverified,
+                UUID sourceQueryId) {
+
+}
@@ -0,0 +1,43 @@
+package ir.netpick.platform.mailmine.dto;
+
+import java.util.List;
+
+/**
+ * DNS check of one recipient domain
+ *
+ * @param addresses   entries of the request that have this domain
+ * @param dmarcPolicy p= of the DMARC record, null without one
+ * @param error       why the status is UNKNOWN
+ */
+public record DomainCheck(
+                String domain,
+                MailStatus status,
+                int addresses,
+                List<String> mxHosts,
+                boolean hasSpf,
+                String dmarcPolicy,
+                String error) {
+
+        public enum MailStatus {
+                // Has MX records
+                DELIVERABLE,
+                // No MX, but an address record receives mail instead (RFC 5321 5.1)
+                IMPLICIT_MX,
+                // Publishes a null MX: accepts no mail (RFC 7505)
+                NULL_MX,
+                // Exists, but has neither MX nor address records
+                NO_MAIL_HOST,
+                // The domain does not exist
+                NOT_FOUND,
+                // Lookup failed or timed out
+                UNKNOWN;
+
+                public boolean deliverable() {
+                        return this == DELIVERABLE || this == IMPLICIT_MX;
+                }
+
+                public boolean undeliverable() {
+                        return this == NULL_MX || this == NO_MAIL_HOST || this == NOT_FOUND;
+                }
+        }
+}
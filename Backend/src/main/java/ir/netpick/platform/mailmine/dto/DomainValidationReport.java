@@ -0,0 +1,16 @@
+package ir.netpick.platform.mailmine.dto;
+
+import java.util.List;
+
+public record DomainValidationReport(
+                int entries,
+                int invalidEntries,
+                int domains,
+                int deliverableDomains,
+                int undeliverableDomains,
+                int unknownDomains,
+                int undeliverableAddresses,
+                long elapsedMs,
+                List<DomainCheck> results) {
+
+}
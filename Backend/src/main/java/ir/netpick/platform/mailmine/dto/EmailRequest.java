@@ -1,10 +1,12 @@
 package ir.netpick.platform.mailmine.dto;
 
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Data
@@ -21,6 +23,10 @@ public class EmailRequest {
     // For mass email
     private List<String> recipients;
     private String templateName;
+
+    // Queued emails only: send no earlier than this
+    private LocalDateTime scheduledAt;
+    private QueuePriority priority;
 }
 
 
@@ -0,0 +1,17 @@
+package ir.netpick.platform.mailmine.dto;
+
+import java.util.Map;
+
+import ir.netpick.platform.mailmine.verify.VerificationStatus;
+
+/**
+ * Summary of one verification run; {@code statuses} counts the probed addresses
+ */
+public record EmailVerificationReport(
+                int contacts,
+                int addresses,
+                int probed,
+                Map<VerificationStatus, Long> statuses,
+                long elapsedMs) {
+
+}
@@ -0,0 +1,25 @@
+package ir.netpick.platform.mailmine.dto;
+
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.core.enums.PipelineStateEnum;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public record PipelineProgressEvent(
+                UUID pipelineId,
+                PipelineStateEnum state,
+                PipelineStageEnum stage,
+                long elapsedSeconds,
+                long itemsProcessed,
+                long itemsTotal,
+                long linksCreated,
+                long pagesScraped,
+                long contactsFound,
+                long errorsCount,
+                Long etaSeconds,
+                List<StageProgress> stages,
+                Map<String, Integer> queueDepths) {
+
+}
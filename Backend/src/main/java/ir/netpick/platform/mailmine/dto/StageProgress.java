@@ -0,0 +1,12 @@
+package ir.netpick.platform.mailmine.dto;
+
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+
+public record StageProgress(
+                PipelineStageEnum stage,
+                long processed,
+                long total,
+                double ratePerSecond,
+                Long etaSeconds) {
+
+}
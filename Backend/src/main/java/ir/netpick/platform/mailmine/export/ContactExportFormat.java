@@ -0,0 +1,58 @@
+package ir.netpick.platform.mailmine.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import ir.netpick.platform.core.exception.RequestValidationException;
+
+/**
+ * Supported export formats. CSV and XLSX have one row per email; NDJSON has
+ * one object per contact.
+ */
+public enum ContactExportFormat {
+
+    CSV("text/csv; charset=utf-8", "csv", true),
+    NDJSON("application/x-ndjson", "ndjson", true),
+    // Already a zip archive, gzip would not shrink it further
+    XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx", false);
+
+    private final String contentType;
+    private final String extension;
+    private final boolean compressible;
+
+    ContactExportFormat(String contentType, String extension, boolean compressible) {
+        this.contentType = contentType;
+        this.extension = extension;
+        this.compressible = compressible;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public boolean compressible() {
+        return compressible;
+    }
+
+    public ContactExportWriter writer(OutputStream out) throws IOException {
+        return switch (this) {
+            case CSV -> new CsvContactWriter(out);
+            case NDJSON -> new NdjsonContactWriter(out);
+            case XLSX -> new XlsxContactWriter(out);
+        };
+    }
+
+    public static ContactExportFormat of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RequestValidationException(
+                    "Unsupported export format [%s]; use csv, ndjson or xlsx".formatted(name));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ir.netpick.platform.mailmine.export;
+
+import java.io.IOException;
+
+/**
+ * Writes exported contacts to a stream as they are read. Implementations keep
+ * no rows in memory; {@link #flush()} is called after every page of contacts
+ * so the client receives data while the export is still running.
+ */
+public interface ContactExportWriter {
+
+    void write(ExportedContact contact) throws IOException;
+
+    void flush() throws IOException;
+
+    /**
+     * Write any trailer and flush; does not close the underlying stream
+     */
+    void finish() throws IOException;
+}
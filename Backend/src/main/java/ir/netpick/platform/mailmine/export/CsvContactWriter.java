@@ -0,0 +1,72 @@
+package ir.netpick.platform.mailmine.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RFC 4180 CSV, one row per email. Contacts without emails get one row with
+ * an empty email so they are not lost.
+ */
+class CsvContactWriter implements ContactExportWriter {
+
+    private final Writer out;
+
+    CsvContactWriter(OutputStream stream) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+        out.write("contact_id,email,source_url,created_at\r\n");
+    }
+
+    @Override
+    public void write(ExportedContact contact) throws IOException {
+        if (contact.emails().isEmpty()) {
+            writeRow(contact, null);
+            return;
+        }
+        for (String email : contact.emails()) {
+            writeRow(contact, email);
+        }
+    }
+
+    private void writeRow(ExportedContact contact, String email) throws IOException {
+        field(contact.id());
+        out.write(',');
+        field(email);
+        out.write(',');
+        field(contact.sourceUrl());
+        out.write(',');
+        field(contact.createdAt() != null ? contact.createdAt().toString() : null);
+        out.write("\r\n");
+    }
+
+    private void field(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,10 @@
+package ir.netpick.platform.mailmine.export;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One contact as written by the export: its emails and the page it was found on
+ */
+public record ExportedContact(String id, List<String> emails, String sourceUrl, LocalDateTime createdAt) {
+}
@@ -0,0 +1,55 @@
+package ir.netpick.platform.mailmine.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
+/**
+ * Newline-delimited JSON, one object per contact
+ */
+class NdjsonContactWriter implements ContactExportWriter {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final JsonGenerator generator;
+    private boolean written;
+
+    NdjsonContactWriter(OutputStream out) throws IOException {
+        generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+    }
+
+    @Override
+    public void write(ExportedContact contact) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", contact.id());
+        generator.writeArrayFieldStart("emails");
+        for (String email : contact.emails()) {
+            generator.writeString(email);
+        }
+        generator.writeEndArray();
+        generator.writeStringField("sourceUrl", contact.sourceUrl());
+        generator.writeStringField("createdAt", contact.createdAt() != null ? contact.createdAt().toString() : null);
+        generator.writeEndObject();
+        written = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        // The separator is only written between objects
+        if (written) {
+            generator.writeRaw('\n');
+        }
+        generator.close();
+    }
+}
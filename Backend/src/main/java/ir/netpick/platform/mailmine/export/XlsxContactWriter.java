@@ -0,0 +1,166 @@
+package ir.netpick.platform.mailmine.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Minimal SpreadsheetML workbook written straight into a zip stream, one row
+ * per email like the CSV export. Cells are inline strings, so there is no
+ * shared string table to hold in memory; a sheet that reaches Excel's row
+ * limit is continued on the next one. The workbook part listing the sheets is
+ * written last, once their number is known.
+ */
+class XlsxContactWriter implements ContactExportWriter {
+
+    // Excel's limit is 1,048,576 rows including the header
+    static final int MAX_ROWS_PER_SHEET = 1_048_575;
+
+    private static final String CONTENT_TYPES = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Types xmlns="http://schemas.openxmlformats.org/package/2006/content-types">\
+            <Default Extension="rels" ContentType="application/vnd.openxmlformats-package.relationships+xml"/>\
+            <Default Extension="xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml"/>\
+            <Override PartName="/xl/workbook.xml" \
+            ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml"/>\
+            </Types>""";
+
+    private static final String ROOT_RELS = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">\
+            <Relationship Id="rId1" \
+            Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument" \
+            Target="xl/workbook.xml"/>\
+            </Relationships>""";
+
+    private static final String SHEET_HEADER = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <worksheet xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main">\
+            <cols><col min="1" max="1" width="38" customWidth="1"/><col min="2" max="2" width="36" customWidth="1"/>\
+            <col min="3" max="3" width="60" customWidth="1"/><col min="4" max="4" width="22" customWidth="1"/></cols>\
+            <sheetData>""";
+
+    private static final String SHEET_FOOTER = "</sheetData></worksheet>";
+
+    private final ZipOutputStream zip;
+    private final Writer out;
+    private int sheets;
+    private int rowsInSheet;
+
+    XlsxContactWriter(OutputStream stream) throws IOException {
+        zip = new ZipOutputStream(stream, StandardCharsets.UTF_8);
+        out = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+        part("[Content_Types].xml", CONTENT_TYPES);
+        part("_rels/.rels", ROOT_RELS);
+        startSheet();
+    }
+
+    @Override
+    public void write(ExportedContact contact) throws IOException {
+        if (contact.emails().isEmpty()) {
+            row(contact.id(), null, contact.sourceUrl(), contact.createdAt());
+            return;
+        }
+        for (String email : contact.emails()) {
+            row(contact.id(), email, contact.sourceUrl(), contact.createdAt());
+        }
+    }
+
+    private void row(String id, String email, String sourceUrl, Object createdAt) throws IOException {
+        if (rowsInSheet == MAX_ROWS_PER_SHEET) {
+            endSheet();
+            startSheet();
+        }
+        rowsInSheet++;
+        out.write("<row>");
+        cell(id);
+        cell(email);
+        cell(sourceUrl);
+        cell(createdAt != null ? createdAt.toString() : null);
+        out.write("</row>");
+    }
+
+    private void cell(String value) throws IOException {
+        if (value == null) {
+            out.write("<c/>");
+            return;
+        }
+        out.write("<c t=\"inlineStr\"><is><t>");
+        escape(value);
+        out.write("</t></is></c>");
+    }
+
+    private void escape(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.write("&amp;");
+                case '<' -> out.write("&lt;");
+                case '>' -> out.write("&gt;");
+                default -> {
+                    // Control characters are not allowed in XML 1.0
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+    }
+
+    private void startSheet() throws IOException {
+        sheets++;
+        rowsInSheet = 0;
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheets + ".xml"));
+        out.write(SHEET_HEADER);
+        row("contact_id", "email", "source_url", "created_at");
+        rowsInSheet = 0;
+    }
+
+    private void endSheet() throws IOException {
+        out.write(SHEET_FOOTER);
+        out.flush();
+        zip.closeEntry();
+    }
+
+    private void part(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.flush();
+        zip.closeEntry();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        endSheet();
+
+        StringBuilder workbook = new StringBuilder("""
+                <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                <workbook xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main" \
+                xmlns:r="http://schemas.openxmlformats.org/officeDocument/2006/relationships"><sheets>""");
+        StringBuilder rels = new StringBuilder("""
+                <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+                <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">""");
+        for (int i = 1; i <= sheets; i++) {
+            workbook.append("<sheet name=\"Contacts").append(i > 1 ? " " + i : "").append("\" sheetId=\"").append(i)
+                    .append("\" r:id=\"rId").append(i).append("\"/>");
+            rels.append("<Relationship Id=\"rId").append(i)
+                    .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\"")
+                    .append(" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+        }
+        part("xl/workbook.xml", workbook.append("</sheets></workbook>").toString());
+        part("xl/_rels/workbook.xml.rels", rels.append("</Relationships>").toString());
+
+        // Completes the archive without closing the response stream
+        zip.finish();
+    }
+}
@@ -0,0 +1,36 @@
+package ir.netpick.platform.mailmine.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR trace of parsing one stored page; by default only slow ones are recorded
+ */
+@Name("ir.netpick.mailmine.ParseFile")
+@Label("Parse File")
+@Category({"Netpick", "Pipeline"})
+@Threshold("20 ms")
+@StackTrace(false)
+public class ParseFileEvent extends jdk.jfr.Event {
+
+    @Label("Scrape Data Id")
+    public String scrapeDataId;
+
+    @Label("Outcome")
+    public String outcome;
+
+    @Label("Read")
+    @Timespan(Timespan.NANOSECONDS)
+    public long readTime;
+
+    @Label("Parse")
+    @Timespan(Timespan.NANOSECONDS)
+    public long parseTime;
+
+    @Label("Emails")
+    public int emails;
+}
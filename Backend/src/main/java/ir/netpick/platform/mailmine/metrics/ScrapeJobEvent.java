@@ -0,0 +1,50 @@
+package ir.netpick.platform.mailmine.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR trace of one scrape job, from proxy selection to the stored page.
+ * Costs nothing unless a recording is running; fields are only filled when
+ * the event will be committed.
+ */
+@Name("ir.netpick.mailmine.ScrapeJob")
+@Label("Scrape Job")
+@Category({"Netpick", "Pipeline"})
+@Description("One scrape job: browser launch, navigation and storage of the page")
+@StackTrace(false)
+public class ScrapeJobEvent extends jdk.jfr.Event {
+
+    @Label("Job Id")
+    public String jobId;
+
+    @Label("URL")
+    public String url;
+
+    @Label("Proxy Type")
+    public String proxyType;
+
+    @Label("Outcome")
+    public String outcome;
+
+    @Label("Browser Launch")
+    @Timespan(Timespan.NANOSECONDS)
+    public long launchTime;
+
+    @Label("Navigation")
+    @Timespan(Timespan.NANOSECONDS)
+    public long navigateTime;
+
+    @Label("Storage")
+    @Timespan(Timespan.NANOSECONDS)
+    public long storeTime;
+
+    @Label("Page Size")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,171 @@
+package ir.netpick.platform.mailmine.metrics;
+
+import com.microsoft.playwright.TimeoutError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ir.netpick.platform.mailmine.model.Proxy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Micrometer meters of the scrape pipeline, exported on /actuator/prometheus.
+ * Meters are looked up once per name and tag values and cached; only the
+ * per-item latencies publish percentile histograms, with bounded buckets.
+ * <ul>
+ * <li>{@code scraper.browser.launch}, {@code scraper.navigate}, {@code scraper.job}
+ * (by proxy type and outcome), {@code scraper.page.bytes}</li>
+ * <li>{@code parser.read}, {@code parser.parse} (by outcome), {@code parser.contacts}</li>
+ * <li>{@code search.page} (by source and outcome), {@code search.commit}</li>
+ * <li>{@code proxy.requests}, {@code proxy.latency}, {@code proxy.tests}</li>
+ * <li>{@code pipeline.db.write} (by stage)</li>
+ * </ul>
+ */
+@Component
+@RequiredArgsConstructor
+public class ScrapeMetrics {
+
+    public static final String SUCCESS = "success";
+    public static final String TIMEOUT = "timeout";
+    public static final String ERROR = "error";
+
+    private final MeterRegistry registry;
+    private final Map<List<String>, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<List<String>, DistributionSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<List<String>, Counter> counters = new ConcurrentHashMap<>();
+
+    // ==================== Scraper ====================
+
+    public void browserLaunched(String proxyType, long nanos) {
+        timer("scraper.browser.launch", false, "proxy", proxyType).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void pageNavigated(String proxyType, String outcome, long nanos) {
+        timer("scraper.navigate", true, "proxy", proxyType, "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void jobFinished(String proxyType, String outcome, long nanos) {
+        timer("scraper.job", true, "proxy", proxyType, "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void pageStored(long bytes) {
+        summary("scraper.page.bytes", "bytes").record(bytes);
+    }
+
+    // ==================== Parser ====================
+
+    public void fileRead(long nanos) {
+        timer("parser.read", false).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void fileParsed(String outcome, long nanos) {
+        timer("parser.parse", true, "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void contactsFound(int emails) {
+        summary("parser.contacts", "emails").record(emails);
+    }
+
+    // ==================== Search ====================
+
+    /**
+     * @param source "api" or "cache"
+     */
+    public void searchPage(String source, String outcome, long nanos) {
+        timer("search.page", true, "source", source, "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void searchCommitted(long nanos) {
+        timer("search.commit", false).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // ==================== Proxies ====================
+
+    public void proxyUsed(String proxyType, String outcome, long latencyMs) {
+        counter("proxy.requests", "proxy", proxyType, "outcome", outcome).increment();
+        if (latencyMs >= 0) {
+            timer("proxy.latency", false, "proxy", proxyType).record(latencyMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void proxyTested(String proxyType, String status, long latencyMs) {
+        timer("proxy.tests", false, "proxy", proxyType, "status", status).record(latencyMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ==================== Shared ====================
+
+    public void dbWrite(String stage, long nanos) {
+        timer("pipeline.db.write", false, "stage", stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static String proxyType(Proxy proxy) {
+        return proxy == null || proxy.getProtocol() == null ? "direct"
+                : proxy.getProtocol().name().toLowerCase(Locale.ROOT);
+    }
+
+    public static String outcome(Throwable error) {
+        if (error == null) {
+            return SUCCESS;
+        }
+        return error instanceof TimeoutError || error instanceof TimeoutException ? TIMEOUT : ERROR;
+    }
+
+    /**
+     * UTF-8 size of a page without encoding it
+     */
+    public static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private Timer timer(String name, boolean histogram, String... tags) {
+        return timers.computeIfAbsent(key(name, tags), key -> {
+            Timer.Builder builder = Timer.builder(name).tags(tags);
+            if (histogram) {
+                builder.publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(5))
+                        .maximumExpectedValue(Duration.ofMinutes(2));
+            }
+            return builder.register(registry);
+        });
+    }
+
+    private DistributionSummary summary(String name, String unit) {
+        return summaries.computeIfAbsent(List.of(name), key -> DistributionSummary.builder(name)
+                .baseUnit(unit)
+                .register(registry));
+    }
+
+    private Counter counter(String name, String... tags) {
+        return counters.computeIfAbsent(key(name, tags), key -> Counter.builder(name).tags(tags).register(registry));
+    }
+
+    private static List<String> key(String name, String... tags) {
+        String[] key = new String[tags.length + 1];
+        key[0] = name;
+        System.arraycopy(tags, 0, key, 1, tags.length);
+        return List.of(key);
+    }
+}
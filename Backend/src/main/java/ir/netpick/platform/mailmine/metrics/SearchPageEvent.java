@@ -0,0 +1,28 @@
+package ir.netpick.platform.mailmine.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR trace of one search result page, served by the API or the response cache
+ */
+@Name("ir.netpick.mailmine.SearchPage")
+@Label("Search Page")
+@Category({"Netpick", "Pipeline"})
+@StackTrace(false)
+public class SearchPageEvent extends jdk.jfr.Event {
+
+    @Label("Query")
+    public String query;
+
+    @Label("Page")
+    public int page;
+
+    @Label("Source")
+    public String source;
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -2,6 +2,8 @@ package ir.netpick.platform.mailmine.model;
 
 import ir.netpick.platform.core.BaseEntity;
 import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -18,9 +20,21 @@ public class ApiKey extends BaseEntity {
     @Column(name = "key", nullable = false)
     private String key;
 
+    // Daily query quota of the key; null falls back to google.search.quota.default-daily-quota
     @Column(name = "point_left")
     private Integer point;
 
+    // Queries made on usageDay (the provider's quota day)
+    @Column(name = "used_today", nullable = false)
+    private Integer usedToday = 0;
+
+    @Column(name = "usage_day")
+    private LocalDate usageDay;
+
+    // Set when the provider reports the daily limit as exceeded before our own count does
+    @Column(name = "exhausted_until")
+    private LocalDateTime exhaustedUntil;
+
     @Column(name = "link_id", nullable = false)
     private String apiLink;
 
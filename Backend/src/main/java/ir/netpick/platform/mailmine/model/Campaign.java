@@ -11,7 +11,8 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "email_campaigns", indexes = {
     @Index(name = "idx_campaigns_status", columnList = "status"),
-    @Index(name = "idx_campaigns_scheduled", columnList = "scheduled_at")
+    @Index(name = "idx_campaigns_scheduled", columnList = "scheduled_at"),
+    @Index(name = "idx_campaigns_fanout", columnList = "status, fanout_checkpoint_at")
 })
 @Getter
 @Setter
@@ -70,6 +71,16 @@ public class Campaign extends BaseEntity {
     @Column(name = "ab_variant")
     private String abVariant;
 
+    // Last recipient id queued by the fan-out; it resumes after this one
+    @Column(name = "fanout_cursor")
+    private String fanoutCursor;
+
+    @Column(name = "fanout_queued", nullable = false)
+    private Integer fanoutQueued = 0;
+
+    @Column(name = "fanout_checkpoint_at")
+    private LocalDateTime fanoutCheckpointAt;
+
     public enum CampaignStatus {
         DRAFT,
         SCHEDULED,
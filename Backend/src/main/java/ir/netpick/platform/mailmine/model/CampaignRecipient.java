@@ -10,7 +10,9 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "campaign_recipients", indexes = {
     @Index(name = "idx_recipients_campaign", columnList = "campaign_id"),
-    @Index(name = "idx_recipients_status", columnList = "status")
+    @Index(name = "idx_recipients_status", columnList = "status"),
+    @Index(name = "idx_campaign_recipients_fanout", columnList = "campaign_id, status, id"),
+    @Index(name = "idx_campaign_recipients_campaign_email", columnList = "campaign_id, recipient_email")
 })
 @Getter
 @Setter
@@ -1,12 +1,16 @@
 package ir.netpick.platform.mailmine.model;
 
 import ir.netpick.platform.core.BaseEntity;
+import ir.netpick.platform.core.constants.GeneralConstants;
+import ir.netpick.platform.mailmine.verify.VerificationStatus;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -16,6 +20,8 @@ import java.util.Set;
 @Table(name = "contacts")
 public class Contact extends BaseEntity {
 
+    // Loaded for a whole page of contacts at once rather than one select each
+    @BatchSize(size = GeneralConstants.PAGE_SIZE)
     @ElementCollection(fetch = FetchType.EAGER)
     @CollectionTable(name = "contact_emails", joinColumns = @JoinColumn(name = "contact_id"))
     @Column(name = "email")
@@ -26,6 +32,14 @@ public class Contact extends BaseEntity {
     @JoinColumn(name = "scrape_data_id")
     private ScrapeData scrapeData;
 
+    // Best status among the addresses; null until verified
+    @Enumerated(EnumType.STRING)
+    @Column(name = "verification_status", length = 32)
+    private VerificationStatus verificationStatus;
+
+    @Column(name = "verified_at")
+    private LocalDateTime verifiedAt;
+
     public Contact() {
     }
 
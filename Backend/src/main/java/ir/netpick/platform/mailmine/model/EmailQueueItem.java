@@ -13,7 +13,8 @@ import java.util.UUID;
 @Table(name = "email_queue_items", indexes = {
     @Index(name = "idx_email_queue_status", columnList = "status"),
     @Index(name = "idx_email_queue_priority", columnList = "priority"),
-    @Index(name = "idx_email_queue_created", columnList = "created_at")
+    @Index(name = "idx_email_queue_created", columnList = "created_at"),
+    @Index(name = "idx_email_queue_due", columnList = "status, next_attempt_at")
 })
 @Getter
 @Setter
@@ -59,8 +60,22 @@ public class EmailQueueItem extends BaseEntity {
     @Column(nullable = false)
     private QueuePriority priority = QueuePriority.NORMAL;
 
+    // Requested send time; null to send right away
+    @Column(name = "scheduled_at")
+    private LocalDateTime scheduledAt;
+
+    // When the item is due: its scheduled time, or the end of its retry backoff
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    // While SENDING: when the claiming dispatcher's lease runs out
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
     public enum QueueStatus {
         PENDING,
+        // Claimed by a dispatcher
+        SENDING,
         SENT,
         FAILED,
         CANCELLED
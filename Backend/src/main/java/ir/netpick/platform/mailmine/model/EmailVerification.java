@@ -0,0 +1,57 @@
+package ir.netpick.platform.mailmine.model;
+
+import ir.netpick.platform.core.BaseEntity;
+import ir.netpick.platform.mailmine.verify.VerificationStatus;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Latest verification result of one address, shared by every contact holding it
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "email_verification", indexes = {
+        @Index(name = "idx_email_verification_next_attempt", columnList = "next_attempt_at")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uniq_email_verification_email", columnNames = { "email" })
+})
+public class EmailVerification extends BaseEntity {
+
+    @Column(name = "email", nullable = false, length = 320)
+    private String email;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 32)
+    private VerificationStatus status;
+
+    @Column(name = "mx_host")
+    private String mxHost;
+
+    @Column(name = "smtp_code")
+    private Integer smtpCode;
+
+    @Column(name = "detail", length = 500)
+    private String detail;
+
+    // Probes so far; deferred results give up after verifier.retry.max-attempts
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "checked_at", nullable = false)
+    private LocalDateTime checkedAt;
+
+    // Set while the result is deferred
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    public EmailVerification() {
+    }
+
+    public EmailVerification(String email) {
+        this.email = email;
+    }
+}
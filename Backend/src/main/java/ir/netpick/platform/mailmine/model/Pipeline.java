@@ -51,6 +51,17 @@ public class Pipeline extends BaseEntity {
     @Column(name = "errors_count")
     private Integer errorsCount = 0;
 
+    // Crash recovery: JSON PipelineCheckpoint, refreshed with the progress counters
+    @Column(columnDefinition = "text")
+    private String checkpoint;
+
+    // Doubles as a heartbeat; a running pipeline whose checkpoint goes stale is orphaned
+    @Column(name = "checkpoint_at")
+    private LocalDateTime checkpointAt;
+
+    @Column(name = "resume_count")
+    private Integer resumeCount = 0;
+
     public Pipeline() {
     }
 
@@ -1,5 +1,7 @@
 package ir.netpick.platform.mailmine.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import ir.netpick.platform.core.BaseEntity;
 import jakarta.persistence.*;
 import lombok.Getter;
@@ -9,7 +11,9 @@ import lombok.Setter;
 @Getter
 @Entity
 @Table(name = "scrape_job", indexes = {
-        @Index(name = "idx_scrapejob_link", columnList = "scrape_link")
+        @Index(name = "idx_scrapejob_link", columnList = "scrape_link"),
+        @Index(name = "idx_scrapejob_priority", columnList = "priority"),
+        @Index(name = "idx_scrapejob_domain", columnList = "domain")
 }, uniqueConstraints = {
         @UniqueConstraint(name = "uniq_scrapejob_link", columnNames = { "scrape_link" })
 })
@@ -21,9 +25,19 @@ public class ScrapeJob extends BaseEntity {
     @Column(name = "attempt_number", nullable = false)
     private Integer attempt = 0;
 
-    // @ManyToOne(cascade = CascadeType.REMOVE)
-    // @JoinColumn(name = "query", referencedColumnName = "id", nullable = false)
-    // private SearchQuery query;
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "search_query_id", referencedColumnName = "id")
+    private SearchQuery searchQuery;
+
+    @Column(name = "domain")
+    private String domain;
+
+    /**
+     * Expected contact yield of this job; higher values are scraped first.
+     */
+    @Column(name = "priority", nullable = false)
+    private Double priority = 0.0;
 
     @Column(name = "been_scraped")
     private Boolean beenScraped = false;
@@ -31,6 +45,12 @@ public class ScrapeJob extends BaseEntity {
     @Column(name = "scrape_failed")
     private Boolean scrapeFailed = false;
 
+    /**
+     * Search result snippet; the result title is the description
+     */
+    @Column(name = "snippet", columnDefinition = "text")
+    private String snippet;
+
     public ScrapeJob() {
     }
 
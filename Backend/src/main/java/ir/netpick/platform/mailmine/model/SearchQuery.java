@@ -13,7 +13,8 @@ import java.time.LocalDateTime;
 @Setter
 @Entity
 @Table(name = "search_query", indexes = {
-        @Index(name = "idx_searchquery_sentence", columnList = "sentence")
+        @Index(name = "idx_searchquery_sentence", columnList = "sentence"),
+        @Index(name = "idx_searchquery_last_searched", columnList = "last_searched_at")
 }, uniqueConstraints = {
         @UniqueConstraint(name = "uniq_searchquery_sentence", columnNames = { "sentence" })
 })
@@ -25,6 +26,10 @@ public class SearchQuery extends BaseEntity {
     @Column(name = "link_count", nullable = false)
     private Integer linkCount;
 
+    // When the search stage last committed this query's results; resume point after a crash
+    @Column(name = "last_searched_at")
+    private LocalDateTime lastSearchedAt;
+
     @CreationTimestamp
     @Column(updatable = false, name = "created_at")
     private LocalDateTime createdAt;
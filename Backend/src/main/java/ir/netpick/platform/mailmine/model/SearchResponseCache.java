@@ -0,0 +1,51 @@
+package ir.netpick.platform.mailmine.model;
+
+import ir.netpick.platform.core.BaseEntity;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Search API response for one page of a normalized query, kept until it expires
+ * so re-issued queries don't spend API quota again.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "search_response_cache", indexes = {
+        @Index(name = "idx_search_cache_expires", columnList = "expires_at")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uniq_search_cache_key", columnNames = { "cache_key" })
+})
+public class SearchResponseCache extends BaseEntity {
+
+    // SHA-256 of the normalized query, engine id, page size and start offset
+    @Column(name = "cache_key", nullable = false, length = 64)
+    private String cacheKey;
+
+    @Column(name = "normalized_query", nullable = false, columnDefinition = "text")
+    private String normalizedQuery;
+
+    @Column(name = "start_index", nullable = false)
+    private Integer startIndex;
+
+    @Column(name = "response_body", nullable = false, columnDefinition = "text")
+    private String responseBody;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "hit_count", nullable = false)
+    private Integer hitCount = 0;
+
+    public SearchResponseCache() {
+    }
+
+    public SearchResponseCache(String cacheKey, String normalizedQuery, Integer startIndex) {
+        this.cacheKey = cacheKey;
+        this.normalizedQuery = normalizedQuery;
+        this.startIndex = startIndex;
+    }
+}
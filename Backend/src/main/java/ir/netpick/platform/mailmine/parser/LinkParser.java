@@ -1,73 +1,245 @@
 package ir.netpick.platform.mailmine.parser;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
 
 import ir.netpick.platform.mailmine.model.LinkResult;
-
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Extracts {@code items[].link}, {@code title} and {@code snippet} from Custom
+ * Search responses. Works on the token stream: everything else in the
+ * response (pagemap, metatags, queries, ...) is skipped without being
+ * materialised, and the reactive variant parses the body chunk by chunk as
+ * it arrives, so a response is never held as a String or a tree.
+ * <p>
+ * An empty, malformed or truncated response fails with
+ * {@link MalformedResponseException} rather than yielding the items read so
+ * far; a partial page must not be cached or taken for the whole result.
+ */
 @Slf4j
 @Service
 public class LinkParser {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final JsonFactory jsonFactory = new JsonFactory();
 
     public static List<LinkResult> parse(String jsonBody) {
-        List<LinkResult> results = new ArrayList<>();
-
         if (jsonBody == null || jsonBody.isBlank()) {
-            log.warn("Empty or null Google API response");
-            return results;
+            throw new MalformedResponseException("Empty Google API response");
+        }
+
+        ItemExtractor extractor = new ItemExtractor();
+        try (JsonParser parser = jsonFactory.createParser(jsonBody)) {
+            extractor.drain(parser);
+        } catch (IOException e) {
+            throw new MalformedResponseException("Failed to parse Google API response: " + e.getMessage(), e);
         }
+        return extractor.finish();
+    }
 
-        try {
-            JsonNode jsonRoot = objectMapper.readTree(jsonBody);
+    /**
+     * Parse a response body as it streams in. Buffers are released as soon as
+     * their tokens have been read; malformed JSON and transport errors end the
+     * Mono with an error.
+     */
+    public static Mono<List<LinkResult>> parse(Flux<DataBuffer> body) {
+        return Mono.using(StreamingExtractor::new,
+                extractor -> body
+                        .doOnNext(buffer -> {
+                            try {
+                                extractor.feed(buffer);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                        })
+                        .then(Mono.fromSupplier(extractor::finish)),
+                StreamingExtractor::close);
+    }
 
-            if (!jsonRoot.has("items") || !jsonRoot.get("items").isArray()) {
-                log.info("No 'items' field found in Google response");
-                return results;
+    /**
+     * Minimal response holding only the extracted fields, in the Custom Search
+     * layout so {@link #parse(String)} reads it back. Used for the response cache.
+     */
+    public static String toJson(List<LinkResult> results) {
+        StringWriter out = new StringWriter(64 + results.size() * 256);
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("items");
+            for (LinkResult result : results) {
+                generator.writeStartObject();
+                generator.writeStringField("link", result.getLink());
+                writeOptional(generator, "title", result.getTitle());
+                writeOptional(generator, "snippet", result.getSnippet());
+                generator.writeEndObject();
             }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
 
-            for (JsonNode searchResultItem : jsonRoot.get("items")) {
-                if (searchResultItem == null || searchResultItem.isNull())
-                    continue;
+    private static void writeOptional(JsonGenerator generator, String field, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
 
-                String link = getSafeText(searchResultItem, "link");
-                String title = getSafeText(searchResultItem, "title");
-                String snippet = getSafeText(searchResultItem, "snippet");
+    /**
+     * Feeds a non-blocking parser one buffer at a time
+     */
+    private static final class StreamingExtractor {
+        private final JsonParser parser;
+        private final ByteBufferFeeder feeder;
+        private final ItemExtractor extractor = new ItemExtractor();
+        private boolean empty = true;
+
+        StreamingExtractor() throws IOException {
+            parser = jsonFactory.createNonBlockingByteBufferParser();
+            feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        }
 
-                if (link != null && !link.isBlank()) {
-                    LinkResult result = new LinkResult();
-                    result.setLink(link);
-                    result.setTitle(title);
-                    result.setSnippet(snippet);
-                    results.add(result);
+        void feed(DataBuffer buffer) {
+            if (buffer.readableByteCount() == 0) {
+                return;
+            }
+            empty = false;
+            try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                while (chunks.hasNext()) {
+                    ByteBuffer chunk = chunks.next();
+                    if (chunk.hasRemaining()) {
+                        feeder.feedInput(chunk);
+                        extractor.drain(parser);
+                    }
                 }
+            } catch (IOException e) {
+                throw new MalformedResponseException("Failed to parse Google API response: " + e.getMessage(), e);
             }
+        }
 
-        } catch (Exception e) {
-            log.error("Failed to parse Google API response: {}", e.getMessage());
+        List<LinkResult> finish() {
+            if (empty) {
+                throw new MalformedResponseException("Empty Google API response");
+            }
+            feeder.endOfInput();
+            try {
+                extractor.drain(parser);
+            } catch (IOException e) {
+                throw new MalformedResponseException("Failed to parse Google API response: " + e.getMessage(), e);
+            }
+            return extractor.finish();
         }
 
-        return results;
+        void close() {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                // Nothing is held beyond the parser's own buffers
+            }
+        }
     }
 
-    private static String getSafeText(JsonNode node, String field) {
-        return node.has(field) && !node.get(field).isNull() ? node.get(field).asText() : null;
-    }
+    /**
+     * Token-level state machine: tracks nesting depth and only keeps string
+     * values of the three fields directly inside objects of the root
+     * {@code items} array
+     */
+    private static final class ItemExtractor {
+        private static final int ITEMS_DEPTH = 2;
+        private static final int ITEM_DEPTH = 3;
+
+        private final List<LinkResult> results = new ArrayList<>();
+        private int depth;
+        private boolean inItems;
+        private boolean sawItems;
+        private String field;
+        private LinkResult item;
+
+        /**
+         * Consume tokens until the input runs out (end of a blocking source, or
+         * the end of the chunk fed to a non-blocking one)
+         */
+        void drain(JsonParser parser) throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                switch (token) {
+                    case FIELD_NAME -> {
+                        if (depth == 1 || (inItems && depth == ITEM_DEPTH)) {
+                            field = parser.currentName();
+                        }
+                    }
+                    case START_ARRAY -> {
+                        depth++;
+                        if (depth == ITEMS_DEPTH && "items".equals(field)) {
+                            inItems = true;
+                            sawItems = true;
+                        }
+                    }
+                    case START_OBJECT -> {
+                        depth++;
+                        if (inItems && depth == ITEM_DEPTH) {
+                            item = new LinkResult();
+                            field = null;
+                        }
+                    }
+                    case END_OBJECT -> {
+                        if (item != null && depth == ITEM_DEPTH) {
+                            if (item.getLink() != null && !item.getLink().isBlank()) {
+                                results.add(item);
+                            }
+                            item = null;
+                        }
+                        depth--;
+                    }
+                    case END_ARRAY -> {
+                        if (inItems && depth == ITEMS_DEPTH) {
+                            inItems = false;
+                        }
+                        depth--;
+                    }
+                    case VALUE_STRING -> {
+                        if (item != null && depth == ITEM_DEPTH && field != null) {
+                            switch (field) {
+                                case "link" -> item.setLink(parser.getText());
+                                case "title" -> item.setTitle(parser.getText());
+                                case "snippet" -> item.setSnippet(parser.getText());
+                                default -> {
+                                }
+                            }
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
 
+        List<LinkResult> finish() {
+            if (depth != 0) {
+                throw new MalformedResponseException("Google API response ended after " + results.size()
+                        + " items, inside an unclosed object or array");
+            }
+            if (!sawItems) {
+                log.info("No 'items' field found in Google response");
+            }
+            return results;
+        }
+    }
 }
-
-
-
-
-
-
-
-
-
@@ -0,0 +1,16 @@
+package ir.netpick.platform.mailmine.parser;
+
+/**
+ * A search response that is empty, not valid JSON or cut off before its end.
+ * Its links can't be trusted to be complete, so the page counts as failed.
+ */
+public class MalformedResponseException extends RuntimeException {
+
+    public MalformedResponseException(String message) {
+        super(message);
+    }
+
+    public MalformedResponseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,5 +1,7 @@
 package ir.netpick.platform.mailmine.repository;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 import org.springframework.data.domain.Page;
@@ -7,6 +9,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import ir.netpick.platform.mailmine.model.ApiKey;
@@ -32,12 +35,22 @@ public interface ApiKeyRepository extends JpaRepository<ApiKey, UUID> {
     @Modifying
     @Query("update ApiKey s set s.deleted = False where s.deleted = true and s.id = ?1")
     void restore(UUID id);
-}
-
-
-
-
-
-
 
+    /**
+     * Add queries to a key's usage for the given quota day, restarting the count
+     * when the stored usage belongs to an earlier day
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE ApiKey k SET
+                k.usedToday = CASE WHEN k.usageDay = :day THEN k.usedToday + :count ELSE :count END,
+                k.usageDay = :day
+            WHERE k.id = :id""")
+    int addUsage(@Param("id") UUID id, @Param("day") LocalDate day, @Param("count") int count);
 
+    @Transactional
+    @Modifying
+    @Query("UPDATE ApiKey k SET k.exhaustedUntil = :until WHERE k.id = :id")
+    int markExhaustedUntil(@Param("id") UUID id, @Param("until") LocalDateTime until);
+}
@@ -23,6 +23,10 @@ public interface CampaignRecipientRepository extends JpaRepository<CampaignRecip
 
     @Query("SELECT COUNT(cr) FROM CampaignRecipient cr WHERE cr.campaign.id = :campaignId AND cr.status = :status")
     long countByCampaignIdAndStatus(@Param("campaignId") UUID campaignId, @Param("status") RecipientStatus status);
+
+    // Addresses only, without loading the recipient entities
+    @Query("SELECT cr.recipientEmail FROM CampaignRecipient cr WHERE cr.campaign.id = :campaignId")
+    List<String> findRecipientEmailsByCampaignId(@Param("campaignId") UUID campaignId);
 }
 
 
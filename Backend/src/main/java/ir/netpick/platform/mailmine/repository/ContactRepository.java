@@ -1,14 +1,19 @@
 package ir.netpick.platform.mailmine.repository;
 
 import ir.netpick.platform.mailmine.model.Contact;
+import ir.netpick.platform.mailmine.verify.VerificationStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 @Repository
@@ -16,6 +21,14 @@ public interface ContactRepository extends JpaRepository<Contact, UUID> {
 
     long countByDeletedFalse();
 
+    // Contacts found per domain of the originating scrape job
+    @Query("SELECT j.domain, COUNT(c) FROM Contact c JOIN c.scrapeData d JOIN d.scrapeJob j WHERE j.domain IN :domains GROUP BY j.domain")
+    List<Object[]> countByScrapeJobDomain(@Param("domains") Collection<String> domains);
+
+    // Contacts found per search query that produced the originating scrape job
+    @Query("SELECT j.searchQuery.id, COUNT(c) FROM Contact c JOIN c.scrapeData d JOIN d.scrapeJob j WHERE j.searchQuery.id IN :queryIds GROUP BY j.searchQuery.id")
+    List<Object[]> countByScrapeJobSearchQuery(@Param("queryIds") Collection<UUID> queryIds);
+
     // Find all non-deleted contacts with pagination
     Page<Contact> findByDeletedFalse(Pageable pageable);
 
@@ -32,6 +45,19 @@ public interface ContactRepository extends JpaRepository<Contact, UUID> {
     @Query("update Contact c set c.deleted = False where c.id = ?1 and c.deleted = true")
     void restore(UUID id);
 
+    // Contacts with addresses that were never verified
+    @Query("SELECT c FROM Contact c WHERE c.verificationStatus IS NULL AND c.emails IS NOT EMPTY ORDER BY c.createdAt")
+    List<Contact> findUnverified(Pageable pageable);
+
+    @Query("SELECT DISTINCT c FROM Contact c JOIN c.emails e WHERE LOWER(e) IN :emails")
+    List<Contact> findByEmailIn(@Param("emails") Collection<String> emails);
+
+    @Transactional
+    @Modifying
+    @Query("update Contact c set c.verificationStatus = :status, c.verifiedAt = :verifiedAt where c.id in :ids")
+    int updateVerification(@Param("ids") Collection<UUID> ids, @Param("status") VerificationStatus status,
+            @Param("verifiedAt") LocalDateTime verifiedAt);
+
     // Find deleted contact by ID (bypasses @SQLRestriction)
     Contact findByDeletedTrueAndId(UUID id);
 }
@@ -1,14 +1,19 @@
 package ir.netpick.platform.mailmine.repository;
 
 import ir.netpick.platform.mailmine.model.EmailQueueItem;
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
 import ir.netpick.platform.mailmine.model.EmailQueueItem.QueueStatus;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -22,6 +27,58 @@ public interface EmailQueueItemRepository extends JpaRepository<EmailQueueItem,
     List<EmailQueueItem> findByCreatedByUserId(UUID userId);
 
     List<EmailQueueItem> findByStatusAndRetryCountLessThan(QueueStatus status, int maxRetries);
+
+    // Due items of the status, high priority first, then the longest waiting
+    @Query("""
+            SELECT e.id FROM EmailQueueItem e
+            WHERE e.status = :status AND e.nextAttemptAt <= :now
+            ORDER BY CASE e.priority WHEN :high THEN 0 WHEN :low THEN 2 ELSE 1 END, e.nextAttemptAt
+            """)
+    List<UUID> findDueIds(@Param("status") QueueStatus status, @Param("now") LocalDateTime now,
+            @Param("high") QueuePriority high, @Param("low") QueuePriority low, Pageable pageable);
+
+    default List<UUID> findDueIds(LocalDateTime now, Pageable pageable) {
+        return findDueIds(QueueStatus.PENDING, now, QueuePriority.HIGH, QueuePriority.LOW, pageable);
+    }
+
+    @Query("SELECT MIN(e.nextAttemptAt) FROM EmailQueueItem e WHERE e.status = :status")
+    Optional<LocalDateTime> findNextDueAt(@Param("status") QueueStatus status);
+
+    // Items of the status due before the cutoff, oldest first
+    @Query("SELECT e FROM EmailQueueItem e WHERE e.status = :status AND e.nextAttemptAt <= :cutoff ORDER BY e.nextAttemptAt")
+    List<EmailQueueItem> findDueBefore(@Param("status") QueueStatus status, @Param("cutoff") LocalDateTime cutoff,
+            Pageable pageable);
+
+    /**
+     * Take a pending item for sending; returns 0 when another dispatcher has
+     * it or it is no longer pending
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE EmailQueueItem e SET e.status = :sending, e.leaseUntil = :leaseUntil
+            WHERE e.id = :id AND e.status = :pending
+            """)
+    int claim(@Param("id") UUID id, @Param("leaseUntil") LocalDateTime leaseUntil,
+            @Param("pending") QueueStatus pending, @Param("sending") QueueStatus sending);
+
+    default int claim(UUID id, LocalDateTime leaseUntil) {
+        return claim(id, leaseUntil, QueueStatus.PENDING, QueueStatus.SENDING);
+    }
+
+    // Items whose dispatcher died while sending go back to the queue
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE EmailQueueItem e SET e.status = :pending, e.leaseUntil = null, e.nextAttemptAt = :now
+            WHERE e.status = :sending AND e.leaseUntil < :now
+            """)
+    int releaseExpiredLeases(@Param("now") LocalDateTime now, @Param("pending") QueueStatus pending,
+            @Param("sending") QueueStatus sending);
+
+    default int releaseExpiredLeases(LocalDateTime now) {
+        return releaseExpiredLeases(now, QueueStatus.PENDING, QueueStatus.SENDING);
+    }
 }
 
 
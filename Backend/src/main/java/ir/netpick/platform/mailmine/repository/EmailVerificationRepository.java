@@ -0,0 +1,24 @@
+package ir.netpick.platform.mailmine.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import ir.netpick.platform.mailmine.model.EmailVerification;
+
+@Repository
+public interface EmailVerificationRepository extends JpaRepository<EmailVerification, UUID> {
+
+    List<EmailVerification> findByEmailIn(Collection<String> emails);
+
+    // Deferred addresses whose retry is due, oldest first
+    @Query("SELECT v.email FROM EmailVerification v WHERE v.nextAttemptAt <= :now ORDER BY v.nextAttemptAt")
+    List<String> findDueEmails(@Param("now") LocalDateTime now, Pageable pageable);
+}
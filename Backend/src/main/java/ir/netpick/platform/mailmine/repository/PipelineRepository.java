@@ -10,6 +10,9 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 @Repository
@@ -39,4 +42,40 @@ public interface PipelineRepository extends JpaRepository<Pipeline, UUID> {
     @Modifying
     @Query("update Pipeline c set c.deleted = False where c.deleted = true and c.id = ?1")
     void restore(UUID id);
+
+    @Transactional
+    @Modifying
+    @Query("""
+            update Pipeline p set p.itemsProcessed = ?2, p.itemsTotal = ?3, p.linksCreated = ?4,
+                p.pagesScraped = ?5, p.contactsFound = ?6, p.errorsCount = ?7,
+                p.checkpoint = ?8, p.checkpointAt = ?9
+            where p.id = ?1
+            """)
+    void updateProgress(UUID id, int itemsProcessed, int itemsTotal, int linksCreated, int pagesScraped,
+            int contactsFound, int errorsCount, String checkpoint, LocalDateTime checkpointAt);
+
+    // Running pipelines whose checkpoint has not been refreshed since the cutoff
+    @Query("""
+            select p from Pipeline p
+            where p.deleted = false and p.state in ?1
+                and coalesce(p.checkpointAt, p.startTime, p.createdAt) < ?2
+            """)
+    List<Pipeline> findStale(Collection<PipelineStateEnum> states, LocalDateTime cutoff);
+
+    // Pipelines in the states whose checkpoint was refreshed since the cutoff, i.e. still running somewhere
+    @Query("""
+            select count(p) from Pipeline p
+            where p.deleted = false and p.state in ?1
+                and coalesce(p.checkpointAt, p.startTime, p.createdAt) >= ?2
+            """)
+    long countFresh(Collection<PipelineStateEnum> states, LocalDateTime cutoff);
+
+    // Only one instance wins the right to recover a pipeline
+    @Transactional
+    @Modifying
+    @Query("""
+            update Pipeline p set p.resumeCount = coalesce(p.resumeCount, 0) + 1, p.checkpointAt = ?3
+            where p.id = ?1 and coalesce(p.resumeCount, 0) = ?2
+            """)
+    int claimForRecovery(UUID id, int resumeCount, LocalDateTime now);
 }
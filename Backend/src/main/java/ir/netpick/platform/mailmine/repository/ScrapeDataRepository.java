@@ -1,5 +1,6 @@
 package ir.netpick.platform.mailmine.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -8,6 +9,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import ir.netpick.platform.mailmine.model.ScrapeData;
@@ -25,6 +27,23 @@ public interface ScrapeDataRepository extends JpaRepository<ScrapeData, UUID> {
      */
     Page<ScrapeData> findByParsedFalseAndDeletedFalse(Pageable pageable);
 
+    /**
+     * Next unparsed files after a (createdAt, id) position, oldest first
+     */
+    @Query("""
+            SELECT d FROM ScrapeData d
+            WHERE d.parsed = false AND d.deleted = false
+              AND (d.createdAt > :createdAt OR (d.createdAt = :createdAt AND d.id > :id))
+            ORDER BY d.createdAt ASC, d.id ASC""")
+    List<ScrapeData> findUnparsedAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") UUID id,
+            Pageable pageable);
+
+    @Query("""
+            SELECT d FROM ScrapeData d
+            WHERE d.parsed = false AND d.deleted = false
+            ORDER BY d.createdAt ASC, d.id ASC""")
+    List<ScrapeData> findUnparsedFirst(Pageable pageable);
+
     /**
      * Count unparsed files for progress tracking
      */
@@ -1,5 +1,6 @@
 package ir.netpick.platform.mailmine.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -45,12 +46,41 @@ public interface ScrapeJobRepository extends JpaRepository<ScrapeJob, UUID> {
     @Query("SELECT j FROM ScrapeJob j WHERE j.beenScraped = false AND j.scrapeFailed = false AND j.attempt < :maxAttempts AND j.deleted = false")
     Page<ScrapeJob> findPendingJobs(@Param("maxAttempts") int maxAttempts, Pageable pageable);
 
+    /**
+     * Pending jobs with ids above {@code after} in id order, for keyset paging
+     * that does not skip rows as jobs stop being pending
+     */
+    @Query("SELECT j FROM ScrapeJob j WHERE j.beenScraped = false AND j.scrapeFailed = false AND j.attempt < :maxAttempts AND j.deleted = false AND j.id > :after ORDER BY j.id")
+    List<ScrapeJob> findPendingJobsAfter(@Param("maxAttempts") int maxAttempts, @Param("after") UUID after,
+            Pageable pageable);
+
+    /**
+     * Set the score of a job still waiting to be scraped, leaving every other
+     * column to whoever is scraping it
+     */
+    @Modifying
+    @Query("update ScrapeJob j set j.priority = :priority, j.domain = coalesce(j.domain, :domain) where j.id = :id and j.beenScraped = false")
+    int updatePendingPriority(@Param("id") UUID id, @Param("priority") double priority,
+            @Param("domain") String domain);
+
     /**
      * Count pending jobs for progress tracking
      */
     @Query("SELECT COUNT(j) FROM ScrapeJob j WHERE j.beenScraped = false AND j.scrapeFailed = false AND j.attempt < :maxAttempts AND j.deleted = false")
     long countPendingJobs(@Param("maxAttempts") int maxAttempts);
 
+    /**
+     * Scraped page counts per domain, used as the denominator of domain yield
+     */
+    @Query("SELECT j.domain, COUNT(j) FROM ScrapeJob j WHERE j.beenScraped = true AND j.domain IN :domains GROUP BY j.domain")
+    List<Object[]> countScrapedByDomain(@Param("domains") Collection<String> domains);
+
+    /**
+     * Scraped page counts per source search query, used as the denominator of query yield
+     */
+    @Query("SELECT j.searchQuery.id, COUNT(j) FROM ScrapeJob j WHERE j.beenScraped = true AND j.searchQuery.id IN :queryIds GROUP BY j.searchQuery.id")
+    List<Object[]> countScrapedBySearchQuery(@Param("queryIds") Collection<UUID> queryIds);
+
     long countByDeletedFalse();
 
     long countByBeenScrapedTrueAndDeletedFalse();
@@ -77,4 +107,14 @@ public interface ScrapeJobRepository extends JpaRepository<ScrapeJob, UUID> {
     @Modifying
     @Query("update ScrapeJob s set s.deleted = False where s.deleted = true and s.id = ?1")
     void restore(UUID id);
+
+    // Count an attempt against jobs that were being scraped when the process died
+    @Transactional
+    @Modifying
+    @Query("""
+            update ScrapeJob s set s.attempt = s.attempt + 1,
+                s.scrapeFailed = case when s.attempt + 1 >= ?2 then true else false end
+            where s.id in ?1 and s.beenScraped = false
+            """)
+    int chargeInterruptedAttempt(Collection<UUID> ids, int maxAttempts);
 }
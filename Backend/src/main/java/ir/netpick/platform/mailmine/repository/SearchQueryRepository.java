@@ -1,5 +1,7 @@
 package ir.netpick.platform.mailmine.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -8,6 +10,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Repository;
 
@@ -37,4 +40,36 @@ public interface SearchQueryRepository extends JpaRepository<SearchQuery, UUID>
     void restore(UUID id);
 
     List<SearchQuery> findByLinkCountLessThan(@NonNull Integer link_count);
+
+    /**
+     * Queries that still need links, never-searched (or not completely
+     * searched) ones first, then the least recently searched
+     */
+    @Query("""
+            SELECT s FROM SearchQuery s
+            WHERE s.linkCount < :maxLinks
+            ORDER BY s.lastSearchedAt ASC NULLS FIRST, s.createdAt ASC""")
+    List<SearchQuery> findPendingSearch(@Param("maxLinks") int maxLinks);
+
+    /**
+     * Queries that still need links and have no completed search yet
+     */
+    @Query("""
+            SELECT COUNT(s) FROM SearchQuery s
+            WHERE s.linkCount < :maxLinks AND s.lastSearchedAt IS NULL""")
+    long countPendingSearch(@Param("maxLinks") int maxLinks);
+
+    // Native so soft-deleted rows (still bound by the unique sentence) are included
+    @Query(value = "SELECT sentence FROM search_query", nativeQuery = true)
+    List<String> findAllSentences();
+
+    @Query(value = "SELECT sentence FROM search_query WHERE sentence IN (:sentences)", nativeQuery = true)
+    List<String> findExistingSentences(@Param("sentences") Collection<String> sentences);
+
+    @Query(value = "SELECT COUNT(*) FROM search_query", nativeQuery = true)
+    long countAllIncludingDeleted();
+
+    @Modifying
+    @Query("UPDATE SearchQuery s SET s.linkCount = s.linkCount + :links, s.lastSearchedAt = :searchedAt WHERE s.id = :id")
+    int markSearched(@Param("id") UUID id, @Param("links") int links, @Param("searchedAt") LocalDateTime searchedAt);
 }
@@ -0,0 +1,30 @@
+package ir.netpick.platform.mailmine.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import ir.netpick.platform.mailmine.model.SearchResponseCache;
+
+@Repository
+public interface SearchResponseCacheRepository extends JpaRepository<SearchResponseCache, UUID> {
+
+    Optional<SearchResponseCache> findByCacheKey(String cacheKey);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SearchResponseCache c SET c.hitCount = c.hitCount + 1 WHERE c.id = :id")
+    void incrementHitCount(@Param("id") UUID id);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM SearchResponseCache c WHERE c.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,444 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.core.exception.RequestValidationException;
+import ir.netpick.platform.core.exception.ResourceNotFoundException;
+import ir.netpick.platform.mailmine.dto.AudienceImportReport;
+import ir.netpick.platform.mailmine.dto.AudienceQuery;
+import ir.netpick.platform.mailmine.model.Campaign.CampaignStatus;
+import ir.netpick.platform.mailmine.model.CampaignRecipient.RecipientStatus;
+import ir.netpick.platform.mailmine.verify.VerificationStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.validator.routines.EmailValidator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.DatabaseMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds campaign audiences in the database rather than one recipient at a
+ * time. A contact query becomes a single {@code INSERT ... SELECT}; uploaded
+ * lists are read as a stream and written in batches of {@code batch-size},
+ * one transaction per batch. Either way addresses are lower-cased, added once
+ * per campaign, and suppressed in SQL when they bounced or unsubscribed from
+ * any campaign or were verified undeliverable.
+ */
+@Slf4j
+@Service
+public class CampaignAudienceService {
+
+    private static final EmailValidator EMAIL_VALIDATOR = EmailValidator.getInstance();
+
+    // Addresses never added again; x.email is the candidate address
+    private static final String NOT_SUPPRESSED = """
+              AND NOT EXISTS (SELECT 1 FROM campaign_recipients s
+                              WHERE s.recipient_email = x.email AND s.status IN (%s))
+              AND NOT EXISTS (SELECT 1 FROM email_verification v
+                              WHERE v.email = x.email AND v.status IN (%s))""".formatted(
+            quoted(Stream.of(RecipientStatus.BOUNCED, RecipientStatus.UNSUBSCRIBED).map(Enum::name)),
+            quoted(Stream.of(VerificationStatus.INVALID, VerificationStatus.NO_MAIL_DOMAIN,
+                    VerificationStatus.BAD_SYNTAX).map(Enum::name)));
+
+    private static final String NOT_ON_CAMPAIGN = """
+            WHERE NOT EXISTS (SELECT 1 FROM campaign_recipients r
+                              WHERE r.campaign_id = ? AND r.recipient_email = x.email AND r.deleted = ?)
+            """;
+
+    private static final String STATUS_SQL = "SELECT status FROM email_campaigns WHERE id = ? AND deleted = ?";
+
+    private static final String RENAME_SQL = """
+            UPDATE campaign_recipients SET recipient_name = ?, updated_at = ?
+            WHERE campaign_id = ? AND recipient_email = ? AND deleted = ?""";
+
+    private static final String TOTAL_SQL = """
+            UPDATE email_campaigns SET updated_at = ?, total_recipients =
+                (SELECT COUNT(*) FROM campaign_recipients WHERE campaign_id = ? AND deleted = ?)
+            WHERE id = ?""";
+
+    private static final String TOTAL_READ_SQL = "SELECT total_recipients FROM email_campaigns WHERE id = ?";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final int batchSize;
+    private volatile String idExpression;
+
+    public CampaignAudienceService(DataSource dataSource, PlatformTransactionManager transactionManager,
+            @Value("${campaign-audience.batch-size:1000}") int batchSize) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // Each batch commits on its own, whatever the caller's transaction
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Add the addresses of every contact matching the query, in one statement
+     */
+    public AudienceImportReport addFromContacts(UUID campaignId, AudienceQuery query) {
+        long start = System.currentTimeMillis();
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("""
+                INSERT INTO campaign_recipients (id, campaign_id, recipient_email, status, created_at, updated_at, deleted)
+                SELECT %s, ?, x.email, ?, ?, ?, ?
+                FROM (SELECT DISTINCT LOWER(TRIM(ce.email)) AS email
+                      FROM contacts c
+                      JOIN contact_emails ce ON ce.contact_id = c.id
+                """.formatted(idExpression()));
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        args.addAll(List.of(campaignId.toString(), RecipientStatus.PENDING.name(), now, now, false));
+
+        if (query.sourceQueryId() != null) {
+            sql.append("""
+                          JOIN scrape_data d ON d.id = c.scrape_data_id
+                          JOIN scrape_job j ON j.id = d.job_id
+                    """);
+        }
+        sql.append("      WHERE c.deleted = ? AND ce.email IS NOT NULL\n");
+        args.add(false);
+        if (query.domain() != null && !query.domain().isBlank()) {
+            sql.append("        AND LOWER(ce.email) LIKE ? ESCAPE '\\'\n");
+            args.add("%@" + escapeLike(query.domain().trim().toLowerCase(Locale.ROOT)));
+        }
+        List<VerificationStatus> statuses = query.verificationStatuses() != null
+                ? query.verificationStatuses() : List.of();
+        if (!statuses.isEmpty() || query.includeUnverified()) {
+            List<String> conditions = new ArrayList<>();
+            if (!statuses.isEmpty()) {
+                conditions.add("c.verification_status IN (" + quoted(statuses.stream().map(Enum::name)) + ")");
+            }
+            if (query.includeUnverified()) {
+                conditions.add("c.verification_status IS NULL");
+            }
+            sql.append("        AND (").append(String.join(" OR ", conditions)).append(")\n");
+        }
+        if (query.sourceQueryId() != null) {
+            sql.append("        AND j.search_query_id = ?\n");
+            args.add(query.sourceQueryId().toString());
+        }
+        if (query.tag() != null && !query.tag().isBlank()) {
+            sql.append("""
+                            AND EXISTS (SELECT 1 FROM email_messages m
+                                        JOIN email_tag_assignments a ON a.email_message_id = m.id
+                                        JOIN email_tags t ON t.id = a.email_tag_id
+                                        WHERE LOWER(m.sender_email) = LOWER(ce.email) AND t.name = ? AND a.deleted = ?)
+                    """);
+            args.add(query.tag().trim());
+            args.add(false);
+        }
+        sql.append(") x\n").append(NOT_ON_CAMPAIGN).append(NOT_SUPPRESSED);
+        args.add(campaignId.toString());
+        args.add(false);
+
+        int added = transaction.execute(status -> {
+            requireDraft(campaignId);
+            int inserted = jdbcTemplate.update(sql.toString(), args.toArray());
+            updateTotal(campaignId);
+            return inserted;
+        });
+
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Added {} contacts to campaign {} in {} ms", added, campaignId, elapsed);
+        return new AudienceImportReport(0, 0, added, 0, totalRecipients(campaignId), elapsed);
+    }
+
+    /**
+     * Add the addresses of a CSV list: a header row naming an {@code email}
+     * and optionally a {@code name} column, or plain rows with the address
+     * first. Names of addresses already on the campaign are updated.
+     */
+    public AudienceImportReport importCsv(UUID campaignId, InputStream csv) throws IOException {
+        transaction.executeWithoutResult(status -> requireDraft(campaignId));
+        long start = System.currentTimeMillis();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+
+        long rows = 0;
+        long invalid = 0;
+        int emailColumn = 0;
+        int nameColumn = -1;
+        Batch batch = new Batch();
+        Counts counts = new Counts();
+
+        String line;
+        boolean first = true;
+        while ((line = reader.readLine()) != null) {
+            if (first) {
+                first = false;
+                line = line.startsWith("\uFEFF") ? line.substring(1) : line;
+                List<String> header = parseCsvLine(line);
+                if (header.stream().noneMatch(field -> field.contains("@"))) {
+                    emailColumn = indexOf(header, "email", "e-mail", "email_address", "recipient_email");
+                    nameColumn = indexOf(header, "name", "full_name", "recipient_name");
+                    if (emailColumn < 0) {
+                        throw new RequestValidationException("CSV header has no email column: " + line);
+                    }
+                    continue;
+                }
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            rows++;
+            List<String> fields = parseCsvLine(line);
+            String email = emailColumn < fields.size() ? normalize(fields.get(emailColumn)) : null;
+            if (email == null) {
+                invalid++;
+                continue;
+            }
+            String name = nameColumn >= 0 && nameColumn < fields.size() ? fields.get(nameColumn).trim() : "";
+            batch.add(email, name);
+            if (batch.size() >= batchSize) {
+                counts.add(write(campaignId, batch));
+                batch = new Batch();
+            }
+        }
+        counts.add(write(campaignId, batch));
+        transaction.executeWithoutResult(status -> updateTotal(campaignId));
+
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Imported {} rows ({} invalid) into campaign {} in {} ms: {} added, {} updated",
+                rows, invalid, campaignId, elapsed, counts.added, counts.updated);
+        return new AudienceImportReport(rows, invalid, counts.added, counts.updated, totalRecipients(campaignId),
+                elapsed);
+    }
+
+    /**
+     * Add a list of addresses, in batches like {@link #importCsv}
+     */
+    public AudienceImportReport addEmails(UUID campaignId, Collection<String> emails) {
+        transaction.executeWithoutResult(status -> requireDraft(campaignId));
+        long start = System.currentTimeMillis();
+        long invalid = 0;
+        Batch batch = new Batch();
+        Counts counts = new Counts();
+        for (String entry : emails) {
+            String email = normalize(entry);
+            if (email == null) {
+                invalid++;
+                continue;
+            }
+            batch.add(email, "");
+            if (batch.size() >= batchSize) {
+                counts.add(write(campaignId, batch));
+                batch = new Batch();
+            }
+        }
+        counts.add(write(campaignId, batch));
+        transaction.executeWithoutResult(status -> updateTotal(campaignId));
+        return new AudienceImportReport(emails.size(), invalid, counts.added, counts.updated,
+                totalRecipients(campaignId), System.currentTimeMillis() - start);
+    }
+
+    private Counts write(UUID campaignId, Batch batch) {
+        Counts counts = new Counts();
+        if (batch.size() == 0) {
+            return counts;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String insert = """
+                INSERT INTO campaign_recipients
+                    (id, campaign_id, recipient_email, recipient_name, status, created_at, updated_at, deleted)
+                SELECT %s, ?, x.email, ?, ?, ?, ?, ?
+                FROM (SELECT CAST(? AS VARCHAR(320)) AS email) x
+                """.formatted(idExpression()) + NOT_ON_CAMPAIGN + NOT_SUPPRESSED;
+        List<Map.Entry<String, String>> named = batch.named();
+        List<Map.Entry<String, String>> all = new ArrayList<>(batch.rows.entrySet());
+
+        transaction.executeWithoutResult(status -> {
+            // Upsert: names of addresses already on the campaign are updated, new ones inserted
+            if (!named.isEmpty()) {
+                counts.updated += sum(jdbcTemplate.batchUpdate(RENAME_SQL, named, named.size(), (ps, row) -> {
+                    ps.setString(1, row.getValue());
+                    ps.setTimestamp(2, now);
+                    ps.setString(3, campaignId.toString());
+                    ps.setString(4, row.getKey());
+                    ps.setBoolean(5, false);
+                }));
+            }
+            counts.added += sum(jdbcTemplate.batchUpdate(insert, all, all.size(), (ps, row) -> {
+                ps.setString(1, campaignId.toString());
+                ps.setString(2, row.getValue().isEmpty() ? null : row.getValue());
+                ps.setString(3, RecipientStatus.PENDING.name());
+                ps.setTimestamp(4, now);
+                ps.setTimestamp(5, now);
+                ps.setBoolean(6, false);
+                ps.setString(7, row.getKey());
+                ps.setString(8, campaignId.toString());
+                ps.setBoolean(9, false);
+            }));
+        });
+        return counts;
+    }
+
+    private void requireDraft(UUID campaignId) {
+        List<String> status = jdbcTemplate.queryForList(STATUS_SQL, String.class, campaignId.toString(), false);
+        if (status.isEmpty()) {
+            throw new ResourceNotFoundException("Campaign not found: " + campaignId);
+        }
+        if (!CampaignStatus.DRAFT.name().equals(status.get(0))) {
+            throw new IllegalStateException("Can only add recipients to draft campaigns");
+        }
+    }
+
+    private void updateTotal(UUID campaignId) {
+        jdbcTemplate.update(TOTAL_SQL, Timestamp.valueOf(LocalDateTime.now()), campaignId.toString(), false,
+                campaignId.toString());
+    }
+
+    private int totalRecipients(UUID campaignId) {
+        Integer total = jdbcTemplate.queryForObject(TOTAL_READ_SQL, Integer.class, campaignId.toString());
+        return total != null ? total : 0;
+    }
+
+    /**
+     * SQL generating a recipient id, as campaign_recipients has no usable
+     * default on every database
+     */
+    private String idExpression() {
+        if (idExpression == null) {
+            try {
+                idExpression = idExpression(
+                        JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName));
+            } catch (MetaDataAccessException e) {
+                throw new IllegalStateException("Cannot tell the database product", e);
+            }
+        }
+        return idExpression;
+    }
+
+    static String idExpression(String product) {
+        String name = product.toLowerCase(Locale.ROOT);
+        if (name.contains("sqlite")) {
+            return "lower(hex(randomblob(4))) || '-' || lower(hex(randomblob(2))) || '-' || "
+                    + "lower(hex(randomblob(2))) || '-' || lower(hex(randomblob(2))) || '-' || lower(hex(randomblob(6)))";
+        }
+        if (name.contains("postgres")) {
+            return "CAST(gen_random_uuid() AS VARCHAR)";
+        }
+        if (name.contains("h2")) {
+            return "CAST(RANDOM_UUID() AS VARCHAR)";
+        }
+        throw new IllegalStateException("Set-based recipient inserts are not supported on " + product);
+    }
+
+    /**
+     * Lower-cased address, null when it isn't one
+     */
+    static String normalize(String entry) {
+        if (entry == null) {
+            return null;
+        }
+        String email = entry.trim().toLowerCase(Locale.ROOT);
+        return EMAIL_VALIDATOR.isValid(email) ? email : null;
+    }
+
+    /**
+     * The value with LIKE wildcards and the escape character matched literally
+     */
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Fields of one CSV line (RFC 4180 quoting, no line breaks inside fields)
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',' || c == ';') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static int indexOf(List<String> header, String... names) {
+        for (int i = 0; i < header.size(); i++) {
+            String column = header.get(i).trim().toLowerCase(Locale.ROOT);
+            for (String name : names) {
+                if (column.equals(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static long sum(int[][] counts) {
+        long total = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                total += Math.max(count, 0);
+            }
+        }
+        return total;
+    }
+
+    private static String quoted(Stream<String> values) {
+        return values.map(value -> "'" + value + "'").collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Addresses of one batch, each once; the last name given wins
+     */
+    private static final class Batch {
+        private final Map<String, String> rows = new LinkedHashMap<>();
+
+        void add(String email, String name) {
+            rows.merge(email, name, (old, latest) -> latest.isEmpty() ? old : latest);
+        }
+
+        int size() {
+            return rows.size();
+        }
+
+        List<Map.Entry<String, String>> named() {
+            return rows.entrySet().stream().filter(row -> !row.getValue().isEmpty()).toList();
+        }
+    }
+
+    private static final class Counts {
+        private long added;
+        private long updated;
+
+        void add(Counts other) {
+            added += other.added;
+            updated += other.updated;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.core.lock.SchedulerLock;
+import ir.netpick.platform.mailmine.model.Campaign.CampaignStatus;
+import ir.netpick.platform.mailmine.model.CampaignRecipient.RecipientStatus;
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueueStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Queues a campaign's pending recipients in chunks. Each chunk is one
+ * transaction: a keyset page of recipients ({@code id > cursor}), a batched
+ * update marking them sent, a batched insert of their queue items and a
+ * checkpoint of the last id on the campaign. A failure loses at most the
+ * chunk in progress, and a fan-out cut short by a crash is picked up after
+ * the last committed chunk by {@link #resumeStalled}.
+ * <p>
+ * Recipients are taken with {@code status = PENDING} guards, so two fan-outs
+ * of the same campaign never queue the same recipient twice. Campaign mail is
+ * queued at low priority, behind transactional mail.
+ */
+@Slf4j
+@Service
+public class CampaignFanoutService {
+
+    private static final String CAMPAIGN_SQL = """
+            SELECT subject_line, body_html, created_by_id, fanout_cursor FROM email_campaigns
+            WHERE id = ? AND status = ? AND deleted = ?""";
+
+    private static final String PAGE_SQL = """
+            SELECT id, recipient_email FROM campaign_recipients
+            WHERE campaign_id = ? AND status = ? AND deleted = ? AND id > ?
+            ORDER BY id LIMIT ?""";
+
+    private static final String TAKE_SQL = """
+            UPDATE campaign_recipients SET status = ?, sent_at = ?, updated_at = ?
+            WHERE id = ? AND status = ?""";
+
+    private static final String ENQUEUE_SQL = """
+            INSERT INTO email_queue_items (id, recipient, subject, body, created_by_user_id, status, retry_count,
+                priority, next_attempt_at, created_at, updated_at, deleted)
+            VALUES (?, ?, ?, ?, ?, ?, 0, ?, ?, ?, ?, ?)""";
+
+    private static final String CHECKPOINT_SQL = """
+            UPDATE email_campaigns SET fanout_cursor = ?, fanout_queued = fanout_queued + ?,
+                fanout_checkpoint_at = ?, updated_at = ?
+            WHERE id = ? AND status = ?""";
+
+    private static final String COMPLETE_SQL = """
+            UPDATE email_campaigns SET status = ?, total_sent = fanout_queued, fanout_checkpoint_at = ?, updated_at = ?
+            WHERE id = ? AND status = ?""";
+
+    private static final String STALLED_SQL = """
+            SELECT id FROM email_campaigns
+            WHERE status = ? AND deleted = ? AND COALESCE(fanout_checkpoint_at, sent_at) < ?""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate chunkTransaction;
+    private final EmailDispatchQueue dispatchQueue;
+    private final int chunkSize;
+    private final long stallSeconds;
+
+    public CampaignFanoutService(DataSource dataSource, PlatformTransactionManager transactionManager,
+            EmailDispatchQueue dispatchQueue,
+            @Value("${campaign-fanout.chunk-size:1000}") int chunkSize,
+            @Value("${campaign-fanout.stall-seconds:300}") long stallSeconds) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // Every chunk commits on its own, whatever the caller's transaction
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.dispatchQueue = dispatchQueue;
+        this.chunkSize = chunkSize;
+        this.stallSeconds = stallSeconds;
+    }
+
+    /**
+     * @param queued   recipients queued by this run
+     * @param complete whether the campaign was fully queued and marked SENT;
+     *                 false when it was paused or cancelled, or a chunk failed
+     */
+    public record FanoutResult(int queued, int chunks, boolean complete, long elapsedMs) {
+    }
+
+    /**
+     * Queue the remaining pending recipients of a SENDING campaign, from its
+     * checkpoint on, and mark it SENT when none are left
+     */
+    public FanoutResult fanOut(UUID campaignId) {
+        long start = System.currentTimeMillis();
+        int queued = 0;
+        int chunks = 0;
+        boolean complete = false;
+
+        try {
+            while (true) {
+                Chunk chunk = chunkTransaction.execute(status -> {
+                    Chunk result = queueChunk(campaignId);
+                    if (result.stopped()) {
+                        status.setRollbackOnly();
+                    }
+                    return result;
+                });
+                if (chunk == null || chunk.stopped()) {
+                    break;
+                }
+                if (!chunk.itemIds().isEmpty()) {
+                    // Only now are the rows visible to the dispatchers
+                    dispatchQueue.offerAll(chunk.itemIds(), QueuePriority.LOW, chunk.dueAt());
+                    queued += chunk.itemIds().size();
+                    chunks++;
+                }
+                if (chunk.read() < chunkSize) {
+                    complete = chunkTransaction.execute(status -> markSent(campaignId)) == Boolean.TRUE;
+                    break;
+                }
+            }
+        } catch (DataAccessException e) {
+            log.error("Fan-out of campaign {} stopped after {} recipients; it resumes from its checkpoint: {}",
+                    campaignId, queued, e.getMessage());
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Campaign {} fan-out queued {} recipients in {} chunks in {} ms{}", campaignId, queued, chunks,
+                elapsed, complete ? "" : " (not complete)");
+        return new FanoutResult(queued, chunks, complete, elapsed);
+    }
+
+    /**
+     * Resume fan-outs whose last checkpoint is older than
+     * {@code stall-seconds}, i.e. whose instance died mid-way
+     */
+    @Scheduled(fixedDelay = 60000)
+    @SchedulerLock(name = "campaign-fanout")
+    public void resumeStalled() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusSeconds(stallSeconds));
+        List<String> stalled = jdbcTemplate.queryForList(STALLED_SQL, String.class,
+                CampaignStatus.SENDING.name(), false, cutoff);
+        for (String campaignId : stalled) {
+            log.info("Resuming stalled fan-out of campaign {}", campaignId);
+            fanOut(UUID.fromString(campaignId));
+        }
+    }
+
+    private Chunk queueChunk(UUID campaignId) {
+        List<CampaignRow> campaigns = jdbcTemplate.query(CAMPAIGN_SQL,
+                (rs, i) -> new CampaignRow(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)),
+                campaignId.toString(), CampaignStatus.SENDING.name(), false);
+        if (campaigns.isEmpty()) {
+            // Paused, cancelled or deleted since the last chunk
+            return Chunk.STOPPED;
+        }
+        CampaignRow campaign = campaigns.get(0);
+
+        List<Recipient> page = jdbcTemplate.query(PAGE_SQL,
+                (rs, i) -> new Recipient(rs.getString(1), rs.getString(2)),
+                campaignId.toString(), RecipientStatus.PENDING.name(), false,
+                campaign.cursor() != null ? campaign.cursor() : "", chunkSize);
+        LocalDateTime now = LocalDateTime.now();
+        if (page.isEmpty()) {
+            return new Chunk(0, List.of(), now, false);
+        }
+
+        Timestamp at = Timestamp.valueOf(now);
+        int[] taken = jdbcTemplate.batchUpdate(TAKE_SQL, page, page.size(), (ps, recipient) -> {
+            ps.setString(1, RecipientStatus.SENT.name());
+            ps.setTimestamp(2, at);
+            ps.setTimestamp(3, at);
+            ps.setString(4, recipient.id());
+            ps.setString(5, RecipientStatus.PENDING.name());
+        })[0];
+
+        // Only recipients this run took; another fan-out got the rest
+        List<QueuedEmail> emails = new ArrayList<>(page.size());
+        for (int i = 0; i < page.size(); i++) {
+            if (taken[i] != 0) {
+                emails.add(new QueuedEmail(UUID.randomUUID(), page.get(i).email()));
+            }
+        }
+        if (!emails.isEmpty()) {
+            jdbcTemplate.batchUpdate(ENQUEUE_SQL, emails, emails.size(), (ps, email) -> {
+                ps.setString(1, email.itemId().toString());
+                ps.setString(2, email.recipient());
+                ps.setString(3, campaign.subject());
+                ps.setString(4, campaign.body());
+                ps.setString(5, campaign.createdBy());
+                ps.setString(6, QueueStatus.PENDING.name());
+                ps.setString(7, QueuePriority.LOW.name());
+                ps.setTimestamp(8, at);
+                ps.setTimestamp(9, at);
+                ps.setTimestamp(10, at);
+                ps.setBoolean(11, false);
+            });
+        }
+        List<UUID> itemIds = emails.stream().map(QueuedEmail::itemId).toList();
+
+        int checkpointed = jdbcTemplate.update(CHECKPOINT_SQL, page.get(page.size() - 1).id(), itemIds.size(), at, at,
+                campaignId.toString(), CampaignStatus.SENDING.name());
+        if (checkpointed == 0) {
+            return Chunk.STOPPED;
+        }
+        return new Chunk(page.size(), itemIds, now, false);
+    }
+
+    private Boolean markSent(UUID campaignId) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.update(COMPLETE_SQL, CampaignStatus.SENT.name(), now, now, campaignId.toString(),
+                CampaignStatus.SENDING.name()) == 1;
+    }
+
+    private record CampaignRow(String subject, String body, String createdBy, String cursor) {
+    }
+
+    private record Recipient(String id, String email) {
+    }
+
+    private record QueuedEmail(UUID itemId, String recipient) {
+    }
+
+    /**
+     * @param read    recipients on the page; fewer than a chunk means the last page
+     * @param itemIds queue items inserted
+     * @param stopped the campaign is no longer SENDING
+     */
+    private record Chunk(int read, List<UUID> itemIds, LocalDateTime dueAt, boolean stopped) {
+        static final Chunk STOPPED = new Chunk(0, List.of(), null, true);
+    }
+}
@@ -1,7 +1,9 @@
 package ir.netpick.platform.mailmine.service;
 
 import ir.netpick.platform.core.exception.ResourceNotFoundException;
-import ir.netpick.platform.mailmine.dto.EmailRequest;
+import ir.netpick.platform.core.lock.SchedulerLock;
+import ir.netpick.platform.mailmine.dto.AudienceImportReport;
+import ir.netpick.platform.mailmine.dto.AudienceQuery;
 import ir.netpick.platform.mailmine.model.Campaign;
 import ir.netpick.platform.mailmine.model.CampaignRecipient;
 import ir.netpick.platform.mailmine.repository.CampaignRecipientRepository;
@@ -14,6 +16,8 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -25,7 +29,8 @@ public class CampaignService {
 
     private final CampaignRepository campaignRepository;
     private final CampaignRecipientRepository campaignRecipientRepository;
-    private final EmailQueueService emailQueueService;
+    private final CampaignFanoutService campaignFanoutService;
+    private final CampaignAudienceService campaignAudienceService;
 
     public Page<Campaign> listAll(Pageable pageable) {
         return campaignRepository.findAll(pageable);
@@ -64,25 +69,21 @@ public class CampaignService {
         campaignRepository.save(campaign);
     }
 
-    @Transactional
+    /**
+     * Add addresses to a draft campaign in batches; addresses already on it
+     * or suppressed are skipped
+     */
     public Campaign addRecipients(UUID campaignId, List<String> emails) {
-        Campaign campaign = getById(campaignId);
-        if (campaign.getStatus() != Campaign.CampaignStatus.DRAFT) {
-            throw new IllegalStateException("Can only add recipients to draft campaigns");
-        }
+        campaignAudienceService.addEmails(campaignId, emails);
+        return getById(campaignId);
+    }
 
-        int added = 0;
-        for (String email : emails) {
-            CampaignRecipient recipient = new CampaignRecipient();
-            recipient.setCampaign(campaign);
-            recipient.setRecipientEmail(email);
-            recipient.setStatus(CampaignRecipient.RecipientStatus.PENDING);
-            campaignRecipientRepository.save(recipient);
-            added++;
-        }
+    public AudienceImportReport addRecipientsFromContacts(UUID campaignId, AudienceQuery query) {
+        return campaignAudienceService.addFromContacts(campaignId, query);
+    }
 
-        campaign.setTotalRecipients(campaign.getTotalRecipients() + added);
-        return campaignRepository.save(campaign);
+    public AudienceImportReport importRecipients(UUID campaignId, InputStream csv) throws IOException {
+        return campaignAudienceService.importCsv(campaignId, csv);
     }
 
     public Campaign schedule(UUID campaignId, LocalDateTime scheduledAt) {
@@ -95,46 +96,40 @@ public class CampaignService {
         return campaignRepository.save(campaign);
     }
 
-    @Transactional
+    /**
+     * Start sending the campaign, or continue a fan-out that was cut short.
+     * Recipients are queued chunk by chunk by the {@link CampaignFanoutService},
+     * each chunk committed on its own, so this must not run in a transaction.
+     */
     public Campaign sendNow(UUID campaignId) {
         Campaign campaign = getById(campaignId);
-        campaign.setStatus(Campaign.CampaignStatus.SENDING);
-        campaign.setSentAt(LocalDateTime.now());
-        campaignRepository.save(campaign);
-
-        List<CampaignRecipient> recipients = campaignRecipientRepository
-                .findByCampaignIdAndStatus(campaignId, CampaignRecipient.RecipientStatus.PENDING);
-
-        int sentCount = 0;
-        for (CampaignRecipient recipient : recipients) {
-            try {
-                EmailRequest request = EmailRequest.builder()
-                        .recipient(recipient.getRecipientEmail())
-                        .subject(campaign.getSubjectLine())
-                        .body(campaign.getBodyHtml())
-                        .build();
-
-                emailQueueService.queueEmail(request, campaign.getCreatedBy().getId());
-                recipient.setStatus(CampaignRecipient.RecipientStatus.SENT);
-                recipient.setSentAt(LocalDateTime.now());
-                campaignRecipientRepository.save(recipient);
-                sentCount++;
-            } catch (Exception e) {
-                log.error("Failed to send campaign email to {}: {}", recipient.getRecipientEmail(), e.getMessage());
-                recipient.setStatus(CampaignRecipient.RecipientStatus.FAILED);
-                campaignRecipientRepository.save(recipient);
-            }
+        if (campaign.getStatus() == Campaign.CampaignStatus.SENT
+                || campaign.getStatus() == Campaign.CampaignStatus.CANCELLED) {
+            throw new IllegalStateException("Campaign has already been " + campaign.getStatus().name().toLowerCase());
+        }
+        if (campaign.getStatus() != Campaign.CampaignStatus.SENDING) {
+            campaign.setStatus(Campaign.CampaignStatus.SENDING);
+            campaign.setSentAt(LocalDateTime.now());
+            campaign.setFanoutCheckpointAt(campaign.getSentAt());
+            campaign = campaignRepository.save(campaign);
         }
 
-        campaign.setTotalSent(sentCount);
-        campaign.setStatus(Campaign.CampaignStatus.SENT);
-        return campaignRepository.save(campaign);
+        CampaignFanoutService.FanoutResult result = campaignFanoutService.fanOut(campaignId);
+
+        // The fan-out wrote the campaign row directly; reflect it in the returned entity
+        campaign.setFanoutQueued(campaign.getFanoutQueued() + result.queued());
+        if (result.complete()) {
+            campaign.setStatus(Campaign.CampaignStatus.SENT);
+            campaign.setTotalSent(campaign.getFanoutQueued());
+        }
+        return campaign;
     }
 
     /**
      * Process scheduled campaigns - runs every minute
      */
     @Scheduled(fixedDelay = 60000)
+    @SchedulerLock(name = "scheduled-campaigns")
     public void processScheduledCampaigns() {
         List<Campaign> scheduled = campaignRepository
                 .findByStatusAndScheduledAtBefore(Campaign.CampaignStatus.SCHEDULED, LocalDateTime.now());
@@ -0,0 +1,63 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueueStatus;
+import ir.netpick.platform.mailmine.repository.EmailQueueItemRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Dispatch queue read from email_queue_items itself: due pending rows by
+ * priority and due time. Items taken are marked SENDING by the claim, so they
+ * drop out of the next poll. For single-instance deployments without Redis;
+ * other instances' offers are only seen on their next due-time poll.
+ * Controlled by property: email-queue.use-redis=false
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "email-queue.use-redis", havingValue = "false", matchIfMissing = true)
+public class DatabaseEmailDispatchQueue implements EmailDispatchQueue {
+
+    private final EmailQueueItemRepository emailQueueItemRepository;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void offer(UUID itemId, QueuePriority priority, LocalDateTime dueAt) {
+        // The row is the queue entry
+        listeners.forEach(Runnable::run);
+    }
+
+    @Override
+    public void offerAll(Collection<UUID> itemIds, QueuePriority priority, LocalDateTime dueAt) {
+        listeners.forEach(Runnable::run);
+    }
+
+    @Override
+    public List<UUID> pollDue(int max) {
+        return emailQueueItemRepository.findDueIds(LocalDateTime.now(), PageRequest.of(0, max));
+    }
+
+    @Override
+    public Optional<LocalDateTime> nextDueAt() {
+        return emailQueueItemRepository.findNextDueAt(QueueStatus.PENDING);
+    }
+
+    @Override
+    public void remove(UUID itemId) {
+        // Nothing besides the row
+    }
+
+    @Override
+    public void onOffer(Runnable listener) {
+        listeners.add(listener);
+    }
+}
@@ -1,36 +1,68 @@
 package ir.netpick.platform.mailmine.service;
 
+import ir.netpick.platform.core.dns.DnsAnswer;
+import ir.netpick.platform.core.dns.DnsRecordType;
+import ir.netpick.platform.core.dns.DnsResolver;
+import ir.netpick.platform.core.exception.RequestValidationException;
+import ir.netpick.platform.mailmine.dto.DomainCheck;
+import ir.netpick.platform.mailmine.dto.DomainCheck.MailStatus;
+import ir.netpick.platform.mailmine.dto.DomainValidationReport;
+import ir.netpick.platform.mailmine.repository.CampaignRecipientRepository;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.validator.routines.DomainValidator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import javax.naming.directory.Attribute;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * SPF/DKIM/DMARC validation for email domains.
  * Checks DNS records to verify email authentication.
+ * Lookups go through the caching {@link DnsResolver}, so validating many
+ * addresses of the same domain costs one set of queries.
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class EmailAuthValidationService {
 
+    private final DnsResolver dnsResolver;
+    private final CampaignRecipientRepository campaignRecipientRepository;
+
+    // Domains checked at the same time in a batch
+    @Value("${email-auth.batch.concurrency:64}")
+    private int batchConcurrency;
+
+    @Value("${email-auth.batch.max-domains:20000}")
+    private int maxBatchDomains;
+
     /**
      * Validate SPF, DKIM (via DMARC), and DMARC records for a domain.
      */
     public Map<String, Object> validateDomain(String domain) {
+        // All three lookups run in parallel
+        CompletableFuture<DnsAnswer> mx = dnsResolver.resolve(domain, DnsRecordType.MX);
+        CompletableFuture<DnsAnswer> spf = dnsResolver.resolve(domain, DnsRecordType.TXT);
+        CompletableFuture<DnsAnswer> dmarc = dnsResolver.resolve("_dmarc." + domain, DnsRecordType.TXT);
+
         Map<String, Object> result = new LinkedHashMap<>();
         result.put("domain", domain);
         result.put("checkedAt", new Date().toString());
 
+        // MX
+        result.put("mx", checkMx(mx.join()));
+
         // SPF
-        result.put("spf", checkSpf(domain));
+        result.put("spf", checkSpf(spf.join()));
 
         // DMARC
-        result.put("dmarc", checkDmarc(domain));
+        result.put("dmarc", checkDmarc(dmarc.join()));
 
         return result;
     }
@@ -43,9 +75,145 @@ public class EmailAuthValidationService {
         return validateDomain(domain);
     }
 
-    private Map<String, Object> checkSpf(String domain) {
+    /**
+     * Check which of the given domains (or email addresses) can receive mail:
+     * MX, or address records as implicit MX, plus SPF and DMARC. Each distinct
+     * domain is looked up once, {@code batchConcurrency} domains at a time.
+     */
+    public DomainValidationReport validateDomains(Collection<String> entries) {
+        return validate(entries, maxBatchDomains);
+    }
+
+    /**
+     * {@link #validateDomains} over the recipient addresses of a campaign
+     */
+    public DomainValidationReport validateCampaignRecipients(UUID campaignId) {
+        return validate(campaignRecipientRepository.findRecipientEmailsByCampaignId(campaignId), Integer.MAX_VALUE);
+    }
+
+    private DomainValidationReport validate(Collection<String> entries, int maxDomains) {
+        long start = System.currentTimeMillis();
+
+        Map<String, Integer> addresses = new LinkedHashMap<>();
+        int invalid = 0;
+        for (String entry : entries) {
+            String domain = domainOf(entry);
+            if (domain == null) {
+                invalid++;
+            } else {
+                addresses.merge(domain, 1, Integer::sum);
+            }
+        }
+        if (addresses.size() > maxDomains) {
+            throw new RequestValidationException(
+                    "At most %d distinct domains can be validated at once, got %d".formatted(maxDomains,
+                            addresses.size()));
+        }
+
+        List<DomainCheck> results = Flux.fromIterable(addresses.entrySet())
+                .flatMapSequential(entry -> Mono.fromFuture(() -> checkDomain(entry.getKey(), entry.getValue())),
+                        batchConcurrency)
+                .collectList()
+                .block();
+        if (results == null) {
+            results = List.of();
+        }
+
+        int deliverable = 0;
+        int undeliverable = 0;
+        int unknown = 0;
+        int undeliverableAddresses = 0;
+        for (DomainCheck check : results) {
+            if (check.status().deliverable()) {
+                deliverable++;
+            } else if (check.status().undeliverable()) {
+                undeliverable++;
+                undeliverableAddresses += check.addresses();
+            } else {
+                unknown++;
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Validated {} domains ({} entries) in {} ms: {} deliverable, {} undeliverable, {} unknown",
+                results.size(), entries.size(), elapsed, deliverable, undeliverable, unknown);
+        return new DomainValidationReport(entries.size(), invalid, results.size(), deliverable, undeliverable,
+                unknown, undeliverableAddresses, elapsed, results);
+    }
+
+    private CompletableFuture<DomainCheck> checkDomain(String domain, int addresses) {
+        CompletableFuture<DnsAnswer> mx = dnsResolver.resolve(domain, DnsRecordType.MX);
+        CompletableFuture<DnsAnswer> spf = dnsResolver.resolve(domain, DnsRecordType.TXT);
+        CompletableFuture<DnsAnswer> dmarc = dnsResolver.resolve("_dmarc." + domain, DnsRecordType.TXT);
+
+        // Only a domain without MX records needs its address records
+        CompletableFuture<DnsAnswer> a = mx.thenCompose(answer -> answer.status() == DnsAnswer.Status.NO_DATA
+                ? dnsResolver.resolve(domain, DnsRecordType.A)
+                : CompletableFuture.completedFuture(null));
+
+        return CompletableFuture.allOf(a, spf, dmarc).thenApply(done -> {
+            DnsAnswer mxAnswer = mx.join();
+            DnsAnswer aAnswer = a.join();
+            MailStatus status;
+            String error = null;
+            if (mxAnswer.isFound()) {
+                status = mxAnswer.values().equals(List.of(".")) ? MailStatus.NULL_MX : MailStatus.DELIVERABLE;
+            } else if (mxAnswer.status() == DnsAnswer.Status.NX_DOMAIN) {
+                status = MailStatus.NOT_FOUND;
+            } else if (aAnswer != null && aAnswer.isFound()) {
+                status = MailStatus.IMPLICIT_MX;
+            } else if (aAnswer != null && aAnswer.isNegative()) {
+                status = MailStatus.NO_MAIL_HOST;
+            } else {
+                status = MailStatus.UNKNOWN;
+                error = aAnswer != null ? aAnswer.error() : mxAnswer.error();
+            }
+
+            List<String> mxHosts = status == MailStatus.DELIVERABLE ? mxAnswer.values() : List.of();
+            String spfRecord = findRecord(spf.join(), "v=spf1");
+            String dmarcRecord = findRecord(dmarc.join(), "v=DMARC1");
+            return new DomainCheck(domain, status, addresses, mxHosts, spfRecord != null,
+                    dmarcRecord != null ? extractDmarcPolicy(dmarcRecord) : null, error);
+        });
+    }
+
+    /**
+     * Lower-case domain of an address or domain entry, null when it isn't a valid domain
+     */
+    static String domainOf(String entry) {
+        if (entry == null) {
+            return null;
+        }
+        String domain = entry.trim();
+        int at = domain.lastIndexOf('@');
+        if (at >= 0) {
+            domain = domain.substring(at + 1);
+        }
+        if (domain.endsWith(".")) {
+            domain = domain.substring(0, domain.length() - 1);
+        }
+        domain = domain.toLowerCase(Locale.ROOT);
+        return DomainValidator.getInstance().isValid(domain) ? domain : null;
+    }
+
+    private Map<String, Object> checkMx(DnsAnswer answer) {
+        Map<String, Object> mx = new LinkedHashMap<>();
+        boolean nullMx = answer.isFound() && answer.values().equals(List.of("."));
+        mx.put("valid", answer.isFound() && !nullMx);
+        mx.put("hosts", nullMx ? List.of() : answer.values());
+        if (nullMx) {
+            mx.put("note", "Domain publishes a null MX and accepts no mail");
+        } else if (answer.status() == DnsAnswer.Status.ERROR) {
+            mx.put("note", "MX lookup failed: " + answer.error());
+        } else if (!answer.isFound()) {
+            mx.put("note", "No MX record found");
+        }
+        return mx;
+    }
+
+    private Map<String, Object> checkSpf(DnsAnswer answer) {
         Map<String, Object> spf = new LinkedHashMap<>();
-        String record = lookupDnsRecord(domain, "TXT", "v=spf1");
+        String record = findRecord(answer, "v=spf1");
         if (record != null) {
             spf.put("valid", true);
             spf.put("record", record);
@@ -60,9 +228,9 @@ public class EmailAuthValidationService {
         return spf;
     }
 
-    private Map<String, Object> checkDmarc(String domain) {
+    private Map<String, Object> checkDmarc(DnsAnswer answer) {
         Map<String, Object> dmarc = new LinkedHashMap<>();
-        String record = lookupDnsRecord("_dmarc." + domain, "TXT", "v=DMARC1");
+        String record = findRecord(answer, "v=DMARC1");
         if (record != null) {
             dmarc.put("valid", true);
             dmarc.put("record", record);
@@ -78,24 +246,11 @@ public class EmailAuthValidationService {
         return dmarc;
     }
 
-    private String lookupDnsRecord(String host, String type, String expectedPrefix) {
-        try {
-            Hashtable<String, String> env = new Hashtable<>();
-            env.put("java.naming.factory.initial", "com.sun.jndi.dns.DnsContextFactory");
-            DirContext ctx = new InitialDirContext(env);
-            Attribute attrs = ctx.getAttributes(host, new String[]{type}).get(type);
-            if (attrs != null) {
-                for (int i = 0; i < attrs.size(); i++) {
-                    String val = (String) attrs.get(i);
-                    if (val.startsWith(expectedPrefix)) {
-                        ctx.close();
-                        return val;
-                    }
-                }
+    private String findRecord(DnsAnswer answer, String expectedPrefix) {
+        for (String value : answer.values()) {
+            if (value.startsWith(expectedPrefix)) {
+                return value;
             }
-            ctx.close();
-        } catch (Exception e) {
-            log.debug("DNS lookup failed for {} {}: {}", host, type, e.getMessage());
         }
         return null;
     }
@@ -120,12 +275,3 @@ public class EmailAuthValidationService {
         return m.find() ? m.group(1) : "100";
     }
 }
-
-
-
-
-
-
-
-
-
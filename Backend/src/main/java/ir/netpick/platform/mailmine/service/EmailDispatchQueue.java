@@ -0,0 +1,52 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Due-time ordered queue of email queue item ids feeding the
+ * {@link EmailQueueDispatcher}. {@link RedisEmailDispatchQueue} keeps it in
+ * one {@code email_queue:pending:<rank>} sorted set per priority, shared by
+ * all instances;
+ * {@link DatabaseEmailDispatchQueue} reads due items straight from the table.
+ * Either way an item is only sent after {@code EmailQueueService.claim}
+ * succeeds, so an id handed out twice is sent once.
+ */
+public interface EmailDispatchQueue {
+
+    /**
+     * Make the item due at the given time (or move it there)
+     */
+    void offer(UUID itemId, QueuePriority priority, LocalDateTime dueAt);
+
+    /**
+     * {@link #offer} for many items at once, e.g. a chunk of a campaign
+     */
+    default void offerAll(Collection<UUID> itemIds, QueuePriority priority, LocalDateTime dueAt) {
+        itemIds.forEach(itemId -> offer(itemId, priority, dueAt));
+    }
+
+    /**
+     * Take up to {@code max} due items, higher priority first, then the
+     * longest waiting
+     */
+    List<UUID> pollDue(int max);
+
+    /**
+     * When the next item becomes due, if any is queued
+     */
+    Optional<LocalDateTime> nextDueAt();
+
+    void remove(UUID itemId);
+
+    /**
+     * Called whenever an item is offered, on this instance or (where the
+     * queue is shared) another one
+     */
+    void onOffer(Runnable listener);
+}
@@ -0,0 +1,142 @@
+package ir.netpick.platform.mailmine.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends queued emails as soon as they are due. A loop thread takes due items
+ * off the {@link EmailDispatchQueue} whenever a worker is free, claims them
+ * and hands them to up to {@code workers} senders. It sleeps until the next
+ * item is due, at most {@code idle-poll-ms}, and wakes early when an item is
+ * offered or a worker finishes.
+ */
+@Slf4j
+@Service
+public class EmailQueueDispatcher {
+
+    private final EmailDispatchQueue dispatchQueue;
+    private final EmailQueueService emailQueueService;
+    private final Object signal = new Object();
+    private boolean signalled;
+    private volatile boolean running;
+    private Thread loop;
+    private ExecutorService senders;
+    private Semaphore freeWorkers;
+
+    @Value("${email-queue.dispatcher.enabled:true}")
+    private boolean enabled;
+
+    // Messages sent at the same time; the SMTP pool bounds the connections
+    @Value("${email-queue.dispatcher.workers:16}")
+    private int workers;
+
+    @Value("${email-queue.dispatcher.idle-poll-ms:1000}")
+    private long idlePollMs;
+
+    public EmailQueueDispatcher(EmailDispatchQueue dispatchQueue, EmailQueueService emailQueueService) {
+        this.dispatchQueue = dispatchQueue;
+        this.emailQueueService = emailQueueService;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Email queue dispatcher disabled; queued emails are sent by the reconciliation sweep only");
+            return;
+        }
+        freeWorkers = new Semaphore(workers);
+        senders = Executors.newVirtualThreadPerTaskExecutor();
+        running = true;
+        dispatchQueue.onOffer(this::wakeUp);
+        loop = Thread.ofPlatform().daemon().name("email-queue-dispatcher").start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        wakeUp();
+        loop.join(TimeUnit.SECONDS.toMillis(5));
+        senders.shutdown();
+        if (!senders.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Email queue dispatcher stopped with sends in flight; their leases will expire");
+        }
+    }
+
+    public void wakeUp() {
+        synchronized (signal) {
+            signalled = true;
+            signal.notifyAll();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                int free = freeWorkers.availablePermits();
+                List<UUID> due = free > 0 ? dispatchQueue.pollDue(free) : List.of();
+                for (UUID itemId : due) {
+                    if (emailQueueService.claim(itemId)) {
+                        freeWorkers.acquire();
+                        senders.execute(() -> send(itemId));
+                    }
+                }
+                if (due.isEmpty() || free == 0) {
+                    await(free == 0 ? idlePollMs : untilNextDue());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Email queue dispatch failed: {}", e.getMessage());
+                await(idlePollMs);
+            }
+        }
+    }
+
+    private void send(UUID itemId) {
+        try {
+            emailQueueService.deliver(itemId);
+        } catch (RuntimeException e) {
+            log.error("Delivering email queue item {} failed: {}", itemId, e.getMessage());
+        } finally {
+            freeWorkers.release();
+            wakeUp();
+        }
+    }
+
+    private long untilNextDue() {
+        return dispatchQueue.nextDueAt()
+                .map(dueAt -> Duration.between(LocalDateTime.now(), dueAt).toMillis())
+                .map(wait -> Math.max(1, Math.min(wait, idlePollMs)))
+                .orElse(idlePollMs);
+    }
+
+    private void await(long millis) {
+        synchronized (signal) {
+            try {
+                if (!signalled && running) {
+                    signal.wait(millis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            signalled = false;
+        }
+    }
+}
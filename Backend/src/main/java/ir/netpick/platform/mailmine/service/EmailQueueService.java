@@ -1,20 +1,32 @@
 package ir.netpick.platform.mailmine.service;
 
+import ir.netpick.platform.core.lock.SchedulerLock;
+import ir.netpick.platform.core.mail.MailTrafficShaper;
 import ir.netpick.platform.mailmine.dto.EmailRequest;
 import ir.netpick.platform.mailmine.model.EmailQueueItem;
 import ir.netpick.platform.mailmine.repository.EmailQueueItemRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * Queued emails. Items are offered to the {@link EmailDispatchQueue} as soon
+ * as they are stored and sent by the {@link EmailQueueDispatcher} when due;
+ * the scheduled {@link #processQueue} only reconciles what the queue missed.
+ * The {@link MailTrafficShaper} paces sends per recipient provider; an item
+ * over its provider's limits goes back to the queue for the slot it was given.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -22,16 +34,26 @@ public class EmailQueueService {
 
     private final EmailQueueItemRepository emailQueueItemRepository;
     private final EmailService emailService;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final EmailDispatchQueue dispatchQueue;
+    private final MailTrafficShaper trafficShaper;
 
-    private static final String QUEUE_KEY = "email_queue:pending";
-    private static final int BATCH_SIZE = 50;
     private static final int MAX_RETRIES = 3;
+    private static final long RETRY_BASE_SECONDS = 300;
+    private static final int RECONCILE_BATCH = 1000;
+
+    // How long a dispatcher may hold an item before it is sent again
+    @Value("${email-queue.lease-seconds:300}")
+    private long leaseSeconds;
+
+    // Pending items due this long ago without being sent are offered again
+    @Value("${email-queue.reconcile-grace-seconds:60}")
+    private long reconcileGraceSeconds;
 
     /**
      * Queue an email for sending
      */
     public UUID queueEmail(EmailRequest request, UUID userId) {
+        LocalDateTime now = LocalDateTime.now();
         EmailQueueItem item = new EmailQueueItem();
         item.setRecipient(request.getRecipient());
         item.setSubject(request.getSubject());
@@ -40,34 +62,98 @@ public class EmailQueueService {
         item.setCreatedByUserId(userId);
         item.setStatus(EmailQueueItem.QueueStatus.PENDING);
         item.setRetryCount(0);
-        
+        if (request.getPriority() != null) {
+            item.setPriority(request.getPriority());
+        }
+        item.setScheduledAt(request.getScheduledAt());
+        item.setNextAttemptAt(request.getScheduledAt() != null && request.getScheduledAt().isAfter(now)
+                ? request.getScheduledAt() : now);
+
         EmailQueueItem saved = emailQueueItemRepository.save(item);
-        redisTemplate.opsForZSet().add(QUEUE_KEY, saved.getId().toString(), 
-                System.currentTimeMillis() + saved.getPriority().getDelayMillis());
-        
+        offerAfterCommit(saved);
         return saved.getId();
     }
 
     /**
-     * Process pending emails - runs every minute
+     * Take the item for sending. False when it is gone, sent, or already
+     * taken by another dispatcher.
+     */
+    public boolean claim(UUID itemId) {
+        return emailQueueItemRepository.claim(itemId, LocalDateTime.now().plusSeconds(leaseSeconds)) == 1;
+    }
+
+    /**
+     * Send a claimed item, scheduling a retry with backoff when sending fails
+     */
+    public void deliver(UUID itemId) {
+        Optional<EmailQueueItem> found = emailQueueItemRepository.findById(itemId);
+        if (found.isEmpty() || found.get().getStatus() != EmailQueueItem.QueueStatus.SENDING) {
+            return;
+        }
+        EmailQueueItem item = found.get();
+        MailTrafficShaper.Admission admission = trafficShaper.tryAcquire(item.getId(), item.getRecipient());
+        if (!admission.admitted()) {
+            defer(item, admission.retryAfter());
+            return;
+        }
+        try {
+            processItem(item);
+            trafficShaper.release(admission, null);
+            item.setLeaseUntil(null);
+            emailQueueItemRepository.save(item);
+        } catch (Exception e) {
+            trafficShaper.release(admission, e);
+            handleFailure(item, e);
+        }
+    }
+
+    /**
+     * Reconciliation sweep - runs every minute. Returns items whose
+     * dispatcher died to the queue and re-offers pending items that are
+     * overdue, e.g. because the queue lost them.
      */
     @Scheduled(fixedDelay = 60000)
+    @SchedulerLock(name = "email-queue")
     public void processQueue() {
-        List<EmailQueueItem> pending = emailQueueItemRepository
-                .findTopNByStatusOrderByCreatedAtAsc(EmailQueueItem.QueueStatus.PENDING, 
-                        PageRequest.of(0, BATCH_SIZE));
-
-        for (EmailQueueItem item : pending) {
-            try {
-                processItem(item);
-                emailQueueItemRepository.save(item);
-                redisTemplate.opsForZSet().remove(QUEUE_KEY, item.getId().toString());
-            } catch (Exception e) {
-                handleFailure(item, e);
-            }
+        LocalDateTime now = LocalDateTime.now();
+        int released = emailQueueItemRepository.releaseExpiredLeases(now);
+        List<EmailQueueItem> overdue = emailQueueItemRepository.findDueBefore(EmailQueueItem.QueueStatus.PENDING,
+                now.minusSeconds(reconcileGraceSeconds), PageRequest.of(0, RECONCILE_BATCH));
+
+        for (EmailQueueItem item : overdue) {
+            dispatchQueue.offer(item.getId(), item.getPriority(), item.getNextAttemptAt());
+        }
+        if (released > 0 || !overdue.isEmpty()) {
+            log.info("Email queue reconciliation: {} expired leases released, {} overdue items re-offered",
+                    released, overdue.size());
+        }
+    }
+
+    private void offerAfterCommit(EmailQueueItem item) {
+        Runnable offer = () -> dispatchQueue.offer(item.getId(), item.getPriority(), item.getNextAttemptAt());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Not before the row is visible to the dispatcher
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    offer.run();
+                }
+            });
+        } else {
+            offer.run();
         }
     }
 
+    // Not a failed attempt: the item just waits for its provider's next slot
+    private void defer(EmailQueueItem item, Duration wait) {
+        item.setStatus(EmailQueueItem.QueueStatus.PENDING);
+        item.setLeaseUntil(null);
+        item.setNextAttemptAt(LocalDateTime.now().plus(wait));
+        emailQueueItemRepository.save(item);
+        dispatchQueue.offer(item.getId(), item.getPriority(), item.getNextAttemptAt());
+        log.debug("Email queue item {} deferred {} ms by the traffic shaper", item.getId(), wait.toMillis());
+    }
+
     private void processItem(EmailQueueItem item) {
         EmailRequest request = new EmailRequest();
         request.setRecipient(item.getRecipient());
@@ -88,28 +174,23 @@ public class EmailQueueService {
 
     private void handleFailure(EmailQueueItem item, Exception e) {
         item.setRetryCount(item.getRetryCount() + 1);
-        
+        item.setLeaseUntil(null);
+        item.setLastError(e.getMessage());
+
         if (item.getRetryCount() >= MAX_RETRIES) {
             item.setStatus(EmailQueueItem.QueueStatus.FAILED);
-            item.setLastError(e.getMessage());
         } else {
             item.setStatus(EmailQueueItem.QueueStatus.PENDING);
             // Exponential backoff: retry in 5min, 10min, 20min
-            long delay = (long) Math.pow(2, item.getRetryCount()) * 300;
-            redisTemplate.opsForZSet().add(QUEUE_KEY, item.getId().toString(), 
-                    System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(delay));
+            item.setNextAttemptAt(LocalDateTime.now()
+                    .plusSeconds(RETRY_BASE_SECONDS << (item.getRetryCount() - 1)));
         }
-        
+
         emailQueueItemRepository.save(item);
-        log.error("Email queue item {} failed (attempt {}): {}", 
+        if (item.getStatus() == EmailQueueItem.QueueStatus.PENDING) {
+            dispatchQueue.offer(item.getId(), item.getPriority(), item.getNextAttemptAt());
+        }
+        log.error("Email queue item {} failed (attempt {}): {}",
                 item.getId(), item.getRetryCount(), e.getMessage());
     }
 }
-
-
-
-
-
-
-
-
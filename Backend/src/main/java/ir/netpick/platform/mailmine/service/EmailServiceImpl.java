@@ -1,5 +1,6 @@
 package ir.netpick.platform.mailmine.service;
 
+import ir.netpick.platform.core.mail.SmtpTransportPool;
 import ir.netpick.platform.mailmine.dto.EmailRequest;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
@@ -7,7 +8,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.scheduling.annotation.Async;
@@ -17,8 +17,16 @@ import org.thymeleaf.context.Context;
 
 import java.io.File;
 import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Messages are built with the {@link JavaMailSender} and sent through the
+ * {@link SmtpTransportPool}, which keeps authenticated connections open
+ * between messages.
+ */
 @RequiredArgsConstructor
 @Service
 @Slf4j
@@ -26,6 +34,7 @@ public class EmailServiceImpl implements EmailService {
 
     private final JavaMailSender javaMailSender;
     private final TemplateEngine templateEngine;
+    private final SmtpTransportPool transportPool;
 
     @Value("${spring.mail.username}")
     private String sender;
@@ -35,13 +44,7 @@ public class EmailServiceImpl implements EmailService {
         try {
             log.info("Sending simple mail to: {}", request.getRecipient());
 
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(sender);
-            message.setTo(request.getRecipient());
-            message.setSubject(request.getSubject());
-            message.setText(request.getBody());
-
-            javaMailSender.send(message);
+            transportPool.send(simpleMessage(request.getRecipient(), request.getSubject(), request.getBody()));
             log.info("Simple mail sent successfully to: {}", request.getRecipient());
         } catch (Exception e) {
             log.error("Error while sending simple mail to: {}", request.getRecipient(), e);
@@ -72,7 +75,7 @@ public class EmailServiceImpl implements EmailService {
                 helper.addAttachment(fileResource.getFilename(), fileResource);
             }
 
-            javaMailSender.send(mimeMessage);
+            transportPool.send(mimeMessage);
             log.info("Email with attachment sent successfully to: {}", request.getRecipient());
         } catch (MessagingException e) {
             log.error("Error while sending email with attachment to: {}", request.getRecipient(), e);
@@ -122,7 +125,7 @@ public class EmailServiceImpl implements EmailService {
             String htmlContent = templateEngine.process(templateName, context);
             helper.setText(htmlContent, true);
 
-            javaMailSender.send(mimeMessage);
+            transportPool.send(mimeMessage);
             log.info("Templated email sent successfully to: {}", recipient);
         } catch (MessagingException e) {
             log.error("Error while sending templated email to: {}", recipient, e);
@@ -164,30 +167,42 @@ public class EmailServiceImpl implements EmailService {
 
         log.info("Sending mass email to {} recipients", request.getRecipients().size());
 
-        int successCount = 0;
+        List<MimeMessage> messages = new ArrayList<>(request.getRecipients().size());
         int failCount = 0;
-
         for (String recipient : request.getRecipients()) {
             try {
-                EmailRequest singleRequest = EmailRequest.builder()
-                        .recipient(recipient)
-                        .subject(request.getSubject())
-                        .body(request.getBody())
-                        .build();
-
-                sendSimpleMail(singleRequest);
-                successCount++;
-
-                // Small delay to avoid rate limiting
-                Thread.sleep(100);
-            } catch (Exception e) {
-                log.error("Failed to send email to: {}", recipient, e);
+                messages.add(simpleMessage(recipient, request.getSubject(), request.getBody()));
+            } catch (MessagingException | IllegalArgumentException e) {
+                log.error("Failed to build email to: {}", recipient, e);
                 failCount++;
             }
         }
 
+        // Many messages per pooled connection, several connections in parallel
+        int successCount = transportPool.sendAll(messages,
+                (message, e) -> log.error("Failed to send email to: {}", recipientOf(message), e));
+        failCount += messages.size() - successCount;
+
         log.info("Mass email completed. Success: {}, Failed: {}", successCount, failCount);
     }
+
+    private MimeMessage simpleMessage(String recipient, String subject, String body) throws MessagingException {
+        MimeMessage message = javaMailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, false);
+        helper.setFrom(sender);
+        helper.setTo(recipient);
+        helper.setSubject(subject);
+        helper.setText(body);
+        return message;
+    }
+
+    private static String recipientOf(MimeMessage message) {
+        try {
+            return Arrays.toString(message.getAllRecipients());
+        } catch (MessagingException e) {
+            return "?";
+        }
+    }
 }
 
 
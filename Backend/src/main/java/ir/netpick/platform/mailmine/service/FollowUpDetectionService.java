@@ -1,5 +1,6 @@
 package ir.netpick.platform.mailmine.service;
 
+import ir.netpick.platform.core.lock.SchedulerLock;
 import ir.netpick.platform.mailmine.model.EmailMessage;
 import ir.netpick.platform.mailmine.repository.EmailMessageRepository;
 import lombok.RequiredArgsConstructor;
@@ -30,6 +31,7 @@ public class FollowUpDetectionService {
      * Detect unanswered emails - runs every hour
      */
     @Scheduled(fixedDelay = 3600000)
+    @SchedulerLock(name = "follow-up-detection", leaseSeconds = 600)
     public void detectUnansweredEmails() {
         LocalDateTime threshold = LocalDateTime.now().minusHours(FOLLOW_UP_THRESHOLD_HOURS);
         List<EmailMessage> unanswered = emailMessageRepository.findUnrepliedEmailsOlderThan(threshold);
@@ -1,5 +1,6 @@
 package ir.netpick.platform.mailmine.service;
 
+import ir.netpick.platform.core.lock.SchedulerLock;
 import ir.netpick.platform.mailmine.model.EmailMessage;
 import ir.netpick.platform.mailmine.repository.EmailMessageRepository;
 import lombok.RequiredArgsConstructor;
@@ -42,6 +43,7 @@ public class ImapSyncService {
      * Sync emails from IMAP server - runs every 5 minutes
      */
     @Scheduled(fixedDelay = 300000)
+    @SchedulerLock(name = "imap-sync", leaseSeconds = 600)
     public void syncEmails() {
         if (!imapEnabled) {
             log.debug("IMAP sync disabled");
@@ -0,0 +1,216 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Dispatch queue in one sorted set per priority,
+ * {@code email_queue:pending:<rank>}, scored by due time in epoch millis.
+ * Polls take due items from the best priority first and only move on to the
+ * next one when it has none due, so a large low priority backlog can't hold
+ * back a high priority item however long it has waited. A Lua script pops
+ * due members of one set atomically, so every instance can consume the same
+ * sets. Offers are announced on {@code email_queue:offered} to wake the
+ * dispatchers of all instances.
+ * Controlled by property: email-queue.use-redis=true
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "email-queue.use-redis", havingValue = "true")
+public class RedisEmailDispatchQueue implements EmailDispatchQueue {
+
+    // Single set of earlier versions, members "<rank>:<id>"; drained after all priorities
+    static final String LEGACY_KEY = "email_queue:pending";
+    private static final String OFFERED_CHANNEL = "email_queue:offered";
+
+    private static final RedisScript<List> POP_DUE = new DefaultRedisScript<>("""
+            local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+            if #due > 0 then
+                redis.call('ZREM', KEYS[1], unpack(due))
+            end
+            return due
+            """, List.class);
+
+    private final StringRedisTemplate redis;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public RedisEmailDispatchQueue(RedisConnectionFactory connectionFactory) {
+        this(new StringRedisTemplate(connectionFactory), new RedisMessageListenerContainer());
+        listenerContainer.setConnectionFactory(connectionFactory);
+    }
+
+    RedisEmailDispatchQueue(StringRedisTemplate redis, RedisMessageListenerContainer listenerContainer) {
+        this.redis = redis;
+        this.listenerContainer = listenerContainer;
+        listenerContainer.addMessageListener((message, pattern) -> listeners.forEach(Runnable::run),
+                new ChannelTopic(OFFERED_CHANNEL));
+    }
+
+    @PostConstruct
+    public void start() {
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        listenerContainer.stop();
+        listenerContainer.destroy();
+    }
+
+    @Override
+    public void offer(UUID itemId, QueuePriority priority, LocalDateTime dueAt) {
+        boolean offered = call("offer", () -> {
+            redis.opsForZSet().add(key(priority), itemId.toString(), toMillis(dueAt));
+            redis.convertAndSend(OFFERED_CHANNEL, itemId.toString());
+            return true;
+        }, false);
+        if (!offered) {
+            // Still wake this instance; the reconciliation sweep re-offers the item
+            listeners.forEach(Runnable::run);
+        }
+    }
+
+    @Override
+    public void offerAll(Collection<UUID> itemIds, QueuePriority priority, LocalDateTime dueAt) {
+        if (itemIds.isEmpty()) {
+            return;
+        }
+        double score = toMillis(dueAt);
+        Set<TypedTuple<String>> members = new HashSet<>(itemIds.size() * 2);
+        for (UUID itemId : itemIds) {
+            members.add(TypedTuple.of(itemId.toString(), score));
+        }
+        // One ZADD and one wake-up for the lot
+        boolean offered = call("offer", () -> {
+            redis.opsForZSet().add(key(priority), members);
+            redis.convertAndSend(OFFERED_CHANNEL, String.valueOf(itemIds.size()));
+            return true;
+        }, false);
+        if (!offered) {
+            listeners.forEach(Runnable::run);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<UUID> pollDue(int max) {
+        String now = String.valueOf(System.currentTimeMillis());
+        List<UUID> ids = new ArrayList<>(max);
+        for (String key : keys()) {
+            if (ids.size() >= max) {
+                break;
+            }
+            String limit = String.valueOf(max - ids.size());
+            List<String> members = call("poll", () -> (List<String>) redis.execute(POP_DUE, List.of(key), now, limit),
+                    null);
+            if (members == null) {
+                break;
+            }
+            for (String member : members) {
+                parseId(member).ifPresent(ids::add);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public Optional<LocalDateTime> nextDueAt() {
+        OptionalDouble earliest = OptionalDouble.empty();
+        for (String key : keys()) {
+            Set<TypedTuple<String>> first = call("peek", () -> redis.opsForZSet().rangeWithScores(key, 0, 0),
+                    Set.of());
+            if (first == null) {
+                continue;
+            }
+            for (TypedTuple<String> tuple : first) {
+                if (tuple.getScore() != null
+                        && (earliest.isEmpty() || tuple.getScore() < earliest.getAsDouble())) {
+                    earliest = OptionalDouble.of(tuple.getScore());
+                }
+            }
+        }
+        return earliest.isEmpty() ? Optional.empty()
+                : Optional.of(LocalDateTime.ofInstant(Instant.ofEpochMilli((long) earliest.getAsDouble()),
+                        ZoneId.systemDefault()));
+    }
+
+    @Override
+    public void remove(UUID itemId) {
+        call("remove", () -> {
+            for (QueuePriority priority : QueuePriority.values()) {
+                redis.opsForZSet().remove(key(priority), itemId.toString());
+            }
+            Object[] legacy = Arrays.stream(QueuePriority.values()).map(p -> p.ordinal() + ":" + itemId).toArray();
+            return redis.opsForZSet().remove(LEGACY_KEY, legacy);
+        }, null);
+    }
+
+    @Override
+    public void onOffer(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    static String key(QueuePriority priority) {
+        return LEGACY_KEY + ":" + priority.ordinal();
+    }
+
+    /**
+     * Sets in the order they are drained: best priority first
+     */
+    private static List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        for (QueuePriority priority : QueuePriority.values()) {
+            keys.add(key(priority));
+        }
+        keys.add(LEGACY_KEY);
+        return keys;
+    }
+
+    /**
+     * Id of a member: the bare (possibly JSON quoted) id, or
+     * {@code <rank>:<id>} in the legacy set
+     */
+    static Optional<UUID> parseId(String member) {
+        String id = member.replace("\"", "");
+        int colon = id.indexOf(':');
+        try {
+            return Optional.of(UUID.fromString(colon >= 0 ? id.substring(colon + 1) : id));
+        } catch (IllegalArgumentException e) {
+            log.warn("Dropping malformed email queue member '{}'", member);
+            return Optional.empty();
+        }
+    }
+
+    private static double toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private <T> T call(String action, Supplier<T> supplier, T fallback) {
+        try {
+            return supplier.get();
+        } catch (RuntimeException e) {
+            log.warn("Email dispatch queue failed to {}: {}", action, e.getMessage());
+            return fallback;
+        }
+    }
+}
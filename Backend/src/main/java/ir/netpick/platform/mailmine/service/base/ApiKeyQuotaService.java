@@ -0,0 +1,184 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import ir.netpick.platform.mailmine.dto.ApiKeyQuotaResponse;
+import ir.netpick.platform.mailmine.dto.ApiQuotaReport;
+import ir.netpick.platform.mailmine.model.ApiKey;
+import ir.netpick.platform.mailmine.repository.ApiKeyRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Daily quota accounting for search API keys. Usage is counted per provider
+ * quota day (CSE quotas reset at midnight Pacific time), so a key's count
+ * restarts on the first use after the boundary without a reset job.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ApiKeyQuotaService {
+
+    private final ApiKeyRepository apiKeyRepository;
+
+    @Value("${google.search.quota.default-daily-quota:100}")
+    private int defaultDailyQuota;
+
+    // Time zone whose midnight is the provider's quota reset
+    @Value("${google.search.quota.reset-zone:America/Los_Angeles}")
+    private String resetZone;
+
+    // Quota is released in slices of this many hours, so searches late in the day still find quota
+    @Value("${google.search.quota.run-interval-hours:3}")
+    private int runIntervalHours;
+
+    @Value("${google.search.quota.spread-across-day:true}")
+    private boolean spreadAcrossDay;
+
+    /**
+     * Keys that still have quota left on the current provider day
+     */
+    public List<ApiKey> usableKeys(Collection<ApiKey> keys) {
+        ZonedDateTime now = now();
+        return keys.stream().filter(key -> !isExhausted(key, now)).toList();
+    }
+
+    public int dailyQuota(ApiKey key) {
+        return key.getPoint() != null && key.getPoint() > 0 ? key.getPoint() : defaultDailyQuota;
+    }
+
+    public int usedToday(ApiKey key) {
+        return usedToday(key, now());
+    }
+
+    public int remaining(ApiKey key) {
+        return remaining(key, now());
+    }
+
+    /**
+     * Number of queries the current run may spend. With spreading enabled the
+     * remaining quota is divided evenly over the runs left before the reset,
+     * so late runs of the day still find quota.
+     */
+    public int runBudget(Collection<ApiKey> keys) {
+        return runBudget(keys, now());
+    }
+
+    /**
+     * Persist queries made since the last flush, keyed by API key id
+     */
+    public void recordUsage(Map<UUID, Integer> usage) {
+        LocalDate day = now().toLocalDate();
+        usage.forEach((id, count) -> {
+            if (count > 0) {
+                apiKeyRepository.addUsage(id, day, count);
+            }
+        });
+    }
+
+    /**
+     * Take a key out of rotation until the next reset, after the provider
+     * rejected it for exceeding its daily limit
+     */
+    public void markExhausted(UUID keyId) {
+        LocalDateTime until = toLocal(nextReset(now()));
+        apiKeyRepository.markExhaustedUntil(keyId, until);
+        log.warn("API key {} exhausted its daily quota; skipped until {}", keyId, until);
+    }
+
+    public LocalDateTime nextReset() {
+        return toLocal(nextReset(now()));
+    }
+
+    public ApiQuotaReport quotaReport() {
+        ZonedDateTime now = now();
+        List<ApiKey> keys = apiKeyRepository.findAll();
+
+        List<ApiKeyQuotaResponse> perKey = keys.stream()
+                .map(key -> new ApiKeyQuotaResponse(
+                        key.getId(),
+                        key.getDescription(),
+                        dailyQuota(key),
+                        usedToday(key, now),
+                        remaining(key, now),
+                        isExhausted(key, now),
+                        predictedExhaustion(dailyQuota(key), usedToday(key, now), now)))
+                .toList();
+
+        int total = perKey.stream().mapToInt(ApiKeyQuotaResponse::dailyQuota).sum();
+        int used = perKey.stream().mapToInt(ApiKeyQuotaResponse::usedToday).sum();
+        int remaining = perKey.stream().mapToInt(ApiKeyQuotaResponse::remaining).sum();
+
+        return new ApiQuotaReport(total, used, remaining, runBudget(keys, now),
+                toLocal(nextReset(now)), predictedExhaustion(used + remaining, used, now), perKey);
+    }
+
+    boolean isExhausted(ApiKey key, ZonedDateTime now) {
+        if (key.getExhaustedUntil() != null && key.getExhaustedUntil().isAfter(toLocal(now))) {
+            return true;
+        }
+        return remaining(key, now) <= 0;
+    }
+
+    int usedToday(ApiKey key, ZonedDateTime now) {
+        Integer used = key.getUsedToday();
+        return used != null && now.toLocalDate().equals(key.getUsageDay()) ? used : 0;
+    }
+
+    int remaining(ApiKey key, ZonedDateTime now) {
+        if (key.getExhaustedUntil() != null && key.getExhaustedUntil().isAfter(toLocal(now))) {
+            return 0;
+        }
+        return Math.max(0, dailyQuota(key) - usedToday(key, now));
+    }
+
+    int runBudget(Collection<ApiKey> keys, ZonedDateTime now) {
+        int total = keys.stream().mapToInt(key -> remaining(key, now)).sum();
+        if (!spreadAcrossDay || total == 0) {
+            return total;
+        }
+        double hoursLeft = Duration.between(now, nextReset(now)).toMinutes() / 60.0;
+        int runsLeft = Math.max(1, (int) Math.ceil(hoursLeft / Math.max(1, runIntervalHours)));
+        return (int) Math.ceil((double) total / runsLeft);
+    }
+
+    /**
+     * Extrapolate today's usage rate to the moment the quota runs out.
+     * Null when nothing was used yet or the quota outlasts the day.
+     */
+    LocalDateTime predictedExhaustion(int quota, int used, ZonedDateTime now) {
+        if (used >= quota) {
+            return toLocal(now);
+        }
+        if (used == 0) {
+            return null;
+        }
+        long elapsedSeconds = Duration.between(now.toLocalDate().atStartOfDay(now.getZone()), now).toSeconds();
+        long secondsLeft = Math.round((double) elapsedSeconds / used * (quota - used));
+        ZonedDateTime exhaustion = now.plusSeconds(secondsLeft);
+        return exhaustion.isBefore(nextReset(now)) ? toLocal(exhaustion) : null;
+    }
+
+    ZonedDateTime now() {
+        return ZonedDateTime.now(ZoneId.of(resetZone));
+    }
+
+    private ZonedDateTime nextReset(ZonedDateTime now) {
+        return now.toLocalDate().plusDays(1).atStartOfDay(now.getZone());
+    }
+
+    private LocalDateTime toLocal(ZonedDateTime time) {
+        return time.withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+    }
+}
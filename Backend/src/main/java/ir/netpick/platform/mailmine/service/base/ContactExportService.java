@@ -0,0 +1,144 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ir.netpick.platform.mailmine.export.ContactExportFormat;
+import ir.netpick.platform.mailmine.export.ContactExportWriter;
+import ir.netpick.platform.mailmine.export.ExportedContact;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams all live contacts with their emails and source page to an output
+ * stream. Contacts are read in id order with a keyset cursor ({@code id > last
+ * id}), one page per short read-only transaction, so no offset is rescanned
+ * and no connection is held for the whole export. Each page is a single join
+ * read with a tuned fetch size; rows are written as they arrive, so memory
+ * does not grow with the number of contacts.
+ */
+@Slf4j
+@Service
+public class ContactExportService {
+
+    private static final String PAGE_SQL = """
+            SELECT c.id, c.created_at, j.scrape_link, e.email
+            FROM (SELECT id, created_at, scrape_data_id FROM contacts
+                  WHERE deleted = ? AND id > ? ORDER BY id LIMIT ?) c
+            LEFT JOIN scrape_data d ON d.id = c.scrape_data_id
+            LEFT JOIN scrape_job j ON j.id = d.job_id
+            LEFT JOIN contact_emails e ON e.contact_id = c.id
+            ORDER BY c.id, e.email""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnly;
+    private final int pageSize;
+
+    public ContactExportService(DataSource dataSource, PlatformTransactionManager transactionManager,
+            @Value("${contact-export.page-size:5000}") int pageSize,
+            @Value("${contact-export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Write every live contact with an id greater than {@code after} (all when
+     * null) to {@code out}. Does not close {@code out}.
+     *
+     * @return the number of contacts written
+     */
+    public long export(ContactExportFormat format, String after, OutputStream out) throws IOException {
+        ContactExportWriter writer = format.writer(out);
+        long start = System.currentTimeMillis();
+        long total = 0;
+        String cursor = after != null ? after : "";
+
+        try {
+            while (true) {
+                PageReader page = new PageReader(writer);
+                String from = cursor;
+                readOnly.executeWithoutResult(status -> jdbcTemplate.query(PAGE_SQL, page, false, from, pageSize));
+                page.end();
+                writer.flush();
+
+                total += page.contacts;
+                if (page.contacts < pageSize) {
+                    break;
+                }
+                cursor = page.lastId;
+            }
+            writer.finish();
+        } catch (UncheckedIOException e) {
+            // The client went away or the stream failed mid-page
+            throw e.getCause();
+        }
+        out.flush();
+
+        log.info("Exported {} contacts as {} in {} ms", total, format, System.currentTimeMillis() - start);
+        return total;
+    }
+
+    /**
+     * Folds the joined rows of one page (one per email, grouped by contact)
+     * back into contacts and writes each as soon as its last row has been read
+     */
+    private static final class PageReader implements RowCallbackHandler {
+        private final ContactExportWriter writer;
+        private int contacts;
+        private String lastId;
+        private String sourceUrl;
+        private Timestamp createdAt;
+        private final List<String> emails = new ArrayList<>();
+
+        PageReader(ContactExportWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            String id = rs.getString(1);
+            if (!Objects.equals(id, lastId)) {
+                end();
+                lastId = id;
+                createdAt = rs.getTimestamp(2);
+                sourceUrl = rs.getString(3);
+                contacts++;
+            }
+            String email = rs.getString(4);
+            if (email != null) {
+                emails.add(email);
+            }
+        }
+
+        void end() {
+            if (lastId == null) {
+                return;
+            }
+            try {
+                writer.write(new ExportedContact(lastId, List.copyOf(emails), sourceUrl,
+                        createdAt != null ? createdAt.toLocalDateTime() : null));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            emails.clear();
+        }
+    }
+}
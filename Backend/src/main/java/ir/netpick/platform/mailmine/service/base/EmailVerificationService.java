@@ -0,0 +1,290 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import ir.netpick.platform.core.exception.RequestValidationException;
+import ir.netpick.platform.core.lock.DistributedLockService;
+import ir.netpick.platform.mailmine.dto.EmailVerificationReport;
+import ir.netpick.platform.mailmine.model.Contact;
+import ir.netpick.platform.mailmine.model.EmailVerification;
+import ir.netpick.platform.mailmine.repository.ContactRepository;
+import ir.netpick.platform.mailmine.repository.EmailVerificationRepository;
+import ir.netpick.platform.mailmine.verify.MailboxVerifier;
+import ir.netpick.platform.mailmine.verify.VerificationResult;
+import ir.netpick.platform.mailmine.verify.VerificationStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Verifies the addresses of scraped contacts with the {@link MailboxVerifier}
+ * and stores the results: one {@link EmailVerification} row per address, and
+ * the best status of its addresses on each contact. Deferred (greylisted)
+ * addresses are retried after {@code retry.initial-delay-minutes}, four times
+ * longer on each further attempt, and end up UNKNOWN after
+ * {@code retry.max-attempts}. Results older than {@code recheck-after-days}
+ * are probed again when a contact needs them. A contact none of whose
+ * addresses gets a result (too long to store, say) is marked UNKNOWN, so it
+ * is not picked up again on every run; one whose results could not be
+ * stored is left for the next run. Addresses are stored trimmed and
+ * lower-cased, the form campaign audiences compare them in.
+ * <p>
+ * Scheduled batches run on their own thread under the
+ * {@code email-verification} lock; SMTP probing takes minutes and would
+ * otherwise hold up the shared scheduler thread.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmailVerificationService {
+
+    // Keeps IN lists well below database parameter limits
+    private static final int QUERY_CHUNK = 500;
+    private static final int MAX_DETAIL = 500;
+    private static final Duration BATCH_LEASE = Duration.ofMinutes(10);
+
+    private final MailboxVerifier mailboxVerifier;
+    private final ContactRepository contactRepository;
+    private final EmailVerificationRepository emailVerificationRepository;
+    private final DistributedLockService lockService;
+
+    private final ExecutorService batches = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("email-verification").factory());
+    private final AtomicBoolean batchRunning = new AtomicBoolean();
+
+    @Value("${verifier.schedule.enabled:false}")
+    private boolean scheduleEnabled;
+
+    // Contacts (and due retries) per run
+    @Value("${verifier.batch-size:2000}")
+    private int batchSize;
+
+    @Value("${verifier.max-request-addresses:500}")
+    private int maxRequestAddresses;
+
+    @Value("${verifier.recheck-after-days:30}")
+    private long recheckAfterDays;
+
+    @Value("${verifier.retry.max-attempts:4}")
+    private int maxAttempts;
+
+    // Greylisting usually lets the same sender and recipient through after a few minutes
+    @Value("${verifier.retry.initial-delay-minutes:5}")
+    private long retryDelayMinutes;
+
+    @Scheduled(initialDelayString = "${verifier.schedule.initial-delay-ms:60000}",
+            fixedDelayString = "${verifier.schedule.delay-ms:10000}")
+    public void verifyPending() {
+        if (scheduleEnabled && batchRunning.compareAndSet(false, true)) {
+            batches.execute(this::runBatch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batches.shutdownNow();
+    }
+
+    private void runBatch() {
+        try {
+            Optional<DistributedLockService.Lease> lease = lockService.tryAcquire("email-verification", BATCH_LEASE);
+            if (lease.isEmpty()) {
+                log.debug("Skipping verification batch: another replica is verifying");
+                return;
+            }
+            try (DistributedLockService.Lease held = lease.get()) {
+                verifyContacts(batchSize);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Verification batch failed: {}", e.getMessage());
+        } finally {
+            batchRunning.set(false);
+        }
+    }
+
+    /**
+     * Verify up to {@code limit} unverified contacts, plus contacts with
+     * deferred addresses whose retry is due
+     */
+    public EmailVerificationReport verifyContacts(int limit) {
+        if (limit < 1) {
+            throw new RequestValidationException("Limit must be positive");
+        }
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        int size = Math.min(limit, batchSize);
+
+        Map<UUID, Contact> contacts = new LinkedHashMap<>();
+        contactRepository.findUnverified(PageRequest.of(0, size)).forEach(c -> contacts.put(c.getId(), c));
+        List<String> due = emailVerificationRepository.findDueEmails(now, PageRequest.of(0, size));
+        for (List<String> chunk : chunks(due)) {
+            contactRepository.findByEmailIn(chunk).forEach(c -> contacts.putIfAbsent(c.getId(), c));
+        }
+
+        // Due addresses no contact holds any more are retried all the same, so they leave the queue
+        Set<String> addresses = new LinkedHashSet<>(due);
+        contacts.values().forEach(c -> c.getEmails().forEach(email -> addresses.add(key(email))));
+        Outcome outcome = verify(addresses, now);
+
+        Map<VerificationStatus, List<UUID>> byStatus = new EnumMap<>(VerificationStatus.class);
+        int settled = 0;
+        for (Contact contact : contacts.values()) {
+            if (contact.getEmails().stream().anyMatch(email -> outcome.unsaved().contains(key(email)))) {
+                continue;
+            }
+            // No result at all still settles the contact, or it would come back every run
+            VerificationStatus best = contact.getEmails().stream()
+                    .map(email -> outcome.rows().get(key(email)))
+                    .filter(Objects::nonNull)
+                    .map(EmailVerification::getStatus)
+                    .min(Comparator.naturalOrder())
+                    .orElse(VerificationStatus.UNKNOWN);
+            byStatus.computeIfAbsent(best, s -> new ArrayList<>()).add(contact.getId());
+            settled++;
+        }
+        byStatus.forEach((status, ids) -> chunks(ids)
+                .forEach(chunk -> contactRepository.updateVerification(chunk, status, now)));
+
+        EmailVerificationReport report = new EmailVerificationReport(settled, addresses.size(),
+                outcome.results().size(), countByStatus(outcome.results()), System.currentTimeMillis() - start);
+        if (settled < contacts.size()) {
+            log.warn("{} contacts keep their status until their results can be stored", contacts.size() - settled);
+        }
+        if (!contacts.isEmpty()) {
+            log.info("Verified {} contacts ({} addresses, {} probed) in {} ms: {}", report.contacts(),
+                    report.addresses(), report.probed(), report.elapsedMs(), report.statuses());
+        }
+        return report;
+    }
+
+    /**
+     * Probe the given addresses now and store the results
+     */
+    public List<VerificationResult> verifyAddresses(List<String> addresses) {
+        if (addresses.size() > maxRequestAddresses) {
+            throw new RequestValidationException("At most %d addresses can be verified at once, got %d"
+                    .formatted(maxRequestAddresses, addresses.size()));
+        }
+        List<VerificationResult> results = mailboxVerifier.verify(addresses);
+        store(results, LocalDateTime.now(), new HashMap<>());
+        return results;
+    }
+
+    private Outcome verify(Set<String> addresses, LocalDateTime now) {
+        Map<String, EmailVerification> rows = new HashMap<>();
+        for (List<String> chunk : chunks(new ArrayList<>(addresses))) {
+            emailVerificationRepository.findByEmailIn(chunk).forEach(row -> rows.put(key(row.getEmail()), row));
+        }
+        List<String> toProbe = addresses.stream().filter(email -> needsProbe(rows.get(email), now)).toList();
+        List<VerificationResult> results = toProbe.isEmpty() ? List.of() : mailboxVerifier.verify(toProbe);
+        Set<String> unsaved = store(results, now, rows);
+        return new Outcome(rows, results, unsaved);
+    }
+
+    private boolean needsProbe(EmailVerification row, LocalDateTime now) {
+        if (row == null) {
+            return true;
+        }
+        if (row.getNextAttemptAt() != null) {
+            return !row.getNextAttemptAt().isAfter(now);
+        }
+        return row.getCheckedAt().isBefore(now.minusDays(recheckAfterDays));
+    }
+
+    /**
+     * Store the results, updating {@code rows}. Returns the addresses whose
+     * results could not be stored; their rows are dropped.
+     */
+    private Set<String> store(List<VerificationResult> results, LocalDateTime now,
+            Map<String, EmailVerification> rows) {
+        List<EmailVerification> changed = new ArrayList<>();
+        for (VerificationResult result : results) {
+            String email = key(result.email());
+            if (email.length() > 320) {
+                continue;
+            }
+            EmailVerification row = rows.computeIfAbsent(email, EmailVerification::new);
+            int attempts = row.getStatus() == VerificationStatus.DEFERRED ? row.getAttempts() + 1 : 1;
+            VerificationStatus status = result.status();
+            if (status == VerificationStatus.DEFERRED && attempts >= maxAttempts) {
+                status = VerificationStatus.UNKNOWN;
+            }
+            row.setStatus(status);
+            row.setAttempts(attempts);
+            row.setMxHost(result.mxHost());
+            row.setSmtpCode(result.smtpCode());
+            row.setDetail(truncate(result.detail()));
+            row.setCheckedAt(now);
+            // 5, 20, 80 minutes... with the default delay
+            row.setNextAttemptAt(status == VerificationStatus.DEFERRED
+                    ? now.plusMinutes(retryDelayMinutes << (2 * (attempts - 1)))
+                    : null);
+            changed.add(row);
+        }
+        if (changed.isEmpty()) {
+            return Set.of();
+        }
+        try {
+            emailVerificationRepository.saveAll(changed);
+            return Set.of();
+        } catch (DataIntegrityViolationException e) {
+            // One conflicting row fails the whole batch; store the others one by one
+            log.warn("Storing verification results of {} addresses failed, storing them one by one: {}",
+                    changed.size(), e.getMessage());
+        }
+
+        Set<String> unsaved = new HashSet<>();
+        for (EmailVerification row : changed) {
+            try {
+                emailVerificationRepository.save(row);
+            } catch (DataIntegrityViolationException e) {
+                // Another run stored the address first; its result will do
+                Optional<EmailVerification> stored = emailVerificationRepository
+                        .findByEmailIn(List.of(row.getEmail())).stream().findFirst();
+                if (stored.isPresent()) {
+                    rows.put(row.getEmail(), stored.get());
+                } else {
+                    rows.remove(row.getEmail());
+                    unsaved.add(row.getEmail());
+                }
+            }
+        }
+        return unsaved;
+    }
+
+    private static String key(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Map<VerificationStatus, Long> countByStatus(List<VerificationResult> results) {
+        return results.stream().collect(Collectors.groupingBy(VerificationResult::status,
+                () -> new EnumMap<>(VerificationStatus.class), Collectors.counting()));
+    }
+
+    private static String truncate(String detail) {
+        return detail != null && detail.length() > MAX_DETAIL ? detail.substring(0, MAX_DETAIL) : detail;
+    }
+
+    private static <T> List<List<T>> chunks(List<T> items) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += QUERY_CHUNK) {
+            chunks.add(items.subList(i, Math.min(i + QUERY_CHUNK, items.size())));
+        }
+        return chunks;
+    }
+
+    private record Outcome(Map<String, EmailVerification> rows, List<VerificationResult> results,
+            Set<String> unsaved) {
+    }
+}
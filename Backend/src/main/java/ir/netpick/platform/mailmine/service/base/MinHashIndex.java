@@ -0,0 +1,135 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * MinHash signatures over character shingles with banded LSH lookup. Texts
+ * are expected to be normalized already. Candidates sharing a band bucket are
+ * confirmed by their estimated Jaccard similarity, so a lookup touches only a
+ * handful of stored signatures instead of every text.
+ */
+public class MinHashIndex {
+
+    private static final int SHINGLE_SIZE = 3;
+
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+    private final List<int[]> signatures = new ArrayList<>();
+    private final List<Map<Integer, List<Integer>>> buckets = new ArrayList<>();
+
+    /**
+     * @param bands number of LSH bands
+     * @param rows  signature rows per band; bands * rows hash functions are used.
+     *              Pairs above roughly (1 / bands)^(1 / rows) similarity become candidates.
+     */
+    public MinHashIndex(int bands, int rows) {
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < seeds.length; i++) {
+            seed = mix(seed + i);
+            seeds[i] = seed;
+        }
+        for (int b = 0; b < bands; b++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    public int size() {
+        return signatures.size();
+    }
+
+    public void add(String text) {
+        add(signature(text));
+    }
+
+    /**
+     * Highest estimated similarity between the text and any indexed text
+     * sharing at least one band with it; 0 when there is no candidate
+     */
+    public double maxSimilarity(String text) {
+        return maxSimilarity(signature(text));
+    }
+
+    void add(int[] signature) {
+        int id = signatures.size();
+        signatures.add(signature);
+        for (int b = 0; b < bands; b++) {
+            buckets.get(b).computeIfAbsent(bandKey(signature, b), key -> new ArrayList<>()).add(id);
+        }
+    }
+
+    double maxSimilarity(int[] signature) {
+        Set<Integer> candidates = new HashSet<>();
+        for (int b = 0; b < bands; b++) {
+            List<Integer> bucket = buckets.get(b).get(bandKey(signature, b));
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+
+        double best = 0;
+        for (int candidate : candidates) {
+            best = Math.max(best, similarity(signature, signatures.get(candidate)));
+        }
+        return best;
+    }
+
+    int[] signature(String text) {
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+
+        for (int shingle : shingles(text)) {
+            for (int i = 0; i < seeds.length; i++) {
+                int hash = (int) mix(shingle ^ seeds[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    private static Set<Integer> shingles(String text) {
+        // Pad so one- and two-letter words still produce a shingle
+        String padded = " " + text + " ";
+        Set<Integer> shingles = new HashSet<>();
+        for (int i = 0; i + SHINGLE_SIZE <= padded.length(); i++) {
+            shingles.add(padded.substring(i, i + SHINGLE_SIZE).hashCode());
+        }
+        return shingles;
+    }
+
+    private int bandKey(int[] signature, int band) {
+        int key = 1;
+        for (int r = band * rows; r < (band + 1) * rows; r++) {
+            key = 31 * key + signature[r];
+        }
+        return key;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -4,6 +4,7 @@ import ir.netpick.platform.core.PageDTO;
 import ir.netpick.platform.core.constants.GeneralConstants;
 import ir.netpick.platform.core.exception.ResourceNotFoundException;
 import ir.netpick.platform.core.utils.PageDTOMapper;
+import ir.netpick.platform.mailmine.dto.PipelineProgressEvent;
 import ir.netpick.platform.mailmine.model.Pipeline;
 import ir.netpick.platform.mailmine.repository.PipelineRepository;
 import lombok.RequiredArgsConstructor;
@@ -13,6 +14,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Service
@@ -66,6 +68,17 @@ public class PipelineService {
         pipelineRepository.save(pipeline);
     }
 
+    /**
+     * Write only the progress counters and checkpoint, leaving state and stage
+     * untouched
+     */
+    public void updateProgress(UUID pipelineId, PipelineProgressEvent progress, String checkpoint) {
+        pipelineRepository.updateProgress(pipelineId,
+                (int) progress.itemsProcessed(), (int) progress.itemsTotal(), (int) progress.linksCreated(),
+                (int) progress.pagesScraped(), (int) progress.contactsFound(), (int) progress.errorsCount(),
+                checkpoint, LocalDateTime.now());
+    }
+
     public void updatePipeline(UUID pipelineId, Pipeline pipeline) {
         if (!pipelineRepository.existsById(pipelineId)) {
             throw new ResourceNotFoundException("Pipeline with id %s was not found".formatted(pipelineId));
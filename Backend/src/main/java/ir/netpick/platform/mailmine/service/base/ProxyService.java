@@ -10,6 +10,7 @@ import ir.netpick.platform.core.enums.ProxyProtocol;
 import ir.netpick.platform.core.enums.ProxyStatus;
 import ir.netpick.platform.core.exception.ResourceNotFoundException;
 import ir.netpick.platform.core.utils.PageDTOMapper;
+import ir.netpick.platform.mailmine.metrics.ScrapeMetrics;
 import ir.netpick.platform.mailmine.model.Proxy;
 import ir.netpick.platform.mailmine.repository.ProxyRepository;
 import lombok.RequiredArgsConstructor;
@@ -39,6 +40,7 @@ public class ProxyService {
     private final ProxyRepository proxyRepository;
     private final V2RayClientService v2RayClientService;
     private final VercelRelayService vercelRelayService;
+    private final ScrapeMetrics scrapeMetrics;
     private final AtomicInteger roundRobinIndex = new AtomicInteger(0);
 
     private static final String TEST_URL = "https://httpbin.org/ip";
@@ -248,6 +250,7 @@ public class ProxyService {
             }
         }
 
+        long testStart = System.currentTimeMillis();
         try (Playwright playwright = Playwright.create()) {
             log.debug("Playwright created, launching browser with proxy: {}", proxy.toProxyUrl());
 
@@ -285,6 +288,8 @@ public class ProxyService {
             proxy.recordFailure();
             log.warn("✗ Proxy {} failed: {}", proxy.toDisplayString(), e.getMessage());
         } finally {
+            scrapeMetrics.proxyTested(ScrapeMetrics.proxyType(proxy), String.valueOf(proxy.getStatus()).toLowerCase(),
+                    System.currentTimeMillis() - testStart);
             // Stop V2Ray client after testing
             if (proxy.isV2RayProtocol()) {
                 v2RayClientService.stopProxy(proxy.getId());
@@ -305,6 +310,15 @@ public class ProxyService {
      * Get the next available proxy using round-robin selection
      */
     public Optional<Proxy> getNextProxy() {
+        return getNextProxy(List.of());
+    }
+
+    /**
+     * Round-robin over the allowed proxies only (a pipeline's lease). Falls
+     * back to all active proxies when none of them is usable; an empty
+     * collection allows every proxy.
+     */
+    public Optional<Proxy> getNextProxy(Collection<UUID> allowed) {
         List<Proxy> activeProxies = proxyRepository.findByStatusInAndDeletedFalse(
                 List.of(ProxyStatus.ACTIVE, ProxyStatus.SLOW));
 
@@ -313,6 +327,15 @@ public class ProxyService {
             return Optional.empty();
         }
 
+        if (!allowed.isEmpty()) {
+            List<Proxy> leased = activeProxies.stream().filter(p -> allowed.contains(p.getId())).toList();
+            if (!leased.isEmpty()) {
+                activeProxies = leased;
+            } else {
+                log.debug("No leased proxy is active, using the shared pool");
+            }
+        }
+
         int index = roundRobinIndex.getAndIncrement() % activeProxies.size();
         Proxy proxy = activeProxies.get(index);
 
@@ -332,6 +355,15 @@ public class ProxyService {
         return Optional.of(proxy);
     }
 
+    /**
+     * Ids of proxies usable for scraping, best first
+     */
+    public List<UUID> getUsableProxyIds() {
+        return proxyRepository.findBestProxies(List.of(ProxyStatus.ACTIVE, ProxyStatus.SLOW)).stream()
+                .map(Proxy::getId)
+                .toList();
+    }
+
     /**
      * Get the best proxy based on response time and success rate
      */
@@ -394,6 +426,7 @@ public class ProxyService {
     public void recordProxySuccess(UUID proxyId, long responseTimeMs) {
         Proxy proxy = getProxy(proxyId);
         proxy.recordSuccess(responseTimeMs);
+        scrapeMetrics.proxyUsed(ScrapeMetrics.proxyType(proxy), ScrapeMetrics.SUCCESS, responseTimeMs);
         proxyRepository.save(proxy);
     }
 
@@ -403,6 +436,7 @@ public class ProxyService {
     public void recordProxyFailure(UUID proxyId) {
         Proxy proxy = getProxy(proxyId);
         proxy.recordFailure();
+        scrapeMetrics.proxyUsed(ScrapeMetrics.proxyType(proxy), ScrapeMetrics.ERROR, -1);
 
         // Disable proxy if too many failures
         if (proxy.getFailureCount() > 5 && proxy.getSuccessCount() < proxy.getFailureCount()) {
@@ -48,6 +48,18 @@ public class ScrapeDataService {
         return scrapeDataRepository.findByParsedFalseAndDeletedFalse(pageable);
     }
 
+    /**
+     * Unparsed files after the given one in (createdAt, id) order, from the
+     * start when {@code after} is null. Keyset paging, so walking a large
+     * backlog doesn't rescan it from the first page.
+     */
+    public List<ScrapeData> findUnparsedAfter(ScrapeData after, int size) {
+        Pageable limit = PageRequest.of(0, size);
+        return after == null
+                ? scrapeDataRepository.findUnparsedFirst(limit)
+                : scrapeDataRepository.findUnparsedAfter(after.getCreatedAt(), after.getId(), limit);
+    }
+
     /**
      * Count unparsed files for progress tracking
      */
@@ -91,14 +103,14 @@ public class ScrapeDataService {
                 () -> new ResourceNotFoundException("ScrapeData with id [%s] was not found!".formatted(dataId)));
     }
 
-    public void createScrapeData(String pageData, UUID scrapeJobId) {
+    public ScrapeData createScrapeData(String pageData, UUID scrapeJobId) {
         ScrapeJob scrapeJob = scrapeJobRepository.findById(scrapeJobId).orElseThrow(
                 () -> new ResourceNotFoundException("ScrapeJob with id [%s] was not found!".formatted(scrapeJobId)));
         DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy.MM.dd_HH.mm");
         String fileName = dateFormat.format(LocalDateTime.now()) + ".txt";
         fileManagement.createFile(scrapeJobId, scrapeJob.getAttempt(), fileName, pageData);
         ScrapeData scrapeData = new ScrapeData(fileName, scrapeJob.getAttempt(), scrapeJob);
-        scrapeDataRepository.save(scrapeData);
+        return scrapeDataRepository.save(scrapeData);
     }
 
     public void updateScrapeData(ScrapeData scrapeData) {
@@ -0,0 +1,207 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ir.netpick.platform.core.lock.SchedulerLock;
+import ir.netpick.platform.mailmine.ScrapeConstants;
+import ir.netpick.platform.mailmine.model.ScrapeJob;
+import ir.netpick.platform.mailmine.repository.ContactRepository;
+import ir.netpick.platform.mailmine.repository.ScrapeJobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scores scrape jobs by how likely they are to produce contacts.
+ * The score combines the historical contacts-per-page yield of the job's domain
+ * and of its source search query with static TLD and URL path hints, and with
+ * contact hints in the search result's title and snippet.
+ * <p>
+ * Pending jobs are rescored on a schedule, on one replica at a time, so yields
+ * learned since they were created count. Only the score is written, and only
+ * while the job is still pending, so a concurrent scrape is never undone.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ScrapeJobPriorityService {
+
+    private static final int RESCORE_BATCH_SIZE = 500;
+    // Below every id, ids being compared as text
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final ScrapeJobRepository scrapeJobRepository;
+    private final ContactRepository contactRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${scraper.priority.baseline-yield:0.2}")
+    private double baselineYield;
+
+    @Value("${scraper.priority.prior-weight:3}")
+    private double priorWeight;
+
+    @Value("${scraper.priority.domain-weight:1.0}")
+    private double domainWeight;
+
+    @Value("${scraper.priority.query-weight:0.5}")
+    private double queryWeight;
+
+    @Value("${scraper.priority.tld-boost:0.1}")
+    private double tldBoost;
+
+    @Value("${scraper.priority.path-boost:0.3}")
+    private double pathBoost;
+
+    @Value("${scraper.priority.text-boost:0.2}")
+    private double textBoost;
+
+    /**
+     * Fill in domain and priority for the given (usually new) jobs.
+     * Yields are looked up with one grouped query per dimension for the whole batch.
+     */
+    public void assignPriorities(Collection<ScrapeJob> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        for (ScrapeJob job : jobs) {
+            if (job.getDomain() == null) {
+                job.setDomain(extractDomain(job.getLink()));
+            }
+        }
+
+        Set<String> domains = jobs.stream()
+                .map(ScrapeJob::getDomain)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<UUID> queryIds = jobs.stream()
+                .filter(job -> job.getSearchQuery() != null)
+                .map(job -> job.getSearchQuery().getId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        Map<Object, Long> domainPages = domains.isEmpty() ? new HashMap<Object, Long>()
+                : toCountMap(scrapeJobRepository.countScrapedByDomain(domains));
+        Map<Object, Long> domainContacts = domains.isEmpty() ? new HashMap<Object, Long>()
+                : toCountMap(contactRepository.countByScrapeJobDomain(domains));
+        Map<Object, Long> queryPages = queryIds.isEmpty() ? new HashMap<Object, Long>()
+                : toCountMap(scrapeJobRepository.countScrapedBySearchQuery(queryIds));
+        Map<Object, Long> queryContacts = queryIds.isEmpty() ? new HashMap<Object, Long>()
+                : toCountMap(contactRepository.countByScrapeJobSearchQuery(queryIds));
+
+        for (ScrapeJob job : jobs) {
+            String domain = job.getDomain();
+            UUID queryId = job.getSearchQuery() != null ? job.getSearchQuery().getId() : null;
+
+            double score = domainWeight * smoothedYield(
+                    domainContacts.getOrDefault(domain, 0L), domainPages.getOrDefault(domain, 0L));
+            score += queryWeight * smoothedYield(
+                    queryContacts.getOrDefault(queryId, 0L), queryPages.getOrDefault(queryId, 0L));
+            score += hintBoost(job.getLink(), domain);
+            score += textBoost(job.getDescription(), job.getSnippet());
+
+            job.setPriority(score);
+        }
+    }
+
+    /**
+     * Recompute priorities of all pending jobs so that yields learned since the
+     * jobs were created are taken into account. Pages by id; each page's scores
+     * are written in one transaction.
+     */
+    @Scheduled(fixedDelayString = "${scraper.priority.rescore-interval-ms:900000}", initialDelay = 60000)
+    @SchedulerLock(name = "scrape-job-rescore", leaseSeconds = 600)
+    public void rescorePendingJobs() {
+        UUID after = FIRST_ID;
+        int rescored = 0;
+
+        while (true) {
+            // Loaded outside the transaction, so the scored entities are never flushed back
+            List<ScrapeJob> jobs = scrapeJobRepository.findPendingJobsAfter(ScrapeConstants.MAX_ATTEMPTS, after,
+                    PageRequest.of(0, RESCORE_BATCH_SIZE));
+            if (jobs.isEmpty()) {
+                break;
+            }
+            assignPriorities(jobs);
+            rescored += transactionTemplate.execute(status -> jobs.stream()
+                    .mapToInt(job -> scrapeJobRepository.updatePendingPriority(job.getId(), job.getPriority(),
+                            job.getDomain()))
+                    .sum());
+            after = jobs.get(jobs.size() - 1).getId();
+        }
+
+        log.info("Rescored {} pending scrape jobs", rescored);
+    }
+
+    /**
+     * Contacts-per-page yield pulled towards the baseline while there is little history.
+     */
+    private double smoothedYield(long contacts, long pages) {
+        return (contacts + priorWeight * baselineYield) / (pages + priorWeight);
+    }
+
+    private double hintBoost(String link, String domain) {
+        double boost = 0;
+        if (domain != null && Arrays.stream(ScrapeConstants.PRIORITY_TLD_HINTS).anyMatch(domain::endsWith)) {
+            boost += tldBoost;
+        }
+        String path = extractPath(link);
+        if (path != null && Arrays.stream(ScrapeConstants.PRIORITY_PATH_HINTS).anyMatch(path::contains)) {
+            boost += pathBoost;
+        }
+        return boost;
+    }
+
+    private Map<Object, Long> toCountMap(List<Object[]> rows) {
+        Map<Object, Long> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            counts.put(row[0], ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+
+    /**
+     * Lower-cased host of the URL without a leading "www.", or null if unparsable
+     */
+    public static String extractDomain(String url) {
+        try {
+            String host = new URI(url).getHost();
+            if (host == null) {
+                return null;
+            }
+            host = host.toLowerCase(Locale.ROOT);
+            return host.startsWith("www.") ? host.substring(4) : host;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private double textBoost(String title, String snippet) {
+        String text = ((title != null ? title : "") + " " + (snippet != null ? snippet : "")).toLowerCase(Locale.ROOT);
+        return Arrays.stream(ScrapeConstants.PRIORITY_TEXT_HINTS).anyMatch(text::contains) ? textBoost : 0;
+    }
+
+    private static String extractPath(String url) {
+        try {
+            String path = new URI(url).getPath();
+            return path == null ? null : path.toLowerCase(Locale.ROOT);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ir.netpick.platform.mailmine.service.base;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -20,7 +21,10 @@ import org.springframework.validation.annotation.Validated;
 import ir.netpick.platform.core.exception.RequestValidationException;
 import ir.netpick.platform.core.exception.ResourceNotFoundException;
 import ir.netpick.platform.core.utils.PageDTOMapper;
+import ir.netpick.platform.mailmine.ScrapeConstants;
+import ir.netpick.platform.mailmine.model.LinkResult;
 import ir.netpick.platform.mailmine.model.ScrapeJob;
+import ir.netpick.platform.mailmine.model.SearchQuery;
 import ir.netpick.platform.mailmine.repository.ScrapeJobRepository;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
@@ -33,6 +37,7 @@ import lombok.RequiredArgsConstructor;
 public class ScrapeJobService {
 
     private final ScrapeJobRepository scrapeJobRepository;
+    private final ScrapeJobPriorityService scrapeJobPriorityService;
 
     public boolean isEmpty() {
         return scrapeJobRepository.count() == 0;
@@ -90,28 +95,81 @@ public class ScrapeJobService {
         log.info("Created ScrapeJob for link: {}", link);
     }
 
-    @SuppressWarnings("nullness")
     public void createJobsByList(@NotNull @Valid List<String> urls, @NotNull @Valid List<String> titles) {
+        createJobsByList(urls, titles, null);
+    }
+
+    /**
+     * Create jobs for the links that don't exist yet, remembering the search query
+     * that produced them and scoring them for priority scheduling.
+     *
+     * @return the jobs created
+     */
+    @SuppressWarnings("nullness")
+    public List<ScrapeJob> createJobsByList(@NotNull @Valid List<String> urls, @NotNull @Valid List<String> titles,
+            SearchQuery searchQuery) {
         if (urls.size() != titles.size()) {
             throw new RequestValidationException("URLs and titles lists must be of equal size.");
         }
 
-        Set<String> existingLinks = scrapeJobRepository.findAllByLinkIn(urls)
+        return saveNewJobs(IntStream.range(0, urls.size())
+                .mapToObj(i -> new ScrapeJob(urls.get(i), titles.get(i)))
+                .toList(), searchQuery);
+    }
+
+    /**
+     * Create jobs for the search results whose links don't exist yet, keeping
+     * their title and snippet for scoring
+     *
+     * @return the jobs created
+     */
+    public List<ScrapeJob> createJobs(List<LinkResult> results, SearchQuery searchQuery) {
+        return saveNewJobs(results.stream().map(result -> {
+            ScrapeJob job = new ScrapeJob(result.getLink(), result.getTitle());
+            job.setSnippet(result.getSnippet());
+            return job;
+        }).toList(), searchQuery);
+    }
+
+    private List<ScrapeJob> saveNewJobs(List<ScrapeJob> candidates, SearchQuery searchQuery) {
+        Set<String> existingLinks = scrapeJobRepository.findAllByLinkIn(
+                candidates.stream().map(ScrapeJob::getLink).toList())
                 .stream()
                 .map(job -> job.getLink())
                 .collect(Collectors.toSet());
 
-        List<ScrapeJob> newJobs = IntStream.range(0, urls.size())
-                .filter(i -> !existingLinks.contains(urls.get(i)))
-                .mapToObj(i -> new ScrapeJob(urls.get(i), titles.get(i)))
+        List<ScrapeJob> newJobs = candidates.stream()
+                .filter(job -> !existingLinks.contains(job.getLink()))
                 .toList();
+        newJobs.forEach(job -> job.setSearchQuery(searchQuery));
 
-        if (!newJobs.isEmpty()) {
-            scrapeJobRepository.saveAll(newJobs);
-            log.info("Created {} new ScrapeJobs.", newJobs.size());
-        } else {
+        if (newJobs.isEmpty()) {
             log.info("No new ScrapeJobs to create; all links exist.");
+            return List.of();
+        }
+
+        scrapeJobPriorityService.assignPriorities(newJobs);
+        List<ScrapeJob> saved = scrapeJobRepository.saveAll(newJobs);
+        log.info("Created {} new ScrapeJobs.", saved.size());
+        return saved;
+    }
+
+    /**
+     * Jobs the scraper would still pick up
+     */
+    public long countPending() {
+        return scrapeJobRepository.countPendingJobs(ScrapeConstants.MAX_ATTEMPTS);
+    }
+
+    /**
+     * Count an attempt against jobs that were being scraped when the process
+     * died; jobs reaching the limit are marked failed
+     */
+    public int chargeInterruptedAttempts(Collection<UUID> jobIds) {
+        if (jobIds.isEmpty()) {
+            return 0;
         }
+        return scrapeJobRepository.chargeInterruptedAttempt(jobIds, ScrapeConstants.MAX_ATTEMPTS);
     }
 
     public void updateScrapeJob(@NotNull UUID jobId, @NotNull ScrapeJob updates) {
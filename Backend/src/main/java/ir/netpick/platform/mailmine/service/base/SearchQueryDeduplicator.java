@@ -0,0 +1,117 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import ir.netpick.platform.mailmine.repository.SearchQueryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rejects search queries that are near-duplicates of stored ones. Paraphrases
+ * of an existing query return the same links, so searching them only spends
+ * quota. Keeps an in-memory MinHash LSH index over all query texts (deleted
+ * ones included, since the sentence column is unique), rebuilt when the
+ * number of stored queries changes behind its back.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchQueryDeduplicator {
+
+    private final SearchQueryRepository searchQueryRepository;
+
+    // Estimated Jaccard similarity of normalized text shingles above which a query counts as duplicate
+    @Value("${search-query.dedup.threshold:0.7}")
+    private double threshold;
+
+    // LSH candidate threshold (1/bands)^(1/rows): 20 x 5 is about 0.55, so pairs at
+    // the 0.7 cut-off share a band about 97% of the time (16 x 8 managed only about 61%)
+    @Value("${search-query.dedup.bands:20}")
+    private int bands;
+
+    @Value("${search-query.dedup.rows:5}")
+    private int rows;
+
+    private MinHashIndex index;
+    private long indexedCount = -1;
+
+    /**
+     * Split candidate queries into new ones and near-duplicates, checking each
+     * against stored queries and the candidates accepted before it. Accepted
+     * queries are added to the index; call {@link #forget()} if saving them fails.
+     */
+    public synchronized Result filter(List<String> candidates) {
+        refreshIndex();
+
+        List<String> accepted = new ArrayList<>();
+        List<String> duplicates = new ArrayList<>();
+        for (String candidate : candidates) {
+            String normalized = canonical(candidate);
+            if (normalized.isEmpty() || index.maxSimilarity(normalized) >= threshold) {
+                duplicates.add(candidate);
+                continue;
+            }
+            index.add(normalized);
+            accepted.add(candidate);
+        }
+
+        indexedCount += accepted.size();
+        return new Result(accepted, duplicates);
+    }
+
+    /**
+     * Drop the index so the next call rebuilds it from the database
+     */
+    public synchronized void forget() {
+        index = null;
+        indexedCount = -1;
+    }
+
+    private void refreshIndex() {
+        long stored = searchQueryRepository.countAllIncludingDeleted();
+        if (index != null && stored == indexedCount) {
+            return;
+        }
+
+        MinHashIndex rebuilt = new MinHashIndex(bands, rows);
+        searchQueryRepository.findAllSentences()
+                .forEach(sentence -> rebuilt.add(canonical(sentence)));
+        index = rebuilt;
+        indexedCount = stored;
+        log.info("Built near-duplicate index over {} search queries", stored);
+    }
+
+    /**
+     * Comparison form of a query: {@link SearchResponseCacheService#normalize}
+     * with punctuation dropped and words sorted, so reordered and re-punctuated
+     * paraphrases come out the same
+     */
+    static String canonical(String sentence) {
+        String text = SearchResponseCacheService.normalize(sentence)
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("[^\\p{L}\\p{N}]+", " ")
+                .trim();
+        if (text.isEmpty()) {
+            return text;
+        }
+        return Arrays.stream(text.split(" "))
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(" "));
+    }
+
+    public record Result(List<String> accepted, List<String> duplicates) {
+
+        public double duplicateRate() {
+            int total = accepted.size() + duplicates.size();
+            return total == 0 ? 0 : (double) duplicates.size() / total;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package ir.netpick.platform.mailmine.service.base;
 
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import ir.netpick.platform.core.PageDTO;
 import ir.netpick.platform.core.constants.GeneralConstants;
+import ir.netpick.platform.mailmine.ScrapeConstants;
 import ir.netpick.platform.mailmine.dto.SearchQueryResponse;
 import ir.netpick.platform.mailmine.mapper.SearchQueryDTOMapper;
 import lombok.extern.slf4j.Slf4j;
@@ -14,6 +18,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
 import ir.netpick.platform.core.exception.ResourceNotFoundException;
@@ -38,6 +43,13 @@ public class SearchQueryService {
         return searchQueryRepository.count() == 0;
     }
 
+    /**
+     * Queries the next search run would pick up that have not been searched yet
+     */
+    public long countPendingSearch() {
+        return searchQueryRepository.countPendingSearch(ScrapeConstants.MAX_QUERY_COUNT);
+    }
+
     @Cacheable(value = "searchQueries", key = "'page-' + #pageNumber")
     public PageDTO<SearchQueryResponse> allSearchQueries(int pageNumber) {
         Pageable pageable = PageRequest.of(pageNumber - 1, GeneralConstants.PAGE_SIZE,
@@ -82,6 +94,25 @@ public class SearchQueryService {
         return saved;
     }
 
+    /**
+     * Insert several queries in one transaction (JDBC-batched). Sentences
+     * that are already stored, soft-deleted ones included, or repeated in the
+     * list are skipped rather than failing the whole batch.
+     */
+    @Transactional
+    @CacheEvict(value = { "searchQuery", "searchQueries" }, allEntries = true)
+    public List<SearchQuery> createSearchQueries(@NotNull List<String> sentences, String description) {
+        Set<String> fresh = new LinkedHashSet<>(sentences);
+        if (!fresh.isEmpty()) {
+            searchQueryRepository.findExistingSentences(fresh).forEach(fresh::remove);
+        }
+        List<SearchQuery> saved = searchQueryRepository.saveAll(fresh.stream()
+                .map(sentence -> new SearchQuery(sentence, description))
+                .toList());
+        log.info("Created {} SearchQueries ({} already stored)", saved.size(), sentences.size() - saved.size());
+        return saved;
+    }
+
     @CacheEvict(value = { "searchQuery", "searchQueries" }, allEntries = true)
     public SearchQuery updateSearchQuery(@NotNull UUID id, @Valid @NotNull SearchQueryRequest request) {
         SearchQuery existing = getSearchQuery(id);
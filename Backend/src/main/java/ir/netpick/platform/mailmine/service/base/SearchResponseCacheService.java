@@ -0,0 +1,127 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import ir.netpick.platform.core.lock.SchedulerLock;
+import ir.netpick.platform.mailmine.model.SearchResponseCache;
+import ir.netpick.platform.mailmine.repository.SearchResponseCacheRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Database-backed cache of search API responses keyed by normalized query,
+ * search engine, page size and start offset. Lives in the primary database so it works on every profile,
+ * including SQLite dev where Redis is disabled. Entries written by the search
+ * stage hold only the extracted result fields (see {@code LinkParser.toJson}).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchResponseCacheService {
+
+    private final SearchResponseCacheRepository searchResponseCacheRepository;
+
+    @Value("${google.search.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${google.search.cache.ttl-hours:168}")
+    private long ttlHours;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Cached response for the query page, if present and not expired
+     */
+    public Optional<String> get(String sentence, String engineId, int pageSize, int startIndex) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return searchResponseCacheRepository.findByCacheKey(
+                cacheKey(normalize(sentence), engineId, pageSize, startIndex))
+                .filter(entry -> entry.getExpiresAt().isAfter(LocalDateTime.now()))
+                .map(entry -> {
+                    searchResponseCacheRepository.incrementHitCount(entry.getId());
+                    return entry.getResponseBody();
+                });
+    }
+
+    public void put(String sentence, String engineId, int pageSize, int startIndex, String responseBody) {
+        if (!enabled || responseBody == null || responseBody.isBlank()) {
+            return;
+        }
+
+        String normalized = normalize(sentence);
+        String key = cacheKey(normalized, engineId, pageSize, startIndex);
+        SearchResponseCache entry = searchResponseCacheRepository.findByCacheKey(key)
+                .orElseGet(() -> new SearchResponseCache(key, normalized, startIndex));
+        entry.setResponseBody(responseBody);
+        entry.setExpiresAt(LocalDateTime.now().plusHours(ttlHours));
+
+        try {
+            searchResponseCacheRepository.save(entry);
+        } catch (DataIntegrityViolationException e) {
+            // Another request stored the same page concurrently; either copy is fine
+            log.debug("Search response for '{}' (start {}) was cached concurrently", normalized, startIndex);
+        }
+    }
+
+    /**
+     * Remove expired entries - runs daily at 4 AM
+     */
+    @Scheduled(cron = "0 0 4 * * ?")
+    @SchedulerLock(name = "search-cache-purge")
+    public void purgeExpired() {
+        int deleted = searchResponseCacheRepository.deleteExpired(LocalDateTime.now());
+        log.info("Purged {} expired search response cache entries", deleted);
+    }
+
+    /**
+     * Normalize a query so trivially different spellings share a cache entry:
+     * Unicode NFKC, Arabic/Persian letter variants unified, lower case and
+     * whitespace collapsed. Punctuation and word order are kept, since search
+     * operators ({@code -term}, {@code "phrase"}, {@code site:}) change the
+     * results; so is upper-case {@code OR}, which is an operator too.
+     */
+    public static String normalize(String sentence) {
+        if (sentence == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(sentence, Normalizer.Form.NFKC)
+                .replace('\u064A', '\u06CC') // Arabic yeh -> Persian yeh
+                .replace('\u0643', '\u06A9') // Arabic kaf -> Persian keheh
+                .trim();
+        if (text.isEmpty()) {
+            return text;
+        }
+        return Arrays.stream(text.split("\\s+"))
+                .map(word -> word.equals("OR") ? word : word.toLowerCase(Locale.ROOT))
+                .collect(Collectors.joining(" "));
+    }
+
+    static String cacheKey(String normalizedQuery, String engineId, int pageSize, int startIndex) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String key = normalizedQuery + "|" + engineId + "|" + pageSize + "|" + startIndex;
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,28 +1,45 @@
 package ir.netpick.platform.mailmine.service.mid;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 import ir.netpick.platform.mailmine.ScrapeConstants;
+import ir.netpick.platform.mailmine.metrics.ScrapeMetrics;
+import ir.netpick.platform.mailmine.metrics.SearchPageEvent;
+import ir.netpick.platform.mailmine.service.base.ApiKeyQuotaService;
 import ir.netpick.platform.mailmine.service.base.ScrapeJobService;
+import ir.netpick.platform.mailmine.service.base.SearchResponseCacheService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import ir.netpick.platform.mailmine.model.ApiKey;
 import ir.netpick.platform.mailmine.model.LinkResult;
+import ir.netpick.platform.mailmine.model.ScrapeJob;
 import ir.netpick.platform.mailmine.model.SearchQuery;
 import ir.netpick.platform.mailmine.parser.LinkParser;
+import ir.netpick.platform.mailmine.parser.MalformedResponseException;
 import ir.netpick.platform.mailmine.repository.ApiKeyRepository;
 import ir.netpick.platform.mailmine.repository.SearchQueryRepository;
+import ir.netpick.platform.core.enums.PipelineStageEnum;
 import ir.netpick.platform.mailmine.service.orch.PipelineControlService;
-import jakarta.transaction.Transactional;
+import ir.netpick.platform.mailmine.service.orch.PipelineProgressTracker;
+import ir.netpick.platform.mailmine.service.orch.StageQueue;
 import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @Slf4j
 @Service
@@ -33,242 +50,335 @@ public class ApiCaller {
     private final ScrapeJobService scrapeJobService;
     private final SearchQueryRepository searchQueryRepository;
     private final PipelineControlService pipelineControlService;
-
-    // Configurable WebClient with timeouts (non-blocking)
-    private final WebClient webClient = WebClient.builder()
-            .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
-            .build();
-
-    @Value("${google.search.results-per-page:10}")
-    private int resultsPerPage;
+    private final PipelineProgressTracker progressTracker;
+    private final SearchApiDispatcher searchApiDispatcher;
+    private final SearchResponseCacheService searchResponseCacheService;
+    private final ApiKeyQuotaService apiKeyQuotaService;
+    private final TransactionTemplate transactionTemplate;
+    private final ScrapeMetrics scrapeMetrics;
 
     @Value("${google.search.max-pages:3}")
     private int maxPages;
 
-    @Value("${google.search.rate-limit-ms:1000}")
-    private long rateLimitMs;
-
-    @Value("${google.search.max-retries-per-page:3}")
-    private int maxRetriesPerPage;
+    // Number of queries whose result pages are fetched concurrently
+    @Value("${google.search.concurrency:8}")
+    private int concurrency;
 
-    @Value("${google.search.backoff-initial-ms:3000}")
-    private long initialBackoffMs;
-
-    @Value("${google.search.backoff-multiplier:2.0}")
-    private double backoffMultiplier;
-
-    @Value("${google.search.backoff-max-ms:20000}")
-    private long maxBackoffMs;
+    // Query results committed per transaction
+    @Value("${google.search.commit-every:10}")
+    private int commitEvery;
 
     // Progress tracking
     private final AtomicInteger processedCount = new AtomicInteger(0);
     private int totalCount = 0;
+    private final AtomicInteger apiCallCount = new AtomicInteger(0);
+    private final AtomicInteger cacheHitCount = new AtomicInteger(0);
+
+    // Held by the pipeline whose search stage is running
+    private final ReentrantLock searchRun = new ReentrantLock();
 
     public int getProcessedCount() {
         return processedCount.get();
     }
 
+    /**
+     * API calls saved by the response cache in the current/last run
+     */
+    public int getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    public int getApiCallCount() {
+        return apiCallCount.get();
+    }
+
     public int getTotalCount() {
         return totalCount;
     }
 
-    @Transactional
+    /**
+     * Call the search API for all pending queries. Requests fan out over all
+     * API keys and all result pages concurrently; results are turned into
+     * scrape jobs on the calling thread as they arrive. Only as many queries
+     * are taken as today's remaining key quota allows for this run.
+     * <p>
+     * Results are committed every {@code commitEvery} queries, each query's
+     * jobs together with its {@code lastSearchedAt}, so a crashed or stopped
+     * run resumes with the queries it had not committed yet. No connection is
+     * held while waiting on the API.
+     */
     public void callGoogleSearch() {
+        callGoogleSearch(null);
+    }
+
+    /**
+     * Streaming variant: ids of newly created scrape jobs are handed to
+     * {@code newJobs} as soon as their chunk commits. A full queue holds back
+     * further API calls.
+     * <p>
+     * Pipelines share the keys' daily quota, so concurrent pipelines search
+     * one at a time; a waiting search stage still honours pause and cancel.
+     */
+    public void callGoogleSearch(StageQueue<UUID> newJobs) {
+        try {
+            if (!searchRun.tryLock()) {
+                log.info("Another pipeline is searching; waiting for it to finish");
+                while (!searchRun.tryLock(1, TimeUnit.SECONDS)) {
+                    if (!pipelineControlService.checkAndWait()) {
+                        log.info("API caller stopped due to pipeline control (paused/cancelled/skipped)");
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("API caller interrupted");
+            return;
+        }
+
+        try {
+            search(newJobs);
+        } finally {
+            searchRun.unlock();
+        }
+    }
+
+    private void search(StageQueue<UUID> newJobs) {
         List<ApiKey> apiKeys = apiKeyRepository.findAll();
         if (apiKeys.isEmpty()) {
             throw new RuntimeException("No API keys configured");
         }
 
-        List<SearchQuery> queries = searchQueryRepository.findByLinkCountLessThan(ScrapeConstants.MAX_QUERY_COUNT);
+        List<ApiKey> usableKeys = apiKeyQuotaService.usableKeys(apiKeys);
+        if (usableKeys.isEmpty()) {
+            log.warn("All {} API keys have used up their daily quota; next reset at {}",
+                    apiKeys.size(), apiKeyQuotaService.nextReset());
+            return;
+        }
+
+        List<SearchQuery> queries = searchQueryRepository.findPendingSearch(ScrapeConstants.MAX_QUERY_COUNT);
         if (queries.isEmpty()) {
             log.info("No pending search queries found.");
             return;
         }
 
+        // Every query costs up to maxPages calls (fewer when pages are cached)
+        int budget = apiKeyQuotaService.runBudget(usableKeys);
+        int maxQueries = Math.max(1, budget / Math.max(1, maxPages));
+        if (queries.size() > maxQueries) {
+            log.info("Quota budget for this run is {} calls; deferring {} of {} queries",
+                    budget, queries.size() - maxQueries, queries.size());
+            queries = queries.subList(0, maxQueries);
+        }
+
         // Initialize progress tracking
         processedCount.set(0);
         totalCount = queries.size();
+        progressTracker.stageStarted(PipelineStageEnum.API_CALLER_STARTED, totalCount);
+        apiCallCount.set(0);
+        cacheHitCount.set(0);
+        searchApiDispatcher.registerKeys(usableKeys, apiKeyQuotaService::remaining);
+
+        log.info("Processing {} search queries ({} in flight, up to {} req/s across all keys)",
+                totalCount, concurrency, searchApiDispatcher.totalRate());
+
+        Flux<QueryResult> results = Flux.fromIterable(queries)
+                .flatMap(this::fetchQuery, concurrency);
+
+        List<QueryResult> uncommitted = new ArrayList<>();
+
+        // Closing the stream cancels in-flight requests when the pipeline stops
+        try (Stream<QueryResult> stream = results.toStream(concurrency)) {
+            Iterator<QueryResult> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                // Don't sit on uncommitted results while paused
+                if (pipelineControlService.shouldStop()) {
+                    commitResults(uncommitted, newJobs);
+                }
 
-        log.info("Processing {} search queries with rate limit of {}ms between API calls",
-                totalCount, rateLimitMs);
-
-        for (SearchQuery query : queries) {
-            // Check if pipeline is paused/cancelled/skipped
-            try {
-                if (!pipelineControlService.checkAndWait()) {
-                    log.info("API caller stopped due to pipeline control (paused/cancelled/skipped)");
+                // Check if pipeline is paused/cancelled/skipped
+                try {
+                    if (!pipelineControlService.checkAndWait()) {
+                        log.info("API caller stopped due to pipeline control (paused/cancelled/skipped)");
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.info("API caller interrupted");
                     break;
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.info("API caller interrupted");
-                break;
-            }
 
-            if (query.getSentence().isBlank()) {
-                log.error("Query with id {} is blank", query.getId());
-                processedCount.incrementAndGet();
-                continue;
+                uncommitted.add(iterator.next());
+                if (uncommitted.size() >= commitEvery) {
+                    commitResults(uncommitted, newJobs);
+                }
             }
-
-            int linksCreated = processQuery(query, apiKeys);
-            query.setLinkCount(query.getLinkCount() + linksCreated);
-            searchQueryRepository.save(query);
-
-            int processed = processedCount.incrementAndGet();
-            log.info("[{}/{}] Query '{}' created {} links",
-                    processed, totalCount,
-                    truncate(query.getSentence(), 50), linksCreated);
+        } finally {
+            commitResults(uncommitted, newJobs);
         }
+
+        log.info("Search run finished: {} API calls made, {} served from cache (quota saved)",
+                apiCallCount.get(), cacheHitCount.get());
     }
 
-    @SuppressWarnings("nullness")
-    private int processQuery(SearchQuery query, List<ApiKey> apiKeys) {
-        int totalLinksCreated = 0;
-        int page = 0;
-        int currentApiKeyIndex = ThreadLocalRandom.current().nextInt(apiKeys.size());
-        long backoffDelay = initialBackoffMs;
-        int retriesForPage = 0;
-
-        while (page < maxPages) {
-            if (pipelineControlService.shouldStop()) {
-                log.info("Stopping query processing due to pipeline control");
-                break;
+    /**
+     * Store a chunk of query results in one short transaction, then persist
+     * the quota spent on them and pass the new jobs downstream. A failing
+     * chunk rolls back as a whole and its queries keep their old resume point,
+     * so the next run searches them again.
+     */
+    private void commitResults(List<QueryResult> chunk, StageQueue<UUID> newJobs) {
+        if (!chunk.isEmpty()) {
+            LocalDateTime searchedAt = LocalDateTime.now();
+            List<UUID> created = new ArrayList<>();
+            long start = System.nanoTime();
+            try {
+                transactionTemplate.executeWithoutResult(status -> chunk.forEach(
+                        result -> saveResult(result, searchedAt).forEach(job -> created.add(job.getId()))));
+            } finally {
+                // Not retried by the final commit when the stage unwinds
+                chunk.clear();
             }
-
-            if ((page > 0 || processedCount.get() > 0) && rateLimitMs > 0) {
-                if (!sleepRespectingPipeline(rateLimitMs)) {
-                    log.info("Rate limit wait interrupted or cancelled");
-                    break;
-                }
+            scrapeMetrics.searchCommitted(System.nanoTime() - start);
+            if (newJobs != null) {
+                created.forEach(newJobs::put);
+                progressTracker.addToTotal(PipelineStageEnum.SCRAPER_STARTED, created.size());
             }
+        }
+        flushQuotaUsage();
+    }
 
-            ApiKey currentKey = apiKeys.get(currentApiKeyIndex);
-            String uri = buildUri(query.getSentence(), page, currentKey);
-
-            try {
-                String apiResponse = executeApiCall(uri).block();
-                if (apiResponse == null || apiResponse.isEmpty()) {
-                    log.warn("Empty response for query: {}", truncate(query.getSentence(), 50));
-                    page++;
-                    continue;
-                }
-
-                List<LinkResult> parsedLinks = LinkParser.parse(apiResponse);
-                if (parsedLinks.isEmpty()) {
-                    log.debug("No links parsed for query: {} (page {})",
-                            truncate(query.getSentence(), 50), page);
-                    page++;
-                    currentApiKeyIndex = (currentApiKeyIndex + 1) % apiKeys.size();
-                    continue;
-                }
-
-                List<String> urls = parsedLinks.stream().map(link -> link.getLink()).toList();
-                List<String> titles = parsedLinks.stream().map(link -> link.getTitle()).toList();
-
-                scrapeJobService.createJobsByList(urls, titles);
-                totalLinksCreated += urls.size();
-                log.debug("Created {} scrape jobs from query page {}", urls.size(), page);
-
-                // Reset retry/backoff for next page and advance key for load balancing
-                retriesForPage = 0;
-                backoffDelay = initialBackoffMs;
-                page++;
-                currentApiKeyIndex = (currentApiKeyIndex + 1) % apiKeys.size();
-
-            } catch (WebClientResponseException e) {
-                if (e.getStatusCode().value() == 429) {
-                    retriesForPage++;
-                    if (retriesForPage > maxRetriesPerPage) {
-                        log.error(
-                                "Exceeded retry limit ({} attempts) for query '{}' page {} due to repeated 429 responses.",
-                                maxRetriesPerPage, truncate(query.getSentence(), 40), page);
-                        break;
-                    }
-
-                    long waitMs = withJitter(backoffDelay);
-                    log.warn("Rate limited (429) for query '{}' page {}. Waiting {} ms before retry (attempt {}/{}).",
-                            truncate(query.getSentence(), 40), page, waitMs, retriesForPage, maxRetriesPerPage);
-
-                    if (!sleepRespectingPipeline(waitMs)) {
-                        log.info("Backoff wait interrupted or cancelled");
-                        break;
-                    }
-
-                    backoffDelay = Math.min((long) (backoffDelay * backoffMultiplier), maxBackoffMs);
-                    currentApiKeyIndex = (currentApiKeyIndex + 1) % apiKeys.size();
-                    continue; // Retry same page
-                }
+    private void flushQuotaUsage() {
+        apiKeyQuotaService.recordUsage(searchApiDispatcher.drainUsage());
+        searchApiDispatcher.drainExhausted().forEach(apiKeyQuotaService::markExhausted);
+    }
 
-                log.error("API call failed (HTTP {}): {} for query {} (page {})",
-                        e.getStatusCode(), e.getMessage(),
-                        truncate(query.getSentence(), 30), page);
+    private List<ScrapeJob> saveResult(QueryResult result, LocalDateTime searchedAt) {
+        SearchQuery query = result.query();
+        int processed = processedCount.incrementAndGet();
+        progressTracker.itemDone(PipelineStageEnum.API_CALLER_STARTED);
+
+        // A query with failed pages gets no resume point, so the next run retries it first
+        LocalDateTime resumePoint = result.complete() ? searchedAt : null;
+        if (resumePoint == null) {
+            progressTracker.error();
+            log.info("[{}/{}] Query '{}' had failed pages; keeping it pending", processed, totalCount,
+                    truncate(query.getSentence(), 50));
+        }
 
-                currentApiKeyIndex = (currentApiKeyIndex + 1) % apiKeys.size();
-                if (currentApiKeyIndex == 0) {
-                    log.error("All keys attempted for page {}. Aborting remaining pages.", page);
-                    break;
-                }
+        if (result.links().isEmpty()) {
+            searchQueryRepository.markSearched(query.getId(), 0, resumePoint);
+            log.info("[{}/{}] Query '{}' returned no links", processed, totalCount,
+                    truncate(query.getSentence(), 50));
+            return List.of();
+        }
 
-                if (!sleepRespectingPipeline(initialBackoffMs)) {
-                    log.info("Backoff wait interrupted or cancelled after HTTP error");
-                    break;
-                }
+        // Existing links are skipped, so replaying a query after a crash adds nothing twice
+        List<ScrapeJob> created = scrapeJobService.createJobs(result.links(), query);
+        searchQueryRepository.markSearched(query.getId(), created.size(), resumePoint);
+        progressTracker.linksCreated(created.size());
 
-            } catch (Exception e) {
-                log.error("Unexpected error for query {} (page {}): {}",
-                        truncate(query.getSentence(), 30), page, e.getMessage(), e);
-                break;
-            }
-        }
-        return totalLinksCreated;
+        log.info("[{}/{}] Query '{}' created {} links",
+                processed, totalCount,
+                truncate(query.getSentence(), 50), created.size());
+        return created;
     }
 
-    private boolean sleepRespectingPipeline(long delayMs) {
-        long remaining = delayMs;
-        final long slice = 250L;
-        while (remaining > 0) {
-            if (pipelineControlService.shouldStop()) {
-                return false;
-            }
-            long sleep = Math.min(slice, remaining);
-            try {
-                Thread.sleep(sleep);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return false;
-            }
-            remaining -= sleep;
+    /**
+     * Fetch the first result page of a query and, only when it was full, the
+     * remaining pages in parallel; then merge their links. Every page costs
+     * quota, and a short or failed first page means the rest are empty.
+     */
+    private Mono<QueryResult> fetchQuery(SearchQuery query) {
+        if (query.getSentence() == null || query.getSentence().isBlank()) {
+            log.error("Query with id {} is blank", query.getId());
+            return Mono.just(new QueryResult(query, List.of(), true));
         }
-        return true;
+
+        int pageSize = searchApiDispatcher.resultsPerPage();
+        return fetchPageOrEmpty(query.getSentence(), 0)
+                .flatMapMany(first -> {
+                    boolean full = first.map(links -> links.size() >= pageSize).orElse(false);
+                    if (!full || maxPages <= 1) {
+                        return Flux.just(first);
+                    }
+                    return Flux.just(first).concatWith(Flux.range(1, maxPages - 1)
+                            .flatMap(page -> fetchPageOrEmpty(query.getSentence(), page)));
+                })
+                .collectList()
+                .map(pages -> {
+                    // Pages can overlap; keep one result per link
+                    Map<String, LinkResult> unique = new LinkedHashMap<>();
+                    pages.forEach(links -> links.ifPresent(
+                            list -> list.forEach(link -> unique.putIfAbsent(link.getLink(), link))));
+                    boolean complete = pages.stream().allMatch(Optional::isPresent);
+                    return new QueryResult(query, List.copyOf(unique.values()), complete);
+                });
     }
 
-    private long withJitter(long baseDelayMs) {
-        long safeBase = Math.max(baseDelayMs, 1000L);
-        long jitter = ThreadLocalRandom.current().nextLong(Math.max(1L, safeBase / 4));
-        return safeBase + jitter;
+    /**
+     * The page's links, or empty when fetching it failed
+     */
+    private Mono<Optional<List<LinkResult>>> fetchPageOrEmpty(String sentence, int page) {
+        return fetchPage(sentence, page)
+                .map(Optional::of)
+                .onErrorResume(e -> {
+                    log.error("API call failed for query {} (page {}): {}",
+                            truncate(sentence, 30), page, e.getMessage());
+                    return Mono.just(Optional.empty());
+                });
     }
 
-    private Mono<String> executeApiCall(String uri) {
-        return webClient.get()
-                .uri(uri)
-                .retrieve()
-                .bodyToMono(String.class)
-                .doOnError(e -> log.debug("API call error: {}", e.getMessage()));
+    /**
+     * Serve a page from the response cache, or call the API and cache the links
+     * it returned. A malformed response fails the page and is not cached.
+     * Cache access is blocking JDBC, so it runs on the bounded elastic scheduler.
+     */
+    private Mono<List<LinkResult>> fetchPage(String sentence, int page) {
+        int startIndex = searchApiDispatcher.startIndex(page);
+        String engineId = searchApiDispatcher.engineScope();
+        int pageSize = searchApiDispatcher.resultsPerPage();
+        return Mono.defer(() -> {
+            SearchPageEvent event = new SearchPageEvent();
+            event.begin();
+            long start = System.nanoTime();
+            return Mono.fromCallable(() -> searchResponseCacheService.get(sentence, engineId, pageSize, startIndex))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(cached -> {
+                        if (cached.isPresent()) {
+                            try {
+                                List<LinkResult> links = LinkParser.parse(cached.get());
+                                cacheHitCount.incrementAndGet();
+                                recordPage(event, start, sentence, page, "cache", null);
+                                return Mono.just(links);
+                            } catch (MalformedResponseException e) {
+                                log.warn("Ignoring unreadable cached page {} of '{}': {}", page,
+                                        truncate(sentence, 30), e.getMessage());
+                            }
+                        }
+                        apiCallCount.incrementAndGet();
+                        return searchApiDispatcher.fetchPage(sentence, page)
+                                .doOnSuccess(links -> recordPage(event, start, sentence, page, "api", null))
+                                .doOnError(e -> recordPage(event, start, sentence, page, "api", e))
+                                .publishOn(Schedulers.boundedElastic())
+                                .doOnNext(links -> searchResponseCacheService.put(sentence, engineId, pageSize,
+                                        startIndex, LinkParser.toJson(links)));
+                    });
+        });
     }
 
-    private String buildUri(String sentence, int page, ApiKey key) {
-        String queryEncoded = Optional.ofNullable(sentence)
-                .map(s -> s.replace(" ", "+"))
-                .orElseThrow(() -> new IllegalArgumentException("Query sentence cannot be null"));
-
-        int startIndex = page * resultsPerPage + 1;
-        return key.getApiLink()
-                .replace("<query>", queryEncoded)
-                .replace("<api_key>", key.getKey())
-                .replace("<search_engine_id>", key.getSearchEngineId())
-                .replace("<start_index>", String.valueOf(startIndex))
-                .replace("<count>", String.valueOf(resultsPerPage));
+    private void recordPage(SearchPageEvent event, long start, String sentence, int page, String source,
+            Throwable error) {
+        String outcome = ScrapeMetrics.outcome(error);
+        scrapeMetrics.searchPage(source, outcome, System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.query = truncate(sentence, 100);
+            event.page = page;
+            event.source = source;
+            event.outcome = outcome;
+            event.commit();
+        }
     }
 
     private String truncate(String str, int maxLen) {
@@ -276,12 +386,7 @@ public class ApiCaller {
             return "";
         return str.length() <= maxLen ? str : str.substring(0, maxLen) + "...";
     }
-}
-
-
-
-
-
-
-
 
+    private record QueryResult(SearchQuery query, List<LinkResult> links, boolean complete) {
+    }
+}
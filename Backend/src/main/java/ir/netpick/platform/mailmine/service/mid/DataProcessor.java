@@ -3,18 +3,30 @@ package ir.netpick.platform.mailmine.service.mid;
 import ir.netpick.platform.mailmine.model.ScrapeData;
 import ir.netpick.platform.mailmine.parser.ContactInfoParser;
 import ir.netpick.platform.mailmine.model.Contact;
+import ir.netpick.platform.mailmine.metrics.ParseFileEvent;
+import ir.netpick.platform.mailmine.metrics.ScrapeMetrics;
 import ir.netpick.platform.mailmine.service.base.ContactService;
 import ir.netpick.platform.mailmine.service.base.FileManagement;
 import ir.netpick.platform.mailmine.service.base.ScrapeDataService;
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.mailmine.service.orch.PipelineControlPlane;
 import ir.netpick.platform.mailmine.service.orch.PipelineControlService;
+import ir.netpick.platform.mailmine.service.orch.PipelineProgressTracker;
+import ir.netpick.platform.mailmine.service.orch.StageQueue;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
@@ -25,20 +37,17 @@ public class DataProcessor {
     private final ScrapeDataService scrapeDataService;
     private final FileManagement fileManagement;
     private final PipelineControlService pipelineControlService;
+    private final PipelineProgressTracker progressTracker;
+    private final PipelineControlPlane controlPlane;
+    private final ScrapeMetrics scrapeMetrics;
 
-    // Progress tracking
-    private final AtomicInteger processedCount = new AtomicInteger(0);
-    private volatile int totalCount = 0;
+    // Files being parsed right now, by any pipeline
+    private final Set<UUID> inProgress = ConcurrentHashMap.newKeySet();
 
-    private static final int BATCH_SIZE = 100; // Process in batches to avoid OOM
-
-    public int getProcessedCount() {
-        return processedCount.get();
-    }
+    // Cluster-wide claim on a file being parsed
+    private static final Duration PAGE_CLAIM_TTL = Duration.ofMinutes(5);
 
-    public int getTotalCount() {
-        return totalCount;
-    }
+    private static final int BATCH_SIZE = 100; // Process in batches to avoid OOM
 
     /**
      * Process unparsed files in batches to avoid OOM with large datasets.
@@ -46,46 +55,129 @@ public class DataProcessor {
      * progress.
      */
     public void processUnparsedFiles() {
-        // Get total count for progress tracking
-        totalCount = (int) scrapeDataService.countUnparsed();
-        processedCount.set(0);
+        StageQueue<UUID> noUpstream = new StageQueue<>(1);
+        noUpstream.close();
+        processUnparsedFiles(noUpstream);
+    }
 
-        if (totalCount == 0) {
+    /**
+     * Streaming variant: parses pages handed over by the scrape stage as they
+     * arrive and works through the unparsed backlog while none are waiting.
+     * Ends when {@code scrapedPages} is drained and no unparsed page is left.
+     * Files are claimed, so pipelines running next to each other never parse
+     * the same file twice.
+     */
+    public void processUnparsedFiles(StageQueue<UUID> scrapedPages) {
+        // Per run: pipelines parsing side by side keep their own counts
+        ParseRun run = new ParseRun((int) scrapeDataService.countUnparsed());
+        progressTracker.stageStarted(PipelineStageEnum.PARSER_STARTED, run.total);
+
+        if (run.total == 0 && scrapedPages.isClosed()) {
             log.info("No unparsed files found.");
             return;
         }
 
-        log.info("Processing {} unparsed files in batches of {}", totalCount, BATCH_SIZE);
-
-        int pageNum = 0;
-        Page<ScrapeData> scrapeDataBatch;
+        log.info("Processing {} unparsed files in batches of {}", run.total, BATCH_SIZE);
 
-        do {
-            // Fetch a batch
-            scrapeDataBatch = scrapeDataService.findUnparsedPaged(pageNum, BATCH_SIZE);
+        // Failed files stay unparsed; try each at most once per run
+        Set<UUID> attempted = new HashSet<>();
+        while (true) {
+            ScrapeData scrapeData;
+            try {
+                // A skip belongs to an upstream stage while it is still feeding us
+                if (!pipelineControlService.checkAndWait(scrapedPages.isClosed())) {
+                    log.info("Data processing stopped due to pipeline control (paused/cancelled/skipped)");
+                    return;
+                }
 
-            for (ScrapeData scrapeData : scrapeDataBatch.getContent()) {
-                // Check if pipeline is paused/cancelled/skipped
-                try {
-                    if (!pipelineControlService.checkAndWait()) {
-                        log.info("Data processing stopped due to pipeline control (paused/cancelled/skipped)");
-                        return;
+                UUID id = scrapedPages.poll(0);
+                scrapeData = id != null ? scrapeDataService.getData(id) : nextBacklogFile(run, attempted);
+                if (scrapeData == null) {
+                    if (scrapedPages.isDrained()) {
+                        break;
                     }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.info("Data processing interrupted");
-                    return;
+                    id = scrapedPages.poll(1000);
+                    if (id == null) {
+                        continue;
+                    }
+                    scrapeData = scrapeDataService.getData(id);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.info("Data processing interrupted");
+                return;
+            }
 
+            if (scrapeData.isParsed() || !attempted.add(scrapeData.getId()) || !claim(scrapeData.getId())) {
+                continue;
+            }
+            progressTracker.begin(PipelineStageEnum.PARSER_STARTED, scrapeData.getId());
+            try {
+                // Pages keep arriving while we run; keep the total ahead of progress
+                run.total = Math.max(run.total, run.processed + 1);
                 processSingleFile(scrapeData);
+                run.processed++;
+                if (run.processed % 50 == 0 || run.processed == run.total) {
+                    log.info("[{}/{}] Processing progress...", run.processed, run.total);
+                }
+            } finally {
+                progressTracker.end(PipelineStageEnum.PARSER_STARTED, scrapeData.getId());
+                controlPlane.release("page", scrapeData.getId());
+                inProgress.remove(scrapeData.getId());
             }
+        }
 
-            // Don't increment page number since we're marking items as processed
-            // The next batch will automatically get the next unparsed items
+        log.info("Finished processing. Total processed: {}/{}", run.processed, run.total);
+    }
 
-        } while (scrapeDataBatch.hasNext() && !pipelineControlService.shouldStop());
+    /**
+     * Claim a file for parsing here and on other instances
+     */
+    private boolean claim(UUID scrapeDataId) {
+        if (!inProgress.add(scrapeDataId)) {
+            return false;
+        }
+        if (!controlPlane.tryClaim("page", scrapeDataId, PAGE_CLAIM_TTL)) {
+            inProgress.remove(scrapeDataId);
+            return false;
+        }
+        return true;
+    }
 
-        log.info("Finished processing. Total processed: {}/{}", processedCount.get(), totalCount);
+    /**
+     * Next backlog file this run hasn't tried and nobody is parsing. The
+     * cursor only moves forward; files skipped because another pipeline had
+     * them are that pipeline's to finish.
+     */
+    private ScrapeData nextBacklogFile(ParseRun backlog, Set<UUID> attempted) {
+        while (true) {
+            if (backlog.batch.isEmpty()) {
+                List<ScrapeData> batch = scrapeDataService.findUnparsedAfter(backlog.last, BATCH_SIZE);
+                if (batch.isEmpty()) {
+                    return null;
+                }
+                backlog.batch.addAll(batch);
+            }
+            ScrapeData scrapeData = backlog.batch.poll();
+            backlog.last = scrapeData;
+            if (!attempted.contains(scrapeData.getId()) && !inProgress.contains(scrapeData.getId())) {
+                return scrapeData;
+            }
+        }
+    }
+
+    /**
+     * Progress of one parse run and its position in the unparsed backlog
+     */
+    private static final class ParseRun {
+        private final Deque<ScrapeData> batch = new ArrayDeque<>();
+        private ScrapeData last;
+        private int processed;
+        private int total;
+
+        ParseRun(int total) {
+            this.total = total;
+        }
     }
 
     /**
@@ -94,11 +186,20 @@ public class DataProcessor {
      */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void processSingleFile(ScrapeData scrapeData) {
+        ParseFileEvent event = new ParseFileEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long readTime = 0;
+        long parseTime = 0;
+        int emails = 0;
+        String outcome = "error";
         try {
             String htmlContent = fileManagement.readFile(
                     scrapeData.getScrapeJob().getId(),
                     scrapeData.getAttemptNumber(),
                     scrapeData.getFileName());
+            readTime = System.nanoTime() - start;
+            scrapeMetrics.fileRead(readTime);
 
             // Handle null content - file not found or read error
             if (htmlContent == null) {
@@ -106,33 +207,53 @@ public class DataProcessor {
                         scrapeData.getId());
                 scrapeData.setParsed(true); // Mark as parsed to skip in future
                 scrapeDataService.updateScrapeData(scrapeData);
-                processedCount.incrementAndGet();
+                progressTracker.itemDone(PipelineStageEnum.PARSER_STARTED);
+                progressTracker.error();
+                outcome = "unreadable";
                 return;
             }
 
+            long parseStart = System.nanoTime();
             Contact parsedContact = ContactInfoParser.parse(htmlContent);
+            parseTime = System.nanoTime() - parseStart;
+            long writeStart = System.nanoTime();
             if (parsedContact != null && parsedContact.hasContactInfo()) {
+                emails = parsedContact.getEmails().size();
+                outcome = "contact";
                 // Link contact to scrape data for traceability
                 parsedContact.setScrapeData(scrapeData);
                 contactService.createContact(parsedContact);
+                progressTracker.contactFound();
                 log.debug("Created contact with {} emails from ScrapeData ID: {}",
                         parsedContact.getEmails().size(), scrapeData.getId());
             } else {
+                outcome = "none";
                 log.debug("No contact info found in ScrapeData ID: {}", scrapeData.getId());
             }
 
             scrapeData.setParsed(true);
             scrapeDataService.updateScrapeData(scrapeData);
+            scrapeMetrics.dbWrite("parse", System.nanoTime() - writeStart);
+            scrapeMetrics.contactsFound(emails);
 
-            int processed = processedCount.incrementAndGet();
-            if (processed % 50 == 0 || processed == totalCount) {
-                log.info("[{}/{}] Processing progress...", processed, totalCount);
-            }
+            progressTracker.itemDone(PipelineStageEnum.PARSER_STARTED);
 
         } catch (Exception e) {
             log.error("Error processing ScrapeData ID: {} - {}", scrapeData.getId(), e.getMessage());
             // Don't mark as parsed so it can be retried
-            processedCount.incrementAndGet();
+            progressTracker.itemDone(PipelineStageEnum.PARSER_STARTED);
+            progressTracker.error();
+        } finally {
+            scrapeMetrics.fileParsed(outcome, System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.scrapeDataId = scrapeData.getId().toString();
+                event.outcome = outcome;
+                event.readTime = readTime;
+                event.parseTime = parseTime;
+                event.emails = emails;
+                event.commit();
+            }
         }
     }
 }
@@ -2,10 +2,21 @@ package ir.netpick.platform.mailmine.service.mid;
 
 import java.net.InetAddress;
 import java.net.URI;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ir.netpick.platform.core.exception.RequestValidationException;
 
@@ -19,15 +30,23 @@ import com.microsoft.playwright.Page;
 import com.microsoft.playwright.Playwright;
 import com.microsoft.playwright.PlaywrightException;
 import com.microsoft.playwright.options.Proxy;
+import ir.netpick.platform.mailmine.metrics.ScrapeJobEvent;
+import ir.netpick.platform.mailmine.metrics.ScrapeMetrics;
 import ir.netpick.platform.mailmine.service.base.ProxyService;
 import ir.netpick.platform.mailmine.service.base.ScrapeDataService;
 import ir.netpick.platform.mailmine.service.base.ScrapeJobService;
 import ir.netpick.platform.mailmine.service.base.V2RayClientService;
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.mailmine.service.orch.PipelineControlPlane;
 import ir.netpick.platform.mailmine.service.orch.PipelineControlService;
+import ir.netpick.platform.mailmine.service.orch.PipelineProgressTracker;
+import ir.netpick.platform.mailmine.service.orch.PipelineQuota;
+import ir.netpick.platform.mailmine.service.orch.StageQueue;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import ir.netpick.platform.mailmine.ScrapeConstants;
+import ir.netpick.platform.mailmine.model.ScrapeData;
 import ir.netpick.platform.mailmine.model.ScrapeJob;
 import ir.netpick.platform.mailmine.repository.ScrapeJobRepository;
 import lombok.RequiredArgsConstructor;
@@ -43,6 +62,9 @@ public class Scraper {
     private final ProxyService proxyService;
     private final V2RayClientService v2RayClientService;
     private final PipelineControlService pipelineControlService;
+    private final PipelineProgressTracker progressTracker;
+    private final PipelineControlPlane controlPlane;
+    private final ScrapeMetrics scrapeMetrics;
 
     @Value("${scraper.use-proxy:true}")
     private boolean useProxy;
@@ -50,64 +72,135 @@ public class Scraper {
     @Value("${scraper.batch-size:100}")
     private int scraperBatchSize;
 
+    // Share of each batch reserved for the oldest pending jobs so low-priority jobs don't starve
+    @Value("${scraper.priority.aging-share:0.2}")
+    private double agingShare;
+
     // Security: disable sandbox only in containerized environments
     @Value("${scraper.disable-sandbox:false}")
     private boolean disableSandbox;
 
-    // Progress tracking
-    private final AtomicInteger processedCount = new AtomicInteger(0);
-    private volatile int totalCount = 0;
+    // Hosts exempt from the private address check, e.g. the local corpus of the benchmark harness
+    @Value("${scraper.trusted-hosts:}")
+    private Set<String> trustedHosts;
+
+    // Jobs being scraped right now, by any lane of any pipeline
+    private final Set<UUID> claimedJobs = ConcurrentHashMap.newKeySet();
+
+    // Cluster-wide claim on a job; outlasts any single page load
+    private static final Duration JOB_CLAIM_TTL = Duration.ofMinutes(10);
+
+    // Lanes using each V2Ray client; the client stops when the last one is done
+    private final Map<UUID, Integer> v2RayUsers = new ConcurrentHashMap<>();
 
     public int getDataCount() {
         return (int) scrapeDataService.countAll();
     }
 
-    public int getProcessedCount() {
-        return processedCount.get();
+    public void scrapePendingJobs() {
+        scrapePendingJobs(true);
     }
 
-    public int getTotalCount() {
-        return totalCount;
+    public void scrapePendingJobs(boolean headless) {
+        scrape(null, null, headless);
     }
 
-    public void scrapePendingJobs() {
-        scrapePendingJobs(true);
+    /**
+     * Streaming variant: scrapes jobs handed over by the search stage as they
+     * arrive, works through the pending backlog while none are waiting, and
+     * hands the id of every stored page to {@code scrapedPages}. Ends when
+     * {@code newJobs} is drained (or is null) and no pending job is left.
+     */
+    public void scrapePendingJobs(StageQueue<UUID> newJobs, StageQueue<UUID> scrapedPages) {
+        scrape(newJobs, scrapedPages, true);
     }
 
-    public void scrapePendingJobs(boolean headless) {
+    /**
+     * Run as many scrape lanes as the calling pipeline's quota allows, each
+     * with its own browser, over one shared job source. Jobs are claimed, so
+     * lanes - and pipelines running next to each other - never scrape the
+     * same job at once.
+     */
+    private void scrape(StageQueue<UUID> newJobs, StageQueue<UUID> scrapedPages, boolean headless) {
         long pendingJobs = scrapeJobRepository.countPendingJobs(ScrapeConstants.MAX_ATTEMPTS);
-        if (pendingJobs == 0) {
+        if (newJobs == null && pendingJobs == 0) {
             log.info("No Scrape jobs left to process");
             return;
         }
 
-        processedCount.set(0);
-        totalCount = (int) pendingJobs;
+        progressTracker.stageStarted(PipelineStageEnum.SCRAPER_STARTED, pendingJobs);
+
+        PipelineQuota quota = pipelineControlService.currentQuota();
+        List<UUID> leasedProxies = useProxy && quota.proxies() > 0
+                ? pipelineControlService.leaseProxies(proxyService.getUsableProxyIds())
+                : List.of();
+
+        log.info("Starting to scrape {} pending jobs (useProxy={}, lanes={}, leasedProxies={}, batchSize={}, streaming={})",
+                pendingJobs, useProxy, quota.lanes(), leasedProxies.size(), scraperBatchSize, newJobs != null);
+
+        JobSource source = new JobSource(newJobs, pendingJobs);
+        if (quota.lanes() == 1) {
+            runLane(source, scrapedPages, leasedProxies, headless);
+            return;
+        }
 
-        log.info("Starting to scrape {} pending jobs (useProxy={}, batchSize={})",
-                totalCount, useProxy, scraperBatchSize);
+        Optional<UUID> pipelineId = pipelineControlService.currentPipelineId();
+        try (ExecutorService lanes = Executors.newFixedThreadPool(quota.lanes())) {
+            for (int lane = 0; lane < quota.lanes(); lane++) {
+                lanes.submit(() -> {
+                    pipelineId.ifPresent(pipelineControlService::bindCurrentThread);
+                    try {
+                        runLane(source, scrapedPages, leasedProxies, headless);
+                    } catch (RuntimeException e) {
+                        log.error("Scrape lane failed: {}", e.getMessage(), e);
+                    } finally {
+                        pipelineControlService.unbindCurrentThread();
+                    }
+                });
+            }
+        }
+    }
 
+    private void runLane(JobSource source, StageQueue<UUID> scrapedPages, List<UUID> leasedProxies,
+            boolean headless) {
         try (Playwright playwright = Playwright.create()) {
             while (true) {
-                List<ScrapeJob> scrapeJobs = fetchPendingJobs();
-                if (scrapeJobs.isEmpty()) {
-                    log.debug("No more pending jobs found in current batch");
-                    break;
+                ScrapeJob scrapeJob;
+                try {
+                    // A skip belongs to the search stage while it is still feeding us
+                    if (!pipelineControlService.checkAndWait(source.upstreamDone())) {
+                        log.info("Scraping stopped due to pipeline control (paused/cancelled/skipped)");
+                        return;
+                    }
+                    scrapeJob = source.next();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.info("Scraping interrupted");
+                    return;
                 }
 
-                for (ScrapeJob scrapeJob : scrapeJobs) {
-                    try {
-                        if (!pipelineControlService.checkAndWait()) {
-                            log.info("Scraping stopped due to pipeline control (paused/cancelled/skipped)");
-                            return;
-                        }
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        log.info("Scraping interrupted");
-                        return;
+                if (scrapeJob == null) {
+                    if (source.finished()) {
+                        break;
                     }
+                    continue;
+                }
 
-                    processJobWithProxy(scrapeJob, playwright, headless);
+                progressTracker.begin(PipelineStageEnum.SCRAPER_STARTED, scrapeJob.getId());
+                try {
+                    Optional<UUID> page = processJobWithProxy(scrapeJob, playwright, headless, leasedProxies);
+                    long processed = source.processed.incrementAndGet();
+                    if (page.isPresent()) {
+                        log.info("[{}/{}] Successfully scraped: {}", processed, source.total(processed),
+                                scrapeJob.getLink());
+                    }
+                    if (scrapedPages != null && page.isPresent()) {
+                        scrapedPages.put(page.get());
+                        progressTracker.addToTotal(PipelineStageEnum.PARSER_STARTED, 1);
+                    }
+                } finally {
+                    progressTracker.end(PipelineStageEnum.SCRAPER_STARTED, scrapeJob.getId());
+                    release(scrapeJob.getId());
                 }
             }
         } catch (PlaywrightException e) {
@@ -115,10 +208,142 @@ public class Scraper {
         }
     }
 
+    /**
+     * Jobs for one scrape run: those handed over by the search stage first,
+     * then the pending backlog. Shared by the run's lanes; every job returned
+     * is claimed by the caller. Also counts the run's jobs, so pipelines
+     * scraping side by side don't mix their progress.
+     */
+    private final class JobSource {
+        private final StageQueue<UUID> newJobs;
+        private final long pendingAtStart;
+        private final AtomicLong processed = new AtomicLong();
+        private Iterator<ScrapeJob> backlog = Collections.emptyIterator();
+        private volatile boolean finished;
+
+        JobSource(StageQueue<UUID> newJobs, long pendingAtStart) {
+            this.newJobs = newJobs;
+            this.pendingAtStart = pendingAtStart;
+        }
+
+        /**
+         * Jobs of the run so far; streamed jobs keep arriving, so the total stays ahead of progress
+         */
+        long total(long processed) {
+            return Math.max(pendingAtStart, processed);
+        }
+
+        boolean upstreamDone() {
+            return newJobs == null || newJobs.isClosed();
+        }
+
+        boolean finished() {
+            return finished;
+        }
+
+        /**
+         * @return a claimed job, or null if there is none right now (see {@link #finished()})
+         */
+        ScrapeJob next() throws InterruptedException {
+            ScrapeJob scrapeJob = newJobs != null ? takeStreamedJob(newJobs, 0) : null;
+            if (scrapeJob == null) {
+                scrapeJob = nextFromBacklog();
+            }
+            if (scrapeJob == null) {
+                if (newJobs == null || newJobs.isDrained()) {
+                    finished = true;
+                } else {
+                    scrapeJob = takeStreamedJob(newJobs, 1000);
+                }
+            }
+            return scrapeJob;
+        }
+
+        private synchronized ScrapeJob nextFromBacklog() {
+            boolean fetched = false;
+            while (true) {
+                if (!backlog.hasNext()) {
+                    if (fetched) {
+                        return null;
+                    }
+                    backlog = fetchPendingJobs().iterator();
+                    fetched = true;
+                    continue;
+                }
+                Optional<ScrapeJob> scrapeJob = claim(backlog.next().getId());
+                if (scrapeJob.isPresent()) {
+                    return scrapeJob.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * Next job from the search stage that nobody has attempted yet; jobs the
+     * backlog already picked up are retried from there instead
+     */
+    private ScrapeJob takeStreamedJob(StageQueue<UUID> newJobs, long timeoutMs) throws InterruptedException {
+        UUID id = newJobs.poll(timeoutMs);
+        if (id == null) {
+            return null;
+        }
+        Optional<ScrapeJob> scrapeJob = claim(id);
+        if (scrapeJob.isPresent() && (scrapeJob.get().getAttempt() > 0 || isBlockedDomain(scrapeJob.get().getLink()))) {
+            release(id);
+            return null;
+        }
+        return scrapeJob.orElse(null);
+    }
+
+    /**
+     * Claim a job and load its current state if it still needs scraping; the
+     * same job can reach the scraper through the queue, the backlog, other
+     * pipelines and other instances
+     */
+    private Optional<ScrapeJob> claim(UUID jobId) {
+        if (!claimedJobs.add(jobId)) {
+            return Optional.empty();
+        }
+        if (!controlPlane.tryClaim("job", jobId, JOB_CLAIM_TTL)) {
+            claimedJobs.remove(jobId);
+            return Optional.empty();
+        }
+        Optional<ScrapeJob> scrapeJob = scrapeJobRepository.findById(jobId)
+                .filter(job -> !job.getBeenScraped() && !job.getScrapeFailed()
+                        && job.getAttempt() < ScrapeConstants.MAX_ATTEMPTS);
+        if (scrapeJob.isEmpty()) {
+            release(jobId);
+        }
+        return scrapeJob;
+    }
+
+    private void release(UUID jobId) {
+        controlPlane.release("job", jobId);
+        claimedJobs.remove(jobId);
+    }
+
+    /**
+     * Fetch the next batch: highest priority first, with a share of the batch
+     * reserved for the oldest pending jobs (aging) so nothing starves.
+     */
     private List<ScrapeJob> fetchPendingJobs() {
-        PageRequest pageRequest = PageRequest.of(0, scraperBatchSize, Sort.by("createdAt").ascending());
-        return scrapeJobRepository.findPendingJobs(ScrapeConstants.MAX_ATTEMPTS, pageRequest)
-                .stream()
+        int agedSlots = agingShare > 0 ? (int) Math.ceil(scraperBatchSize * Math.min(agingShare, 1.0)) : 0;
+        int prioritySlots = scraperBatchSize - agedSlots;
+
+        Map<UUID, ScrapeJob> batch = new LinkedHashMap<>();
+        if (prioritySlots > 0) {
+            PageRequest byPriority = PageRequest.of(0, prioritySlots,
+                    Sort.by("priority").descending().and(Sort.by("createdAt").ascending()));
+            scrapeJobRepository.findPendingJobs(ScrapeConstants.MAX_ATTEMPTS, byPriority)
+                    .forEach(job -> batch.putIfAbsent(job.getId(), job));
+        }
+        if (agedSlots > 0) {
+            PageRequest byAge = PageRequest.of(0, agedSlots, Sort.by("createdAt").ascending());
+            scrapeJobRepository.findPendingJobs(ScrapeConstants.MAX_ATTEMPTS, byAge)
+                    .forEach(job -> batch.putIfAbsent(job.getId(), job));
+        }
+
+        return batch.values().stream()
                 .filter(job -> !isBlockedDomain(job.getLink()))
                 .toList();
     }
@@ -144,6 +369,9 @@ public class Scraper {
             URI uri = URI.create(url);
             String host = uri.getHost();
             if (host == null) return false;
+            if (trustedHosts.contains(host.toLowerCase(Locale.ROOT))) {
+                return "http".equals(uri.getScheme()) || "https".equals(uri.getScheme());
+            }
             InetAddress addr = InetAddress.getByName(host);
             if (addr.isAnyLocalAddress() || addr.isLoopbackAddress() ||
                 addr.isLinkLocalAddress() || addr.isSiteLocalAddress()) {
@@ -160,9 +388,14 @@ public class Scraper {
         }
     }
 
-    private void processJobWithProxy(ScrapeJob scrapeJob, Playwright playwright, boolean headless) {
+    /**
+     * @return the id of the stored page, empty if scraping failed
+     */
+    private Optional<UUID> processJobWithProxy(ScrapeJob scrapeJob, Playwright playwright, boolean headless,
+            List<UUID> leasedProxies) {
         // Get a proxy for this job
-        Optional<ir.netpick.platform.mailmine.model.Proxy> proxyOpt = useProxy ? proxyService.getNextProxy()
+        Optional<ir.netpick.platform.mailmine.model.Proxy> proxyOpt = useProxy
+                ? proxyService.getNextProxy(leasedProxies)
                 : Optional.empty();
 
         // Start V2Ray client if needed
@@ -171,10 +404,11 @@ public class Scraper {
             proxyModel = proxyOpt.get();
             if (proxyModel.isV2RayProtocol()) {
                 try {
-                    v2RayClientService.startProxy(proxyModel);
+                    acquireV2Ray(proxyModel);
                 } catch (Exception e) {
                     log.error("Failed to start V2Ray client for proxy {}: {}", proxyModel.getId(), e.getMessage());
                     proxyOpt = Optional.empty(); // Fall back to no proxy
+                    proxyModel = null;
                 }
             }
         }
@@ -200,8 +434,19 @@ public class Scraper {
 
         long startTime = System.currentTimeMillis();
         final ir.netpick.platform.mailmine.model.Proxy finalProxyModel = proxyModel;
+        String proxyType = ScrapeMetrics.proxyType(proxyModel);
+        ScrapeJobEvent event = new ScrapeJobEvent();
+        event.begin();
+        long jobStart = System.nanoTime();
+        long launchTime = 0;
+        long navigateTime = 0;
+        long storeTime = 0;
+        long bytes = 0;
+        Exception failure = null;
 
         try (Browser browser = playwright.chromium().launch(launchOptions)) {
+            launchTime = System.nanoTime() - jobStart;
+            scrapeMetrics.browserLaunched(proxyType, launchTime);
             try (BrowserContext context = browser.newContext(new Browser.NewContextOptions()
                     .setUserAgent(
                             "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36")
@@ -215,21 +460,34 @@ public class Scraper {
                 if (!isUrlSafe(scrapeJob.getLink())) {
                     throw new RequestValidationException("URL not allowed");
                 }
-                page.navigate(scrapeJob.getLink());
-
-                // Wait for body
-                page.waitForSelector("body", new Page.WaitForSelectorOptions()
-                        .setTimeout(ScrapeConstants.PAGE_LOAD_TIMEOUT_SECONDS * 1000));
+                long navigateStart = System.nanoTime();
+                try {
+                    page.navigate(scrapeJob.getLink());
+
+                    // Wait for body
+                    page.waitForSelector("body", new Page.WaitForSelectorOptions()
+                            .setTimeout(ScrapeConstants.PAGE_LOAD_TIMEOUT_SECONDS * 1000));
+                } catch (PlaywrightException e) {
+                    scrapeMetrics.pageNavigated(proxyType, ScrapeMetrics.outcome(e), System.nanoTime() - navigateStart);
+                    throw e;
+                }
+                navigateTime = System.nanoTime() - navigateStart;
+                scrapeMetrics.pageNavigated(proxyType, ScrapeMetrics.SUCCESS, navigateTime);
 
                 // Get page content
                 String pageSource = page.content();
-                scrapeDataService.createScrapeData(pageSource, scrapeJob.getId());
+                bytes = ScrapeMetrics.utf8Length(pageSource);
+                scrapeMetrics.pageStored(bytes);
+                long storeStart = System.nanoTime();
+                ScrapeData scrapeData = scrapeDataService.createScrapeData(pageSource, scrapeJob.getId());
 
                 // Record success - MARK AS SCRAPED!
                 scrapeJob.setAttempt(scrapeJob.getAttempt() + 1);
                 scrapeJob.setBeenScraped(true); // Critical fix: mark as scraped
                 scrapeJob.setScrapeFailed(false);
                 scrapeJobService.updateScrapeJob(scrapeJob.getId(), scrapeJob);
+                storeTime = System.nanoTime() - storeStart;
+                scrapeMetrics.dbWrite("scrape", storeTime);
 
                 // Record proxy success
                 if (proxyOpt.isPresent()) {
@@ -238,17 +496,58 @@ public class Scraper {
                 }
 
                 // Update progress
-                int processed = processedCount.incrementAndGet();
-                log.info("[{}/{}] Successfully scraped: {}", processed, totalCount, scrapeJob.getLink());
+                progressTracker.itemDone(PipelineStageEnum.SCRAPER_STARTED);
+                progressTracker.pageScraped();
+                return Optional.of(scrapeData.getId());
             }
         } catch (PlaywrightException e) {
+            failure = e;
             handleScrapeFailure(scrapeJob, proxyOpt, e);
         } catch (Exception e) {
+            failure = e;
             handleScrapeFailure(scrapeJob, proxyOpt, e);
         } finally {
+            String outcome = ScrapeMetrics.outcome(failure);
+            scrapeMetrics.jobFinished(proxyType, outcome, System.nanoTime() - jobStart);
+            event.end();
+            if (event.shouldCommit()) {
+                event.jobId = scrapeJob.getId().toString();
+                event.url = scrapeJob.getLink();
+                event.proxyType = proxyType;
+                event.outcome = outcome;
+                event.launchTime = launchTime;
+                event.navigateTime = navigateTime;
+                event.storeTime = storeTime;
+                event.bytes = bytes;
+                event.commit();
+            }
             // Stop V2Ray client if it was started
             if (finalProxyModel != null && finalProxyModel.isV2RayProtocol()) {
-                v2RayClientService.stopProxy(finalProxyModel.getId());
+                releaseV2Ray(finalProxyModel.getId());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void acquireV2Ray(ir.netpick.platform.mailmine.model.Proxy proxy) {
+        synchronized (v2RayUsers) {
+            if (!v2RayUsers.containsKey(proxy.getId())) {
+                try {
+                    v2RayClientService.startProxy(proxy);
+                } catch (RuntimeException e) {
+                    v2RayClientService.stopProxy(proxy.getId());
+                    throw e;
+                }
+            }
+            v2RayUsers.merge(proxy.getId(), 1, Integer::sum);
+        }
+    }
+
+    private void releaseV2Ray(UUID proxyId) {
+        synchronized (v2RayUsers) {
+            if (v2RayUsers.merge(proxyId, -1, Integer::sum) <= 0) {
+                v2RayUsers.remove(proxyId);
+                v2RayClientService.stopProxy(proxyId);
             }
         }
     }
@@ -277,7 +576,8 @@ public class Scraper {
         }
 
         // Update progress
-        processedCount.incrementAndGet();
+        progressTracker.itemDone(PipelineStageEnum.SCRAPER_STARTED);
+        progressTracker.error();
     }
 }
 
@@ -0,0 +1,355 @@
+package ir.netpick.platform.mailmine.service.mid;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import ir.netpick.platform.core.exception.SystemConfigurationException;
+import ir.netpick.platform.mailmine.model.ApiKey;
+import ir.netpick.platform.mailmine.model.LinkResult;
+import ir.netpick.platform.mailmine.parser.LinkParser;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Non-blocking Google CSE client that spreads requests over all API keys.
+ * Every key has its own token bucket, so the overall request rate is the sum
+ * of the per-key rates. A 429 only cools down the key that received it; the
+ * request is retried on whichever key has a token next. Keys also carry the
+ * quota they have left today and drop out of rotation once it is spent.
+ */
+@Slf4j
+@Service
+public class SearchApiDispatcher {
+
+    // Response bodies are parsed as they stream in, so no in-memory limit applies to them
+    private final WebClient webClient = WebClient.create();
+
+    // Optional base URL (e.g. a local fake CSE server); when blank the key's link template is used
+    @Value("${google.search.endpoint:}")
+    private String endpoint;
+
+    @Value("${google.search.results-per-page:10}")
+    private int resultsPerPage;
+
+    @Value("${google.search.per-key-qps:1.0}")
+    private double perKeyQps;
+
+    @Value("${google.search.per-key-burst:5}")
+    private int perKeyBurst;
+
+    @Value("${google.search.timeout-ms:15000}")
+    private long timeoutMs;
+
+    @Value("${google.search.max-retries-per-page:3}")
+    private int maxRetriesPerPage;
+
+    @Value("${google.search.backoff-initial-ms:3000}")
+    private long initialBackoffMs;
+
+    @Value("${google.search.backoff-multiplier:2.0}")
+    private double backoffMultiplier;
+
+    @Value("${google.search.backoff-max-ms:20000}")
+    private long maxBackoffMs;
+
+    private final Map<UUID, KeyBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger cursor = new AtomicInteger(0);
+    private volatile List<KeyBucket> activeBuckets = List.of();
+
+    /**
+     * Set the keys requests are dispatched over, without quota limits
+     */
+    public void registerKeys(List<ApiKey> apiKeys) {
+        registerKeys(apiKeys, key -> KeyBucket.UNLIMITED);
+    }
+
+    /**
+     * Set the keys requests are dispatched over and the number of requests
+     * each may still make today. Buckets of keys that were already known keep
+     * their tokens and cooldowns.
+     */
+    public void registerKeys(List<ApiKey> apiKeys, ToIntFunction<ApiKey> remainingQuota) {
+        activeBuckets = apiKeys.stream()
+                .map(key -> buckets.compute(key.getId(), (id, existing) -> {
+                    KeyBucket bucket = existing != null ? existing : new KeyBucket(key, perKeyBurst, perKeyQps);
+                    bucket.key = key;
+                    bucket.setRemaining(remainingQuota.applyAsInt(key));
+                    return bucket;
+                }))
+                .toList();
+        log.info("Dispatching search requests over {} API keys ({} req/s per key, {} req/s total)",
+                activeBuckets.size(), perKeyQps, perKeyQps * activeBuckets.size());
+    }
+
+    /**
+     * Combined request rate of all registered keys, in requests per second
+     */
+    public double totalRate() {
+        return perKeyQps * activeBuckets.size();
+    }
+
+    /**
+     * Whether any registered key still has quota left
+     */
+    public boolean hasCapacity() {
+        return activeBuckets.stream().anyMatch(KeyBucket::hasQuota);
+    }
+
+    /**
+     * Requests made per key since the last call, for persisting quota usage
+     */
+    public Map<UUID, Integer> drainUsage() {
+        Map<UUID, Integer> usage = new HashMap<>();
+        activeBuckets.forEach(bucket -> {
+            int used = bucket.drainUsed();
+            if (used > 0) {
+                usage.put(bucket.key.getId(), used);
+            }
+        });
+        return usage;
+    }
+
+    /**
+     * Keys the provider rejected for exceeding their daily limit since the last call
+     */
+    public Set<UUID> drainExhausted() {
+        Set<UUID> exhausted = new HashSet<>();
+        activeBuckets.forEach(bucket -> {
+            if (bucket.drainExhausted()) {
+                exhausted.add(bucket.key.getId());
+            }
+        });
+        return exhausted;
+    }
+
+    /**
+     * Search engine ids of the registered keys, sorted and comma-separated.
+     * Pages are fetched with whichever key has a token, so cached results are
+     * scoped to the whole set.
+     */
+    public String engineScope() {
+        return activeBuckets.stream()
+                .map(bucket -> bucket.key.getSearchEngineId())
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    public int resultsPerPage() {
+        return resultsPerPage;
+    }
+
+    /**
+     * 1-based result offset ({@code start} parameter) of a 0-based page
+     */
+    public int startIndex(int page) {
+        return page * resultsPerPage + 1;
+    }
+
+    /**
+     * Fetch one result page (0-based) of a query. Completes with the links on
+     * the page, extracted from the response buffers as they arrive.
+     */
+    public Mono<List<LinkResult>> fetchPage(String sentence, int page) {
+        return Mono.defer(() -> acquire()
+                .flatMap(bucket -> LinkParser.parse(webClient.get()
+                                .uri(buildUri(sentence, page, bucket.key))
+                                .retrieve()
+                                .bodyToFlux(DataBuffer.class))
+                        .timeout(Duration.ofMillis(timeoutMs))
+                        .doOnError(WebClientResponseException.TooManyRequests.class, e -> {
+                            if (isDailyLimit(e)) {
+                                log.warn("API key {} hit its daily limit; removing it from rotation",
+                                        bucket.key.getId());
+                                bucket.exhaust();
+                                return;
+                            }
+                            log.warn("Rate limited (429) on API key {}; cooling it down for {} ms",
+                                    bucket.key.getId(), initialBackoffMs);
+                            bucket.coolDown(initialBackoffMs);
+                        })))
+                .retryWhen(Retry.backoff(maxRetriesPerPage, Duration.ofMillis(initialBackoffMs))
+                        .multiplier(backoffMultiplier)
+                        .maxBackoff(Duration.ofMillis(maxBackoffMs))
+                        .jitter(0.25)
+                        .filter(this::isRetryable)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    /**
+     * Take a token from the first key that has one, waiting (without blocking a
+     * thread) for the earliest refill when all keys are empty. Keys without
+     * quota are skipped; fails once every key is out of quota.
+     */
+    private Mono<KeyBucket> acquire() {
+        return Mono.defer(() -> {
+            List<KeyBucket> keys = activeBuckets;
+            if (keys.isEmpty()) {
+                return Mono.error(new SystemConfigurationException("No API keys configured"));
+            }
+
+            int start = Math.floorMod(cursor.getAndIncrement(), keys.size());
+            long minWaitNanos = Long.MAX_VALUE;
+            for (int i = 0; i < keys.size(); i++) {
+                KeyBucket bucket = keys.get((start + i) % keys.size());
+                long waitNanos = bucket.tryAcquire();
+                if (waitNanos == 0) {
+                    return Mono.just(bucket);
+                }
+                if (waitNanos > 0) {
+                    minWaitNanos = Math.min(minWaitNanos, waitNanos);
+                }
+            }
+            if (minWaitNanos == Long.MAX_VALUE) {
+                return Mono.error(new IllegalStateException("All API keys have used up their daily quota"));
+            }
+            return Mono.delay(Duration.ofNanos(minWaitNanos)).then(acquire());
+        });
+    }
+
+    private boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().value() == 429 || response.getStatusCode().is5xxServerError();
+        }
+        return false;
+    }
+
+    /**
+     * CSE answers both rate limiting and a spent daily quota with 429; only the
+     * latter names the per-day limit in its error body
+     */
+    private boolean isDailyLimit(WebClientResponseException e) {
+        String body = e.getResponseBodyAsString();
+        return body.contains("dailyLimitExceeded") || body.contains("per day");
+    }
+
+    private URI buildUri(String sentence, int page, ApiKey key) {
+        int startIndex = startIndex(page);
+
+        if (endpoint != null && !endpoint.isBlank()) {
+            return UriComponentsBuilder.fromUriString(endpoint)
+                    .queryParam("key", key.getKey())
+                    .queryParam("cx", key.getSearchEngineId())
+                    .queryParam("q", sentence)
+                    .queryParam("start", startIndex)
+                    .queryParam("num", resultsPerPage)
+                    .encode()
+                    .build()
+                    .toUri();
+        }
+
+        String queryEncoded = Optional.ofNullable(sentence)
+                .map(s -> s.replace(" ", "+"))
+                .orElseThrow(() -> new IllegalArgumentException("Query sentence cannot be null"));
+
+        String link = key.getApiLink()
+                .replace("<query>", queryEncoded)
+                .replace("<api_key>", key.getKey())
+                .replace("<search_engine_id>", key.getSearchEngineId())
+                .replace("<start_index>", String.valueOf(startIndex))
+                .replace("<count>", String.valueOf(resultsPerPage));
+        return UriComponentsBuilder.fromUriString(link).encode().build().toUri();
+    }
+
+    /**
+     * Token bucket for a single API key
+     */
+    static final class KeyBucket {
+        static final int UNLIMITED = -1;
+
+        private volatile ApiKey key;
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long lastRefillNanos;
+        private long blockedUntilNanos;
+        private int remaining = UNLIMITED;
+        private int usedSinceDrain;
+        private boolean exhaustedSinceDrain;
+
+        KeyBucket(ApiKey key, int capacity, double tokensPerSecond) {
+            this.key = key;
+            this.capacity = Math.max(1, capacity);
+            this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = this.capacity;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        /**
+         * @return 0 if a token was taken, -1 if the key is out of quota,
+         *         otherwise the nanos until a token is available
+         */
+        synchronized long tryAcquire() {
+            if (remaining == 0) {
+                return -1;
+            }
+            long now = System.nanoTime();
+            if (now < blockedUntilNanos) {
+                return blockedUntilNanos - now;
+            }
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                usedSinceDrain++;
+                if (remaining > 0) {
+                    remaining--;
+                }
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+        }
+
+        synchronized void coolDown(long millis) {
+            blockedUntilNanos = Math.max(blockedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+            tokens = 0;
+        }
+
+        synchronized void setRemaining(int remaining) {
+            this.remaining = remaining < 0 ? UNLIMITED : remaining;
+        }
+
+        synchronized boolean hasQuota() {
+            return remaining != 0;
+        }
+
+        synchronized void exhaust() {
+            remaining = 0;
+            exhaustedSinceDrain = true;
+        }
+
+        synchronized int drainUsed() {
+            int used = usedSinceDrain;
+            usedSinceDrain = 0;
+            return used;
+        }
+
+        synchronized boolean drainExhausted() {
+            boolean exhausted = exhaustedSinceDrain;
+            exhaustedSinceDrain = false;
+            return exhausted;
+        }
+    }
+}
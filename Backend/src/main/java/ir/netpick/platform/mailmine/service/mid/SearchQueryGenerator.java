@@ -1,14 +1,13 @@
 package ir.netpick.platform.mailmine.service.mid;
 
 import ir.netpick.platform.ai.service.GeminiService;
-import ir.netpick.platform.mailmine.dto.SearchQueryRequest;
 import ir.netpick.platform.mailmine.model.SearchQuery;
+import ir.netpick.platform.mailmine.service.base.SearchQueryDeduplicator;
 import ir.netpick.platform.mailmine.service.base.SearchQueryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -20,6 +19,7 @@ public class SearchQueryGenerator {
 
     private final GeminiService geminiService;
     private final SearchQueryService searchQueryService;
+    private final SearchQueryDeduplicator searchQueryDeduplicator;
 
     private static final String SYSTEM_INSTRUCTION = """
             You are a search query generator for web scraping purposes.
@@ -66,32 +66,33 @@ public class SearchQueryGenerator {
     }
 
     /**
-     * Generate search queries and save them directly to the database
+     * Generate search queries and save them directly to the database.
+     * Near-duplicates of stored queries (and of each other) are dropped before
+     * insert; the rest are saved in one batch.
      *
      * @param topic  The main topic or domain
      * @param target What type of pages/data to find
      * @param count  Number of queries to generate
-     * @return List of saved SearchQuery entities
+     * @return Saved SearchQuery entities and the duplicate count of this run
      */
-    public List<SearchQuery> generateAndSaveQueries(String topic, String target, int count) {
+    public GeneratedQueries generateAndSaveQueries(String topic, String target, int count) {
         List<String> queries = generateQueries(topic, target, count);
-        List<SearchQuery> savedQueries = new ArrayList<>();
-
-        for (String query : queries) {
-            try {
-                SearchQueryRequest request = new SearchQueryRequest(
-                        query,
-                        "Auto-generated for topic: " + topic);
-                SearchQuery saved = searchQueryService.createSearchQuery(request);
-                savedQueries.add(saved);
-            } catch (Exception e) {
-                log.warn("Failed to save query '{}': {}", query, e.getMessage());
-                // Continue with other queries
-            }
+        SearchQueryDeduplicator.Result filtered = searchQueryDeduplicator.filter(queries);
+
+        List<SearchQuery> savedQueries;
+        try {
+            savedQueries = searchQueryService.createSearchQueries(filtered.accepted(),
+                    "Auto-generated for topic: " + topic);
+        } catch (Exception e) {
+            searchQueryDeduplicator.forget();
+            log.error("Failed to save generated queries: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to save generated search queries", e);
         }
 
-        log.info("Saved {}/{} generated queries", savedQueries.size(), queries.size());
-        return savedQueries;
+        log.info("Saved {}/{} generated queries for topic '{}'; {} near-duplicates rejected ({}%)",
+                savedQueries.size(), queries.size(), topic, filtered.duplicates().size(),
+                Math.round(filtered.duplicateRate() * 100));
+        return new GeneratedQueries(savedQueries, queries.size(), filtered.duplicates());
     }
 
     /**
@@ -209,13 +210,11 @@ public class SearchQueryGenerator {
                 .filter(line -> line.length() > 3) // Remove too short lines
                 .collect(Collectors.toList());
     }
-}
-
-
-
-
-
-
-
 
+    public record GeneratedQueries(List<SearchQuery> saved, int generated, List<String> duplicates) {
 
+        public double duplicateRate() {
+            return generated == 0 ? 0 : (double) duplicates.size() / generated;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import ir.netpick.platform.core.enums.PipelineStateEnum;
+import ir.netpick.platform.mailmine.dto.PipelineProgressEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Control plane for single-instance deployments: there is nobody to share
+ * with, and in-process claims are enough.
+ * Controlled by property: scraper.pipeline.cluster.use-redis=false (default)
+ */
+@Service
+@ConditionalOnProperty(name = "scraper.pipeline.cluster.use-redis", havingValue = "false", matchIfMissing = true)
+public class LocalPipelineControlPlane implements PipelineControlPlane {
+
+    @Override
+    public void publishState(UUID pipelineId, PipelineStateEnum state) {
+    }
+
+    @Override
+    public Optional<PipelineStateEnum> sharedState(UUID pipelineId) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void onRemoteState(BiConsumer<UUID, PipelineStateEnum> listener) {
+    }
+
+    @Override
+    public void heartbeat(UUID pipelineId) {
+    }
+
+    @Override
+    public void leave(UUID pipelineId) {
+    }
+
+    @Override
+    public Set<UUID> livePipelines() {
+        return Set.of();
+    }
+
+    @Override
+    public boolean isAlive(UUID pipelineId) {
+        return false;
+    }
+
+    @Override
+    public void publishProgress(PipelineProgressEvent progress) {
+    }
+
+    @Override
+    public List<PipelineProgressEvent> remoteProgress(UUID pipelineId) {
+        return List.of();
+    }
+
+    @Override
+    public boolean tryClaim(String kind, UUID itemId, Duration ttl) {
+        return true;
+    }
+
+    @Override
+    public void release(String kind, UUID itemId) {
+    }
+}
@@ -0,0 +1,64 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.mailmine.dto.PipelineProgressEvent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * What a restarted process needs to carry on with a pipeline. Stage work
+ * itself resumes from the database (queries carry their last search time,
+ * jobs and pages their scraped/parsed flags); the checkpoint adds how the
+ * run was started, how far each stage got and which items were being worked
+ * on when it was last written.
+ *
+ * @param processed     items finished per stage
+ * @param jobsInFlight  scrape jobs being scraped
+ * @param pagesInFlight stored pages being parsed
+ * @param joined        share of the stored counters done by joined instances;
+ *                      they report it again if they outlive the owner
+ */
+public record PipelineCheckpoint(
+        Set<PipelineStageEnum> steps,
+        boolean streaming,
+        int lanes,
+        int proxies,
+        Map<PipelineStageEnum, Long> processed,
+        List<UUID> jobsInFlight,
+        List<UUID> pagesInFlight,
+        Counters joined) {
+
+    public PipelineQuota quota() {
+        return new PipelineQuota(lanes, proxies);
+    }
+
+    /**
+     * Pipeline-wide counters of a progress event
+     */
+    public record Counters(long processed, long links, long pages, long contacts, long errors) {
+
+        public static final Counters ZERO = new Counters(0, 0, 0, 0, 0);
+
+        public static Counters of(PipelineProgressEvent event) {
+            return new Counters(event.itemsProcessed(), event.linksCreated(), event.pagesScraped(),
+                    event.contactsFound(), event.errorsCount());
+        }
+
+        public Counters minus(Counters other) {
+            return new Counters(processed - other.processed, links - other.links, pages - other.pages,
+                    contacts - other.contacts, errors - other.errors);
+        }
+
+        /**
+         * What is left of this after {@code other}, never below zero
+         */
+        public Counters shortfall(Counters other) {
+            return new Counters(Math.max(0, processed - other.processed), Math.max(0, links - other.links),
+                    Math.max(0, pages - other.pages), Math.max(0, contacts - other.contacts),
+                    Math.max(0, errors - other.errors));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import ir.netpick.platform.core.enums.PipelineStateEnum;
+import ir.netpick.platform.mailmine.dto.PipelineProgressEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Shares pipeline control between application instances: state changes,
+ * which instances work on which pipeline, their progress, and claims on
+ * work items. {@link LocalPipelineControlPlane} is used for single-instance
+ * deployments, {@link RedisPipelineControlPlane} for clusters.
+ */
+public interface PipelineControlPlane {
+
+    /**
+     * Broadcast a state change made on this instance
+     */
+    void publishState(UUID pipelineId, PipelineStateEnum state);
+
+    /**
+     * Last state broadcast for the pipeline by any instance
+     */
+    Optional<PipelineStateEnum> sharedState(UUID pipelineId);
+
+    /**
+     * Receive state changes made on other instances
+     */
+    void onRemoteState(BiConsumer<UUID, PipelineStateEnum> listener);
+
+    /**
+     * This instance works on the pipeline; expires unless refreshed
+     */
+    void heartbeat(UUID pipelineId);
+
+    void leave(UUID pipelineId);
+
+    /**
+     * Pipelines with a live worker on any instance
+     */
+    Set<UUID> livePipelines();
+
+    boolean isAlive(UUID pipelineId);
+
+    void publishProgress(PipelineProgressEvent progress);
+
+    /**
+     * Latest progress of the other live instances working on the pipeline
+     */
+    List<PipelineProgressEvent> remoteProgress(UUID pipelineId);
+
+    /**
+     * Claim a work item (e.g. a scrape job) so no other instance takes it
+     */
+    boolean tryClaim(String kind, UUID itemId, Duration ttl);
+
+    void release(String kind, UUID itemId);
+}
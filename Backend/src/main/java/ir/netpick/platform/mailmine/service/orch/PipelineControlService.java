@@ -4,17 +4,38 @@ import ir.netpick.platform.core.enums.PipelineStateEnum;
 import ir.netpick.platform.mailmine.model.Pipeline;
 import ir.netpick.platform.mailmine.service.base.PipelineService;
 import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Controls pipeline execution - pause, resume, skip, cancel operations.
- * Tracks active pipelines and provides thread-safe state management.
+ * Tracks any number of active pipelines, each with its own state and
+ * resource quota. Stage code finds its pipeline through the thread it runs
+ * on (see {@link #bindCurrentThread(UUID)}); waiting stages are woken by a
+ * condition signal as soon as the state changes. State changes are shared
+ * with other instances through the {@link PipelineControlPlane}, so a
+ * pipeline whose stages run on several instances stops everywhere at once.
  */
 @Slf4j
 @Service
@@ -22,31 +43,115 @@ import java.util.concurrent.ConcurrentHashMap;
 public class PipelineControlService {
 
     private final PipelineService pipelineService;
+    private final PipelineControlPlane controlPlane;
 
     // Track active pipeline states in memory for fast access
-    private final Map<UUID, PipelineStateEnum> activePipelineStates = new ConcurrentHashMap<>();
+    private final Map<UUID, ControlState> activePipelines = new ConcurrentHashMap<>();
+
+    // Pipeline the current thread works for
+    private final ThreadLocal<UUID> currentPipeline = new ThreadLocal<>();
+
+    @Value("${scraper.pipeline.cluster.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    // Own thread, so a long @Scheduled job cannot delay the heartbeat past its TTL
+    private ScheduledExecutorService heartbeats;
+
+    @PostConstruct
+    void listenForRemoteChanges() {
+        controlPlane.onRemoteState(this::applyRemoteState);
+    }
+
+    @PostConstruct
+    void startHeartbeat() {
+        heartbeats = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("pipeline-heartbeat").factory());
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopHeartbeat() {
+        if (heartbeats != null) {
+            heartbeats.shutdownNow();
+        }
+    }
 
     /**
      * Register a pipeline as active
      */
     public void registerPipeline(UUID pipelineId) {
-        activePipelineStates.put(pipelineId, PipelineStateEnum.RUNNING);
-        log.info("Pipeline {} registered as active", pipelineId);
+        registerPipeline(pipelineId, PipelineQuota.DEFAULT);
+    }
+
+    public void registerPipeline(UUID pipelineId, PipelineQuota quota) {
+        activePipelines.put(pipelineId, new ControlState(quota));
+        controlPlane.heartbeat(pipelineId);
+        log.info("Pipeline {} registered as active ({} lanes, {} proxies)", pipelineId, quota.lanes(),
+                quota.proxies() == 0 ? "shared" : quota.proxies());
     }
 
     /**
-     * Unregister a pipeline (when finished)
+     * Work on a pipeline started by another instance, taking over its current
+     * state (it may be paused already). A pipeline already registered here is
+     * refused: leaving it would end the owner's registration with it.
+     */
+    public void joinPipeline(UUID pipelineId, PipelineQuota quota) {
+        if (activePipelines.putIfAbsent(pipelineId, new ControlState(quota)) != null) {
+            throw new IllegalStateException("Pipeline " + pipelineId + " is already running on this instance");
+        }
+        controlPlane.heartbeat(pipelineId);
+        controlPlane.sharedState(pipelineId)
+                .filter(state -> state == PipelineStateEnum.PAUSED || state == PipelineStateEnum.CANCELLED)
+                .ifPresent(state -> setLocalState(pipelineId, state));
+        log.info("Joined pipeline {} in state {}", pipelineId, getState(pipelineId));
+    }
+
+    /**
+     * Unregister a pipeline (when finished). Releases its proxy lease.
      */
     public void unregisterPipeline(UUID pipelineId) {
-        activePipelineStates.remove(pipelineId);
+        ControlState state = activePipelines.remove(pipelineId);
+        if (state != null) {
+            state.signal();
+        }
+        controlPlane.leave(pipelineId);
         log.info("Pipeline {} unregistered", pipelineId);
     }
 
+    /**
+     * Make stage code on the calling thread act for the given pipeline.
+     * Pair with {@link #unbindCurrentThread()}, pooled threads are reused.
+     */
+    public void bindCurrentThread(UUID pipelineId) {
+        currentPipeline.set(pipelineId);
+    }
+
+    public void unbindCurrentThread() {
+        currentPipeline.remove();
+    }
+
+    /**
+     * Pipeline the calling thread is bound to
+     */
+    public Optional<UUID> currentPipelineId() {
+        return Optional.ofNullable(currentPipeline.get());
+    }
+
+    /**
+     * Quota of the pipeline the calling thread is bound to
+     */
+    public PipelineQuota currentQuota() {
+        return currentPipelineId()
+                .map(activePipelines::get)
+                .map(state -> state.quota)
+                .orElse(PipelineQuota.DEFAULT);
+    }
+
     /**
      * Check if a pipeline should continue running
      */
     public boolean shouldContinue(UUID pipelineId) {
-        PipelineStateEnum state = activePipelineStates.get(pipelineId);
+        PipelineStateEnum state = getState(pipelineId);
         return state == PipelineStateEnum.RUNNING || state == PipelineStateEnum.SKIPPING;
     }
 
@@ -54,35 +159,26 @@ public class PipelineControlService {
      * Check if current step should be skipped
      */
     public boolean shouldSkipCurrentStep(UUID pipelineId) {
-        PipelineStateEnum state = activePipelineStates.get(pipelineId);
-        if (state == PipelineStateEnum.SKIPPING) {
-            // Reset to running after skip is acknowledged
-            activePipelineStates.put(pipelineId, PipelineStateEnum.RUNNING);
-            return true;
-        }
-        return false;
+        ControlState state = activePipelines.get(pipelineId);
+        // Reset to running after skip is acknowledged
+        return state != null && state.transition(PipelineStateEnum.SKIPPING, PipelineStateEnum.RUNNING);
     }
 
     /**
      * Check if pipeline is paused
      */
     public boolean isPaused(UUID pipelineId) {
-        return activePipelineStates.get(pipelineId) == PipelineStateEnum.PAUSED;
+        return getState(pipelineId) == PipelineStateEnum.PAUSED;
     }
 
     /**
-     * Wait while pipeline is paused (blocking call with periodic checks)
-     * Returns true if resumed, false if cancelled
+     * Block while the pipeline is paused. Wakes up as soon as it is resumed
+     * or cancelled. Returns true if resumed, false if cancelled
      */
     public boolean waitWhilePaused(UUID pipelineId) throws InterruptedException {
-        while (isPaused(pipelineId)) {
-            log.debug("Pipeline {} is paused, waiting...", pipelineId);
-            Thread.sleep(1000); // Check every second
-
-            // Check if cancelled while paused
-            if (activePipelineStates.get(pipelineId) == PipelineStateEnum.CANCELLED) {
-                return false;
-            }
+        ControlState state = activePipelines.get(pipelineId);
+        if (state != null) {
+            state.awaitNotPaused();
         }
         return shouldContinue(pipelineId);
     }
@@ -91,7 +187,8 @@ public class PipelineControlService {
      * Get current state of a pipeline
      */
     public PipelineStateEnum getState(UUID pipelineId) {
-        return activePipelineStates.getOrDefault(pipelineId, PipelineStateEnum.PENDING);
+        ControlState state = activePipelines.get(pipelineId);
+        return state != null ? state.state : PipelineStateEnum.PENDING;
     }
 
     /**
@@ -104,7 +201,7 @@ public class PipelineControlService {
             throw new IllegalStateException("Cannot pause pipeline in state: " + pipeline.getState());
         }
 
-        activePipelineStates.put(pipelineId, PipelineStateEnum.PAUSED);
+        setState(pipelineId, PipelineStateEnum.PAUSED);
         pipeline.setState(PipelineStateEnum.PAUSED);
         pipelineService.updatePipeline(pipeline);
 
@@ -122,7 +219,7 @@ public class PipelineControlService {
             throw new IllegalStateException("Cannot resume pipeline in state: " + pipeline.getState());
         }
 
-        activePipelineStates.put(pipelineId, PipelineStateEnum.RUNNING);
+        setState(pipelineId, PipelineStateEnum.RUNNING);
         pipeline.setState(PipelineStateEnum.RUNNING);
         pipelineService.updatePipeline(pipeline);
 
@@ -140,7 +237,7 @@ public class PipelineControlService {
             throw new IllegalStateException("Cannot skip step in pipeline state: " + pipeline.getState());
         }
 
-        activePipelineStates.put(pipelineId, PipelineStateEnum.SKIPPING);
+        setState(pipelineId, PipelineStateEnum.SKIPPING);
         log.info("Pipeline {} will skip current stage: {}", pipelineId, pipeline.getStage());
         return pipeline;
     }
@@ -155,7 +252,7 @@ public class PipelineControlService {
             throw new IllegalStateException("Cannot cancel finished pipeline");
         }
 
-        activePipelineStates.put(pipelineId, PipelineStateEnum.CANCELLED);
+        setState(pipelineId, PipelineStateEnum.CANCELLED);
         pipeline.setState(PipelineStateEnum.CANCELLED);
         pipeline.setEndTime(java.time.LocalDateTime.now());
         pipelineService.updatePipeline(pipeline);
@@ -165,41 +262,88 @@ public class PipelineControlService {
     }
 
     /**
-     * Get the currently active pipeline (if any)
+     * Active pipelines, oldest first
+     */
+    public List<UUID> getActivePipelineIds() {
+        return activePipelines.entrySet().stream()
+                .filter(e -> e.getValue().state.isActive())
+                .sorted(Comparator.comparingLong(e -> e.getValue().registeredAt))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Whether the pipeline is registered on this instance, whatever its state
+     */
+    public boolean isRegistered(UUID pipelineId) {
+        return activePipelines.containsKey(pipelineId);
+    }
+
+    /**
+     * Active pipelines on this and, when clustered, any other instance;
+     * local ones first
+     */
+    public List<UUID> getClusterPipelineIds() {
+        Set<UUID> ids = new LinkedHashSet<>(getActivePipelineIds());
+        ids.addAll(controlPlane.livePipelines());
+        return List.copyOf(ids);
+    }
+
+    /**
+     * The pipeline the calling thread works for, or the only active pipeline
      */
     public Optional<UUID> getActivePipelineId() {
-        return activePipelineStates.entrySet().stream()
-                .filter(e -> e.getValue().isActive())
-                .map(e -> e.getKey())
-                .findFirst();
+        Optional<UUID> bound = currentPipelineId();
+        if (bound.isPresent()) {
+            return bound;
+        }
+        List<UUID> active = getActivePipelineIds();
+        return active.size() == 1 ? Optional.of(active.get(0)) : Optional.empty();
     }
 
     /**
      * Check if there's an active pipeline running
      */
     public boolean hasActivePipeline() {
-        return activePipelineStates.values().stream()
-                .anyMatch(state -> state.isActive());
+        return activePipelines.values().stream()
+                .anyMatch(state -> state.state.isActive());
+    }
+
+    public int activePipelineCount() {
+        return getActivePipelineIds().size();
+    }
+
+    public Optional<PipelineQuota> getQuota(UUID pipelineId) {
+        return Optional.ofNullable(activePipelines.get(pipelineId)).map(state -> state.quota);
     }
 
     /**
      * Check pipeline state and handle pause/cancel during long-running operations.
      * Call this periodically within loops.
-     * 
+     *
      * @return true if should continue, false if should stop (cancelled or skipping)
      * @throws InterruptedException if interrupted while waiting
      */
     public boolean checkAndWait() throws InterruptedException {
+        return checkAndWait(true);
+    }
+
+    /**
+     * Same as {@link #checkAndWait()}, but a stage that is not the one being
+     * skipped passes {@code honourSkip = false} and keeps running. Used by
+     * streaming pipelines, where only the most upstream running stage skips.
+     */
+    public boolean checkAndWait(boolean honourSkip) throws InterruptedException {
         Optional<UUID> activePipeline = getActivePipelineId();
         if (activePipeline.isEmpty()) {
             return true; // No active pipeline, continue
         }
 
         UUID pipelineId = activePipeline.get();
-        PipelineStateEnum state = activePipelineStates.get(pipelineId);
+        PipelineStateEnum state = getState(pipelineId);
 
         // If cancelled or skipping, stop current operation
-        if (state == PipelineStateEnum.CANCELLED || state == PipelineStateEnum.SKIPPING) {
+        if (state == PipelineStateEnum.CANCELLED || (honourSkip && state == PipelineStateEnum.SKIPPING)) {
             log.info("Pipeline {} is {}, stopping current operation", pipelineId, state);
             return false;
         }
@@ -222,18 +366,130 @@ public class PipelineControlService {
             return false;
         }
 
-        PipelineStateEnum state = activePipelineStates.get(activePipeline.get());
+        PipelineStateEnum state = getState(activePipeline.get());
         return state == PipelineStateEnum.CANCELLED ||
                 state == PipelineStateEnum.SKIPPING ||
                 state == PipelineStateEnum.PAUSED;
     }
-}
 
+    /**
+     * Lease proxies to the calling thread's pipeline according to its quota,
+     * preferring proxies no other pipeline holds. An empty result means the
+     * pipeline may use any proxy.
+     */
+    public synchronized List<UUID> leaseProxies(Collection<UUID> candidates) {
+        ControlState state = currentPipelineId().map(activePipelines::get).orElse(null);
+        if (state == null || state.quota.proxies() == 0) {
+            return List.of();
+        }
+        if (!state.leasedProxies.isEmpty()) {
+            return List.copyOf(state.leasedProxies);
+        }
 
+        Set<UUID> heldByOthers = new HashSet<>();
+        activePipelines.values().forEach(other -> heldByOthers.addAll(other.leasedProxies));
 
+        List<UUID> lease = new ArrayList<>();
+        candidates.stream().filter(id -> !heldByOthers.contains(id))
+                .limit(state.quota.proxies())
+                .forEach(lease::add);
+        if (lease.isEmpty()) {
+            // Everything is leased already; share rather than run without proxies
+            candidates.stream().limit(state.quota.proxies()).forEach(lease::add);
+        }
 
+        state.leasedProxies.addAll(lease);
+        return lease;
+    }
 
+    /**
+     * Keep this instance's pipelines alive in the control plane
+     */
+    public void heartbeat() {
+        try {
+            activePipelines.keySet().forEach(controlPlane::heartbeat);
+        } catch (RuntimeException e) {
+            // An escaping exception would cancel the periodic task
+            log.warn("Pipeline heartbeat failed: {}", e.getMessage());
+        }
+    }
 
+    private void setState(UUID pipelineId, PipelineStateEnum newState) {
+        setLocalState(pipelineId, newState);
+        controlPlane.publishState(pipelineId, newState);
+    }
 
+    /**
+     * A state change made on another instance
+     */
+    void applyRemoteState(UUID pipelineId, PipelineStateEnum newState) {
+        if (activePipelines.containsKey(pipelineId)) {
+            log.info("Pipeline {} set to {} by another instance", pipelineId, newState);
+            setLocalState(pipelineId, newState);
+        }
+    }
+
+    private void setLocalState(UUID pipelineId, PipelineStateEnum newState) {
+        ControlState state = activePipelines.get(pipelineId);
+        if (state != null) {
+            state.set(newState);
+        }
+    }
+
+    /**
+     * Control state of one pipeline; changes are signalled to waiting stages
+     */
+    private static final class ControlState {
+        private static final AtomicLong REGISTRATIONS = new AtomicLong();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final PipelineQuota quota;
+        private final long registeredAt = REGISTRATIONS.incrementAndGet();
+        private final Set<UUID> leasedProxies = ConcurrentHashMap.newKeySet();
+        private volatile PipelineStateEnum state = PipelineStateEnum.RUNNING;
+
+        ControlState(PipelineQuota quota) {
+            this.quota = quota;
+        }
 
+        void set(PipelineStateEnum newState) {
+            lock.lock();
+            try {
+                state = newState;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean transition(PipelineStateEnum from, PipelineStateEnum to) {
+            lock.lock();
+            try {
+                if (state != from) {
+                    return false;
+                }
+                state = to;
+                changed.signalAll();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
 
+        void awaitNotPaused() throws InterruptedException {
+            lock.lock();
+            try {
+                while (state == PipelineStateEnum.PAUSED) {
+                    changed.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void signal() {
+            // Release anyone still waiting on a pipeline that is going away
+            set(PipelineStateEnum.CANCELLED);
+        }
+    }
+}
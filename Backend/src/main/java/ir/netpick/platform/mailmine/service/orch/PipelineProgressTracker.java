@@ -0,0 +1,559 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.core.enums.PipelineStateEnum;
+import ir.netpick.platform.mailmine.dto.PipelineProgressEvent;
+import ir.netpick.platform.mailmine.dto.StageProgress;
+import ir.netpick.platform.mailmine.model.Pipeline;
+import ir.netpick.platform.mailmine.service.base.PipelineService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Aggregates progress of running pipelines in memory. Stage code records
+ * counts for the pipeline its thread is bound to; a fixed-rate tick turns
+ * them into rates and ETAs, pushes one event per pipeline to its SSE
+ * subscribers and periodically writes the counters to the pipeline row,
+ * together with a {@link PipelineCheckpoint} for crash recovery.
+ * <p>
+ * When a pipeline runs on several instances, each one shares its own counters
+ * through the {@link PipelineControlPlane}; events and the persisted row carry
+ * the sum. Only the instance that started the pipeline writes the row.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PipelineProgressTracker {
+
+    private static final List<PipelineStageEnum> STAGES = List.of(
+            PipelineStageEnum.API_CALLER_STARTED,
+            PipelineStageEnum.SCRAPER_STARTED,
+            PipelineStageEnum.PARSER_STARTED);
+
+    // Weight of the latest interval in the smoothed rate
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final PipelineService pipelineService;
+    private final PipelineControlService pipelineControlService;
+    private final ObjectMapper objectMapper;
+    private final PipelineControlPlane controlPlane;
+
+    @Value("${scraper.pipeline.progress.interval-ms:1000}")
+    private long intervalMs;
+
+    @Value("${scraper.pipeline.progress.persist-every-ms:10000}")
+    private long persistEveryMs;
+
+    // The checkpoint is what recovery judges liveness by, so the tick runs on
+    // its own thread rather than the shared @Scheduled one
+    private ScheduledExecutorService ticks;
+
+    private final Map<UUID, Progress> running = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    // ==================== Lifecycle ====================
+
+    @PostConstruct
+    void startTicking() {
+        ticks = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("pipeline-progress").factory());
+        ticks.scheduleAtFixedRate(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopTicking() {
+        if (ticks != null) {
+            ticks.shutdownNow();
+        }
+    }
+
+    private void tick() {
+        try {
+            publish();
+        } catch (RuntimeException e) {
+            // An escaping exception would cancel the periodic task
+            log.warn("Pipeline progress tick failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Track a new or resumed pipeline; a resumed one continues from its stored counters
+     */
+    public void start(Pipeline pipeline, Set<PipelineStageEnum> steps, boolean streaming, PipelineQuota quota) {
+        running.put(pipeline.getId(), new Progress(pipeline, steps, streaming, quota, true));
+    }
+
+    /**
+     * Track this instance's share of a pipeline started elsewhere; its
+     * counters start at zero and are added to those of the other instances
+     */
+    public void join(Pipeline pipeline, Set<PipelineStageEnum> steps, PipelineQuota quota) {
+        running.put(pipeline.getId(), new Progress(pipeline, steps, false, quota, false));
+    }
+
+    /**
+     * Send the final event, close the streams and stop tracking
+     */
+    public void finish(UUID pipelineId) {
+        Progress progress = running.remove(pipelineId);
+        if (progress == null) {
+            return;
+        }
+        if (!progress.owner && controlPlane.isAlive(pipelineId)) {
+            // The pipeline goes on elsewhere; subscribers here follow it remotely
+            return;
+        }
+        completeSubscribers(pipelineId, progress.clusterSnapshot());
+    }
+
+    private void completeSubscribers(UUID pipelineId, PipelineProgressEvent event) {
+        Set<SseEmitter> emitters = subscribers.remove(pipelineId);
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name("complete").data(event));
+                emitter.complete();
+            } catch (Exception e) {
+                log.debug("Failed to send final progress of pipeline {}: {}", pipelineId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Copy the live counters and checkpoint onto the entity, so saving it does
+     * not write stale values over the periodically persisted ones
+     */
+    public void applyTo(Pipeline pipeline) {
+        Progress progress = running.get(pipeline.getId());
+        if (progress != null && progress.owner) {
+            progress.copyTo(pipeline);
+            pipeline.setCheckpoint(checkpointJson(progress));
+            pipeline.setCheckpointAt(LocalDateTime.now());
+        }
+    }
+
+    public PipelineCheckpoint readCheckpoint(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, PipelineCheckpoint.class);
+        } catch (Exception e) {
+            log.warn("Unreadable pipeline checkpoint: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String checkpointJson(Progress progress) {
+        try {
+            return objectMapper.writeValueAsString(progress.checkpoint());
+        } catch (Exception e) {
+            log.warn("Failed to write checkpoint of pipeline {}: {}", progress.pipeline.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Report the size of a queue feeding one of the pipeline's stages
+     */
+    public void watchQueue(UUID pipelineId, String name, IntSupplier depth) {
+        Progress progress = running.get(pipelineId);
+        if (progress != null) {
+            progress.queues.put(name, depth);
+        }
+    }
+
+    // ==================== Recording (pipeline of the calling thread) ====================
+
+    public void stageStarted(PipelineStageEnum stage, long total) {
+        Progress progress = current();
+        if (progress != null) {
+            StageCounter counter = progress.stages.get(stage);
+            counter.total.set(counter.processed.get() + Math.max(0, total));
+        }
+    }
+
+    /**
+     * More work arrived for a stage, e.g. jobs handed downstream while streaming
+     */
+    public void addToTotal(PipelineStageEnum stage, long count) {
+        Progress progress = current();
+        if (progress != null) {
+            progress.stages.get(stage).total.addAndGet(count);
+        }
+    }
+
+    /**
+     * An item is being worked on; it is listed in the checkpoint until {@link #end}
+     */
+    public void begin(PipelineStageEnum stage, UUID itemId) {
+        Progress progress = current();
+        if (progress != null) {
+            progress.inFlight.get(stage).add(itemId);
+        }
+    }
+
+    public void end(PipelineStageEnum stage, UUID itemId) {
+        Progress progress = current();
+        if (progress != null) {
+            progress.inFlight.get(stage).remove(itemId);
+        }
+    }
+
+    public void itemDone(PipelineStageEnum stage) {
+        Progress progress = current();
+        if (progress != null) {
+            progress.stages.get(stage).processed.incrementAndGet();
+        }
+    }
+
+    public void linksCreated(int count) {
+        Progress progress = current();
+        if (progress != null) {
+            progress.linksCreated.addAndGet(count);
+        }
+    }
+
+    public void pageScraped() {
+        Progress progress = current();
+        if (progress != null) {
+            progress.pagesScraped.incrementAndGet();
+        }
+    }
+
+    public void contactFound() {
+        Progress progress = current();
+        if (progress != null) {
+            progress.contactsFound.incrementAndGet();
+        }
+    }
+
+    public void error() {
+        Progress progress = current();
+        if (progress != null) {
+            progress.errors.incrementAndGet();
+        }
+    }
+
+    private Progress current() {
+        return pipelineControlService.currentPipelineId().map(running::get).orElse(null);
+    }
+
+    // ==================== Publishing ====================
+
+    /**
+     * Stream progress of a pipeline, including one running on other instances
+     * only. A pipeline that is not running gets its stored counters once and
+     * the stream completes.
+     */
+    public SseEmitter subscribe(UUID pipelineId) {
+        SseEmitter emitter = new SseEmitter(0L);
+        if (!running.containsKey(pipelineId) && !controlPlane.isAlive(pipelineId)) {
+            Pipeline pipeline = pipelineService.getPipeline(pipelineId);
+            try {
+                emitter.send(SseEmitter.event().name("complete").data(storedSnapshot(pipeline)));
+                emitter.complete();
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+            }
+            return emitter;
+        }
+
+        subscribers.computeIfAbsent(pipelineId, id -> ConcurrentHashMap.newKeySet()).add(emitter);
+        Runnable cleanUp = () -> removeSubscriber(pipelineId, emitter);
+        emitter.onCompletion(cleanUp);
+        emitter.onTimeout(cleanUp);
+        emitter.onError(e -> cleanUp.run());
+        return emitter;
+    }
+
+    /**
+     * One tick: update rates, share this instance's counters, push an event
+     * per running pipeline and persist counters when due
+     */
+    public void publish() {
+        long now = System.nanoTime();
+        running.forEach((pipelineId, progress) -> {
+            progress.updateRates(now);
+            controlPlane.publishProgress(progress.snapshot());
+            progress.remote = controlPlane.remoteProgress(pipelineId);
+            PipelineProgressEvent event = progress.clusterSnapshot();
+            send(pipelineId, event);
+
+            if (progress.owner && now - progress.lastPersisted >= Duration.ofMillis(persistEveryMs).toNanos()) {
+                progress.lastPersisted = now;
+                try {
+                    pipelineService.updateProgress(pipelineId, event, checkpointJson(progress));
+                } catch (Exception e) {
+                    log.warn("Failed to persist progress of pipeline {}: {}", pipelineId, e.getMessage());
+                }
+            }
+        });
+
+        // Subscribers of pipelines running on other instances only
+        subscribers.keySet().stream().filter(pipelineId -> !running.containsKey(pipelineId)).forEach(pipelineId -> {
+            List<PipelineProgressEvent> remote = controlPlane.remoteProgress(pipelineId);
+            if (remote.isEmpty()) {
+                if (!controlPlane.isAlive(pipelineId)) {
+                    completeSubscribers(pipelineId, storedSnapshot(pipelineService.getPipeline(pipelineId)));
+                }
+            } else {
+                send(pipelineId, merge(remote.get(0), remote.subList(1, remote.size())));
+            }
+        });
+    }
+
+    /**
+     * Add the counters of other instances to an event. State, stage and
+     * elapsed time are taken from the first event.
+     */
+    static PipelineProgressEvent merge(PipelineProgressEvent event, List<PipelineProgressEvent> others) {
+        if (others.isEmpty()) {
+            return event;
+        }
+        long processed = event.itemsProcessed();
+        long total = event.itemsTotal();
+        long links = event.linksCreated();
+        long pages = event.pagesScraped();
+        long contacts = event.contactsFound();
+        long errors = event.errorsCount();
+        Map<PipelineStageEnum, StageProgress> stages = new EnumMap<>(PipelineStageEnum.class);
+        Map<String, Integer> depths = new LinkedHashMap<>(event.queueDepths());
+        event.stages().forEach(stage -> stages.put(stage.stage(), stage));
+
+        for (PipelineProgressEvent other : others) {
+            processed += other.itemsProcessed();
+            total += other.itemsTotal();
+            links += other.linksCreated();
+            pages += other.pagesScraped();
+            contacts += other.contactsFound();
+            errors += other.errorsCount();
+            other.queueDepths().forEach((name, depth) -> depths.merge(name, depth, Integer::sum));
+            other.stages().forEach(stage -> stages.merge(stage.stage(), stage, (a, b) -> {
+                long done = a.processed() + b.processed();
+                long all = a.total() + b.total();
+                double rate = a.ratePerSecond() + b.ratePerSecond();
+                Long eta = rate > 0 && all > done ? Math.round((all - done) / rate) : null;
+                return new StageProgress(a.stage(), done, all, Math.round(rate * 100) / 100.0, eta);
+            }));
+        }
+
+        Long eta = stages.values().stream().map(StageProgress::etaSeconds).filter(Objects::nonNull)
+                .max(Long::compare).orElse(null);
+        return new PipelineProgressEvent(event.pipelineId(), event.state(), event.stage(), event.elapsedSeconds(),
+                processed, total, links, pages, contacts, errors, eta, List.copyOf(stages.values()), depths);
+    }
+
+    private void send(UUID pipelineId, PipelineProgressEvent event) {
+        Set<SseEmitter> emitters = subscribers.get(pipelineId);
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name("progress").data(event));
+            } catch (Exception e) {
+                log.debug("Dropping progress subscriber of pipeline {}: {}", pipelineId, e.getMessage());
+                removeSubscriber(pipelineId, emitter);
+            }
+        }
+    }
+
+    private void removeSubscriber(UUID pipelineId, SseEmitter emitter) {
+        subscribers.computeIfPresent(pipelineId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    private static PipelineProgressEvent storedSnapshot(Pipeline pipeline) {
+        Duration duration = pipeline.getDuration();
+        return new PipelineProgressEvent(pipeline.getId(), pipeline.getState(), pipeline.getStage(),
+                duration != null ? duration.toSeconds() : 0,
+                value(pipeline.getItemsProcessed()), value(pipeline.getItemsTotal()),
+                value(pipeline.getLinksCreated()), value(pipeline.getPagesScraped()),
+                value(pipeline.getContactsFound()), value(pipeline.getErrorsCount()),
+                null, List.of(), Map.of());
+    }
+
+    private static long value(Integer counter) {
+        return counter != null ? counter : 0;
+    }
+
+    private static final class StageCounter {
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private long lastProcessed;
+        private volatile double rate;
+
+        StageProgress snapshot(PipelineStageEnum stage) {
+            long done = processed.get();
+            long all = Math.max(total.get(), done);
+            Long eta = rate > 0 && all > done ? Math.round((all - done) / rate) : null;
+            return new StageProgress(stage, done, all, Math.round(rate * 100) / 100.0, eta);
+        }
+    }
+
+    private final class Progress {
+        private final Pipeline pipeline;
+        private final Set<PipelineStageEnum> steps;
+        private final boolean streaming;
+        private final PipelineQuota quota;
+        // Started here, rather than joined
+        private final boolean owner;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final Map<PipelineStageEnum, StageCounter> stages = new EnumMap<>(PipelineStageEnum.class);
+        private final Map<PipelineStageEnum, Set<UUID>> inFlight = new EnumMap<>(PipelineStageEnum.class);
+        private final Map<String, IntSupplier> queues = new ConcurrentHashMap<>();
+        private final AtomicLong linksCreated;
+        private final AtomicLong pagesScraped;
+        private final AtomicLong contactsFound;
+        private final AtomicLong errors;
+        // Items finished before a resume
+        private final long baseProcessed;
+        // Joined instances' share of the counters seeded on resume; those still
+        // running report it again, so only what nobody reports is added back
+        private final PipelineCheckpoint.Counters joinedBefore;
+        private long lastTick = System.nanoTime();
+        private long lastPersisted = System.nanoTime();
+        // Latest counters of the other instances working on the pipeline
+        private volatile List<PipelineProgressEvent> remote = List.of();
+
+        Progress(Pipeline pipeline, Set<PipelineStageEnum> steps, boolean streaming, PipelineQuota quota,
+                boolean owner) {
+            this.pipeline = pipeline;
+            this.steps = Set.copyOf(steps);
+            this.streaming = streaming;
+            this.quota = quota;
+            this.owner = owner;
+            PipelineCheckpoint checkpoint = owner ? readCheckpoint(pipeline.getCheckpoint()) : null;
+            this.joinedBefore = checkpoint != null && checkpoint.joined() != null
+                    ? checkpoint.joined() : PipelineCheckpoint.Counters.ZERO;
+            // The stored counters are the cluster sum; seed with the owner's own share
+            PipelineCheckpoint.Counters own = owner
+                    ? new PipelineCheckpoint.Counters(value(pipeline.getItemsProcessed()),
+                            value(pipeline.getLinksCreated()), value(pipeline.getPagesScraped()),
+                            value(pipeline.getContactsFound()), value(pipeline.getErrorsCount()))
+                            .shortfall(joinedBefore)
+                    : PipelineCheckpoint.Counters.ZERO;
+            this.linksCreated = new AtomicLong(own.links());
+            this.pagesScraped = new AtomicLong(own.pages());
+            this.contactsFound = new AtomicLong(own.contacts());
+            this.errors = new AtomicLong(own.errors());
+            this.baseProcessed = own.processed();
+            STAGES.forEach(stage -> {
+                stages.put(stage, new StageCounter());
+                inFlight.put(stage, ConcurrentHashMap.newKeySet());
+            });
+        }
+
+        PipelineCheckpoint checkpoint() {
+            Map<PipelineStageEnum, Long> processed = new EnumMap<>(PipelineStageEnum.class);
+            stages.forEach((stage, counter) -> processed.put(stage, counter.processed.get()));
+            PipelineProgressEvent own = snapshot();
+            PipelineCheckpoint.Counters joined = PipelineCheckpoint.Counters.of(clusterSnapshot(own))
+                    .minus(PipelineCheckpoint.Counters.of(own));
+            return new PipelineCheckpoint(steps, streaming, quota.lanes(), quota.proxies(), processed,
+                    List.copyOf(inFlight.get(PipelineStageEnum.SCRAPER_STARTED)),
+                    List.copyOf(inFlight.get(PipelineStageEnum.PARSER_STARTED)), joined);
+        }
+
+        void updateRates(long now) {
+            double seconds = (now - lastTick) / 1e9;
+            if (seconds <= 0) {
+                return;
+            }
+            lastTick = now;
+            for (StageCounter counter : stages.values()) {
+                long done = counter.processed.get();
+                double instant = (done - counter.lastProcessed) / seconds;
+                counter.lastProcessed = done;
+                counter.rate = counter.rate == 0 ? instant
+                        : RATE_SMOOTHING * instant + (1 - RATE_SMOOTHING) * counter.rate;
+            }
+        }
+
+        PipelineProgressEvent snapshot() {
+            List<StageProgress> stageProgress = new ArrayList<>();
+            long processed = baseProcessed;
+            long total = baseProcessed;
+            Long eta = null;
+            for (PipelineStageEnum stage : STAGES) {
+                StageProgress progress = stages.get(stage).snapshot(stage);
+                stageProgress.add(progress);
+                processed += progress.processed();
+                total += progress.total();
+                if (progress.etaSeconds() != null) {
+                    // Streaming stages overlap; the slowest one decides
+                    eta = eta == null ? progress.etaSeconds() : Math.max(eta, progress.etaSeconds());
+                }
+            }
+
+            Map<String, Integer> depths = new LinkedHashMap<>();
+            queues.forEach((name, depth) -> depths.put(name, depth.getAsInt()));
+
+            PipelineStateEnum state = pipeline.getState() != null && pipeline.getState().isFinished()
+                    ? pipeline.getState()
+                    : pipelineControlService.getState(pipeline.getId());
+            return new PipelineProgressEvent(pipeline.getId(), state, pipeline.getStage(),
+                    Duration.between(startedAt, LocalDateTime.now()).toSeconds(),
+                    processed, total, linksCreated.get(), pagesScraped.get(), contactsFound.get(), errors.get(),
+                    eta, stageProgress, depths);
+        }
+
+        PipelineProgressEvent clusterSnapshot() {
+            return clusterSnapshot(snapshot());
+        }
+
+        private PipelineProgressEvent clusterSnapshot(PipelineProgressEvent own) {
+            PipelineProgressEvent event = merge(own, remote);
+            if (joinedBefore.equals(PipelineCheckpoint.Counters.ZERO)) {
+                return event;
+            }
+            // Joined instances that went down with the previous owner no longer report
+            PipelineCheckpoint.Counters missing = joinedBefore.shortfall(
+                    PipelineCheckpoint.Counters.of(event).minus(PipelineCheckpoint.Counters.of(own)));
+            return new PipelineProgressEvent(event.pipelineId(), event.state(), event.stage(),
+                    event.elapsedSeconds(), event.itemsProcessed() + missing.processed(),
+                    event.itemsTotal() + missing.processed(), event.linksCreated() + missing.links(),
+                    event.pagesScraped() + missing.pages(), event.contactsFound() + missing.contacts(),
+                    event.errorsCount() + missing.errors(), event.etaSeconds(), event.stages(),
+                    event.queueDepths());
+        }
+
+        void copyTo(Pipeline target) {
+            PipelineProgressEvent event = clusterSnapshot();
+            target.setItemsProcessed((int) event.itemsProcessed());
+            target.setItemsTotal((int) event.itemsTotal());
+            target.setLinksCreated((int) event.linksCreated());
+            target.setPagesScraped((int) event.pagesScraped());
+            target.setContactsFound((int) event.contactsFound());
+            target.setErrorsCount((int) event.errorsCount());
+        }
+    }
+}
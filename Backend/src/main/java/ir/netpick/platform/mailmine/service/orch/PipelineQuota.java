@@ -0,0 +1,17 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+/**
+ * Resources a pipeline may use while it runs next to others
+ *
+ * @param lanes   parallel scrape workers (each with its own browser)
+ * @param proxies distinct proxies leased to the pipeline; 0 shares all proxies
+ */
+public record PipelineQuota(int lanes, int proxies) {
+
+    public static final PipelineQuota DEFAULT = new PipelineQuota(1, 0);
+
+    public PipelineQuota {
+        lanes = Math.max(1, lanes);
+        proxies = Math.max(0, proxies);
+    }
+}
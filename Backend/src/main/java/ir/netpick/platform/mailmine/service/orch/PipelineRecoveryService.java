@@ -0,0 +1,100 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import ir.netpick.platform.core.enums.PipelineStateEnum;
+import ir.netpick.platform.core.lock.SchedulerLock;
+import ir.netpick.platform.mailmine.model.Pipeline;
+import ir.netpick.platform.mailmine.repository.PipelineRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Finds pipelines left RUNNING (or paused) by a process that died - their
+ * checkpoint stops being refreshed - and resumes them from their checkpoint,
+ * or marks them failed. Runs shortly after startup and then periodically, so
+ * pipelines orphaned by another instance are picked up too.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PipelineRecoveryService {
+
+    static final List<PipelineStateEnum> ACTIVE_STATES = List.of(
+            PipelineStateEnum.RUNNING, PipelineStateEnum.PAUSED, PipelineStateEnum.SKIPPING);
+
+    private final PipelineRepository pipelineRepository;
+    private final PipelineControlService pipelineControlService;
+    private final PipelineControlPlane controlPlane;
+    private final PipelineProgressTracker progressTracker;
+    private final ScrapeOrchestrationService orchestrationService;
+
+    // Resume orphaned pipelines; false marks them failed instead
+    @Value("${scraper.pipeline.recovery.resume:true}")
+    private boolean resume;
+
+    // A pipeline is given up after this many resumes
+    @Value("${scraper.pipeline.recovery.max-resumes:3}")
+    private int maxResumes;
+
+    // Must comfortably exceed scraper.pipeline.progress.persist-every-ms
+    @Value("${scraper.pipeline.recovery.stale-after-seconds:120}")
+    private long staleAfterSeconds;
+
+    @Scheduled(initialDelayString = "${scraper.pipeline.recovery.initial-delay-ms:30000}",
+            fixedDelayString = "${scraper.pipeline.recovery.interval-ms:60000}")
+    @SchedulerLock(name = "pipeline-recovery")
+    public void recoverOrphanedPipelines() {
+        List<Pipeline> stale = pipelineRepository.findStale(ACTIVE_STATES,
+                LocalDateTime.now().minusSeconds(staleAfterSeconds));
+
+        for (Pipeline pipeline : stale) {
+            // Running here or on another live instance means the checkpoint is just late
+            if (pipelineControlService.getActivePipelineIds().contains(pipeline.getId())
+                    || controlPlane.isAlive(pipeline.getId())) {
+                continue;
+            }
+            recover(pipeline);
+        }
+    }
+
+    void recover(Pipeline pipeline) {
+        int resumes = pipeline.getResumeCount() != null ? pipeline.getResumeCount() : 0;
+        PipelineCheckpoint checkpoint = progressTracker.readCheckpoint(pipeline.getCheckpoint());
+
+        String reason = !resume ? "recovery is disabled"
+                : checkpoint == null ? "it has no checkpoint"
+                : resumes >= maxResumes ? "it was already resumed " + resumes + " times"
+                : null;
+        if (reason == null && !orchestrationService.tryReserveSlot()) {
+            log.info("Orphaned pipeline {} waits for a free pipeline slot", pipeline.getId());
+            return;
+        }
+
+        // Another instance may be recovering the same pipeline
+        if (pipelineRepository.claimForRecovery(pipeline.getId(), resumes, LocalDateTime.now()) == 0) {
+            if (reason == null) {
+                orchestrationService.releaseSlot();
+            }
+            return;
+        }
+        pipeline.setResumeCount(resumes + 1);
+
+        if (reason != null) {
+            log.warn("Pipeline {} was interrupted at stage {}; marking it failed because {}",
+                    pipeline.getId(), pipeline.getStage(), reason);
+            pipeline.setState(PipelineStateEnum.FAILED);
+            pipeline.setEndTime(LocalDateTime.now());
+            pipeline.setCurrentStepName("Interrupted: " + reason);
+            pipelineRepository.save(pipeline);
+            return;
+        }
+
+        log.warn("Pipeline {} was interrupted at stage {}; resuming it", pipeline.getId(), pipeline.getStage());
+        orchestrationService.resumeInterrupted(pipeline, checkpoint);
+    }
+}
@@ -0,0 +1,251 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.netpick.platform.core.enums.PipelineStateEnum;
+import ir.netpick.platform.core.lock.RedisLockProvider;
+import ir.netpick.platform.core.util.InstanceId;
+import ir.netpick.platform.mailmine.dto.PipelineProgressEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Redis backed control plane, so one pipeline can run its stages on several
+ * instances and still be paused or cancelled from any of them at once.
+ * <ul>
+ * <li>State changes are published on {@code pipeline:control} and kept in
+ * {@code pipeline:{id}:state} for instances that join later</li>
+ * <li>Workers heartbeat into the {@code pipeline:{id}:workers} sorted set
+ * (scored by expiry); {@code pipeline:live} lists pipelines with any live worker</li>
+ * <li>Each instance writes its progress to a field of the
+ * {@code pipeline:{id}:progress} hash</li>
+ * <li>Work items are claimed with {@code SET NX PX} and released only by
+ * their holder</li>
+ * </ul>
+ * Uses the shared Lettuce connection factory. Redis being unreachable
+ * degrades to single-instance behaviour rather than failing the pipeline.
+ * Controlled by property: scraper.pipeline.cluster.use-redis=true
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "scraper.pipeline.cluster.use-redis", havingValue = "true")
+public class RedisPipelineControlPlane implements PipelineControlPlane {
+
+    private static final String CONTROL_CHANNEL = "pipeline:control";
+    private static final String LIVE_KEY = "pipeline:live";
+    private static final String STATE_KEY = "pipeline:%s:state";
+    private static final String WORKERS_KEY = "pipeline:%s:workers";
+    private static final String PROGRESS_KEY = "pipeline:%s:progress";
+    private static final String CLAIM_KEY = "pipeline:claim:%s:%s";
+
+    // State keys outlive any reasonable pipeline
+    private static final Duration STATE_TTL = Duration.ofDays(2);
+
+    private final StringRedisTemplate redis;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final Duration heartbeatTtl;
+    private final String instanceId;
+    private final List<BiConsumer<UUID, PipelineStateEnum>> listeners = new CopyOnWriteArrayList<>();
+
+    public RedisPipelineControlPlane(RedisConnectionFactory connectionFactory, ObjectMapper objectMapper,
+            @Value("${scraper.pipeline.cluster.heartbeat-ttl-seconds:30}") long heartbeatTtlSeconds) {
+        this.redis = new StringRedisTemplate(connectionFactory);
+        this.objectMapper = objectMapper;
+        this.heartbeatTtl = Duration.ofSeconds(heartbeatTtlSeconds);
+        this.instanceId = InstanceId.get();
+
+        this.listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener((message, pattern) ->
+                onMessage(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CONTROL_CHANNEL));
+    }
+
+    @PostConstruct
+    public void start() {
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        log.info("Pipeline control plane joined as {}", instanceId);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        listenerContainer.stop();
+        listenerContainer.destroy();
+    }
+
+    // ==================== State ====================
+
+    @Override
+    public void publishState(UUID pipelineId, PipelineStateEnum state) {
+        run("publish state", () -> {
+            redis.opsForValue().set(STATE_KEY.formatted(pipelineId), state.name(), STATE_TTL);
+            redis.convertAndSend(CONTROL_CHANNEL, instanceId + "|" + pipelineId + "|" + state.name());
+        });
+    }
+
+    @Override
+    public Optional<PipelineStateEnum> sharedState(UUID pipelineId) {
+        String state = call("read state", () -> redis.opsForValue().get(STATE_KEY.formatted(pipelineId)), null);
+        return Optional.ofNullable(state).map(PipelineStateEnum::valueOf);
+    }
+
+    @Override
+    public void onRemoteState(BiConsumer<UUID, PipelineStateEnum> listener) {
+        listeners.add(listener);
+    }
+
+    private void onMessage(String message) {
+        String[] parts = message.split("\\|");
+        if (parts.length != 3 || parts[0].equals(instanceId)) {
+            return; // Malformed, or our own change echoed back
+        }
+        try {
+            UUID pipelineId = UUID.fromString(parts[1]);
+            PipelineStateEnum state = PipelineStateEnum.valueOf(parts[2]);
+            log.debug("Pipeline {} set to {} by {}", pipelineId, state, parts[0]);
+            listeners.forEach(listener -> listener.accept(pipelineId, state));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring pipeline control message '{}': {}", message, e.getMessage());
+        }
+    }
+
+    // ==================== Heartbeats ====================
+
+    @Override
+    public void heartbeat(UUID pipelineId) {
+        run("heartbeat", () -> {
+            double expiry = System.currentTimeMillis() + heartbeatTtl.toMillis();
+            String workers = WORKERS_KEY.formatted(pipelineId);
+            redis.opsForZSet().add(workers, instanceId, expiry);
+            redis.expire(workers, heartbeatTtl.multipliedBy(2));
+            redis.opsForZSet().add(LIVE_KEY, pipelineId.toString(), expiry);
+        });
+    }
+
+    @Override
+    public void leave(UUID pipelineId) {
+        run("leave", () -> {
+            redis.opsForZSet().remove(WORKERS_KEY.formatted(pipelineId), instanceId);
+            redis.opsForHash().delete(PROGRESS_KEY.formatted(pipelineId), instanceId);
+            if (liveWorkers(pipelineId).isEmpty()) {
+                redis.opsForZSet().remove(LIVE_KEY, pipelineId.toString());
+            }
+        });
+    }
+
+    @Override
+    public Set<UUID> livePipelines() {
+        return call("list live pipelines", () -> {
+            long now = System.currentTimeMillis();
+            redis.opsForZSet().removeRangeByScore(LIVE_KEY, 0, now);
+            Set<String> ids = redis.opsForZSet().rangeByScore(LIVE_KEY, now, Double.MAX_VALUE);
+            Set<UUID> live = new LinkedHashSet<>();
+            if (ids != null) {
+                ids.forEach(id -> live.add(UUID.fromString(id)));
+            }
+            return live;
+        }, Set.of());
+    }
+
+    @Override
+    public boolean isAlive(UUID pipelineId) {
+        return call("check workers", () -> !liveWorkers(pipelineId).isEmpty(), false);
+    }
+
+    private List<String> liveWorkers(UUID pipelineId) {
+        Set<String> workers = redis.opsForZSet().rangeByScore(WORKERS_KEY.formatted(pipelineId),
+                System.currentTimeMillis(), Double.MAX_VALUE);
+        return workers != null ? List.copyOf(workers) : List.of();
+    }
+
+    // ==================== Progress ====================
+
+    @Override
+    public void publishProgress(PipelineProgressEvent progress) {
+        run("publish progress", () -> {
+            String key = PROGRESS_KEY.formatted(progress.pipelineId());
+            redis.opsForHash().put(key, instanceId, objectMapper.writeValueAsString(progress));
+            redis.expire(key, heartbeatTtl.multipliedBy(2));
+        });
+    }
+
+    @Override
+    public List<PipelineProgressEvent> remoteProgress(UUID pipelineId) {
+        return call("read progress", () -> {
+            List<Object> others = new ArrayList<>(liveWorkers(pipelineId));
+            others.remove(instanceId);
+            if (others.isEmpty()) {
+                return List.<PipelineProgressEvent>of();
+            }
+            List<PipelineProgressEvent> events = new ArrayList<>();
+            for (Object json : redis.opsForHash().multiGet(PROGRESS_KEY.formatted(pipelineId), others)) {
+                if (json != null) {
+                    events.add(objectMapper.readValue(json.toString(), PipelineProgressEvent.class));
+                }
+            }
+            return events;
+        }, List.of());
+    }
+
+    // ==================== Claims ====================
+
+    @Override
+    public boolean tryClaim(String kind, UUID itemId, Duration ttl) {
+        // Without Redis nobody else can see the claim either; carry on locally
+        return call("claim " + kind, () -> Boolean.TRUE.equals(
+                redis.opsForValue().setIfAbsent(CLAIM_KEY.formatted(kind, itemId), instanceId, ttl)), true);
+    }
+
+    @Override
+    public void release(String kind, UUID itemId) {
+        run("release " + kind, () -> redis.execute(RedisLockProvider.COMPARE_AND_DELETE,
+                List.of(CLAIM_KEY.formatted(kind, itemId)), instanceId));
+    }
+
+    // ==================== Helpers ====================
+
+    private void run(String action, ThrowingRunnable command) {
+        call(action, () -> {
+            command.run();
+            return null;
+        }, null);
+    }
+
+    private <T> T call(String action, ThrowingSupplier<T> supplier, T fallback) {
+        try {
+            return supplier.get();
+        } catch (Exception e) {
+            log.warn("Pipeline control plane failed to {}: {}", action, e.getMessage());
+            return fallback;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface ThrowingSupplier<T> {
+        T get() throws Exception;
+    }
+}
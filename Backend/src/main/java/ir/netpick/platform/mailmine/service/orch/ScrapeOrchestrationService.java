@@ -4,18 +4,28 @@ import ir.netpick.platform.core.enums.PipelineStageEnum;
 import ir.netpick.platform.core.enums.PipelineStateEnum;
 import ir.netpick.platform.mailmine.model.Pipeline;
 import ir.netpick.platform.mailmine.service.base.PipelineService;
+import ir.netpick.platform.mailmine.service.base.ScrapeJobService;
 import ir.netpick.platform.mailmine.service.mid.ApiCaller;
 import ir.netpick.platform.mailmine.service.mid.DataProcessor;
 import ir.netpick.platform.mailmine.service.mid.Scraper;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 @Slf4j
 @Service
@@ -27,24 +37,195 @@ public class ScrapeOrchestrationService {
     private final DataProcessor dataProcessor;
     private final PipelineService pipelineService;
     private final PipelineControlService pipelineControlService;
+    private final PipelineProgressTracker progressTracker;
+    private final ScrapeJobService scrapeJobService;
+
+    // Run selected stages concurrently, connected by bounded queues, instead of one after another
+    @Value("${scraper.pipeline.streaming:false}")
+    private boolean streamingByDefault;
+
+    @Value("${scraper.pipeline.queue-capacity:500}")
+    private int queueCapacity;
+
+    // Pipelines allowed to run at the same time
+    @Value("${scraper.pipeline.max-concurrent:2}")
+    private int maxConcurrent;
+
+    // Quota for pipelines started without one
+    @Value("${scraper.pipeline.default-lanes:1}")
+    private int defaultLanes;
+
+    @Value("${scraper.pipeline.default-proxies:0}")
+    private int defaultProxies;
+
+    // Free pipeline slots on this instance; see tryReserveSlot
+    private Semaphore slots;
+
+    @PostConstruct
+    void initSlots() {
+        slots = new Semaphore(maxConcurrent);
+    }
 
     /**
      * Execute selected steps of the scraping pipeline asynchronously
-     * Steps run sequentially within the async context
+     * Steps run sequentially within the async context.
+     * The pipeline methods below take over a slot reserved with
+     * {@link #tryReserveSlot()} and give it back when the pipeline ends.
      *
      * @param steps Set of steps to execute
      * @return The pipeline ID for tracking
      */
     @Async
     public void executeSteps(Set<PipelineStageEnum> steps) {
-        Pipeline pipeline = new Pipeline(PipelineStageEnum.STARTED, PipelineStateEnum.RUNNING, LocalDateTime.now());
-        pipeline = pipelineService.createPipeline(pipeline);
+        executeSteps(steps, streamingByDefault);
+    }
+
+    /**
+     * Execute selected steps of the scraping pipeline asynchronously, either
+     * one after another or streaming (all selected steps at once)
+     *
+     * @param steps     Set of steps to execute
+     * @param streaming Whether stages run concurrently, passing work downstream as it is produced
+     */
+    @Async
+    public void executeSteps(Set<PipelineStageEnum> steps, boolean streaming) {
+        executeSteps(steps, streaming, defaultQuota());
+    }
+
+    /**
+     * Execute selected steps asynchronously with the given resource quota,
+     * next to any other running pipelines
+     *
+     * @param quota Scrape lanes and proxies this pipeline may use
+     */
+    @Async
+    public void executeSteps(Set<PipelineStageEnum> steps, boolean streaming, PipelineQuota quota) {
+        try {
+            Pipeline pipeline = new Pipeline(PipelineStageEnum.STARTED, PipelineStateEnum.RUNNING, LocalDateTime.now());
+            run(pipelineService.createPipeline(pipeline), steps, streaming, quota, false);
+        } finally {
+            slots.release();
+        }
+    }
+
+    /**
+     * Carry on with a pipeline whose process died. Stages that completed are
+     * not run again; the others pick up their remaining work from the
+     * database. Jobs that were being scraped at the time are charged an
+     * attempt, so a page that kills the browser cannot crash-loop the run.
+     */
+    @Async
+    public void resumeInterrupted(Pipeline pipeline, PipelineCheckpoint checkpoint) {
+        try {
+            resume(pipeline, checkpoint);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private void resume(Pipeline pipeline, PipelineCheckpoint checkpoint) {
+        Set<PipelineStageEnum> remaining = checkpoint.streaming()
+                ? checkpoint.steps()
+                : remainingSteps(checkpoint.steps(), pipeline.getStage());
+
+        if (!checkpoint.jobsInFlight().isEmpty()) {
+            int charged = scrapeJobService.chargeInterruptedAttempts(checkpoint.jobsInFlight());
+            log.info("Pipeline {}: charged an attempt to {} jobs that were in flight", pipeline.getId(), charged);
+        }
+        if (!checkpoint.pagesInFlight().isEmpty()) {
+            log.info("Pipeline {}: {} pages that were being parsed will be parsed again",
+                    pipeline.getId(), checkpoint.pagesInFlight().size());
+        }
+
+        boolean paused = pipeline.getState() == PipelineStateEnum.PAUSED;
+        pipeline.setState(PipelineStateEnum.RUNNING);
+        pipeline.setEndTime(null);
+        pipelineService.updatePipeline(pipeline);
+
+        log.info("Resuming pipeline {} from stage {} with steps {} (streaming={}, resume #{})",
+                pipeline.getId(), pipeline.getStage(), remaining, checkpoint.streaming(), pipeline.getResumeCount());
+        run(pipeline, remaining, checkpoint.streaming(), checkpoint.quota(), paused);
+    }
+
+    /**
+     * Work on the scrape and/or parse stage of a pipeline running on another
+     * instance, from this instance's backlog. Jobs and pages are claimed
+     * cluster-wide, so instances never take the same item; pause, resume and
+     * cancel reach this instance through the control plane. Search stays with
+     * the instance that started the pipeline, which owns the API quota.
+     */
+    @Async
+    public void joinPipeline(UUID pipelineId, Set<PipelineStageEnum> steps, PipelineQuota quota) {
+        try {
+            join(pipelineService.getPipeline(pipelineId), steps, quota);
+        } catch (IllegalStateException e) {
+            log.warn("Not joining pipeline {}: {}", pipelineId, e.getMessage());
+        } finally {
+            slots.release();
+        }
+    }
+
+    private void join(Pipeline pipeline, Set<PipelineStageEnum> steps, PipelineQuota quota) {
+        UUID pipelineId = pipeline.getId();
+        pipelineControlService.joinPipeline(pipelineId, quota);
+        pipelineControlService.bindCurrentThread(pipelineId);
+        progressTracker.join(pipeline, steps, quota);
+        log.info("Joined pipeline {} with steps {} ({} lanes)", pipelineId, steps, quota.lanes());
+
+        try {
+            if (steps.contains(PipelineStageEnum.SCRAPER_STARTED) && pipelineControlService.waitWhilePaused(pipelineId)) {
+                scraper.scrapePendingJobs();
+                pipelineControlService.shouldSkipCurrentStep(pipelineId);
+            }
+            if (steps.contains(PipelineStageEnum.PARSER_STARTED) && pipelineControlService.waitWhilePaused(pipelineId)) {
+                dataProcessor.processUnparsedFiles();
+                pipelineControlService.shouldSkipCurrentStep(pipelineId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error while working on pipeline {}", pipelineId, e);
+        } finally {
+            progressTracker.finish(pipelineId);
+            pipelineControlService.unbindCurrentThread();
+            pipelineControlService.unregisterPipeline(pipelineId);
+            log.info("Left pipeline {}", pipelineId);
+        }
+    }
+
+    /**
+     * Selected steps not completed yet, given the last recorded stage
+     */
+    static Set<PipelineStageEnum> remainingSteps(Set<PipelineStageEnum> steps, PipelineStageEnum stage) {
+        Set<PipelineStageEnum> remaining = EnumSet.noneOf(PipelineStageEnum.class);
+        for (PipelineStageEnum step : steps) {
+            if (stage == null || step.ordinal() >= stage.ordinal()) {
+                remaining.add(step);
+            }
+        }
+        return remaining;
+    }
+
+    private void run(Pipeline pipeline, Set<PipelineStageEnum> steps, boolean streaming, PipelineQuota quota,
+            boolean startPaused) {
         UUID pipelineId = pipeline.getId();
 
-        // Register pipeline for control
-        pipelineControlService.registerPipeline(pipelineId);
+        // Register pipeline for control; stage code finds it through the thread
+        pipelineControlService.registerPipeline(pipelineId, quota);
+        pipelineControlService.bindCurrentThread(pipelineId);
+        progressTracker.start(pipeline, steps, streaming, quota);
 
         try {
+            if (startPaused) {
+                pipelineControlService.pausePipeline(pipelineId);
+            }
+            save(pipeline);
+
+            if (streaming) {
+                executeStreaming(pipelineId, pipeline, steps);
+                return;
+            }
+
             // API Caller Step
             if (steps.contains(PipelineStageEnum.API_CALLER_STARTED)) {
                 if (!executeStep(pipelineId, pipeline, PipelineStageEnum.API_CALLER_STARTED,
@@ -80,7 +261,7 @@ public class ScrapeOrchestrationService {
 
             pipeline.setState(PipelineStateEnum.COMPLETED);
             pipeline.setEndTime(LocalDateTime.now());
-            pipelineService.updatePipeline(pipeline);
+            save(pipeline);
             log.info("Pipeline {} completed successfully", pipelineId);
 
         } catch (InterruptedException e) {
@@ -88,17 +269,127 @@ public class ScrapeOrchestrationService {
             log.warn("Pipeline {} was interrupted", pipelineId);
             pipeline.setState(PipelineStateEnum.CANCELLED);
             pipeline.setEndTime(LocalDateTime.now());
-            pipelineService.updatePipeline(pipeline);
+            save(pipeline);
         } catch (Exception e) {
             log.error("Error during pipeline {} execution", pipelineId, e);
             pipeline.setState(PipelineStateEnum.FAILED);
             pipeline.setEndTime(LocalDateTime.now());
-            pipelineService.updatePipeline(pipeline);
+            save(pipeline);
         } finally {
+            progressTracker.finish(pipelineId);
+            pipelineControlService.unbindCurrentThread();
             pipelineControlService.unregisterPipeline(pipelineId);
         }
     }
 
+    /**
+     * Run all selected stages at once. The search stage hands new job ids to
+     * the scraper and the scraper hands stored page ids to the parser, over
+     * bounded queues, so the first contacts appear while searching is still
+     * going on. A stage without a selected upstream works on its backlog only.
+     * Pause and cancel reach every stage; skip ends the most upstream stage
+     * still running.
+     */
+    private void executeStreaming(UUID pipelineId, Pipeline pipeline, Set<PipelineStageEnum> steps)
+            throws InterruptedException {
+        boolean search = steps.contains(PipelineStageEnum.API_CALLER_STARTED);
+        boolean scrape = steps.contains(PipelineStageEnum.SCRAPER_STARTED);
+        boolean parse = steps.contains(PipelineStageEnum.PARSER_STARTED);
+
+        StageQueue<UUID> newJobs = search && scrape ? new StageQueue<>(queueCapacity) : null;
+        StageQueue<UUID> scrapedPages = scrape && parse ? new StageQueue<>(queueCapacity) : null;
+        if (newJobs != null) {
+            progressTracker.watchQueue(pipelineId, "newJobs", newJobs::size);
+        }
+        if (scrapedPages != null) {
+            progressTracker.watchQueue(pipelineId, "scrapedPages", scrapedPages::size);
+        }
+
+        // Stage shows the most upstream stage still running
+        pipeline.setStage(search ? PipelineStageEnum.API_CALLER_STARTED
+                : scrape ? PipelineStageEnum.SCRAPER_STARTED : PipelineStageEnum.PARSER_STARTED);
+        save(pipeline);
+        log.info("Executing steps {} in streaming mode (queue capacity {})", steps, queueCapacity);
+
+        List<Future<?>> stages = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(3)) {
+            if (search) {
+                stages.add(executor.submit(() -> runStage(pipelineId, null, newJobs,
+                        () -> apiCaller.callGoogleSearch(newJobs))));
+            }
+            if (scrape) {
+                stages.add(executor.submit(() -> runStage(pipelineId, newJobs, scrapedPages,
+                        () -> scraper.scrapePendingJobs(newJobs, scrapedPages))));
+            }
+            if (parse) {
+                stages.add(executor.submit(() -> runStage(pipelineId, scrapedPages, null,
+                        () -> dataProcessor.processUnparsedFiles(scrapedPages != null ? scrapedPages : closedQueue()))));
+            }
+
+            for (Future<?> stage : stages) {
+                try {
+                    stage.get();
+                } catch (ExecutionException e) {
+                    stages.forEach(other -> other.cancel(true));
+                    throw new IllegalStateException("Streaming stage failed", e.getCause());
+                }
+            }
+        }
+
+        if (!pipelineControlService.shouldContinue(pipelineId)) {
+            log.info("Pipeline {} cancelled during streaming execution", pipelineId);
+            return;
+        }
+
+        pipeline.setStage(parse ? PipelineStageEnum.PARSER_COMPLETE
+                : scrape ? PipelineStageEnum.SCRAPER_COMPLETE : PipelineStageEnum.API_CALLER_COMPLETE);
+        pipeline.setState(PipelineStateEnum.COMPLETED);
+        pipeline.setEndTime(LocalDateTime.now());
+        save(pipeline);
+        log.info("Pipeline {} completed successfully", pipelineId);
+    }
+
+    /**
+     * Run one streaming stage. When it ends, a pending skip is consumed before
+     * the output closes (downstream stages only honour a skip once their input
+     * is closed), and the input is abandoned so a blocked producer moves on.
+     */
+    private void runStage(UUID pipelineId, StageQueue<UUID> input, StageQueue<UUID> output, Runnable stage) {
+        pipelineControlService.bindCurrentThread(pipelineId);
+        try {
+            stage.run();
+        } finally {
+            pipelineControlService.unbindCurrentThread();
+            pipelineControlService.shouldSkipCurrentStep(pipelineId);
+            if (input != null) {
+                input.abandon();
+            }
+            if (output != null) {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Save the pipeline with its live progress counters
+     */
+    private void save(Pipeline pipeline) {
+        // Pause and resume are written by the control service; don't save over them
+        PipelineStateEnum live = pipelineControlService.getState(pipeline.getId());
+        if (!pipeline.getState().isFinished()
+                && (live == PipelineStateEnum.PAUSED || live == PipelineStateEnum.RUNNING)) {
+            pipeline.setState(live);
+        }
+        progressTracker.applyTo(pipeline);
+        pipelineService.updatePipeline(pipeline);
+    }
+
+    private static StageQueue<UUID> closedQueue() {
+        StageQueue<UUID> queue = new StageQueue<>(1);
+        queue.close();
+        return queue;
+    }
+
     /**
      * Execute a single step with pause/skip/cancel support
      * 
@@ -112,7 +403,7 @@ public class ScrapeOrchestrationService {
         if (pipelineControlService.shouldSkipCurrentStep(pipelineId)) {
             log.info("Skipping step {} for pipeline {}", startStage, pipelineId);
             pipeline.setStage(completeStage);
-            pipelineService.updatePipeline(pipeline);
+            save(pipeline);
             return true;
         }
 
@@ -121,7 +412,7 @@ public class ScrapeOrchestrationService {
             log.info("Pipeline {} cancelled while paused", pipelineId);
             pipeline.setState(PipelineStateEnum.CANCELLED);
             pipeline.setEndTime(LocalDateTime.now());
-            pipelineService.updatePipeline(pipeline);
+            save(pipeline);
             return false;
         }
 
@@ -130,18 +421,18 @@ public class ScrapeOrchestrationService {
             log.info("Pipeline {} cancelled before step {}", pipelineId, startStage);
             pipeline.setState(PipelineStateEnum.CANCELLED);
             pipeline.setEndTime(LocalDateTime.now());
-            pipelineService.updatePipeline(pipeline);
+            save(pipeline);
             return false;
         }
 
         // Update stage and execute
         pipeline.setStage(startStage);
-        pipelineService.updatePipeline(pipeline);
+        save(pipeline);
 
         stepAction.run();
 
         pipeline.setStage(completeStage);
-        pipelineService.updatePipeline(pipeline);
+        save(pipeline);
 
         return true;
     }
@@ -153,46 +444,76 @@ public class ScrapeOrchestrationService {
      */
     @Async
     public void executeAllSteps() {
+        executeAllSteps(streamingByDefault);
+    }
+
+    /**
+     * Execute all steps (async), sequentially or streaming
+     */
+    @Async
+    public void executeAllSteps(boolean streaming) {
+        executeAllSteps(streaming, defaultQuota());
+    }
+
+    @Async
+    public void executeAllSteps(boolean streaming, PipelineQuota quota) {
         executeSteps(EnumSet.of(
                 PipelineStageEnum.API_CALLER_STARTED,
                 PipelineStageEnum.SCRAPER_STARTED,
-                PipelineStageEnum.PARSER_STARTED));
+                PipelineStageEnum.PARSER_STARTED), streaming, quota);
+    }
+
+    public PipelineQuota defaultQuota() {
+        return new PipelineQuota(defaultLanes, defaultProxies);
     }
 
     /**
-     * Pause the currently running pipeline
+     * Quota from request parameters, falling back to the configured defaults
      */
-    public Pipeline pauseCurrentPipeline() {
-        return pipelineControlService.getActivePipelineId()
-                .map(pipelineControlService::pausePipeline)
-                .orElseThrow(() -> new IllegalStateException("No active pipeline to pause"));
+    public PipelineQuota quota(Integer lanes, Integer proxies) {
+        return new PipelineQuota(lanes != null ? lanes : defaultLanes, proxies != null ? proxies : defaultProxies);
     }
 
     /**
-     * Resume the paused pipeline
+     * Pause a running pipeline; the id may be omitted while only one is active
      */
-    public Pipeline resumeCurrentPipeline() {
-        return pipelineControlService.getActivePipelineId()
-                .map(pipelineControlService::resumePipeline)
-                .orElseThrow(() -> new IllegalStateException("No paused pipeline to resume"));
+    public Pipeline pausePipeline(UUID pipelineId) {
+        return pipelineControlService.pausePipeline(resolvePipeline(pipelineId, "pause"));
     }
 
     /**
-     * Skip the current step of the active pipeline
+     * Resume a paused pipeline
      */
-    public Pipeline skipCurrentStep() {
-        return pipelineControlService.getActivePipelineId()
-                .map(pipelineControlService::skipCurrentStep)
-                .orElseThrow(() -> new IllegalStateException("No active pipeline"));
+    public Pipeline resumePipeline(UUID pipelineId) {
+        return pipelineControlService.resumePipeline(resolvePipeline(pipelineId, "resume"));
     }
 
     /**
-     * Cancel the current pipeline
+     * Skip the current step of an active pipeline
      */
-    public Pipeline cancelCurrentPipeline() {
-        return pipelineControlService.getActivePipelineId()
-                .map(pipelineControlService::cancelPipeline)
-                .orElseThrow(() -> new IllegalStateException("No active pipeline to cancel"));
+    public Pipeline skipCurrentStep(UUID pipelineId) {
+        return pipelineControlService.skipCurrentStep(resolvePipeline(pipelineId, "skip"));
+    }
+
+    /**
+     * Cancel a pipeline
+     */
+    public Pipeline cancelPipeline(UUID pipelineId) {
+        return pipelineControlService.cancelPipeline(resolvePipeline(pipelineId, "cancel"));
+    }
+
+    private UUID resolvePipeline(UUID requested, String action) {
+        if (requested != null) {
+            return requested;
+        }
+        List<UUID> active = pipelineControlService.getClusterPipelineIds();
+        if (active.isEmpty()) {
+            throw new IllegalStateException("No active pipeline to " + action);
+        }
+        if (active.size() > 1) {
+            throw new IllegalStateException(active.size() + " pipelines are running; pass the pipelineId to " + action);
+        }
+        return active.get(0);
     }
 
     /**
@@ -201,12 +522,37 @@ public class ScrapeOrchestrationService {
     public boolean hasActivePipeline() {
         return pipelineControlService.hasActivePipeline();
     }
-}
-
-
-
 
+    /**
+     * Pipelines active on this or any other instance
+     */
+    public List<UUID> getActivePipelineIds() {
+        return pipelineControlService.getClusterPipelineIds();
+    }
 
+    /**
+     * Whether the pipeline runs on this instance; such a pipeline cannot be joined here
+     */
+    public boolean isRunningHere(UUID pipelineId) {
+        return pipelineControlService.isRegistered(pipelineId);
+    }
 
+    /**
+     * Take one of this instance's {@code max-concurrent} pipeline slots if one
+     * is free. Checking and taking is a single step, so concurrent requests
+     * cannot both get past the limit. The slot passes to the pipeline method
+     * called next, which gives it back when the pipeline ends; call
+     * {@link #releaseSlot()} if none is started after all.
+     */
+    public boolean tryReserveSlot() {
+        return slots.tryAcquire();
+    }
 
+    public void releaseSlot() {
+        slots.release();
+    }
 
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+}
@@ -1,31 +1,215 @@
 package ir.netpick.platform.mailmine.service.orch;
 
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.core.lock.SchedulerLock;
+import ir.netpick.platform.mailmine.repository.PipelineRepository;
+import ir.netpick.platform.mailmine.service.base.ApiKeyQuotaService;
+import ir.netpick.platform.mailmine.service.base.ProxyService;
+import ir.netpick.platform.mailmine.service.base.ScrapeDataService;
+import ir.netpick.platform.mailmine.service.base.ScrapeJobService;
+import ir.netpick.platform.mailmine.service.base.SearchQueryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Starts pipelines when there is work for them instead of on a fixed clock.
+ * Every check looks at the backlog of each stage - queries due for search
+ * (and API quota to search them with), pending scrape jobs, unparsed pages -
+ * and runs the stages whose backlog reached its threshold. A backlog below
+ * the threshold still runs once its stage has not run for
+ * {@code max-idle-minutes}.
+ * <p>
+ * No run starts while any pipeline is active, here or on another instance,
+ * so runs never stack: besides the pipelines the control plane knows of, a
+ * pipeline whose database checkpoint is fresh counts as running, as the
+ * in-memory control plane cannot see other replicas. Scraping backs off exponentially while too few proxies
+ * are healthy; the other stages keep going. When each stage last ran and the
+ * backoff are kept in {@link ScrapeScheduleState}, since the check moves
+ * between replicas with its lock.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ScrapeScheduleService {
 
+    static final List<PipelineStageEnum> STAGES = List.of(
+            PipelineStageEnum.API_CALLER_STARTED,
+            PipelineStageEnum.SCRAPER_STARTED,
+            PipelineStageEnum.PARSER_STARTED);
+
     private final ScrapeOrchestrationService orchestrationService;
+    private final ScrapeJobService scrapeJobService;
+    private final ScrapeDataService scrapeDataService;
+    private final SearchQueryService searchQueryService;
+    private final ApiKeyQuotaService apiKeyQuotaService;
+    private final ProxyService proxyService;
+    private final ScrapeScheduleState scheduleState;
+    private final PipelineRepository pipelineRepository;
+
+    @Value("${scraper.schedule.enabled:true}")
+    private boolean enabled;
+
+    // Queries due for search that start a search run
+    @Value("${scraper.schedule.search-threshold:5}")
+    private long searchThreshold;
+
+    // API calls the current run may spend that make a search run worthwhile
+    @Value("${scraper.schedule.min-search-budget:10}")
+    private int minSearchBudget;
+
+    @Value("${scraper.schedule.scrape-threshold:50}")
+    private long scrapeThreshold;
+
+    @Value("${scraper.schedule.parse-threshold:50}")
+    private long parseThreshold;
+
+    // A stage that has not run for this long runs with any backlog, even below its threshold
+    @Value("${scraper.schedule.max-idle-minutes:180}")
+    private long maxIdleMinutes;
+
+    // Quiet time after a stage ran, so a backlog that cannot shrink is not retried every check
+    @Value("${scraper.schedule.cooldown-minutes:5}")
+    private long cooldownMinutes;
+
+    // Scraping needs at least this many working proxies...
+    @Value("${scraper.schedule.min-healthy-proxies:1}")
+    private long minHealthyProxies;
+
+    // ...making up at least this share of the tested ones
+    @Value("${scraper.schedule.min-healthy-ratio:0.2}")
+    private double minHealthyRatio;
 
-    @Scheduled(cron = "0 0 */3 * * *")
+    @Value("${scraper.schedule.proxy-backoff-minutes:5}")
+    private long proxyBackoffMinutes;
+
+    @Value("${scraper.schedule.max-proxy-backoff-minutes:120}")
+    private long maxProxyBackoffMinutes;
+
+    @Value("${scraper.use-proxy:true}")
+    private boolean useProxy;
+
+    // A running pipeline refreshes its checkpoint well within this; an older one is orphaned
+    @Value("${scraper.pipeline.recovery.stale-after-seconds:120}")
+    private long staleAfterSeconds;
+
+    @Scheduled(initialDelayString = "${scraper.schedule.initial-delay-ms:60000}",
+            fixedDelayString = "${scraper.schedule.check-interval-ms:60000}")
+    @SchedulerLock(name = "scrape-schedule")
     public void scheduledScrapeJob() {
-        log.info("===== Starting scheduled scraping pipeline =====");
-        // Execute all steps through orchestration (runs async)
-        orchestrationService.executeAllSteps();
-        log.info("===== Scraping pipeline started (running in background) =====");
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (!orchestrationService.getActivePipelineIds().isEmpty()
+                || pipelineRepository.countFresh(PipelineRecoveryService.ACTIVE_STATES,
+                        now.minusSeconds(staleAfterSeconds)) > 0) {
+            log.debug("Scheduled check skipped: a pipeline is still running");
+            return;
+        }
+
+        Set<PipelineStageEnum> steps = dueSteps(now);
+        if (steps.isEmpty()) {
+            return;
+        }
+
+        if (!orchestrationService.tryReserveSlot()) {
+            log.debug("Scheduled check skipped: no free pipeline slot");
+            return;
+        }
+        log.info("===== Starting scheduled pipeline with steps {} =====", steps);
+        Map<PipelineStageEnum, ScrapeScheduleState.StageState> states = scheduleState.load(now);
+        steps.forEach(stage -> {
+            ScrapeScheduleState.StageState state = states.get(stage);
+            scheduleState.save(stage, new ScrapeScheduleState.StageState(
+                    now, state.backoffUntil(), state.backoffFailures()));
+        });
+        // Runs async; stages pick their work from the backlog
+        orchestrationService.executeSteps(steps);
     }
-}
 
+    /**
+     * Stages whose backlog is due at the given time
+     */
+    Set<PipelineStageEnum> dueSteps(LocalDateTime now) {
+        Map<PipelineStageEnum, ScrapeScheduleState.StageState> states = scheduleState.load(now);
+        Set<PipelineStageEnum> steps = EnumSet.noneOf(PipelineStageEnum.class);
 
+        long queries = searchQueryService.countPendingSearch();
+        if (due(states.get(PipelineStageEnum.API_CALLER_STARTED), queries, searchThreshold, now)) {
+            int budget = apiKeyQuotaService.quotaReport().runBudget();
+            if (budget >= minSearchBudget) {
+                steps.add(PipelineStageEnum.API_CALLER_STARTED);
+            } else {
+                log.debug("{} queries due, but only {} API calls left for this run", queries, budget);
+            }
+        }
 
+        long jobs = scrapeJobService.countPending();
+        boolean scrapeDue = steps.contains(PipelineStageEnum.API_CALLER_STARTED)
+                || due(states.get(PipelineStageEnum.SCRAPER_STARTED), jobs, scrapeThreshold, now);
+        if (scrapeDue && proxiesHealthy(states.get(PipelineStageEnum.SCRAPER_STARTED), now)) {
+            steps.add(PipelineStageEnum.SCRAPER_STARTED);
+        }
 
+        long unparsed = scrapeDataService.countUnparsed();
+        if (steps.contains(PipelineStageEnum.SCRAPER_STARTED)
+                || due(states.get(PipelineStageEnum.PARSER_STARTED), unparsed, parseThreshold, now)) {
+            steps.add(PipelineStageEnum.PARSER_STARTED);
+        }
 
+        log.debug("Backlog: {} queries, {} jobs, {} unparsed pages -> {}", queries, jobs, unparsed, steps);
+        return steps;
+    }
 
+    /**
+     * Whether a stage's own backlog calls for a run: past its cooldown, with
+     * a backlog over the threshold or idle for too long
+     */
+    private boolean due(ScrapeScheduleState.StageState state, long backlog, long threshold, LocalDateTime now) {
+        if (backlog == 0 || now.isBefore(state.lastRunAt().plusMinutes(cooldownMinutes))) {
+            return false;
+        }
+        return backlog >= threshold || now.isAfter(state.lastRunAt().plusMinutes(maxIdleMinutes));
+    }
 
+    /**
+     * Whether scraping may run; while it may not, checks back off exponentially
+     */
+    private boolean proxiesHealthy(ScrapeScheduleState.StageState state, LocalDateTime now) {
+        if (!useProxy) {
+            return true;
+        }
+        if (state.backingOff(now)) {
+            return false;
+        }
 
+        Map<String, Long> stats = proxyService.getProxyStats();
+        long healthy = stats.getOrDefault("active", 0L);
+        long tested = healthy + stats.getOrDefault("failed", 0L);
+        if (healthy >= minHealthyProxies && healthy >= minHealthyRatio * tested) {
+            if (state.backoffFailures() > 0) {
+                scheduleState.save(PipelineStageEnum.SCRAPER_STARTED,
+                        new ScrapeScheduleState.StageState(state.lastRunAt(), null, 0));
+            }
+            return true;
+        }
 
+        int failures = state.backoffFailures();
+        long backoff = Math.min(maxProxyBackoffMinutes, proxyBackoffMinutes << Math.min(failures, 16));
+        LocalDateTime until = now.plus(Duration.ofMinutes(backoff));
+        scheduleState.save(PipelineStageEnum.SCRAPER_STARTED,
+                new ScrapeScheduleState.StageState(state.lastRunAt(), until, failures + 1));
+        log.warn("Only {} of {} tested proxies are healthy; not scraping until {}", healthy, tested, until);
+        return false;
+    }
+}
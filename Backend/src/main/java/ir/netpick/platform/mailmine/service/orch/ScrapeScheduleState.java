@@ -0,0 +1,79 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Schedule state per pipeline stage in the {@code scrape_schedule_state}
+ * table, so whichever replica holds the schedule lock sees when each stage
+ * last ran and whether scraping is backing off.
+ */
+@Component
+@RequiredArgsConstructor
+public class ScrapeScheduleState {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param lastRunAt       when a run including the stage last started (or
+     *                        when the stage was first seen, before any run)
+     * @param backoffUntil    the stage is not started before this time
+     * @param backoffFailures consecutive checks that found it unable to run
+     */
+    public record StageState(LocalDateTime lastRunAt, LocalDateTime backoffUntil, int backoffFailures) {
+
+        public boolean backingOff(LocalDateTime now) {
+            return backoffUntil != null && now.isBefore(backoffUntil);
+        }
+    }
+
+    /**
+     * State of every stage; stages without a row start their clock now
+     */
+    public Map<PipelineStageEnum, StageState> load(LocalDateTime now) {
+        Map<PipelineStageEnum, StageState> states = new EnumMap<>(PipelineStageEnum.class);
+        jdbcTemplate.query("SELECT stage, last_run_at, backoff_until, backoff_failures FROM scrape_schedule_state",
+                rs -> {
+                    Timestamp backoffUntil = rs.getTimestamp("backoff_until");
+                    states.put(PipelineStageEnum.valueOf(rs.getString("stage")), new StageState(
+                            rs.getTimestamp("last_run_at").toLocalDateTime(),
+                            backoffUntil != null ? backoffUntil.toLocalDateTime() : null,
+                            rs.getInt("backoff_failures")));
+                });
+        for (PipelineStageEnum stage : ScrapeScheduleService.STAGES) {
+            if (!states.containsKey(stage)) {
+                StageState fresh = new StageState(now, null, 0);
+                save(stage, fresh);
+                states.put(stage, fresh);
+            }
+        }
+        return states;
+    }
+
+    public void save(PipelineStageEnum stage, StageState state) {
+        Timestamp lastRunAt = Timestamp.valueOf(state.lastRunAt());
+        Timestamp backoffUntil = state.backoffUntil() != null ? Timestamp.valueOf(state.backoffUntil()) : null;
+        int updated = jdbcTemplate.update("""
+                UPDATE scrape_schedule_state SET last_run_at = ?, backoff_until = ?, backoff_failures = ?
+                WHERE stage = ?""",
+                lastRunAt, backoffUntil, state.backoffFailures(), stage.name());
+        if (updated == 0) {
+            try {
+                jdbcTemplate.update("""
+                        INSERT INTO scrape_schedule_state (stage, last_run_at, backoff_until, backoff_failures)
+                        VALUES (?, ?, ?, ?)""",
+                        stage.name(), lastRunAt, backoffUntil, state.backoffFailures());
+            } catch (DataIntegrityViolationException e) {
+                // Another replica created the row first; its state is as good as ours
+            }
+        }
+    }
+}
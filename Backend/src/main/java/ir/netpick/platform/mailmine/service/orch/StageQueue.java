@@ -0,0 +1,77 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded hand-off between two pipeline stages running concurrently. A full
+ * queue blocks the producing stage (back-pressure). Items are ids of rows the
+ * producer has already committed, so dropping the queue loses nothing: the
+ * rows stay pending in the database for the next run.
+ */
+public class StageQueue<T> {
+
+    private static final long OFFER_TIMEOUT_MS = 500;
+
+    private final BlockingQueue<T> queue;
+
+    // Producer finished; the consumer stops once the queue is drained
+    private volatile boolean closed;
+
+    // Consumer finished; the producer stops waiting for room
+    private volatile boolean abandoned;
+
+    public StageQueue(int capacity) {
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Hand an item downstream, waiting while the queue is full. The item is
+     * dropped if the consumer has stopped or the thread is interrupted.
+     */
+    public void put(T item) {
+        try {
+            while (!abandoned) {
+                if (queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Next item, waiting up to the timeout
+     *
+     * @return the item, or null if none arrived in time
+     */
+    public T poll(long timeoutMs) throws InterruptedException {
+        return queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public void abandon() {
+        abandoned = true;
+        queue.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Producer finished and every item was taken
+     */
+    public boolean isDrained() {
+        return closed && queue.isEmpty();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+}
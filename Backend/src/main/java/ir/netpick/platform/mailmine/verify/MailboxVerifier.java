@@ -0,0 +1,557 @@
+package ir.netpick.platform.mailmine.verify;
+
+import ir.netpick.platform.core.dns.DnsAnswer;
+import ir.netpick.platform.core.dns.DnsRecordType;
+import ir.netpick.platform.core.dns.DnsResolver;
+import ir.netpick.platform.mailmine.verify.SmtpSession.SmtpException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.validator.routines.EmailValidator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Checks whether mailboxes exist without sending mail: address syntax, the
+ * domain's MX (or address record as implicit MX), then an SMTP {@code RCPT TO}
+ * probe at the MX host.
+ * <p>
+ * Addresses are grouped by primary MX host, so one connection asks about
+ * many recipients (of every domain hosted there); it is reset after
+ * {@code rcpt-per-transaction} recipients and replaced after
+ * {@code transactions-per-connection} resets. Connections are limited overall,
+ * per MX host and per recipient domain, and recipients on one connection are
+ * paced by {@code rcpt-interval-ms}. Each domain gets one probe of a random
+ * mailbox first; a domain that accepts it is catch-all and its addresses are
+ * not probed further. Temporary failures (greylisting) come back as
+ * {@link VerificationStatus#DEFERRED} for the caller to retry later, and a
+ * host that rejects us on policy grounds is left alone for {@code host-backoff-minutes}.
+ */
+@Slf4j
+@Component
+public class MailboxVerifier {
+
+    // MX hosts tried, in preference order, before deferring a domain
+    private static final int MX_HOSTS_TRIED = 2;
+    private static final int MAX_CACHED_DOMAINS = 100_000;
+
+    private final DnsResolver dnsResolver;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Expiring<Boolean>> catchAllDomains = new ConcurrentHashMap<>();
+    private final Map<String, Expiring<String>> hostBackoff = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private Semaphore connectionPermits;
+
+    // 25 in production; tests point this at a local stub server
+    @Value("${verifier.smtp-port:25}")
+    private int smtpPort;
+
+    // Should resolve back to the probing server's address
+    @Value("${verifier.helo-name:localhost}")
+    private String heloName;
+
+    // Empty for the null reverse path, as mail servers use for callouts
+    @Value("${verifier.mail-from:}")
+    private String mailFrom;
+
+    @Value("${verifier.connect-timeout-ms:10000}")
+    private int connectTimeoutMs;
+
+    @Value("${verifier.read-timeout-ms:30000}")
+    private int readTimeoutMs;
+
+    @Value("${verifier.max-connections:64}")
+    private int maxConnections;
+
+    @Value("${verifier.per-host-connections:2}")
+    private int perHostConnections;
+
+    @Value("${verifier.per-domain-concurrency:1}")
+    private int perDomainConcurrency;
+
+    @Value("${verifier.rcpt-per-transaction:25}")
+    private int rcptPerTransaction;
+
+    @Value("${verifier.transactions-per-connection:4}")
+    private int transactionsPerConnection;
+
+    // Minimum gap between recipients on one connection
+    @Value("${verifier.rcpt-interval-ms:100}")
+    private long rcptIntervalMs;
+
+    @Value("${verifier.catch-all-ttl-hours:24}")
+    private long catchAllTtlHours;
+
+    @Value("${verifier.host-backoff-minutes:60}")
+    private long hostBackoffMinutes;
+
+    public MailboxVerifier(DnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+    }
+
+    /**
+     * Verify the addresses, each distinct (trimmed) address once, and return
+     * the results in input order. Blocks until every probe has finished.
+     */
+    public List<VerificationResult> verify(Collection<String> addresses) {
+        long start = System.currentTimeMillis();
+        Map<String, VerificationResult> results = new ConcurrentHashMap<>();
+        Set<String> ordered = new LinkedHashSet<>();
+        Map<String, List<String>> byDomain = new LinkedHashMap<>();
+        for (String address : addresses) {
+            if (address == null || !ordered.add(address.trim())) {
+                continue;
+            }
+            String email = address.trim();
+            if (!EmailValidator.getInstance().isValid(email)) {
+                results.put(email, VerificationResult.of(email, VerificationStatus.BAD_SYNTAX, "Invalid address"));
+            } else {
+                String domain = email.substring(email.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+                byDomain.computeIfAbsent(domain, d -> new ArrayList<>()).add(email);
+            }
+        }
+
+        // Routes of all domains are looked up in parallel
+        Map<String, CompletableFuture<Route>> routes = byDomain.keySet().stream()
+                .collect(Collectors.toMap(Function.identity(), this::route, (a, b) -> a, LinkedHashMap::new));
+
+        Map<String, List<List<Unit>>> hosts = new LinkedHashMap<>();
+        routes.forEach((domain, future) -> {
+            Route route = future.join();
+            List<String> domainAddresses = byDomain.get(domain);
+            if (route.failure() != null) {
+                domainAddresses.forEach(email -> results.put(email,
+                        VerificationResult.of(email, route.failure(), route.detail())));
+                return;
+            }
+            String primary = route.hosts().get(0);
+            String backoff = backoffReason(primary);
+            if (backoff != null) {
+                domainAddresses.forEach(email -> results.put(email,
+                        new VerificationResult(email, VerificationStatus.DEFERRED, primary, null, backoff)));
+                return;
+            }
+            List<Unit> units = new ArrayList<>();
+            for (int i = 0; i < domainAddresses.size(); i += rcptPerTransaction) {
+                units.add(new Unit(domain, route.hosts(),
+                        domainAddresses.subList(i, Math.min(i + rcptPerTransaction, domainAddresses.size()))));
+            }
+            hosts.computeIfAbsent(primary, h -> new ArrayList<>()).add(units);
+        });
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            hosts.forEach((host, domains) -> {
+                HostRun run = new HostRun(host, interleave(domains));
+                int workers = Math.min(perHostConnections, run.queue.size());
+                for (int i = 0; i < workers; i++) {
+                    executor.execute(new HostWorker(run, i == 0, results));
+                }
+            });
+        }
+
+        List<VerificationResult> verified = ordered.stream().map(results::get).toList();
+        if (log.isInfoEnabled()) {
+            Map<VerificationStatus, Long> counts = verified.stream()
+                    .collect(Collectors.groupingBy(VerificationResult::status,
+                            () -> new EnumMap<>(VerificationStatus.class), Collectors.counting()));
+            log.info("Verified {} addresses of {} domains on {} MX hosts in {} ms: {}", verified.size(),
+                    byDomain.size(), hosts.size(), System.currentTimeMillis() - start, counts);
+        }
+        return verified;
+    }
+
+    public void clearCaches() {
+        catchAllDomains.clear();
+        hostBackoff.clear();
+    }
+
+    private CompletableFuture<Route> route(String domain) {
+        return dnsResolver.resolve(domain, DnsRecordType.MX).thenCompose(mx -> {
+            if (mx.isFound()) {
+                return CompletableFuture.completedFuture(mx.values().equals(List.of("."))
+                        ? Route.failed(VerificationStatus.NO_MAIL_DOMAIN, "Null MX")
+                        : new Route(mx.values(), null, null));
+            }
+            if (mx.status() == DnsAnswer.Status.NX_DOMAIN) {
+                return CompletableFuture.completedFuture(
+                        Route.failed(VerificationStatus.NO_MAIL_DOMAIN, "Domain does not exist"));
+            }
+            if (mx.status() == DnsAnswer.Status.ERROR) {
+                return CompletableFuture.completedFuture(
+                        Route.failed(VerificationStatus.DEFERRED, "MX lookup failed: " + mx.error()));
+            }
+            // No MX records: the domain's own address is its mail host
+            return dnsResolver.resolve(domain, DnsRecordType.A).thenApply(a -> {
+                if (a.isFound()) {
+                    return new Route(List.of(domain), null, null);
+                }
+                return a.isNegative() ? Route.failed(VerificationStatus.NO_MAIL_DOMAIN, "No MX or address record")
+                        : Route.failed(VerificationStatus.DEFERRED, "Address lookup failed: " + a.error());
+            });
+        });
+    }
+
+    private String backoffReason(String host) {
+        Expiring<String> backoff = hostBackoff.get(host);
+        if (backoff == null) {
+            return null;
+        }
+        if (backoff.isExpired()) {
+            hostBackoff.remove(host, backoff);
+            return null;
+        }
+        return "Host backing off: " + backoff.value();
+    }
+
+    private Boolean cachedCatchAll(String domain) {
+        Expiring<Boolean> verdict = catchAllDomains.get(domain);
+        if (verdict == null || verdict.isExpired()) {
+            return null;
+        }
+        return verdict.value();
+    }
+
+    private void cacheCatchAll(String domain, boolean catchAll) {
+        if (catchAllDomains.size() >= MAX_CACHED_DOMAINS) {
+            catchAllDomains.clear();
+        }
+        catchAllDomains.put(domain, Expiring.of(catchAll, TimeUnit.HOURS.toNanos(catchAllTtlHours)));
+    }
+
+    private synchronized Semaphore connectionPermits() {
+        if (connectionPermits == null) {
+            connectionPermits = new Semaphore(maxConnections);
+        }
+        return connectionPermits;
+    }
+
+    /**
+     * Round-robin over the domains of a host, so parallel connections tend to
+     * work on different domains
+     */
+    private static List<Unit> interleave(List<List<Unit>> domains) {
+        List<Unit> units = new ArrayList<>();
+        for (int round = 0; units.size() < domains.stream().mapToInt(List::size).sum(); round++) {
+            for (List<Unit> domainUnits : domains) {
+                if (round < domainUnits.size()) {
+                    units.add(domainUnits.get(round));
+                }
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Work of one verify call on one MX host, shared by its connections
+     */
+    private static final class HostRun {
+        private final String host;
+        private final Queue<Unit> queue;
+        private final Map<String, Semaphore> domainPermits = new ConcurrentHashMap<>();
+        // Released once the first connection finished a unit
+        private final CountDownLatch started = new CountDownLatch(1);
+        // Set once the host refused us or could not be reached; later units are deferred with it
+        private volatile String failure;
+
+        HostRun(String host, List<Unit> units) {
+            this.host = host;
+            this.queue = new ConcurrentLinkedQueue<>(units);
+        }
+    }
+
+    /**
+     * One connection's worth of work on an MX host: takes units off the host's
+     * queue until it is empty, reusing its session between them. Only the
+     * leading connection starts right away; the others follow once it has
+     * finished a unit, so a host that refuses us sees one connection.
+     */
+    private final class HostWorker implements Runnable {
+
+        private final HostRun run;
+        private final String host;
+        private final boolean leader;
+        private final Map<String, VerificationResult> results;
+
+        private SmtpSession session;
+        private boolean holdsPermits;
+        private boolean inTransaction;
+        private int transactionRecipients;
+        private int transactions;
+        private long lastRcptAt;
+
+        HostWorker(HostRun run, boolean leader, Map<String, VerificationResult> results) {
+            this.run = run;
+            this.host = run.host;
+            this.leader = leader;
+            this.results = results;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!leader) {
+                    run.started.await();
+                }
+                Unit unit;
+                while ((unit = run.queue.poll()) != null) {
+                    Semaphore domainPermit = run.domainPermits.computeIfAbsent(unit.domain(),
+                            d -> new Semaphore(Math.max(1, perDomainConcurrency)));
+                    try {
+                        domainPermit.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        defer(unit, "Interrupted");
+                        continue;
+                    }
+                    try {
+                        process(unit);
+                    } catch (RuntimeException e) {
+                        log.warn("Verifying {} at {} failed: {}", unit.domain(), host, e.getMessage());
+                        defer(unit, e.getMessage());
+                    } finally {
+                        domainPermit.release();
+                        run.started.countDown();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                run.started.countDown();
+                closeSession();
+            }
+        }
+
+        private void process(Unit unit) {
+            String failure = run.failure;
+            if (failure != null) {
+                defer(unit, failure);
+                return;
+            }
+            try {
+                Boolean catchAll = cachedCatchAll(unit.domain());
+                if (catchAll == null) {
+                    catchAll = probeCatchAll(unit);
+                }
+                if (Boolean.TRUE.equals(catchAll)) {
+                    unit.addresses().forEach(email -> results.put(email, new VerificationResult(email,
+                            VerificationStatus.CATCH_ALL, session != null ? session.host() : host, null,
+                            "Domain accepts any recipient")));
+                    return;
+                }
+                for (String email : unit.addresses()) {
+                    SmtpReply reply = rcpt(unit, email);
+                    VerificationStatus status;
+                    if (reply.code() == 252) {
+                        status = VerificationStatus.UNKNOWN;
+                    } else if (reply.isPositive()) {
+                        status = VerificationStatus.VALID;
+                    } else if (reply.isTransient()) {
+                        status = VerificationStatus.DEFERRED;
+                    } else {
+                        status = VerificationStatus.INVALID;
+                    }
+                    results.put(email, VerificationResult.of(email, status, currentHost(), reply));
+                }
+            } catch (SmtpException e) {
+                refused(e.reply());
+                defer(unit, run.failure);
+            } catch (IOException e) {
+                run.failure = "Connection failed: " + e.getMessage();
+                log.debug("Could not probe {} at {}: {}", unit.domain(), host, e.getMessage());
+                closeSession();
+                defer(unit, run.failure);
+            }
+        }
+
+        /**
+         * True when the domain accepted a random mailbox, false when it
+         * rejected it, null when it would not say
+         */
+        private Boolean probeCatchAll(Unit unit) throws IOException {
+            String probe = "nx" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36) + "@" + unit.domain();
+            SmtpReply reply = rcpt(unit, probe);
+            if (reply.isPositive() && reply.code() != 252) {
+                cacheCatchAll(unit.domain(), true);
+                return true;
+            }
+            if (reply.isPermanent()) {
+                cacheCatchAll(unit.domain(), false);
+                return false;
+            }
+            return null;
+        }
+
+        /**
+         * Ask about one recipient, opening the session or a new transaction as
+         * needed; a dropped connection is reopened once. Policy rejections and
+         * a closing server surface as {@link SmtpException}.
+         */
+        private SmtpReply rcpt(Unit unit, String recipient) throws IOException {
+            for (int attempt = 0;; attempt++) {
+                try {
+                    prepare(unit);
+                    pace();
+                    SmtpReply reply = session.rcptTo(recipient);
+                    lastRcptAt = System.nanoTime();
+                    transactionRecipients++;
+                    if (reply.code() == 421 || reply.isPolicyRejection()) {
+                        throw new SmtpException(reply);
+                    }
+                    return reply;
+                } catch (SmtpException e) {
+                    throw e;
+                } catch (IOException e) {
+                    closeSession();
+                    if (attempt >= 1) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        private void prepare(Unit unit) throws IOException {
+            if (session != null && inTransaction && transactionRecipients >= rcptPerTransaction) {
+                if (++transactions >= transactionsPerConnection) {
+                    closeSession();
+                } else {
+                    SmtpReply reply = session.rset();
+                    if (!reply.isPositive()) {
+                        throw new IOException("RSET refused: " + reply);
+                    }
+                    inTransaction = false;
+                }
+            }
+            if (session == null) {
+                open(unit.mxHosts());
+            }
+            if (!inTransaction) {
+                SmtpReply reply = session.mailFrom(mailFrom);
+                if (!reply.isPositive()) {
+                    throw new SmtpException(reply);
+                }
+                inTransaction = true;
+                transactionRecipients = 0;
+            }
+        }
+
+        private void open(List<String> mxHosts) throws IOException {
+            if (!holdsPermits) {
+                try {
+                    hostPermits.computeIfAbsent(host, h -> new Semaphore(Math.max(1, perHostConnections))).acquire();
+                    try {
+                        connectionPermits().acquire();
+                    } catch (InterruptedException e) {
+                        hostPermits.get(host).release();
+                        throw e;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted");
+                }
+                holdsPermits = true;
+            }
+
+            IOException last = null;
+            for (String mxHost : mxHosts.subList(0, Math.min(MX_HOSTS_TRIED, mxHosts.size()))) {
+                DnsAnswer address = dnsResolver.lookup(mxHost, DnsRecordType.A);
+                if (!address.isFound()) {
+                    last = new IOException("No address for " + mxHost);
+                    continue;
+                }
+                try {
+                    InetSocketAddress target = new InetSocketAddress(
+                            InetAddress.getByName(address.values().get(0)), smtpPort);
+                    session = SmtpSession.open(mxHost, target, connectTimeoutMs, readTimeoutMs, heloName);
+                    inTransaction = false;
+                    transactions = 0;
+                    return;
+                } catch (SmtpException e) {
+                    // A permanent refusal is about us and holds for the backup MX too
+                    if (e.reply().isPermanent()) {
+                        throw e;
+                    }
+                    last = e;
+                } catch (IOException e) {
+                    last = e;
+                }
+            }
+            releasePermits();
+            throw last != null ? last : new IOException("No MX host to connect to");
+        }
+
+        private void pace() throws IOException {
+            long wait = TimeUnit.MILLISECONDS.toNanos(rcptIntervalMs) - (System.nanoTime() - lastRcptAt);
+            if (lastRcptAt != 0 && wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted");
+                }
+            }
+        }
+
+        /**
+         * The host refused the session, our sender or our rate: stop probing it
+         * for a while, in this run and the next ones
+         */
+        private void refused(SmtpReply reply) {
+            run.failure = "Refused by " + currentHost() + ": " + reply;
+            log.warn("{}; backing off for {} minutes", run.failure, hostBackoffMinutes);
+            hostBackoff.put(host, Expiring.of(reply.toString(), TimeUnit.MINUTES.toNanos(hostBackoffMinutes)));
+            closeSession();
+        }
+
+        private void defer(Unit unit, String reason) {
+            unit.addresses().forEach(email -> results.putIfAbsent(email,
+                    new VerificationResult(email, VerificationStatus.DEFERRED, host, null, reason)));
+        }
+
+        private String currentHost() {
+            return session != null ? session.host() : host;
+        }
+
+        private void closeSession() {
+            if (session != null) {
+                session.close();
+                session = null;
+            }
+            inTransaction = false;
+            releasePermits();
+        }
+
+        private void releasePermits() {
+            if (holdsPermits) {
+                connectionPermits().release();
+                hostPermits.get(host).release();
+                holdsPermits = false;
+            }
+        }
+    }
+
+    private record Route(List<String> hosts, VerificationStatus failure, String detail) {
+        static Route failed(VerificationStatus status, String detail) {
+            return new Route(List.of(), status, detail);
+        }
+    }
+
+    private record Unit(String domain, List<String> mxHosts, List<String> addresses) {
+    }
+
+    private record Expiring<T>(T value, long expiresAt) {
+        static <T> Expiring<T> of(T value, long ttlNanos) {
+            return new Expiring<>(value, System.nanoTime() + ttlNanos);
+        }
+
+        boolean isExpired() {
+            return expiresAt - System.nanoTime() <= 0;
+        }
+    }
+}
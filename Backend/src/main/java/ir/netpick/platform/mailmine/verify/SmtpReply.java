@@ -0,0 +1,59 @@
+package ir.netpick.platform.mailmine.verify;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A (possibly multi-line) SMTP reply; {@code text} joins the lines with spaces.
+ */
+record SmtpReply(int code, String text) {
+
+    private static final Pattern ENHANCED_CODE = Pattern.compile("^([245])\\.(\\d{1,3})\\.(\\d{1,3})\\b");
+    private static final Pattern POLICY_WORDS = Pattern.compile(
+            "block|blacklist|spamhaus|\\blisted\\b|reputation|banned|\\bspam\\b|\\brbl\\b|too many");
+
+    boolean isPositive() {
+        return code >= 200 && code < 300;
+    }
+
+    boolean isTransient() {
+        return code >= 400 && code < 500;
+    }
+
+    boolean isPermanent() {
+        return code >= 500;
+    }
+
+    /**
+     * RFC 3463 enhanced status code at the start of the text (e.g. "5.1.1"), or null
+     */
+    String enhancedCode() {
+        Matcher matcher = ENHANCED_CODE.matcher(text);
+        return matcher.find() ? matcher.group() : null;
+    }
+
+    /**
+     * Whether a rejection is about the sender (our address, IP or rate) rather
+     * than the recipient: enhanced status 5.7.x/4.7.x other than greylisting,
+     * or the usual blocklist wording when no enhanced status is given.
+     */
+    boolean isPolicyRejection() {
+        String enhanced = enhancedCode();
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (enhanced != null) {
+            if (enhanced.startsWith("5.1.") || enhanced.startsWith("5.2.") || enhanced.startsWith("5.4.")) {
+                return false;
+            }
+            if (enhanced.substring(1).startsWith(".7.")) {
+                return !lower.contains("greylist") && !lower.contains("graylist");
+            }
+        }
+        return isPermanent() && POLICY_WORDS.matcher(lower).find();
+    }
+
+    @Override
+    public String toString() {
+        return code + " " + text;
+    }
+}
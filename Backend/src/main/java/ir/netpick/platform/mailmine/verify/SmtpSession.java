@@ -0,0 +1,167 @@
+package ir.netpick.platform.mailmine.verify;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal plain-text SMTP client conversation, enough to ask a server whether
+ * it accepts a recipient: greeting, EHLO (HELO fallback), MAIL FROM, RCPT TO,
+ * RSET and QUIT. No message is ever sent. Not thread safe.
+ */
+final class SmtpSession implements AutoCloseable {
+
+    // Longest reply line accepted; RFC 5321 allows 512 octets
+    private static final int MAX_LINE = 4096;
+    private static final int MAX_LINES = 100;
+
+    private final String host;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    private SmtpSession(String host, Socket socket) throws IOException {
+        this.host = host;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = socket.getOutputStream();
+    }
+
+    /**
+     * Connect and greet. Throws {@link SmtpException} when the server refuses
+     * the session (a 4xx/5xx greeting or HELO reply).
+     */
+    static SmtpSession open(String host, InetSocketAddress address, int connectTimeoutMs, int readTimeoutMs,
+            String heloName) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setSoTimeout(readTimeoutMs);
+            socket.setTcpNoDelay(true);
+            socket.connect(address, connectTimeoutMs);
+            SmtpSession session = new SmtpSession(host, socket);
+            session.expectPositive(session.readReply());
+            SmtpReply ehlo = session.command("EHLO " + heloName);
+            if (!ehlo.isPositive() && ehlo.code() != 421) {
+                ehlo = session.command("HELO " + heloName);
+            }
+            session.expectPositive(ehlo);
+            return session;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    String host() {
+        return host;
+    }
+
+    SmtpReply mailFrom(String sender) throws IOException {
+        return command("MAIL FROM:<" + sender + ">");
+    }
+
+    SmtpReply rcptTo(String recipient) throws IOException {
+        return command("RCPT TO:<" + recipient + ">");
+    }
+
+    SmtpReply rset() throws IOException {
+        return command("RSET");
+    }
+
+    /**
+     * Say QUIT without waiting long for the answer, then close the socket
+     */
+    @Override
+    public void close() {
+        try {
+            if (!socket.isClosed()) {
+                socket.setSoTimeout(1000);
+                command("QUIT");
+            }
+        } catch (IOException ignored) {
+            // Closing anyway
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    private SmtpReply command(String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return readReply();
+    }
+
+    private void expectPositive(SmtpReply reply) throws SmtpException {
+        if (!reply.isPositive()) {
+            throw new SmtpException(reply);
+        }
+    }
+
+    private SmtpReply readReply() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int lines = 0; lines < MAX_LINES; lines++) {
+            String line = readLine();
+            if (line.length() < 3 || !Character.isDigit(line.charAt(0))) {
+                throw new IOException("Malformed SMTP reply from " + host + ": " + line);
+            }
+            int code;
+            try {
+                code = Integer.parseInt(line.substring(0, 3));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed SMTP reply from " + host + ": " + line);
+            }
+            if (line.length() > 4) {
+                if (!text.isEmpty()) {
+                    text.append(' ');
+                }
+                text.append(line.substring(4).trim());
+            }
+            if (line.length() == 3 || line.charAt(3) != '-') {
+                return new SmtpReply(code, text.toString());
+            }
+        }
+        throw new IOException("SMTP reply from " + host + " has too many lines");
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r' && line.size() < MAX_LINE) {
+                line.write(b);
+            }
+        }
+        if (b == -1) {
+            throw new IOException("Connection closed by " + host);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The server refused the session
+     */
+    static final class SmtpException extends IOException {
+        private final transient SmtpReply reply;
+
+        SmtpException(SmtpReply reply) {
+            super(reply.toString());
+            this.reply = reply;
+        }
+
+        SmtpReply reply() {
+            return reply;
+        }
+    }
+}
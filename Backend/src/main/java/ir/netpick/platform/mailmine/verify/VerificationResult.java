@@ -0,0 +1,21 @@
+package ir.netpick.platform.mailmine.verify;
+
+/**
+ * Verification outcome of one address; {@code smtpCode} and {@code detail}
+ * hold the deciding server reply, or the DNS or connection error.
+ */
+public record VerificationResult(
+        String email,
+        VerificationStatus status,
+        String mxHost,
+        Integer smtpCode,
+        String detail) {
+
+    static VerificationResult of(String email, VerificationStatus status, String detail) {
+        return new VerificationResult(email, status, null, null, detail);
+    }
+
+    static VerificationResult of(String email, VerificationStatus status, String mxHost, SmtpReply reply) {
+        return new VerificationResult(email, status, mxHost, reply.code(), reply.text());
+    }
+}
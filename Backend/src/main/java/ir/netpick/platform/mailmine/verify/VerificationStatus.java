@@ -0,0 +1,25 @@
+package ir.netpick.platform.mailmine.verify;
+
+/**
+ * Outcome of verifying one mailbox, declared from best to worst: a contact
+ * takes the best status among its addresses.
+ */
+public enum VerificationStatus {
+    // The receiving server accepted the recipient
+    VALID,
+    // The domain accepts any recipient, so the mailbox itself is unverifiable
+    CATCH_ALL,
+    // The server would not say (252, blocked probe, retries exhausted)
+    UNKNOWN,
+    // Temporary failure such as greylisting; retried later
+    DEFERRED,
+    // The server rejected the recipient
+    INVALID,
+    // No MX or address record, or a null MX
+    NO_MAIL_DOMAIN,
+    BAD_SYNTAX;
+
+    public boolean isFinal() {
+        return this != DEFERRED;
+    }
+}
@@ -0,0 +1,10 @@
+-- V10: Yield-based priority scheduling for scrape jobs
+-- Jobs remember their source search query and domain so the scraper can serve
+-- high-yield jobs first instead of plain created_at order.
+
+ALTER TABLE scrape_job ADD COLUMN search_query_id TEXT;
+ALTER TABLE scrape_job ADD COLUMN domain VARCHAR(255);
+ALTER TABLE scrape_job ADD COLUMN priority DOUBLE PRECISION NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS idx_scrapejob_priority ON scrape_job(priority);
+CREATE INDEX IF NOT EXISTS idx_scrapejob_domain ON scrape_job(domain);
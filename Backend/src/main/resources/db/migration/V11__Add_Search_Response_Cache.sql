@@ -0,0 +1,17 @@
+-- V11: Cache of raw search API responses keyed by normalized query and start offset
+
+CREATE TABLE IF NOT EXISTS search_response_cache (
+    id TEXT PRIMARY KEY DEFAULT (lower(hex(randomblob(4))) || '-' || lower(hex(randomblob(2))) || '-' || lower(hex(randomblob(2))) || '-' || lower(hex(randomblob(2))) || '-' || lower(hex(randomblob(6)))),
+    cache_key VARCHAR(64) NOT NULL UNIQUE,
+    normalized_query TEXT NOT NULL,
+    start_index INTEGER NOT NULL,
+    response_body TEXT NOT NULL,
+    expires_at TIMESTAMP NOT NULL,
+    hit_count INTEGER NOT NULL DEFAULT 0,
+    description TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    deleted BOOLEAN NOT NULL DEFAULT FALSE
+);
+
+CREATE INDEX IF NOT EXISTS idx_search_cache_expires ON search_response_cache(expires_at);
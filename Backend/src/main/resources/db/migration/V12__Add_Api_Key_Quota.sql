@@ -0,0 +1,11 @@
+-- V12: Daily quota accounting for search API keys
+--
+-- The api_keys table from V1 never matched @Table(name = "api_key"); rename it
+-- (like V8 did for email_campaigns) and add the BaseEntity description column.
+
+ALTER TABLE api_keys RENAME TO api_key;
+ALTER TABLE api_key ADD COLUMN description TEXT;
+
+ALTER TABLE api_key ADD COLUMN used_today INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE api_key ADD COLUMN usage_day DATE;
+ALTER TABLE api_key ADD COLUMN exhausted_until TIMESTAMP;
@@ -0,0 +1,12 @@
+-- V13: Resume point for the search stage
+--
+-- search_queries from V1 never matched @Table(name = "search_query"); rename it
+-- and add the BaseEntity description column.
+
+ALTER TABLE search_queries RENAME TO search_query;
+ALTER TABLE search_query ADD COLUMN description TEXT;
+
+-- Set in the same transaction that stores a query's scrape jobs
+ALTER TABLE search_query ADD COLUMN last_searched_at TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS idx_searchquery_last_searched ON search_query(last_searched_at);
@@ -0,0 +1,8 @@
+-- V14: Crash-safe pipeline checkpoints
+
+-- Selected steps, quota, stage progress and ids in flight, as JSON
+ALTER TABLE pipeline ADD COLUMN checkpoint TEXT;
+ALTER TABLE pipeline ADD COLUMN checkpoint_at TIMESTAMP;
+ALTER TABLE pipeline ADD COLUMN resume_count INTEGER DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS idx_pipeline_state_checkpoint ON pipeline(state, checkpoint_at);
@@ -0,0 +1,12 @@
+-- V15: Lease locks for scheduled jobs
+--
+-- Database fallback of the Redis lock that keeps scheduled jobs to one
+-- replica at a time. A row is free once locked_until has passed.
+
+CREATE TABLE IF NOT EXISTS scheduler_lock (
+    name VARCHAR(64) PRIMARY KEY,
+    token VARCHAR(64) NOT NULL,
+    locked_by VARCHAR(255),
+    locked_at TIMESTAMP,
+    locked_until TIMESTAMP NOT NULL
+);
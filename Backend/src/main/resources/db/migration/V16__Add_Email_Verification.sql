@@ -0,0 +1,28 @@
+-- V16: Mailbox verification results
+--
+-- One row per verified address (shared by every contact holding it), and the
+-- best status of a contact's addresses on the contact itself. Deferred rows
+-- (greylisting) are probed again once next_attempt_at has passed.
+
+CREATE TABLE IF NOT EXISTS email_verification (
+    id TEXT PRIMARY KEY DEFAULT (lower(hex(randomblob(4))) || '-' || lower(hex(randomblob(2))) || '-' || lower(hex(randomblob(2))) || '-' || lower(hex(randomblob(2))) || '-' || lower(hex(randomblob(6)))),
+    email VARCHAR(320) NOT NULL UNIQUE,
+    status VARCHAR(32) NOT NULL,
+    mx_host VARCHAR(255),
+    smtp_code INTEGER,
+    detail VARCHAR(500),
+    attempts INTEGER NOT NULL DEFAULT 0,
+    checked_at TIMESTAMP NOT NULL,
+    next_attempt_at TIMESTAMP,
+    description TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    deleted BOOLEAN NOT NULL DEFAULT FALSE
+);
+
+CREATE INDEX IF NOT EXISTS idx_email_verification_next_attempt ON email_verification(next_attempt_at);
+
+ALTER TABLE contacts ADD COLUMN verification_status VARCHAR(32);
+ALTER TABLE contacts ADD COLUMN verified_at TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS idx_contacts_verification_status ON contacts(verification_status);
@@ -0,0 +1,13 @@
+-- V17: Due times and send leases for queued emails
+--
+-- next_attempt_at is when an item is due (its scheduled time, or the end of
+-- its retry backoff); lease_until bounds how long a claimed (SENDING) item
+-- may stay with a dispatcher before the reconciliation sweep releases it.
+
+ALTER TABLE email_queue_items ADD COLUMN scheduled_at TIMESTAMP;
+ALTER TABLE email_queue_items ADD COLUMN next_attempt_at TIMESTAMP;
+ALTER TABLE email_queue_items ADD COLUMN lease_until TIMESTAMP;
+
+UPDATE email_queue_items SET next_attempt_at = created_at WHERE next_attempt_at IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_email_queue_due ON email_queue_items(status, next_attempt_at);
@@ -0,0 +1,12 @@
+-- V18: Resumable campaign fan-out
+--
+-- Recipients are queued in id order, one chunk per transaction; each chunk
+-- records the last recipient id it queued, so a fan-out interrupted by a
+-- crash continues after the last committed chunk.
+
+ALTER TABLE email_campaigns ADD COLUMN fanout_cursor TEXT;
+ALTER TABLE email_campaigns ADD COLUMN fanout_queued INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE email_campaigns ADD COLUMN fanout_checkpoint_at TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS idx_campaign_recipients_fanout ON campaign_recipients(campaign_id, status, id);
+CREATE INDEX IF NOT EXISTS idx_campaigns_fanout ON email_campaigns(status, fanout_checkpoint_at);
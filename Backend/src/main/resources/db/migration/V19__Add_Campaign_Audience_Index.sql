@@ -0,0 +1,6 @@
+-- V19: Set-based campaign audiences
+--
+-- Recipients are added with INSERT ... SELECT and batched inserts that skip
+-- addresses already on the campaign; this index serves that check.
+
+CREATE INDEX IF NOT EXISTS idx_campaign_recipients_campaign_email ON campaign_recipients(campaign_id, recipient_email);
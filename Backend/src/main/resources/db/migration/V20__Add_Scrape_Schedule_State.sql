@@ -0,0 +1,12 @@
+-- V20: Scrape schedule state shared by replicas
+--
+-- The schedule check moves between replicas with its lock, so when each
+-- stage last ran and how long scraping backs off for unhealthy proxies are
+-- kept here rather than in memory. One row per pipeline stage.
+
+CREATE TABLE IF NOT EXISTS scrape_schedule_state (
+    stage VARCHAR(64) PRIMARY KEY,
+    last_run_at TIMESTAMP NOT NULL,
+    backoff_until TIMESTAMP,
+    backoff_failures INTEGER NOT NULL DEFAULT 0
+);
@@ -0,0 +1,6 @@
+-- V21: Search snippets on scrape jobs
+--
+-- The result title is kept in description already; the snippet joins it so
+-- both can hint at contact details when the job is scored.
+
+ALTER TABLE scrape_job ADD COLUMN snippet TEXT;
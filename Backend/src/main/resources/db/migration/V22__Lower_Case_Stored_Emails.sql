@@ -0,0 +1,35 @@
+-- V22: Lower-cased addresses in verification results and campaign recipients
+--
+-- Audiences compare addresses lower-cased, so suppression and the
+-- already-on-campaign check missed rows stored with their original case.
+-- Of verification rows differing only in case the latest result is kept; of
+-- recipients differing only in case on one campaign, the one already past
+-- PENDING (else the first) is kept, so the address is not sent to twice.
+
+DELETE FROM email_verification
+WHERE EXISTS (SELECT 1 FROM email_verification o
+              WHERE LOWER(TRIM(o.email)) = LOWER(TRIM(email_verification.email))
+                AND (o.checked_at > email_verification.checked_at
+                     OR (o.checked_at = email_verification.checked_at AND o.id < email_verification.id)));
+
+UPDATE email_verification SET email = LOWER(TRIM(email))
+WHERE email <> LOWER(TRIM(email));
+
+DELETE FROM campaign_recipients
+WHERE deleted = FALSE
+  AND EXISTS (SELECT 1 FROM campaign_recipients o
+              WHERE o.campaign_id = campaign_recipients.campaign_id
+                AND o.deleted = FALSE
+                AND LOWER(TRIM(o.recipient_email)) = LOWER(TRIM(campaign_recipients.recipient_email))
+                AND o.id <> campaign_recipients.id
+                AND ((CASE WHEN o.status = 'PENDING' THEN 1 ELSE 0 END)
+                         < (CASE WHEN campaign_recipients.status = 'PENDING' THEN 1 ELSE 0 END)
+                     OR ((CASE WHEN o.status = 'PENDING' THEN 1 ELSE 0 END)
+                             = (CASE WHEN campaign_recipients.status = 'PENDING' THEN 1 ELSE 0 END)
+                         AND o.id < campaign_recipients.id)));
+
+UPDATE campaign_recipients SET recipient_email = LOWER(TRIM(recipient_email))
+WHERE recipient_email <> LOWER(TRIM(recipient_email));
+
+UPDATE email_campaigns SET total_recipients =
+    (SELECT COUNT(*) FROM campaign_recipients r WHERE r.campaign_id = email_campaigns.id AND r.deleted = FALSE);
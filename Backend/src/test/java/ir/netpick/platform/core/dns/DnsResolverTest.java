@@ -0,0 +1,115 @@
+package ir.netpick.platform.core.dns;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DnsResolverTest {
+
+    private StubDnsBackend backend;
+    private DnsResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        backend = new StubDnsBackend()
+                .mx("example.com", "mx1.example.com", "mx2.example.com")
+                .txt("example.com", "v=spf1 include:_spf.example.net -all");
+        resolver = new DnsResolver(backend);
+        setField(resolver, "minTtlSeconds", 60L);
+        setField(resolver, "maxTtlSeconds", 86400L);
+        setField(resolver, "negativeTtlSeconds", 900L);
+        setField(resolver, "errorTtlSeconds", 30L);
+        setField(resolver, "maxEntries", 1000);
+        setField(resolver, "queryTimeoutMs", 200L);
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    @DisplayName("Should answer repeated lookups from the cache, ignoring case and the trailing dot")
+    void shouldCachePositiveAnswers() {
+        DnsAnswer first = resolver.lookup("example.com", DnsRecordType.MX);
+        DnsAnswer second = resolver.lookup("EXAMPLE.com.", DnsRecordType.MX);
+
+        assertTrue(first.isFound());
+        assertEquals(List.of("mx1.example.com", "mx2.example.com"), second.values());
+        assertTrue(second.ttlSeconds() <= 3600);
+        assertEquals(1, backend.queries("example.com", DnsRecordType.MX));
+    }
+
+    @Test
+    @DisplayName("Should cache NXDOMAIN and missing records as negative answers")
+    void shouldCacheNegativeAnswers() {
+        assertEquals(DnsAnswer.Status.NX_DOMAIN, resolver.lookup("missing.example", DnsRecordType.MX).status());
+        assertEquals(DnsAnswer.Status.NX_DOMAIN, resolver.lookup("missing.example", DnsRecordType.MX).status());
+        assertEquals(DnsAnswer.Status.NO_DATA, resolver.lookup("example.com", DnsRecordType.A).status());
+        assertEquals(DnsAnswer.Status.NO_DATA, resolver.lookup("example.com", DnsRecordType.A).status());
+
+        assertEquals(1, backend.queries("missing.example", DnsRecordType.MX));
+        assertEquals(1, backend.queries("example.com", DnsRecordType.A));
+    }
+
+    @Test
+    @DisplayName("Should not cache answers whose TTL is zero after clamping")
+    void shouldRespectZeroTtl() {
+        setField(resolver, "minTtlSeconds", 0L);
+        backend.ttl(0);
+
+        resolver.lookup("example.com", DnsRecordType.MX);
+        resolver.lookup("example.com", DnsRecordType.MX);
+
+        assertEquals(2, backend.queries("example.com", DnsRecordType.MX));
+        assertEquals(0, resolver.cacheSize());
+    }
+
+    @Test
+    @DisplayName("Should share one query between concurrent lookups of the same record")
+    void shouldCoalesceConcurrentLookups() {
+        backend.delay(Duration.ofMillis(50));
+
+        List<CompletableFuture<DnsAnswer>> lookups = IntStream.range(0, 20)
+                .mapToObj(i -> resolver.resolve("example.com", DnsRecordType.TXT))
+                .toList();
+
+        lookups.forEach(lookup -> assertTrue(lookup.join().isFound()));
+        assertEquals(1, backend.queries("example.com", DnsRecordType.TXT));
+    }
+
+    @Test
+    @DisplayName("Should turn a timeout into an error answer and briefly cache it")
+    void shouldTimeOutSlowLookups() {
+        backend.delay(Duration.ofSeconds(2));
+
+        long start = System.nanoTime();
+        DnsAnswer answer = resolver.lookup("example.com", DnsRecordType.MX);
+
+        assertEquals(DnsAnswer.Status.ERROR, answer.status());
+        assertEquals("Timed out", answer.error());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1500);
+        assertEquals(DnsAnswer.Status.ERROR, resolver.lookup("example.com", DnsRecordType.MX).status());
+        assertEquals(1, backend.queries("example.com", DnsRecordType.MX));
+    }
+
+    @Test
+    @DisplayName("Should reject names that cannot be looked up without querying")
+    void shouldRejectInvalidNames() {
+        assertEquals(DnsAnswer.Status.ERROR, resolver.lookup(" ", DnsRecordType.MX).status());
+        assertEquals(DnsAnswer.Status.ERROR, resolver.lookup(null, DnsRecordType.MX).status());
+        assertEquals(0, backend.totalQueries());
+    }
+}
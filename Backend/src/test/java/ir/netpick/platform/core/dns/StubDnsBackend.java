@@ -0,0 +1,102 @@
+package ir.netpick.platform.core.dns;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory DNS for tests. Names with no records at all answer NXDOMAIN,
+ * names with records of another type answer NO_DATA. Counts the queries that
+ * reach it, so tests can check what the cache absorbed.
+ */
+public class StubDnsBackend implements DnsBackend {
+
+    private final Map<String, Map<DnsRecordType, List<String>>> zones = new ConcurrentHashMap<>();
+    private final Map<String, String> failures = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+    private volatile long ttlSeconds = 3600;
+    private volatile Duration delay = Duration.ZERO;
+
+    public StubDnsBackend mx(String domain, String... hosts) {
+        return add(domain, DnsRecordType.MX, hosts);
+    }
+
+    public StubDnsBackend txt(String name, String... values) {
+        return add(name, DnsRecordType.TXT, values);
+    }
+
+    public StubDnsBackend a(String name, String... addresses) {
+        return add(name, DnsRecordType.A, addresses);
+    }
+
+    /**
+     * Lookups of the name fail with the given error (e.g. SERVFAIL)
+     */
+    public StubDnsBackend fail(String name, String error) {
+        failures.put(key(name), error);
+        return this;
+    }
+
+    public StubDnsBackend ttl(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+        return this;
+    }
+
+    /**
+     * Answer after a delay, as a slow or unreachable server would
+     */
+    public StubDnsBackend delay(Duration delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    public int queries(String name, DnsRecordType type) {
+        AtomicInteger count = queries.get(key(name) + "/" + type);
+        return count != null ? count.get() : 0;
+    }
+
+    public int totalQueries() {
+        return queries.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    @Override
+    public CompletableFuture<DnsAnswer> query(String name, DnsRecordType type) {
+        queries.computeIfAbsent(key(name) + "/" + type, k -> new AtomicInteger()).incrementAndGet();
+        DnsAnswer answer = answer(key(name), type);
+        if (delay.isZero()) {
+            return CompletableFuture.completedFuture(answer);
+        }
+        return CompletableFuture.supplyAsync(() -> answer,
+                CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    private DnsAnswer answer(String name, DnsRecordType type) {
+        String failure = failures.get(name);
+        if (failure != null) {
+            return DnsAnswer.error(failure);
+        }
+        Map<DnsRecordType, List<String>> records = zones.get(name);
+        if (records == null) {
+            return DnsAnswer.nxDomain(ttlSeconds);
+        }
+        List<String> values = records.get(type);
+        return values == null ? DnsAnswer.noData(ttlSeconds) : DnsAnswer.found(values, ttlSeconds);
+    }
+
+    private StubDnsBackend add(String name, DnsRecordType type, String... values) {
+        zones.computeIfAbsent(key(name), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(type, t -> new ArrayList<>())
+                .addAll(List.of(values));
+        return this;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
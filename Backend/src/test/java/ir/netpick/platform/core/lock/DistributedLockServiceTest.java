@@ -0,0 +1,115 @@
+package ir.netpick.platform.core.lock;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DistributedLockServiceTest {
+
+    @Mock
+    private RedisLockProvider redisProvider;
+
+    @Mock
+    private ObjectProvider<RedisLockProvider> redisProviders;
+
+    private JdbcLockProvider jdbcProvider;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:lock-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+                CREATE TABLE scheduler_lock (
+                    name VARCHAR(64) PRIMARY KEY,
+                    token VARCHAR(64) NOT NULL,
+                    locked_by VARCHAR(255),
+                    locked_at TIMESTAMP,
+                    locked_until TIMESTAMP NOT NULL)""");
+        jdbcProvider = new JdbcLockProvider(jdbcTemplate);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private DistributedLockService service(RedisLockProvider redis) {
+        when(redisProviders.getIfAvailable()).thenReturn(redis);
+        return new DistributedLockService(redisProviders, jdbcProvider, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("A database lock should be exclusive until released")
+    void shouldHoldDatabaseLockExclusively() {
+        DistributedLockService locks = service(null);
+
+        Optional<DistributedLockService.Lease> first = locks.tryAcquire("email-queue", Duration.ofMinutes(1));
+        assertTrue(first.isPresent());
+        assertTrue(locks.tryAcquire("email-queue", Duration.ofMinutes(1)).isEmpty());
+        assertTrue(locks.tryAcquire("imap-sync", Duration.ofMinutes(1)).isPresent());
+
+        first.get().close();
+        assertTrue(locks.tryAcquire("email-queue", Duration.ofMinutes(1)).isPresent());
+        assertEquals(1, meterRegistry.counter("scheduler.lock.acquisitions",
+                "name", "email-queue", "result", "busy").count());
+    }
+
+    @Test
+    @DisplayName("An expired database lease should be taken over, and its old owner can't extend it")
+    void shouldTakeOverExpiredLease() throws Exception {
+        String stale = jdbcProvider.tryAcquire("gdpr-retention", Duration.ofMillis(1)).orElseThrow();
+        Thread.sleep(20);
+
+        String token = jdbcProvider.tryAcquire("gdpr-retention", Duration.ofMinutes(1)).orElseThrow();
+
+        assertNotEquals(stale, token);
+        assertFalse(jdbcProvider.extend("gdpr-retention", stale, Duration.ofMinutes(1)));
+        assertTrue(jdbcProvider.extend("gdpr-retention", token, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    @DisplayName("No lock should be granted while Redis is unreachable, not even from the database")
+    void shouldFailClosedWhileRedisIsDown() {
+        when(redisProvider.tryAcquire(anyString(), any())).thenThrow(new RedisConnectionFailureException("down"));
+        DistributedLockService locks = service(redisProvider);
+
+        assertTrue(locks.tryAcquire("campaigns", Duration.ofMinutes(1)).isEmpty());
+        assertTrue(jdbcProvider.tryAcquire("campaigns", Duration.ofMinutes(1)).isPresent());
+        assertEquals(1, meterRegistry.counter("scheduler.lock.acquisitions",
+                "name", "campaigns", "result", "error").count());
+    }
+
+    @Test
+    @DisplayName("A held lease should be extended until closed")
+    void shouldExtendLease() {
+        when(redisProvider.tryAcquire(eq("imap-sync"), any())).thenReturn(Optional.of("token"));
+        when(redisProvider.extend(eq("imap-sync"), eq("token"), any())).thenReturn(true);
+        DistributedLockService locks = service(redisProvider);
+
+        try (DistributedLockService.Lease lease = locks.tryAcquire("imap-sync", Duration.ofSeconds(3)).orElseThrow()) {
+            verify(redisProvider, timeout(2500).atLeastOnce()).extend(eq("imap-sync"), eq("token"), any());
+            assertEquals(1.0, meterRegistry.find("scheduler.lock.active").gauge().value());
+        }
+        verify(redisProvider).release("imap-sync", "token");
+        assertEquals(0.0, meterRegistry.find("scheduler.lock.active").gauge().value());
+    }
+}
@@ -0,0 +1,190 @@
+package ir.netpick.platform.core.mail;
+
+import ir.netpick.platform.core.dns.DnsResolver;
+import ir.netpick.platform.core.dns.StubDnsBackend;
+import jakarta.mail.MessagingException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MailTrafficShaperTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private MailTrafficShaperProperties properties;
+    private MailTrafficShaper shaper;
+
+    @BeforeEach
+    void setUp() {
+        StubDnsBackend dns = new StubDnsBackend()
+                .mx("gmail.com", "gmail-smtp-in.l.google.com", "alt1.gmail-smtp-in.l.google.com")
+                .mx("company.ir", "aspmx.l.google.com")
+                .mx("shop.ir", "mx1.shop-mail.ir")
+                .a("web-only.ir", "192.0.2.10");
+        DnsResolver resolver = new DnsResolver(dns);
+        setField(resolver, "minTtlSeconds", 60L);
+        setField(resolver, "maxTtlSeconds", 86400L);
+        setField(resolver, "negativeTtlSeconds", 900L);
+        setField(resolver, "errorTtlSeconds", 30L);
+        setField(resolver, "maxEntries", 1000);
+        setField(resolver, "queryTimeoutMs", 1000L);
+
+        properties = new MailTrafficShaperProperties();
+        properties.setDefaults(new MailTrafficShaperProperties.Policy(60, 2, 1));
+        MailTrafficShaperProperties.Provider gmail = new MailTrafficShaperProperties.Provider();
+        gmail.setMxSuffixes(List.of("google.com"));
+        gmail.setRatePerMinute(120);
+        gmail.setConcurrency(2);
+        gmail.setBurst(2);
+        properties.getProviders().put("gmail", gmail);
+
+        shaper = new MailTrafficShaper(resolver, properties);
+        setField(shaper, "clock", (LongSupplier) now::get);
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void advance(Duration duration) {
+        now.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    @DisplayName("Should key recipients by provider from their MX hosts")
+    void shouldResolveProviders() {
+        assertEquals("gmail", shaper.providerOf("someone@gmail.com"));
+        assertEquals("gmail", shaper.providerOf("sales@Company.ir"));
+        assertEquals("shop-mail.ir", shaper.providerOf("info@shop.ir"));
+        assertEquals("web-only.ir", shaper.providerOf("info@web-only.ir"));
+        assertEquals("unknown", shaper.providerOf("not an address"));
+    }
+
+    @Test
+    @DisplayName("Should spread a burst for one provider at its rate and not hold back other providers")
+    void shouldPaceBurstsPerProvider() {
+        List<Duration> waits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            MailTrafficShaper.Admission admission = shaper.tryAcquire(UUID.randomUUID(), "user" + i + "@gmail.com");
+            waits.add(admission.retryAfter());
+            if (admission.admitted()) {
+                shaper.release(admission, null);
+            }
+        }
+        // Burst of 2, then one slot every 500 ms
+        assertEquals(List.of(Duration.ZERO, Duration.ZERO, Duration.ofMillis(500), Duration.ofMillis(1000)), waits);
+
+        assertTrue(shaper.tryAcquire(UUID.randomUUID(), "info@shop.ir").admitted());
+    }
+
+    @Test
+    @DisplayName("Should hold each replica to its share of the provider's limits")
+    void shouldSplitLimitsAcrossReplicas() {
+        properties.setReplicas(2);
+
+        List<Duration> waits = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            MailTrafficShaper.Admission admission = shaper.tryAcquire(UUID.randomUUID(), "user" + i + "@gmail.com");
+            waits.add(admission.retryAfter());
+            if (admission.admitted()) {
+                shaper.release(admission, null);
+            }
+        }
+        // Half of 120/min with a burst of 1
+        assertEquals(List.of(Duration.ZERO, Duration.ofSeconds(1), Duration.ofSeconds(2)), waits);
+        assertEquals(60, shaper.status().get(0).ratePerMinute());
+
+        advance(Duration.ofMinutes(1));
+        MailTrafficShaper.Admission first = shaper.tryAcquire(UUID.randomUUID(), "a@gmail.com");
+        advance(Duration.ofSeconds(1));
+        assertTrue(first.admitted());
+        // One connection each
+        assertFalse(shaper.tryAcquire(UUID.randomUUID(), "b@gmail.com").admitted());
+    }
+
+    @Test
+    @DisplayName("Should admit a deferred message at its reserved slot ahead of later arrivals")
+    void shouldHonourReservations() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        shaper.release(shaper.tryAcquire(UUID.randomUUID(), "a@shop.ir"), null);
+        Duration firstWait = shaper.tryAcquire(first, "b@shop.ir").retryAfter();
+        Duration secondWait = shaper.tryAcquire(second, "c@shop.ir").retryAfter();
+        assertEquals(Duration.ofSeconds(1), firstWait);
+        assertEquals(Duration.ofSeconds(2), secondWait);
+
+        advance(Duration.ofMillis(400));
+        assertEquals(Duration.ofMillis(600), shaper.tryAcquire(first, "b@shop.ir").retryAfter());
+
+        advance(Duration.ofMillis(600));
+        assertTrue(shaper.tryAcquire(first, "b@shop.ir").admitted());
+        assertFalse(shaper.tryAcquire(UUID.randomUUID(), "d@shop.ir").admitted());
+        advance(Duration.ofSeconds(1));
+        assertTrue(shaper.tryAcquire(second, "c@shop.ir").admitted());
+    }
+
+    @Test
+    @DisplayName("Should hold messages while the provider's connections are all busy")
+    void shouldLimitConcurrency() {
+        MailTrafficShaper.Admission a = shaper.tryAcquire(UUID.randomUUID(), "a@shop.ir");
+        advance(Duration.ofSeconds(1));
+        MailTrafficShaper.Admission b = shaper.tryAcquire(UUID.randomUUID(), "b@shop.ir");
+        advance(Duration.ofSeconds(1));
+        UUID third = UUID.randomUUID();
+
+        assertTrue(a.admitted() && b.admitted());
+        assertFalse(shaper.tryAcquire(third, "c@shop.ir").admitted());
+        shaper.release(a, null);
+        advance(Duration.ofSeconds(1));
+        assertTrue(shaper.tryAcquire(third, "c@shop.ir").admitted());
+    }
+
+    @Test
+    @DisplayName("Should slow down and pause a provider that defers, and recover as mail is delivered")
+    void shouldLearnFromDeferrals() {
+        MailTrafficShaper.Admission admission = shaper.tryAcquire(UUID.randomUUID(), "a@gmail.com");
+        shaper.release(admission, new RuntimeException("Failed to send email",
+                new SMTPSendFailedException("DATA", 421, "421 4.7.28 Unusual rate of mail", null, null, null, null)));
+
+        MailTrafficShaper.ProviderStatus status = shaper.status().get(0);
+        assertEquals(60, status.ratePerMinute());
+        assertEquals(Duration.ofSeconds(30), status.pausedFor());
+        assertEquals(1, status.deferralsInRow());
+        assertEquals(Duration.ofSeconds(30), shaper.tryAcquire(UUID.randomUUID(), "b@gmail.com").retryAfter());
+
+        advance(Duration.ofSeconds(40));
+        MailTrafficShaper.Admission next = shaper.tryAcquire(UUID.randomUUID(), "c@gmail.com");
+        assertTrue(next.admitted());
+        shaper.release(next, null);
+        status = shaper.status().get(0);
+        assertEquals(61, status.ratePerMinute());
+        assertEquals(0, status.deferralsInRow());
+    }
+
+    @Test
+    @DisplayName("Should read reply codes from SMTP exceptions and server messages")
+    void shouldReadReplyCodes() {
+        assertEquals(450, MailTrafficShaper.replyCode(new RuntimeException(
+                new MessagingException("450 4.2.1 The user you are trying to contact is receiving mail too quickly"))));
+        assertEquals(421, MailTrafficShaper.replyCode(new SMTPSendFailedException("RCPT", 421, "421 try later",
+                null, null, null, null)));
+        assertNull(MailTrafficShaper.replyCode(new MessagingException("Could not connect to SMTP host")));
+        assertNull(MailTrafficShaper.replyCode(new IllegalStateException("450 not SMTP")));
+    }
+}
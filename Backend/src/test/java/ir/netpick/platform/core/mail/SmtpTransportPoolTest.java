@@ -0,0 +1,129 @@
+package ir.netpick.platform.core.mail;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmtpTransportPoolTest {
+
+    private GreenMail greenMail;
+    private JavaMailSenderImpl mailSender;
+    private SmtpTransportPool pool;
+
+    @BeforeEach
+    void setUp() {
+        greenMail = new GreenMail(ServerSetupTest.SMTP.dynamicPort());
+        greenMail.start();
+
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+
+        pool = new SmtpTransportPool(mailSender);
+        setField(pool, "maxConnections", 3);
+        setField(pool, "maxMessagesPerConnection", 100);
+        setField(pool, "maxLifetimeMs", 600_000L);
+        setField(pool, "idleTimeoutMs", 60_000L);
+        setField(pool, "validateAfterIdleMs", 60_000L);
+        setField(pool, "borrowTimeoutMs", 5_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+        greenMail.stop();
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private MimeMessage message(String recipient) {
+        try {
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, false);
+            helper.setFrom("sender@netpick.test");
+            helper.setTo(recipient);
+            helper.setSubject("Hello");
+            helper.setText("Body");
+            return message;
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    @DisplayName("Should send a batch over a few parallel connections, many messages each")
+    void shouldSendBatchOverPooledConnections() {
+        List<MimeMessage> messages = IntStream.range(0, 60).mapToObj(i -> message("user" + i + "@shop.ir")).toList();
+        List<Exception> failures = new ArrayList<>();
+
+        int sent = pool.sendAll(messages, (message, e) -> failures.add(e));
+
+        assertEquals(60, sent);
+        assertTrue(failures.isEmpty());
+        assertTrue(greenMail.waitForIncomingEmail(5000, 60));
+        assertTrue(pool.connectionsOpened() <= 3);
+    }
+
+    @Test
+    @DisplayName("Should keep one connection between single sends and retire it at its message limit")
+    void shouldReuseConnectionUpToMessageLimit() throws Exception {
+        setField(pool, "maxMessagesPerConnection", 10);
+
+        for (int i = 0; i < 25; i++) {
+            pool.send(message("user" + i + "@shop.ir"));
+        }
+
+        assertEquals(25, greenMail.getReceivedMessages().length);
+        assertEquals(3, pool.connectionsOpened());
+        assertEquals(25, pool.messagesSent());
+    }
+
+    @Test
+    @DisplayName("Should reconnect and resend when the server dropped a pooled connection")
+    void shouldRecoverFromDroppedConnection() throws Exception {
+        pool.send(message("first@shop.ir"));
+        int port = greenMail.getSmtp().getPort();
+        greenMail.stop();
+        greenMail = new GreenMail(new ServerSetup(port, "127.0.0.1", ServerSetup.PROTOCOL_SMTP));
+        greenMail.start();
+
+        pool.send(message("second@shop.ir"));
+
+        assertEquals(1, greenMail.getReceivedMessages().length);
+        assertEquals(2, pool.connectionsOpened());
+    }
+
+    @Test
+    @DisplayName("Should close idle connections on eviction")
+    void shouldEvictIdleConnections() throws Exception {
+        pool.send(message("first@shop.ir"));
+        setField(pool, "idleTimeoutMs", 0L);
+
+        pool.evictIdle();
+        pool.send(message("second@shop.ir"));
+
+        assertEquals(2, pool.connectionsOpened());
+    }
+}
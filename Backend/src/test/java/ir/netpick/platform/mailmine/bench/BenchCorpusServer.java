@@ -0,0 +1,207 @@
+package ir.netpick.platform.mailmine.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local web server for the offline benchmark. Serves a synthetic corpus of
+ * pages and a fake Custom Search endpoint whose results link to them.
+ * <ul>
+ * <li>{@code /page/{n}}: 70% static pages, 20% whose contact block is rendered
+ * by JavaScript, 10% answered only after {@code slowMs}. Four in five pages
+ * carry one to three emails, in the text or as {@code mailto:} links.</li>
+ * <li>{@code /customsearch/v1}: query {@code "bench query {i}"} at offset
+ * {@code start} lists pages {@code i * linksPerQuery + start - 1} onwards, so
+ * every query finds its own slice of the corpus.</li>
+ * </ul>
+ * Content is derived from the page number only, so runs are repeatable.
+ */
+class BenchCorpusServer implements Closeable {
+
+    private static final String[] WORDS = {
+            "industrial", "supplier", "catalogue", "warranty", "delivery", "tehran", "export", "quality",
+            "service", "customer", "factory", "equipment", "contact", "office", "branch", "support",
+            "pricing", "wholesale", "product", "installation", "engineering", "company", "certified", "team"
+    };
+
+    private final HttpServer server;
+    private final int linksPerQuery;
+    private final int paragraphs;
+    private final long slowMs;
+    private final AtomicLong pagesServed = new AtomicLong();
+    private final AtomicLong searchesServed = new AtomicLong();
+
+    /**
+     * @param linksPerQuery distinct pages reachable from one query (pages x results per page)
+     * @param paragraphs    filler paragraphs per page, about 0.6 KB each
+     * @param slowMs        delay of the slow pages
+     */
+    BenchCorpusServer(int linksPerQuery, int paragraphs, long slowMs) throws IOException {
+        this.linksPerQuery = linksPerQuery;
+        this.paragraphs = paragraphs;
+        this.slowMs = slowMs;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 512);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/page/", this::servePage);
+        server.createContext("/customsearch/v1", this::serveSearch);
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Corpus host as the browser sees it; only reachable through {@link BenchSocksProxy}
+     */
+    String baseUrl() {
+        return "http://corpus" + BenchSocksProxy.BENCH_DOMAIN + ":" + port();
+    }
+
+    String searchEndpoint() {
+        return "http://127.0.0.1:" + port() + "/customsearch/v1";
+    }
+
+    long pagesServed() {
+        return pagesServed.get();
+    }
+
+    long searchesServed() {
+        return searchesServed.get();
+    }
+
+    /**
+     * Emails page {@code n} carries, as the parser should find them
+     */
+    static int emailsOn(int n) {
+        return n % 5 == 0 ? 0 : 1 + n % 3;
+    }
+
+    private void servePage(HttpExchange exchange) throws IOException {
+        int n;
+        try {
+            n = Integer.parseInt(exchange.getRequestURI().getPath().substring("/page/".length()));
+        } catch (NumberFormatException e) {
+            respond(exchange, 404, "text/plain", "not found");
+            return;
+        }
+        if (n % 10 == 9) {
+            try {
+                Thread.sleep(slowMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pagesServed.incrementAndGet();
+        respond(exchange, 200, "text/html; charset=utf-8", page(n));
+    }
+
+    String page(int n) {
+        StringBuilder html = new StringBuilder(1024 + paragraphs * 640);
+        html.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Supplier ").append(n)
+                .append("</title></head><body><header><h1>Supplier ").append(n).append("</h1><nav>");
+        for (int i = 0; i < 12; i++) {
+            html.append("<a href=\"/page/").append((n * 31 + i) % 100_000).append("\">").append(word(n + i))
+                    .append("</a> ");
+        }
+        html.append("</nav></header><main>");
+        for (int p = 0; p < paragraphs; p++) {
+            html.append("<p>");
+            for (int w = 0; w < 80; w++) {
+                html.append(word(n * 7 + p * 13 + w)).append(' ');
+            }
+            html.append("</p>");
+        }
+
+        StringBuilder contact = new StringBuilder("<div class=\"contact\">");
+        for (int e = 0; e < emailsOn(n); e++) {
+            String email = "sales" + e + "@supplier" + n + ".com";
+            contact.append(e % 2 == 0
+                    ? "<p>Email: " + email + "</p>"
+                    : "<a href=\"mailto:" + email + "?subject=Inquiry\">Write to us</a>");
+        }
+        contact.append("<p>Tel: 021-").append(1000000 + n).append("</p></div>");
+
+        if (n % 10 == 7 || n % 10 == 8) {
+            // Rendered client side: the raw response has no emails
+            html.append("<div id=\"contact\"></div><script>document.getElementById('contact').innerHTML = '")
+                    .append(contact.toString().replace("'", "\\'")).append("';</script>");
+        } else {
+            html.append(contact);
+        }
+        return html.append("</main><footer>&copy; Supplier ").append(n).append("</footer></body></html>")
+                .toString();
+    }
+
+    private void serveSearch(HttpExchange exchange) throws IOException {
+        searchesServed.incrementAndGet();
+        Map<String, String> params = query(exchange.getRequestURI().getRawQuery());
+        String q = params.getOrDefault("q", "");
+        int start = Integer.parseInt(params.getOrDefault("start", "1"));
+        int num = Integer.parseInt(params.getOrDefault("num", "10"));
+
+        int queryIndex;
+        try {
+            queryIndex = Integer.parseInt(q.substring(q.lastIndexOf(' ') + 1));
+        } catch (NumberFormatException e) {
+            respond(exchange, 200, "application/json", "{\"items\":[]}");
+            return;
+        }
+
+        StringBuilder json = new StringBuilder("{\"kind\":\"customsearch#search\",\"items\":[");
+        for (int k = 0; k < num && start - 1 + k < linksPerQuery; k++) {
+            int n = queryIndex * linksPerQuery + start - 1 + k;
+            if (k > 0) {
+                json.append(',');
+            }
+            json.append("{\"kind\":\"customsearch#result\",\"title\":\"Supplier ").append(n)
+                    .append("\",\"link\":\"").append(baseUrl()).append("/page/").append(n)
+                    .append("\",\"snippet\":\"").append(word(n)).append(' ').append(word(n + 1))
+                    .append(" supplier in tehran\"}");
+        }
+        respond(exchange, 200, "application/json", json.append("]}").toString());
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static String word(int i) {
+        return WORDS[Math.floorMod(i, WORDS.length)];
+    }
+
+    private static void respond(HttpExchange exchange, int status, String type, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,130 @@
+package ir.netpick.platform.mailmine.bench;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal SOCKS5 proxy (no authentication, CONNECT only) for the offline
+ * benchmark. Hosts under {@code .bench.test} are routed to the loopback
+ * interface, so the browser reaches the local corpus by name and every page
+ * goes through a real proxy hop.
+ */
+class BenchSocksProxy implements Closeable {
+
+    static final String BENCH_DOMAIN = ".bench.test";
+
+    private final ServerSocket server;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong tunnels = new AtomicLong();
+
+    BenchSocksProxy() throws IOException {
+        server = new ServerSocket(0, 512, InetAddress.getLoopbackAddress());
+        Thread.ofPlatform().daemon().name("bench-socks-accept").start(this::acceptLoop);
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    long tunnelsOpened() {
+        return tunnels.get();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket client = server.accept();
+                connections.submit(() -> handle(client));
+            } catch (IOException e) {
+                return; // Closed
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+
+            // Greeting: VER NMETHODS METHODS...; we only offer "no authentication"
+            if (in.readUnsignedByte() != 5) {
+                return;
+            }
+            in.skipNBytes(in.readUnsignedByte());
+            out.write(new byte[] {5, 0});
+
+            // Request: VER CMD RSV ATYP DST.ADDR DST.PORT
+            in.readUnsignedByte();
+            int command = in.readUnsignedByte();
+            in.readUnsignedByte();
+            String host = readAddress(in, in.readUnsignedByte());
+            int port = in.readUnsignedShort();
+            if (command != 1 || host == null) {
+                out.write(new byte[] {5, 7, 0, 1, 0, 0, 0, 0, 0, 0});
+                return;
+            }
+
+            try (Socket upstream = new Socket()) {
+                upstream.connect(new InetSocketAddress(resolve(host), port), 5000);
+                out.write(new byte[] {5, 0, 0, 1, 0, 0, 0, 0, 0, 0});
+                out.flush();
+                tunnels.incrementAndGet();
+
+                Thread upload = Thread.ofVirtual().start(() -> pipe(client, upstream));
+                pipe(upstream, client);
+                upload.join();
+            } catch (IOException e) {
+                out.write(new byte[] {5, 5, 0, 1, 0, 0, 0, 0, 0, 0});
+            }
+        } catch (IOException e) {
+            // Client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String readAddress(DataInputStream in, int type) throws IOException {
+        return switch (type) {
+            case 1 -> InetAddress.getByAddress(in.readNBytes(4)).getHostAddress();
+            case 3 -> new String(in.readNBytes(in.readUnsignedByte()), StandardCharsets.US_ASCII);
+            case 4 -> InetAddress.getByAddress(in.readNBytes(16)).getHostAddress();
+            default -> null;
+        };
+    }
+
+    private static InetAddress resolve(String host) throws IOException {
+        return host.endsWith(BENCH_DOMAIN) ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+    }
+
+    private static void pipe(Socket from, Socket to) {
+        try {
+            InputStream in = from.getInputStream();
+            in.transferTo(to.getOutputStream());
+        } catch (IOException e) {
+            // Either side closed
+        } finally {
+            try {
+                to.shutdownOutput();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdownNow();
+    }
+}
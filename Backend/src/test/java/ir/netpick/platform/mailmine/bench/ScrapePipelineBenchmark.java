@@ -0,0 +1,355 @@
+package ir.netpick.platform.mailmine.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.core.enums.ProxyProtocol;
+import ir.netpick.platform.core.enums.ProxyStatus;
+import ir.netpick.platform.init.Application;
+import ir.netpick.platform.mailmine.model.ApiKey;
+import ir.netpick.platform.mailmine.model.Pipeline;
+import ir.netpick.platform.mailmine.model.Proxy;
+import ir.netpick.platform.mailmine.model.SearchQuery;
+import ir.netpick.platform.mailmine.repository.ApiKeyRepository;
+import ir.netpick.platform.mailmine.repository.ContactRepository;
+import ir.netpick.platform.mailmine.repository.PipelineRepository;
+import ir.netpick.platform.mailmine.repository.ProxyRepository;
+import ir.netpick.platform.mailmine.repository.SearchQueryRepository;
+import ir.netpick.platform.mailmine.service.base.ScrapeJobService;
+import ir.netpick.platform.mailmine.service.orch.ScrapeOrchestrationService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Offline end-to-end benchmark of the scrape pipeline: search, scrape and
+ * parse run through {@link ScrapeOrchestrationService} against a local
+ * corpus ({@link BenchCorpusServer}), a fake Custom Search endpoint and a
+ * local SOCKS5 proxy ({@link BenchSocksProxy}). Nothing leaves the machine,
+ * so runs are comparable across commits.
+ * <p>
+ * Not part of the regular test run; start it with
+ * {@code ./mvnw test -Pe2e-benchmark}. Tunable with system properties:
+ * <ul>
+ * <li>{@code bench.queries} (default 10): queries searched through the fake CSE</li>
+ * <li>{@code bench.pages} (default 2000): corpus pages scraped in total; pages
+ * beyond what the queries find are queued as scrape jobs directly</li>
+ * <li>{@code bench.lanes} (default 4), {@code bench.streaming} (default true)</li>
+ * <li>{@code bench.paragraphs} (default 40) page filler, {@code bench.slow-ms} (default 3000)</li>
+ * <li>{@code bench.label}: name of the run in the report</li>
+ * </ul>
+ * Reports pages/s, contacts/s, p50/p99 job and navigation latency and peak
+ * RSS of the JVM plus its browser processes, on stdout and as JSON under
+ * {@code target/benchmark}. Needs the Playwright Chromium build installed.
+ */
+// The application's component scan also picks up the test-only TestApplication, hence the overriding
+@SpringBootTest(classes = { Application.class, ScrapePipelineBenchmark.BenchConfig.class },
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.allow-bean-definition-overriding=true")
+// Test settings on the dev profile's SQLite schema (Flyway), in a fresh database file per run
+@ActiveProfiles({ "test", "dev" })
+class ScrapePipelineBenchmark {
+
+    private static final int QUERIES = Integer.getInteger("bench.queries", 10);
+    private static final int PAGES = Integer.getInteger("bench.pages", 2000);
+    private static final int LANES = Integer.getInteger("bench.lanes", 4);
+    private static final boolean STREAMING = Boolean.parseBoolean(System.getProperty("bench.streaming", "true"));
+    private static final int PARAGRAPHS = Integer.getInteger("bench.paragraphs", 40);
+    private static final long SLOW_MS = Long.getLong("bench.slow-ms", 3000);
+    private static final String LABEL = System.getProperty("bench.label", "local");
+    private static final Duration TIMEOUT = Duration.ofMinutes(Long.getLong("bench.timeout-minutes", 60));
+
+    // Must match google.search.max-pages x results-per-page of the run
+    private static final int MAX_PAGES = 3;
+    private static final int RESULTS_PER_PAGE = 10;
+
+    private static final BenchCorpusServer corpus;
+    private static final BenchSocksProxy socks;
+
+    static {
+        try {
+            Files.createDirectories(Path.of("target", "benchmark"));
+            corpus = new BenchCorpusServer(MAX_PAGES * RESULTS_PER_PAGE, PARAGRAPHS, SLOW_MS);
+            socks = new BenchSocksProxy();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start the benchmark servers", e);
+        }
+    }
+
+    @Autowired
+    private ScrapeOrchestrationService orchestrationService;
+
+    @Autowired
+    private ScrapeJobService scrapeJobService;
+
+    @Autowired
+    private ApiKeyRepository apiKeyRepository;
+
+    @Autowired
+    private SearchQueryRepository searchQueryRepository;
+
+    @Autowired
+    private ProxyRepository proxyRepository;
+
+    @Autowired
+    private PipelineRepository pipelineRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @DynamicPropertySource
+    static void benchProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url",
+                () -> "jdbc:sqlite:target/benchmark/bench-" + System.currentTimeMillis() + ".db");
+        registry.add("google.search.endpoint", corpus::searchEndpoint);
+        registry.add("google.search.max-pages", () -> MAX_PAGES);
+        registry.add("google.search.results-per-page", () -> RESULTS_PER_PAGE);
+        registry.add("google.search.per-key-qps", () -> 1000);
+        registry.add("google.search.per-key-burst", () -> 100);
+        registry.add("google.search.quota.spread-across-day", () -> false);
+        registry.add("scraper.use-proxy", () -> true);
+        registry.add("scraper.trusted-hosts", () -> "corpus" + BenchSocksProxy.BENCH_DOMAIN);
+        registry.add("scraper.pipeline.max-concurrent", () -> 1);
+        registry.add("scraper.pipeline.queue-capacity", () -> Math.max(500, PAGES));
+    }
+
+    @AfterAll
+    static void stopServers() throws IOException {
+        socks.close();
+        corpus.close();
+    }
+
+    @Test
+    void scrapePipelineThroughput() throws Exception {
+        seed();
+
+        try (RssSampler rss = new RssSampler()) {
+            long start = System.nanoTime();
+            assertTrue(orchestrationService.tryReserveSlot());
+            orchestrationService.executeSteps(EnumSet.of(PipelineStageEnum.API_CALLER_STARTED,
+                    PipelineStageEnum.SCRAPER_STARTED, PipelineStageEnum.PARSER_STARTED),
+                    STREAMING, orchestrationService.quota(LANES, 0));
+            Pipeline pipeline = awaitPipeline();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Map<String, Object> report = report(pipeline, seconds, rss.peakBytes());
+            print(report);
+            write(report);
+            assertTrue(pipeline.getPagesScraped() > 0, "No page was scraped; is Chromium installed?");
+        }
+    }
+
+    private void seed() {
+        apiKeyRepository.save(new ApiKey("bench-key", 100_000, "unused", "bench-cx", "Offline benchmark"));
+
+        List<SearchQuery> queries = IntStream.range(0, QUERIES)
+                .mapToObj(i -> new SearchQuery("bench query " + i))
+                .toList();
+        searchQueryRepository.saveAll(queries);
+
+        Proxy proxy = new Proxy(ProxyProtocol.SOCKS5, "127.0.0.1", socks.port());
+        proxy.setStatus(ProxyStatus.ACTIVE);
+        proxyRepository.save(proxy);
+
+        // Pages beyond what the queries find are queued directly
+        int searched = QUERIES * MAX_PAGES * RESULTS_PER_PAGE;
+        List<String> urls = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        for (int n = searched; n < PAGES; n++) {
+            urls.add(corpus.baseUrl() + "/page/" + n);
+            titles.add("Supplier " + n);
+            if (urls.size() == 500) {
+                scrapeJobService.createJobsByList(urls, titles);
+                urls = new ArrayList<>();
+                titles = new ArrayList<>();
+            }
+        }
+        if (!urls.isEmpty()) {
+            scrapeJobService.createJobsByList(urls, titles);
+        }
+    }
+
+    private Pipeline awaitPipeline() throws InterruptedException {
+        Instant deadline = Instant.now().plus(TIMEOUT);
+        while (Instant.now().isBefore(deadline)) {
+            List<Pipeline> pipelines = pipelineRepository.findAll();
+            if (!pipelines.isEmpty() && pipelines.get(0).getEndTime() != null) {
+                return pipelines.get(0);
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Pipeline did not finish within " + TIMEOUT);
+    }
+
+    private Map<String, Object> report(Pipeline pipeline, double seconds, long peakRss) {
+        long contacts = contactRepository.countByDeletedFalse();
+        int pagesTotal = Math.max(PAGES, QUERIES * MAX_PAGES * RESULTS_PER_PAGE);
+        long expectedContacts = IntStream.range(0, pagesTotal).filter(n -> BenchCorpusServer.emailsOn(n) > 0).count();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("label", LABEL);
+        report.put("timestamp", Instant.now().toString());
+        report.put("state", pipeline.getState());
+        report.put("streaming", STREAMING);
+        report.put("lanes", LANES);
+        report.put("pages", pagesTotal);
+        report.put("seconds", round(seconds));
+        report.put("pagesScraped", pipeline.getPagesScraped());
+        report.put("pagesPerSecond", round(pipeline.getPagesScraped() / seconds));
+        report.put("contacts", contacts);
+        report.put("expectedContacts", expectedContacts);
+        report.put("contactsPerSecond", round(contacts / seconds));
+        report.put("errors", pipeline.getErrorsCount());
+        report.put("searchCalls", corpus.searchesServed());
+        report.put("proxyTunnels", socks.tunnelsOpened());
+        report.put("jobLatencyMs", percentiles("scraper.job", "outcome", "success"));
+        report.put("navigateLatencyMs", percentiles("scraper.navigate", "outcome", "success"));
+        report.put("parseLatencyMs", percentiles("parser.parse", "outcome", "contact"));
+        report.put("peakRssMb", peakRss < 0 ? null : round(peakRss / (1024.0 * 1024.0)));
+        return report;
+    }
+
+    private Map<String, Double> percentiles(String name, String tag, String value) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        Timer timer = meterRegistry.find(name).tag(tag, value).timer();
+        if (timer == null) {
+            return values;
+        }
+        for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+            values.put("p" + Math.round(percentile.percentile() * 100), round(percentile.value(TimeUnit.MILLISECONDS)));
+        }
+        values.put("mean", round(timer.mean(TimeUnit.MILLISECONDS)));
+        return values;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private void print(Map<String, Object> report) {
+        System.out.println("==================== Scrape pipeline benchmark ====================");
+        report.forEach((key, value) -> System.out.printf("%-20s %s%n", key, value));
+        System.out.println("===================================================================");
+    }
+
+    private void write(Map<String, Object> report) throws IOException {
+        Path dir = Path.of("target", "benchmark");
+        Files.createDirectories(dir);
+        Path file = dir.resolve("scrape-pipeline-" + LABEL + "-" + System.currentTimeMillis() + ".json");
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        System.out.println("Report written to " + file.toAbsolutePath());
+    }
+
+    @TestConfiguration
+    static class BenchConfig {
+
+        // Client-side percentiles for the latencies in the report
+        @Bean
+        MeterFilter benchPercentiles() {
+            Set<String> timed = Set.of("scraper.job", "scraper.navigate", "parser.parse");
+            return new MeterFilter() {
+                @Override
+                public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                    if (!timed.contains(id.getName())) {
+                        return config;
+                    }
+                    return DistributionStatisticConfig.builder()
+                            .percentiles(0.5, 0.99)
+                            .expiry(Duration.ofHours(1))
+                            .bufferLength(1)
+                            .build()
+                            .merge(config);
+                }
+            };
+        }
+    }
+
+    /**
+     * Samples the resident set size of this JVM and its child processes
+     * (the browsers) from /proc and keeps the peak; reports -1 elsewhere.
+     */
+    private static final class RssSampler implements AutoCloseable {
+
+        private final Thread thread;
+        private volatile long peak = -1;
+        private volatile boolean running = true;
+
+        RssSampler() {
+            thread = Thread.ofPlatform().daemon().name("bench-rss").start(() -> {
+                while (running) {
+                    long total = rss(ProcessHandle.current());
+                    if (total >= 0) {
+                        for (ProcessHandle child : ProcessHandle.current().descendants().toList()) {
+                            total += Math.max(0, rss(child));
+                        }
+                        peak = Math.max(peak, total);
+                    }
+                    try {
+                        Thread.sleep(250);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        long peakBytes() {
+            return peak;
+        }
+
+        private static long rss(ProcessHandle process) {
+            Path status = Path.of("/proc", String.valueOf(process.pid()), "status");
+            try {
+                for (String line : Files.readAllLines(status)) {
+                    if (line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Not Linux, or the process just exited
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            running = false;
+            thread.interrupt();
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ir.netpick.platform.mailmine.metrics;
+
+import com.microsoft.playwright.TimeoutError;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ir.netpick.platform.core.enums.ProxyProtocol;
+import ir.netpick.platform.mailmine.model.Proxy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScrapeMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private ScrapeMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new ScrapeMetrics(registry);
+    }
+
+    @Test
+    @DisplayName("Jobs should be timed per proxy type and outcome on a single cached meter")
+    void shouldTagJobsByProxyAndOutcome() {
+        String socks = ScrapeMetrics.proxyType(new Proxy(ProxyProtocol.SOCKS5, "127.0.0.1", 1080));
+        metrics.jobFinished(socks, ScrapeMetrics.SUCCESS, TimeUnit.MILLISECONDS.toNanos(200));
+        metrics.jobFinished(socks, ScrapeMetrics.SUCCESS, TimeUnit.MILLISECONDS.toNanos(400));
+        metrics.jobFinished(ScrapeMetrics.proxyType(null), ScrapeMetrics.outcome(new TimeoutError("slow")), 1);
+
+        Timer success = registry.get("scraper.job").tags("proxy", "socks5", "outcome", "success").timer();
+        assertEquals(2, success.count());
+        assertEquals(600, success.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1, registry.get("scraper.job").tags("proxy", "direct", "outcome", "timeout").timer().count());
+        assertEquals(2, registry.get("scraper.job").timers().size());
+    }
+
+    @Test
+    @DisplayName("Proxy failures should be counted without a latency sample")
+    void shouldCountProxyOutcomes() {
+        metrics.proxyUsed("socks5", ScrapeMetrics.SUCCESS, 120);
+        metrics.proxyUsed("socks5", ScrapeMetrics.ERROR, -1);
+
+        assertEquals(1, registry.get("proxy.requests").tags("outcome", "error").counter().count());
+        assertEquals(1, registry.get("proxy.latency").timer().count());
+    }
+
+    @Test
+    @DisplayName("Page size should be measured in UTF-8 bytes")
+    void shouldMeasureUtf8Length() {
+        for (String text : new String[] {"hello", "سلام ۱", "a€😀"}) {
+            assertEquals(text.getBytes(StandardCharsets.UTF_8).length, ScrapeMetrics.utf8Length(text), text);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ir.netpick.platform.mailmine.parser;
+
+import ir.netpick.platform.mailmine.model.LinkResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkParserTest {
+
+    private static final String RESPONSE = """
+            {"kind":"customsearch#search",
+             "queries":{"request":[{"title":"ignored","link":"https://ignored.example"}]},
+             "items":[
+               {"title":"تجهیزات صنعتی","link":"https://a.example/contact","snippet":"sales@a.example",
+                "pagemap":{"metatags":[{"og:title":"nested","link":"https://nested.example"}]}},
+               {"title":"No link","snippet":"skipped"},
+               {"link":"https://b.example/","title":null,"cacheId":"x1"}
+             ],
+             "link":"https://root.example"}
+            """;
+
+    private static Flux<DataBuffer> chunked(String json, int chunkSize) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            int end = Math.min(bytes.length, i + chunkSize);
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, i, end)));
+        }
+        return Flux.fromIterable(buffers);
+    }
+
+    private static void assertExpected(List<LinkResult> results) {
+        assertEquals(2, results.size());
+        assertEquals("https://a.example/contact", results.get(0).getLink());
+        assertEquals("تجهیزات صنعتی", results.get(0).getTitle());
+        assertEquals("sales@a.example", results.get(0).getSnippet());
+        assertEquals("https://b.example/", results.get(1).getLink());
+        assertNull(results.get(1).getTitle());
+    }
+
+    @Test
+    @DisplayName("Should take link, title and snippet from top-level items only")
+    void shouldExtractItemFields() {
+        assertExpected(LinkParser.parse(RESPONSE));
+    }
+
+    @Test
+    @DisplayName("Should parse a body split at arbitrary byte boundaries")
+    void shouldParseChunkedBuffers() {
+        // 3-byte chunks split tokens and multi-byte characters
+        for (int chunkSize : new int[] {1, 3, 64}) {
+            assertExpected(LinkParser.parse(chunked(RESPONSE, chunkSize)).block(Duration.ofSeconds(5)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should fail on malformed, truncated or empty responses instead of returning a partial list")
+    void shouldRejectMalformedJson() {
+        String cutInString = "{\"items\":[{\"link\":\"https://a.example\"},{\"link\":\"https://b.ex";
+        String cutBetweenItems = "{\"items\":[{\"link\":\"https://a.example\"},";
+
+        for (String body : List.of(cutInString, cutBetweenItems, "{\"items\":[}")) {
+            assertThrows(MalformedResponseException.class, () -> LinkParser.parse(body));
+            assertThrows(MalformedResponseException.class,
+                    () -> LinkParser.parse(chunked(body, 16)).block(Duration.ofSeconds(5)));
+        }
+        assertThrows(MalformedResponseException.class, () -> LinkParser.parse(""));
+        assertThrows(MalformedResponseException.class,
+                () -> LinkParser.parse(Flux.<DataBuffer>empty()).block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    @DisplayName("A complete response without items should parse to no links")
+    void shouldAcceptResponseWithoutItems() {
+        assertTrue(LinkParser.parse("{\"kind\":\"customsearch#search\"}").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Compact cache form should read back to the same results")
+    void shouldRoundTripCompactForm() {
+        String compact = LinkParser.toJson(LinkParser.parse(RESPONSE));
+
+        assertFalse(compact.contains("pagemap"));
+        assertExpected(LinkParser.parse(compact));
+    }
+}
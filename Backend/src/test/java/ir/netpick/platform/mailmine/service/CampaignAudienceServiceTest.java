@@ -0,0 +1,181 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.mailmine.dto.AudienceImportReport;
+import ir.netpick.platform.mailmine.dto.AudienceQuery;
+import ir.netpick.platform.mailmine.verify.VerificationStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CampaignAudienceServiceTest {
+
+    private static final String CAMPAIGN = "00000000-0000-0000-0000-00000000000c";
+    private static final String OTHER_CAMPAIGN = "00000000-0000-0000-0000-00000000000d";
+    private static final String QUERY = "00000000-0000-0000-0000-0000000000aa";
+
+    private JdbcTemplate jdbc;
+    private CampaignAudienceService service;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:audience-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("""
+                CREATE TABLE email_campaigns (id VARCHAR(36) PRIMARY KEY, status VARCHAR(20),
+                    total_recipients INT DEFAULT 0, updated_at TIMESTAMP, deleted BOOLEAN DEFAULT FALSE)""");
+        jdbc.execute("""
+                CREATE TABLE campaign_recipients (id VARCHAR(36) PRIMARY KEY, campaign_id VARCHAR(36),
+                    recipient_email VARCHAR(255), recipient_name VARCHAR(255), status VARCHAR(20),
+                    created_at TIMESTAMP, updated_at TIMESTAMP, deleted BOOLEAN DEFAULT FALSE)""");
+        jdbc.execute("CREATE TABLE scrape_job (id VARCHAR(36) PRIMARY KEY, search_query_id VARCHAR(36))");
+        jdbc.execute("CREATE TABLE scrape_data (id VARCHAR(36) PRIMARY KEY, job_id VARCHAR(36))");
+        jdbc.execute("""
+                CREATE TABLE contacts (id VARCHAR(36) PRIMARY KEY, scrape_data_id VARCHAR(36),
+                    verification_status VARCHAR(32), deleted BOOLEAN DEFAULT FALSE)""");
+        jdbc.execute("CREATE TABLE contact_emails (contact_id VARCHAR(36), email VARCHAR(255))");
+        jdbc.execute("CREATE TABLE email_verification (email VARCHAR(320) PRIMARY KEY, status VARCHAR(32))");
+        jdbc.execute("CREATE TABLE email_messages (id VARCHAR(36) PRIMARY KEY, sender_email VARCHAR(255))");
+        jdbc.execute("CREATE TABLE email_tags (id VARCHAR(36) PRIMARY KEY, name VARCHAR(255))");
+        jdbc.execute("""
+                CREATE TABLE email_tag_assignments (id VARCHAR(36) PRIMARY KEY, email_message_id VARCHAR(36),
+                    email_tag_id VARCHAR(36), deleted BOOLEAN DEFAULT FALSE)""");
+
+        jdbc.update("INSERT INTO email_campaigns (id, status) VALUES (?, 'DRAFT'), (?, 'SENT')", CAMPAIGN,
+                OTHER_CAMPAIGN);
+        service = new CampaignAudienceService(dataSource, new DataSourceTransactionManager(dataSource), 2);
+    }
+
+    private void contact(String id, String verification, String query, String... emails) {
+        if (query != null) {
+            jdbc.update("INSERT INTO scrape_job VALUES (?, ?)", "job-" + id, query);
+            jdbc.update("INSERT INTO scrape_data VALUES (?, ?)", "data-" + id, "job-" + id);
+        }
+        jdbc.update("INSERT INTO contacts (id, scrape_data_id, verification_status) VALUES (?, ?, ?)",
+                id, query != null ? "data-" + id : null, verification);
+        for (String email : emails) {
+            jdbc.update("INSERT INTO contact_emails VALUES (?, ?)", id, email);
+        }
+    }
+
+    private void recipient(String campaign, String email, String status) {
+        jdbc.update("INSERT INTO campaign_recipients (id, campaign_id, recipient_email, status) VALUES (?, ?, ?, ?)",
+                UUID.randomUUID().toString(), campaign, email, status);
+    }
+
+    private List<String> recipients() {
+        return jdbc.queryForList("SELECT recipient_email FROM campaign_recipients WHERE campaign_id = ? "
+                + "ORDER BY recipient_email", String.class, CAMPAIGN);
+    }
+
+    @Test
+    @DisplayName("Should add matching contacts once each, skipping suppressed addresses and existing recipients")
+    void shouldAddFromContacts() {
+        contact("c1", "VALID", null, "Sales@Shop.ir", "info@shop.ir");
+        contact("c2", "CATCH_ALL", null, "sales@shop.ir", "bounced@shop.ir");
+        contact("c3", "VALID", null, "dead@shop.ir", "existing@shop.ir");
+        contact("c4", "INVALID", null, "nobody@shop.ir");
+        contact("c5", null, null, "new@shop.ir");
+        contact("c6", "VALID", null, "someone@other.ir");
+        recipient(OTHER_CAMPAIGN, "bounced@shop.ir", "BOUNCED");
+        recipient(CAMPAIGN, "existing@shop.ir", "PENDING");
+        jdbc.update("INSERT INTO email_verification VALUES ('dead@shop.ir', 'INVALID')");
+
+        AudienceImportReport report = service.addFromContacts(UUID.fromString(CAMPAIGN), new AudienceQuery(
+                null, "Shop.ir", List.of(VerificationStatus.VALID, VerificationStatus.CATCH_ALL), true, null));
+
+        assertEquals(3, report.added());
+        assertEquals(List.of("existing@shop.ir", "info@shop.ir", "new@shop.ir", "sales@shop.ir"), recipients());
+        assertEquals(4, report.totalRecipients());
+        assertEquals(4, jdbc.queryForObject("SELECT total_recipients FROM email_campaigns WHERE id = ?",
+                Integer.class, CAMPAIGN));
+        assertEquals(0, service.addFromContacts(UUID.fromString(CAMPAIGN), new AudienceQuery(
+                null, "shop.ir", List.of(VerificationStatus.VALID), true, null)).added());
+    }
+
+    @Test
+    @DisplayName("Should filter contacts by message tag and by source search query")
+    void shouldFilterByTagAndSource() {
+        contact("c1", "VALID", QUERY, "lead@a.ir");
+        contact("c2", "VALID", QUERY, "quiet@b.ir");
+        contact("c3", "VALID", "00000000-0000-0000-0000-0000000000bb", "elsewhere@c.ir");
+        jdbc.update("INSERT INTO email_tags VALUES ('t1', 'SALES_LEAD')");
+        jdbc.update("INSERT INTO email_messages VALUES ('m1', 'Lead@a.ir'), ('m2', 'elsewhere@c.ir')");
+        jdbc.update("INSERT INTO email_tag_assignments (id, email_message_id, email_tag_id) "
+                + "VALUES ('a1', 'm1', 't1'), ('a2', 'm2', 't1')");
+
+        service.addFromContacts(UUID.fromString(CAMPAIGN),
+                new AudienceQuery("SALES_LEAD", null, null, false, UUID.fromString(QUERY)));
+
+        assertEquals(List.of("lead@a.ir"), recipients());
+    }
+
+    @Test
+    @DisplayName("Should match a domain literally, without LIKE wildcards")
+    void shouldMatchDomainLiterally() {
+        contact("c1", null, null, "info@my_shop.ir");
+        contact("c2", null, null, "info@myxshop.ir");
+        contact("c3", null, null, "info@100%.ir", "info@1000.ir");
+
+        service.addFromContacts(UUID.fromString(CAMPAIGN), new AudienceQuery(null, "my_shop.ir", null, true, null));
+        service.addFromContacts(UUID.fromString(CAMPAIGN), new AudienceQuery(null, "100%.ir", null, true, null));
+
+        assertEquals(List.of("info@100%.ir", "info@my_shop.ir"), recipients());
+    }
+
+    @Test
+    @DisplayName("Should stream a CSV in batches, updating names of existing recipients and skipping invalid rows")
+    void shouldImportCsv() throws IOException {
+        recipient(CAMPAIGN, "known@shop.ir", "PENDING");
+        recipient(OTHER_CAMPAIGN, "gone@shop.ir", "UNSUBSCRIBED");
+        String csv = """
+                name,Email
+                "Doe, Jane",jane@shop.ir
+                Known Person,KNOWN@shop.ir
+                ,not-an-address
+                Jane again,jane@shop.ir
+                Unsubscribed,gone@shop.ir
+                "Sam ""S"" Smith",sam@shop.ir
+                """;
+
+        AudienceImportReport report = service.importCsv(UUID.fromString(CAMPAIGN),
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(6, report.rows());
+        assertEquals(1, report.invalid());
+        assertEquals(2, report.added());
+        // Later rows win: jane@ was added by an earlier batch and renamed by a later one
+        assertEquals(2, report.updated());
+        assertEquals(3, report.totalRecipients());
+        assertEquals(List.of("jane@shop.ir", "known@shop.ir", "sam@shop.ir"), recipients());
+        assertEquals("Known Person", jdbc.queryForObject(
+                "SELECT recipient_name FROM campaign_recipients WHERE recipient_email = 'known@shop.ir'", String.class));
+        assertEquals("Jane again", jdbc.queryForObject(
+                "SELECT recipient_name FROM campaign_recipients WHERE recipient_email = 'jane@shop.ir'", String.class));
+        assertEquals("Sam \"S\" Smith", jdbc.queryForObject(
+                "SELECT recipient_name FROM campaign_recipients WHERE recipient_email = 'sam@shop.ir'", String.class));
+    }
+
+    @Test
+    @DisplayName("Should only add recipients to draft campaigns")
+    void shouldRejectNonDraftCampaigns() {
+        contact("c1", "VALID", null, "a@shop.ir");
+
+        assertThrows(IllegalStateException.class, () -> service.addFromContacts(UUID.fromString(OTHER_CAMPAIGN),
+                new AudienceQuery(null, null, null, false, null)));
+        assertThrows(IllegalStateException.class,
+                () -> service.addEmails(UUID.fromString(OTHER_CAMPAIGN), List.of("a@shop.ir")));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM campaign_recipients", Integer.class));
+    }
+}
@@ -0,0 +1,160 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CampaignFanoutServiceTest {
+
+    private static final UUID CAMPAIGN = UUID.fromString("00000000-0000-0000-0000-00000000000c");
+
+    @Mock
+    private EmailDispatchQueue dispatchQueue;
+
+    private JdbcTemplate jdbc;
+    private CampaignFanoutService service;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:fanout-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("""
+                CREATE TABLE email_campaigns (id VARCHAR(36) PRIMARY KEY, subject_line VARCHAR(255),
+                    body_html VARCHAR(255), created_by_id VARCHAR(36), status VARCHAR(20), sent_at TIMESTAMP,
+                    total_sent INT DEFAULT 0, fanout_cursor VARCHAR(36), fanout_queued INT DEFAULT 0,
+                    fanout_checkpoint_at TIMESTAMP, updated_at TIMESTAMP, deleted BOOLEAN DEFAULT FALSE)""");
+        jdbc.execute("""
+                CREATE TABLE campaign_recipients (id VARCHAR(36) PRIMARY KEY, campaign_id VARCHAR(36),
+                    recipient_email VARCHAR(255), status VARCHAR(20), sent_at TIMESTAMP, updated_at TIMESTAMP,
+                    deleted BOOLEAN DEFAULT FALSE)""");
+        // Short recipient column, so a long address can make a chunk fail
+        jdbc.execute("""
+                CREATE TABLE email_queue_items (id VARCHAR(36) PRIMARY KEY, recipient VARCHAR(24),
+                    subject VARCHAR(255), body VARCHAR(255), created_by_user_id VARCHAR(36), status VARCHAR(20),
+                    retry_count INT, priority VARCHAR(20), next_attempt_at TIMESTAMP, created_at TIMESTAMP,
+                    updated_at TIMESTAMP, deleted BOOLEAN)""");
+
+        service = new CampaignFanoutService(dataSource, new DataSourceTransactionManager(dataSource),
+                dispatchQueue, 3, 300);
+    }
+
+    private void campaign(String status) {
+        jdbc.update("INSERT INTO email_campaigns (id, subject_line, body_html, status, sent_at) "
+                + "VALUES (?, 'Spring sale', '<p>Hi</p>', ?, CURRENT_TIMESTAMP)", CAMPAIGN.toString(), status);
+    }
+
+    private void recipients(int count) {
+        for (int i = 1; i <= count; i++) {
+            jdbc.update("INSERT INTO campaign_recipients (id, campaign_id, recipient_email, status) "
+                    + "VALUES (?, ?, ?, 'PENDING')", "r%02d".formatted(i), CAMPAIGN.toString(), "user" + i + "@shop.ir");
+        }
+    }
+
+    private int count(String sql, Object... args) {
+        return jdbc.queryForObject(sql, Integer.class, args);
+    }
+
+    @Test
+    @DisplayName("Should queue every recipient in committed chunks and mark the campaign sent")
+    void shouldFanOutInChunks() {
+        campaign("SENDING");
+        recipients(7);
+
+        CampaignFanoutService.FanoutResult result = service.fanOut(CAMPAIGN);
+
+        assertTrue(result.complete());
+        assertEquals(7, result.queued());
+        assertEquals(3, result.chunks());
+        assertEquals(7, count("SELECT COUNT(*) FROM email_queue_items WHERE priority = 'LOW' AND status = 'PENDING'"));
+        assertEquals(7, count("SELECT COUNT(DISTINCT recipient) FROM email_queue_items"));
+        assertEquals(0, count("SELECT COUNT(*) FROM campaign_recipients WHERE status = 'PENDING'"));
+        assertEquals("SENT", jdbc.queryForObject("SELECT status FROM email_campaigns", String.class));
+        assertEquals(7, count("SELECT total_sent FROM email_campaigns"));
+        assertEquals("r07", jdbc.queryForObject("SELECT fanout_cursor FROM email_campaigns", String.class));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<UUID>> offered = ArgumentCaptor.forClass(Collection.class);
+        verify(dispatchQueue, times(3)).offerAll(offered.capture(), eq(QueuePriority.LOW), any());
+        assertEquals(List.of(3, 3, 1), offered.getAllValues().stream().map(Collection::size).toList());
+    }
+
+    @Test
+    @DisplayName("Should keep committed chunks when a later one fails, and resume after them without duplicates")
+    void shouldResumeAfterFailedChunk() {
+        campaign("SENDING");
+        recipients(7);
+        jdbc.update("UPDATE campaign_recipients SET recipient_email = ? WHERE id = 'r05'",
+                "a-very-long-address-that-does-not-fit@shop.ir");
+
+        CampaignFanoutService.FanoutResult first = service.fanOut(CAMPAIGN);
+
+        assertFalse(first.complete());
+        assertEquals(3, first.queued());
+        assertEquals("SENDING", jdbc.queryForObject("SELECT status FROM email_campaigns", String.class));
+        assertEquals("r03", jdbc.queryForObject("SELECT fanout_cursor FROM email_campaigns", String.class));
+        assertEquals(4, count("SELECT COUNT(*) FROM campaign_recipients WHERE status = 'PENDING'"));
+
+        jdbc.update("UPDATE campaign_recipients SET recipient_email = 'user5@shop.ir' WHERE id = 'r05'");
+        jdbc.update("UPDATE email_campaigns SET fanout_checkpoint_at = DATEADD('HOUR', -1, CURRENT_TIMESTAMP)");
+        service.resumeStalled();
+
+        assertEquals(7, count("SELECT COUNT(*) FROM email_queue_items"));
+        assertEquals(7, count("SELECT COUNT(DISTINCT recipient) FROM email_queue_items"));
+        assertEquals("SENT", jdbc.queryForObject("SELECT status FROM email_campaigns", String.class));
+        assertEquals(7, count("SELECT total_sent FROM email_campaigns"));
+    }
+
+    @Test
+    @DisplayName("Should stop at the next chunk once the campaign is paused")
+    void shouldStopWhenPaused() {
+        campaign("SENDING");
+        recipients(7);
+        List<Integer> offered = new ArrayList<>();
+        doAnswer(invocation -> {
+            offered.add(invocation.<Collection<UUID>>getArgument(0).size());
+            jdbc.update("UPDATE email_campaigns SET status = 'PAUSED'");
+            return null;
+        }).when(dispatchQueue).offerAll(any(), any(), any());
+
+        CampaignFanoutService.FanoutResult result = service.fanOut(CAMPAIGN);
+
+        assertFalse(result.complete());
+        assertEquals(List.of(3), offered);
+        assertEquals(3, count("SELECT COUNT(*) FROM email_queue_items"));
+        assertEquals(4, count("SELECT COUNT(*) FROM campaign_recipients WHERE status = 'PENDING'"));
+        assertEquals("PAUSED", jdbc.queryForObject("SELECT status FROM email_campaigns", String.class));
+    }
+
+    @Test
+    @DisplayName("Should leave fan-outs with a recent checkpoint to the instance running them")
+    void shouldNotResumeActiveFanouts() {
+        campaign("SENDING");
+        recipients(2);
+        jdbc.update("UPDATE email_campaigns SET fanout_checkpoint_at = CURRENT_TIMESTAMP");
+
+        service.resumeStalled();
+
+        assertEquals(0, count("SELECT COUNT(*) FROM email_queue_items"));
+        verifyNoInteractions(dispatchQueue);
+    }
+}
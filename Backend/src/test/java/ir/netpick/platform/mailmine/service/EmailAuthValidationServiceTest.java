@@ -0,0 +1,139 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.core.dns.DnsRecordType;
+import ir.netpick.platform.core.dns.DnsResolver;
+import ir.netpick.platform.core.dns.StubDnsBackend;
+import ir.netpick.platform.core.exception.RequestValidationException;
+import ir.netpick.platform.mailmine.dto.DomainCheck;
+import ir.netpick.platform.mailmine.dto.DomainCheck.MailStatus;
+import ir.netpick.platform.mailmine.dto.DomainValidationReport;
+import ir.netpick.platform.mailmine.repository.CampaignRecipientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EmailAuthValidationServiceTest {
+
+    @Mock
+    private CampaignRecipientRepository campaignRecipientRepository;
+
+    private StubDnsBackend dns;
+    private EmailAuthValidationService service;
+
+    @BeforeEach
+    void setUp() {
+        dns = new StubDnsBackend()
+                .mx("shop.ir", "mx.shop.ir").txt("shop.ir", "v=spf1 mx -all")
+                .txt("_dmarc.shop.ir", "v=DMARC1; p=reject; rua=mailto:d@shop.ir")
+                .a("web-only.ir", "192.0.2.10")
+                .mx("no-mail.ir", ".")
+                .txt("parked.ir", "google-site-verification=abc")
+                .fail("broken.ir", "SERVFAIL");
+        DnsResolver resolver = new DnsResolver(dns);
+        setField(resolver, "minTtlSeconds", 60L);
+        setField(resolver, "maxTtlSeconds", 86400L);
+        setField(resolver, "negativeTtlSeconds", 900L);
+        setField(resolver, "errorTtlSeconds", 30L);
+        setField(resolver, "maxEntries", 10_000);
+        setField(resolver, "queryTimeoutMs", 1000L);
+
+        service = new EmailAuthValidationService(resolver, campaignRecipientRepository);
+        setField(service, "batchConcurrency", 8);
+        setField(service, "maxBatchDomains", 100);
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Map<String, DomainCheck> byDomain(DomainValidationReport report) {
+        return report.results().stream().collect(Collectors.toMap(DomainCheck::domain, Function.identity()));
+    }
+
+    @Test
+    @DisplayName("Should classify every domain of a batch once, with MX, SPF and DMARC")
+    void shouldValidateBatch() {
+        DomainValidationReport report = service.validateDomains(List.of(
+                "sales@shop.ir", "info@SHOP.ir", "shop.ir", "contact@web-only.ir", "x@no-mail.ir",
+                "y@parked.ir", "z@gone.ir", "w@broken.ir", "not an email", "a@b@"));
+
+        Map<String, DomainCheck> checks = byDomain(report);
+        assertEquals(MailStatus.DELIVERABLE, checks.get("shop.ir").status());
+        assertEquals(3, checks.get("shop.ir").addresses());
+        assertEquals(List.of("mx.shop.ir"), checks.get("shop.ir").mxHosts());
+        assertTrue(checks.get("shop.ir").hasSpf());
+        assertEquals("reject", checks.get("shop.ir").dmarcPolicy());
+        assertEquals(MailStatus.IMPLICIT_MX, checks.get("web-only.ir").status());
+        assertEquals(MailStatus.NULL_MX, checks.get("no-mail.ir").status());
+        assertEquals(MailStatus.NO_MAIL_HOST, checks.get("parked.ir").status());
+        assertEquals(MailStatus.NOT_FOUND, checks.get("gone.ir").status());
+        assertEquals(MailStatus.UNKNOWN, checks.get("broken.ir").status());
+        assertEquals("SERVFAIL", checks.get("broken.ir").error());
+
+        assertEquals(10, report.entries());
+        assertEquals(2, report.invalidEntries());
+        assertEquals(2, report.deliverableDomains());
+        assertEquals(3, report.undeliverableDomains());
+        assertEquals(1, report.unknownDomains());
+        assertEquals(3, report.undeliverableAddresses());
+
+        // The address lookup is only needed where MX is missing
+        assertEquals(1, dns.queries("shop.ir", DnsRecordType.MX));
+        assertEquals(0, dns.queries("shop.ir", DnsRecordType.A));
+    }
+
+    @Test
+    @DisplayName("Should validate a campaign's recipients with cached lookups")
+    void shouldValidateCampaignRecipients() {
+        UUID campaignId = UUID.randomUUID();
+        List<String> recipients = IntStream.range(0, 500).mapToObj(i -> "user" + i + "@shop.ir").toList();
+        when(campaignRecipientRepository.findRecipientEmailsByCampaignId(campaignId)).thenReturn(recipients);
+
+        DomainValidationReport report = service.validateCampaignRecipients(campaignId);
+        service.validateDomain("shop.ir");
+
+        assertEquals(1, report.domains());
+        assertEquals(500, report.results().get(0).addresses());
+        assertEquals(3, dns.totalQueries());
+    }
+
+    @Test
+    @DisplayName("Should reject batches with too many distinct domains")
+    void shouldLimitBatchSize() {
+        List<String> domains = IntStream.range(0, 101).mapToObj(i -> "d" + i + ".ir").toList();
+
+        assertThrows(RequestValidationException.class, () -> service.validateDomains(domains));
+        assertEquals(0, dns.totalQueries());
+    }
+
+    @Test
+    @DisplayName("Single-domain validation should report MX alongside SPF and DMARC")
+    void shouldValidateSingleDomain() {
+        Map<String, Object> result = service.validateFromEmail("info@shop.ir");
+
+        assertEquals(true, ((Map<?, ?>) result.get("mx")).get("valid"));
+        assertEquals(true, ((Map<?, ?>) result.get("spf")).get("valid"));
+        assertEquals("reject", ((Map<?, ?>) result.get("dmarc")).get("policy"));
+        assertEquals(false, ((Map<?, ?>) service.validateDomain("no-mail.ir").get("mx")).get("valid"));
+    }
+}
@@ -0,0 +1,181 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class EmailQueueDispatcherTest {
+
+    @Mock
+    private EmailQueueService emailQueueService;
+
+    private InMemoryQueue queue;
+    private EmailQueueDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        queue = new InMemoryQueue();
+        dispatcher = new EmailQueueDispatcher(queue, emailQueueService);
+        setField(dispatcher, "enabled", true);
+        setField(dispatcher, "workers", 4);
+        // Long enough that only a wake-up can explain a prompt send
+        setField(dispatcher, "idlePollMs", 60_000L);
+        lenient().when(emailQueueService.claim(any())).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.stop();
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    @DisplayName("Should send an item as soon as it is offered")
+    void shouldSendOnOffer() throws InterruptedException {
+        CountDownLatch sent = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sent.countDown();
+            return null;
+        }).when(emailQueueService).deliver(any());
+        dispatcher.start();
+
+        long start = System.nanoTime();
+        queue.offer(UUID.randomUUID(), QueuePriority.NORMAL, LocalDateTime.now());
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+    }
+
+    @Test
+    @DisplayName("Should send high priority items first and wait for scheduled ones")
+    void shouldRespectPriorityAndSchedule() throws InterruptedException {
+        UUID low = UUID.randomUUID();
+        UUID high = UUID.randomUUID();
+        UUID later = UUID.randomUUID();
+        queue.offer(low, QueuePriority.LOW, LocalDateTime.now().minusSeconds(10));
+        queue.offer(high, QueuePriority.HIGH, LocalDateTime.now());
+        queue.offer(later, QueuePriority.HIGH, LocalDateTime.now().plusNanos(400_000_000));
+
+        List<UUID> order = new CopyOnWriteArrayList<>();
+        CountDownLatch sent = new CountDownLatch(3);
+        doAnswer(invocation -> {
+            order.add(invocation.getArgument(0));
+            sent.countDown();
+            return null;
+        }).when(emailQueueService).deliver(any());
+        setField(dispatcher, "workers", 1);
+        dispatcher.start();
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(high, low, later), order);
+    }
+
+    @Test
+    @DisplayName("Should run no more sends at once than there are workers")
+    void shouldBoundConcurrency() throws InterruptedException {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch sent = new CountDownLatch(40);
+        doAnswer(invocation -> {
+            peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            active.decrementAndGet();
+            sent.countDown();
+            return null;
+        }).when(emailQueueService).deliver(any());
+        dispatcher.start();
+
+        for (int i = 0; i < 40; i++) {
+            queue.offer(UUID.randomUUID(), QueuePriority.NORMAL, LocalDateTime.now());
+        }
+
+        assertTrue(sent.await(10, TimeUnit.SECONDS));
+        assertTrue(peak.get() <= 4, "peak " + peak.get());
+        assertTrue(peak.get() > 1, "sends should overlap");
+    }
+
+    /**
+     * Sorted by priority, then due time, like the Redis queue
+     */
+    private static class InMemoryQueue implements EmailDispatchQueue {
+
+        private record Entry(UUID id, QueuePriority priority, LocalDateTime dueAt) {
+        }
+
+        private final List<Entry> entries = new ArrayList<>();
+        private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void offer(UUID itemId, QueuePriority priority, LocalDateTime dueAt) {
+            synchronized (entries) {
+                entries.removeIf(entry -> entry.id().equals(itemId));
+                entries.add(new Entry(itemId, priority, dueAt));
+            }
+            listeners.forEach(Runnable::run);
+        }
+
+        @Override
+        public List<UUID> pollDue(int max) {
+            LocalDateTime now = LocalDateTime.now();
+            synchronized (entries) {
+                List<Entry> due = entries.stream()
+                        .filter(entry -> !entry.dueAt().isAfter(now))
+                        .sorted(Comparator.comparing(Entry::priority).thenComparing(Entry::dueAt))
+                        .limit(max)
+                        .toList();
+                entries.removeAll(due);
+                return due.stream().map(Entry::id).toList();
+            }
+        }
+
+        @Override
+        public Optional<LocalDateTime> nextDueAt() {
+            synchronized (entries) {
+                return entries.stream().map(Entry::dueAt).min(Comparator.naturalOrder());
+            }
+        }
+
+        @Override
+        public void remove(UUID itemId) {
+            synchronized (entries) {
+                entries.removeIf(entry -> entry.id().equals(itemId));
+            }
+        }
+
+        @Override
+        public void onOffer(Runnable listener) {
+            listeners.add(listener);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.core.mail.MailTrafficShaper;
+import ir.netpick.platform.mailmine.dto.EmailRequest;
+import ir.netpick.platform.mailmine.model.EmailQueueItem;
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueueStatus;
+import ir.netpick.platform.mailmine.repository.EmailQueueItemRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailQueueServiceTest {
+
+    @Mock
+    private EmailQueueItemRepository emailQueueItemRepository;
+
+    @Mock
+    private EmailService emailService;
+
+    @Mock
+    private EmailDispatchQueue dispatchQueue;
+
+    @Mock
+    private MailTrafficShaper trafficShaper;
+
+    private EmailQueueService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new EmailQueueService(emailQueueItemRepository, emailService, dispatchQueue, trafficShaper);
+        lenient().when(trafficShaper.tryAcquire(any(), any()))
+                .thenReturn(new MailTrafficShaper.Admission("example.com", Duration.ZERO));
+        setField(service, "leaseSeconds", 300L);
+        setField(service, "reconcileGraceSeconds", 60L);
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static EmailQueueItem sendingItem(int retryCount) {
+        EmailQueueItem item = new EmailQueueItem();
+        item.setId(UUID.randomUUID());
+        item.setRecipient("user@example.com");
+        item.setSubject("Reset your password");
+        item.setBody("...");
+        item.setStatus(QueueStatus.SENDING);
+        item.setRetryCount(retryCount);
+        item.setLeaseUntil(LocalDateTime.now().plusMinutes(5));
+        return item;
+    }
+
+    @Test
+    @DisplayName("Should offer a queued email for its scheduled time with its priority")
+    void shouldOfferQueuedEmail() {
+        LocalDateTime scheduledAt = LocalDateTime.now().plusHours(1);
+        when(emailQueueItemRepository.save(any())).thenAnswer(invocation -> {
+            EmailQueueItem item = invocation.getArgument(0);
+            item.setId(UUID.randomUUID());
+            return item;
+        });
+
+        UUID id = service.queueEmail(EmailRequest.builder().recipient("user@example.com").subject("Hi")
+                .priority(QueuePriority.HIGH).scheduledAt(scheduledAt).build(), UUID.randomUUID());
+
+        verify(dispatchQueue).offer(id, QueuePriority.HIGH, scheduledAt);
+    }
+
+    @Test
+    @DisplayName("Should mark a delivered item sent and release its lease")
+    void shouldDeliverClaimedItem() {
+        EmailQueueItem item = sendingItem(0);
+        when(emailQueueItemRepository.findById(item.getId())).thenReturn(Optional.of(item));
+
+        service.deliver(item.getId());
+
+        verify(emailService).sendSimpleMail(any());
+        assertEquals(QueueStatus.SENT, item.getStatus());
+        assertNull(item.getLeaseUntil());
+        verify(emailQueueItemRepository).save(item);
+        verifyNoInteractions(dispatchQueue);
+    }
+
+    @Test
+    @DisplayName("Should put an item over its provider's limits back in the queue without counting an attempt")
+    void shouldDeferShapedItem() {
+        EmailQueueItem item = sendingItem(1);
+        when(emailQueueItemRepository.findById(item.getId())).thenReturn(Optional.of(item));
+        when(trafficShaper.tryAcquire(item.getId(), item.getRecipient()))
+                .thenReturn(new MailTrafficShaper.Admission("gmail", Duration.ofSeconds(30)));
+        LocalDateTime before = LocalDateTime.now();
+
+        service.deliver(item.getId());
+
+        verifyNoInteractions(emailService);
+        assertEquals(QueueStatus.PENDING, item.getStatus());
+        assertEquals(1, item.getRetryCount());
+        assertNull(item.getLeaseUntil());
+        assertEquals(30, Duration.between(before, item.getNextAttemptAt()).toSeconds());
+        verify(dispatchQueue).offer(item.getId(), item.getPriority(), item.getNextAttemptAt());
+    }
+
+    @Test
+    @DisplayName("Should retry a failed send after 5, 10 then 20 minutes and give up after the third failure")
+    void shouldBackOffFailedSends() {
+        doThrow(new RuntimeException("421 try later")).when(emailService).sendSimpleMail(any());
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            EmailQueueItem item = sendingItem(attempt);
+            when(emailQueueItemRepository.findById(item.getId())).thenReturn(Optional.of(item));
+            LocalDateTime before = LocalDateTime.now();
+
+            service.deliver(item.getId());
+
+            assertEquals(QueueStatus.PENDING, item.getStatus());
+            long delayMinutes = Duration.between(before, item.getNextAttemptAt()).toMinutes();
+            assertEquals(5L << attempt, delayMinutes);
+            verify(dispatchQueue).offer(item.getId(), item.getPriority(), item.getNextAttemptAt());
+        }
+
+        EmailQueueItem last = sendingItem(2);
+        when(emailQueueItemRepository.findById(last.getId())).thenReturn(Optional.of(last));
+        service.deliver(last.getId());
+        assertEquals(QueueStatus.FAILED, last.getStatus());
+        assertEquals("421 try later", last.getLastError());
+        verify(dispatchQueue, never()).offer(eq(last.getId()), any(), any());
+    }
+
+    @Test
+    @DisplayName("Reconciliation should release expired leases and re-offer overdue items")
+    void shouldReconcile() {
+        EmailQueueItem overdue = sendingItem(0);
+        overdue.setStatus(QueueStatus.PENDING);
+        overdue.setNextAttemptAt(LocalDateTime.now().minusMinutes(10));
+        when(emailQueueItemRepository.releaseExpiredLeases(any(LocalDateTime.class))).thenReturn(2);
+        when(emailQueueItemRepository.findDueBefore(eq(QueueStatus.PENDING), any(), any()))
+                .thenReturn(List.of(overdue));
+
+        service.processQueue();
+
+        verify(dispatchQueue).offer(overdue.getId(), overdue.getPriority(), overdue.getNextAttemptAt());
+        verifyNoInteractions(emailService);
+    }
+}
@@ -0,0 +1,119 @@
+package ir.netpick.platform.mailmine.service;
+
+import ir.netpick.platform.mailmine.model.EmailQueueItem.QueuePriority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RedisEmailDispatchQueueTest {
+
+    @Mock
+    private StringRedisTemplate redis;
+
+    @Mock
+    private ZSetOperations<String, String> zSet;
+
+    // Sorted sets of the fake Redis: key -> member -> score
+    private final Map<String, Map<String, Double>> sets = new HashMap<>();
+    private RedisEmailDispatchQueue queue;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        lenient().when(redis.opsForZSet()).thenReturn(zSet);
+        lenient().when(zSet.add(anyString(), anyString(), anyDouble())).thenAnswer(call -> {
+            sets.computeIfAbsent(call.getArgument(0), key -> new HashMap<>())
+                    .put(call.getArgument(1), call.getArgument(2));
+            return true;
+        });
+        lenient().when(zSet.add(anyString(), anySet())).thenAnswer(call -> {
+            Set<TypedTuple<String>> members = call.getArgument(1);
+            Map<String, Double> set = sets.computeIfAbsent(call.getArgument(0), key -> new HashMap<>());
+            members.forEach(tuple -> set.put(tuple.getValue(), tuple.getScore()));
+            return (long) members.size();
+        });
+        // The pop script: due members of one set, earliest first, up to the limit
+        lenient().when(redis.execute(any(RedisScript.class), anyList(), any(), any())).thenAnswer(call -> {
+            List<String> keys = call.getArgument(1);
+            double now = Double.parseDouble(call.getArgument(2));
+            int limit = Integer.parseInt(call.getArgument(3));
+            Map<String, Double> set = sets.getOrDefault(keys.get(0), new HashMap<>());
+            List<String> due = set.entrySet().stream()
+                    .filter(member -> member.getValue() <= now)
+                    .sorted(Map.Entry.comparingByValue())
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            due.forEach(set::remove);
+            return new ArrayList<>(due);
+        });
+        queue = new RedisEmailDispatchQueue(redis, new RedisMessageListenerContainer());
+    }
+
+    @Test
+    @DisplayName("A high priority item should come before a due low priority backlog of any size")
+    void shouldNotStarveHighPriorityBehindLowBacklog() {
+        List<UUID> backlog = IntStream.range(0, 600).mapToObj(i -> UUID.randomUUID()).toList();
+        queue.offerAll(backlog, QueuePriority.LOW, LocalDateTime.now().minusHours(1));
+        UUID urgent = UUID.randomUUID();
+        queue.offer(urgent, QueuePriority.HIGH, LocalDateTime.now().minusSeconds(1));
+
+        assertEquals(List.of(urgent), queue.pollDue(1));
+        List<UUID> next = queue.pollDue(16);
+        assertEquals(16, next.size());
+        assertTrue(backlog.containsAll(next));
+    }
+
+    @Test
+    @DisplayName("A poll should fill up from lower priorities once the better ones have nothing due")
+    void shouldFillFromLowerPriorities() {
+        UUID high = UUID.randomUUID();
+        UUID later = UUID.randomUUID();
+        UUID normal = UUID.randomUUID();
+        UUID low = UUID.randomUUID();
+        queue.offer(high, QueuePriority.HIGH, LocalDateTime.now().minusMinutes(1));
+        queue.offer(later, QueuePriority.HIGH, LocalDateTime.now().plusHours(1));
+        queue.offer(normal, QueuePriority.NORMAL, LocalDateTime.now().minusMinutes(1));
+        queue.offer(low, QueuePriority.LOW, LocalDateTime.now().minusMinutes(1));
+
+        assertEquals(List.of(high, normal, low), queue.pollDue(10));
+        assertTrue(queue.pollDue(10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Members of the old single set should still be read")
+    void shouldParseLegacyMembers() {
+        UUID id = UUID.randomUUID();
+
+        assertEquals(id, RedisEmailDispatchQueue.parseId("2:" + id).orElseThrow());
+        assertEquals(id, RedisEmailDispatchQueue.parseId("\"" + id + "\"").orElseThrow());
+        assertTrue(RedisEmailDispatchQueue.parseId("garbage").isEmpty());
+    }
+}
@@ -0,0 +1,93 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import ir.netpick.platform.mailmine.model.ApiKey;
+import ir.netpick.platform.mailmine.repository.ApiKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class ApiKeyQuotaServiceTest {
+
+    private static final ZoneId PACIFIC = ZoneId.of("America/Los_Angeles");
+
+    @Mock
+    private ApiKeyRepository apiKeyRepository;
+
+    private ApiKeyQuotaService quotaService;
+
+    @BeforeEach
+    void setUp() {
+        quotaService = new ApiKeyQuotaService(apiKeyRepository);
+        setField(quotaService, "defaultDailyQuota", 100);
+        setField(quotaService, "resetZone", "America/Los_Angeles");
+        setField(quotaService, "runIntervalHours", 3);
+        setField(quotaService, "spreadAcrossDay", true);
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ApiKey key(Integer quota, int used, ZonedDateTime usageTime) {
+        ApiKey key = new ApiKey("k", quota, "link", "engine");
+        key.setUsedToday(used);
+        key.setUsageDay(usageTime.toLocalDate());
+        return key;
+    }
+
+    @Test
+    @DisplayName("Usage from an earlier provider day should not count")
+    void shouldResetUsageAtProviderDayBoundary() {
+        ZonedDateTime yesterday = ZonedDateTime.of(2026, 3, 1, 23, 0, 0, 0, PACIFIC);
+        ZonedDateTime today = yesterday.plusHours(2);
+        ApiKey key = key(null, 100, yesterday);
+
+        assertEquals(0, quotaService.remaining(key, yesterday));
+        assertTrue(quotaService.isExhausted(key, yesterday));
+        assertEquals(100, quotaService.remaining(key, today));
+        assertFalse(quotaService.isExhausted(key, today));
+    }
+
+    @Test
+    @DisplayName("Run budget should split the remaining quota over the runs left today")
+    void shouldSpreadBudgetAcrossRemainingRuns() {
+        ZonedDateTime morning = ZonedDateTime.of(2026, 3, 2, 6, 0, 0, 0, PACIFIC);
+        ApiKey first = key(100, 40, morning);
+        ApiKey second = key(60, 0, morning);
+
+        // 120 left, 18 hours to the reset = 6 runs of 3 hours
+        assertEquals(20, quotaService.runBudget(List.of(first, second), morning));
+
+        setField(quotaService, "spreadAcrossDay", false);
+        assertEquals(120, quotaService.runBudget(List.of(first, second), morning));
+    }
+
+    @Test
+    @DisplayName("Exhaustion should be predicted from today's usage rate")
+    void shouldPredictExhaustionFromUsageRate() {
+        ZonedDateTime sixAm = ZonedDateTime.of(2026, 3, 2, 6, 0, 0, 0, PACIFIC);
+
+        // 50 used in 6 hours -> remaining 50 last another 6 hours
+        assertEquals(sixAm.plusHours(6).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime(),
+                quotaService.predictedExhaustion(100, 50, sixAm));
+        // 10 used in 6 hours -> the quota outlasts the day
+        assertNull(quotaService.predictedExhaustion(100, 10, sixAm));
+        assertNull(quotaService.predictedExhaustion(100, 0, sixAm));
+    }
+}
@@ -0,0 +1,137 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import ir.netpick.platform.core.exception.RequestValidationException;
+import ir.netpick.platform.mailmine.export.ContactExportFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContactExportServiceTest {
+
+    private JdbcTemplate jdbc;
+    private ContactExportService service;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:export-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE scrape_job (id VARCHAR(36) PRIMARY KEY, scrape_link VARCHAR(255))");
+        jdbc.execute("CREATE TABLE scrape_data (id VARCHAR(36) PRIMARY KEY, job_id VARCHAR(36))");
+        jdbc.execute("CREATE TABLE contacts (id VARCHAR(36) PRIMARY KEY, scrape_data_id VARCHAR(36), "
+                + "created_at TIMESTAMP, deleted BOOLEAN NOT NULL)");
+        jdbc.execute("CREATE TABLE contact_emails (contact_id VARCHAR(36), email VARCHAR(255))");
+
+        // Page size 2 so the five live contacts span three keyset pages
+        service = new ContactExportService(dataSource, new DataSourceTransactionManager(dataSource), 2, 10);
+    }
+
+    private void contact(String id, boolean deleted, String link, String... emails) {
+        jdbc.update("INSERT INTO scrape_job VALUES (?, ?)", "job-" + id, link);
+        jdbc.update("INSERT INTO scrape_data VALUES (?, ?)", "data-" + id, "job-" + id);
+        jdbc.update("INSERT INTO contacts VALUES (?, ?, TIMESTAMP '2026-01-02 03:04:05', ?)",
+                id, "data-" + id, deleted);
+        for (String email : emails) {
+            jdbc.update("INSERT INTO contact_emails VALUES (?, ?)", id, email);
+        }
+    }
+
+    private String export(ContactExportFormat format, String after) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.export(format, after, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private void seed() {
+        contact("c1", false, "https://a.example/contact", "b@a.example", "a@a.example");
+        contact("c2", false, "https://b.example/?q=1,2", "info@b.example");
+        contact("c3", true, "https://deleted.example", "gone@deleted.example");
+        contact("c4", false, "https://d.example", "x@d.example", "y@d.example", "z@d.example");
+        contact("c5", false, "https://e.example");
+        contact("c6", false, "https://f.example", "sales@f.example");
+    }
+
+    @Test
+    @DisplayName("CSV should have one row per email across keyset pages, skipping deleted contacts")
+    void shouldExportCsvAcrossPages() throws IOException {
+        seed();
+
+        String csv = export(ContactExportFormat.CSV, null);
+
+        assertEquals("""
+                contact_id,email,source_url,created_at\r
+                c1,a@a.example,https://a.example/contact,2026-01-02T03:04:05\r
+                c1,b@a.example,https://a.example/contact,2026-01-02T03:04:05\r
+                c2,info@b.example,"https://b.example/?q=1,2",2026-01-02T03:04:05\r
+                c4,x@d.example,https://d.example,2026-01-02T03:04:05\r
+                c4,y@d.example,https://d.example,2026-01-02T03:04:05\r
+                c4,z@d.example,https://d.example,2026-01-02T03:04:05\r
+                c5,,https://e.example,2026-01-02T03:04:05\r
+                c6,sales@f.example,https://f.example,2026-01-02T03:04:05\r
+                """, csv);
+    }
+
+    @Test
+    @DisplayName("NDJSON should have one object per contact and resume after a given id")
+    void shouldExportNdjsonAfterCursor() throws IOException {
+        seed();
+
+        String ndjson = export(ContactExportFormat.NDJSON, "c2");
+
+        String[] lines = ndjson.split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(ndjson.endsWith("\n"));
+        assertEquals("{\"id\":\"c4\",\"emails\":[\"x@d.example\",\"y@d.example\",\"z@d.example\"],"
+                + "\"sourceUrl\":\"https://d.example\",\"createdAt\":\"2026-01-02T03:04:05\"}", lines[0]);
+        assertTrue(lines[1].contains("\"emails\":[]"));
+        assertTrue(lines[2].startsWith("{\"id\":\"c6\""));
+        assertEquals("", export(ContactExportFormat.NDJSON, "c6"));
+    }
+
+    @Test
+    @DisplayName("XLSX should be a workbook archive with the rows in its sheet")
+    void shouldExportXlsxWorkbook() throws IOException {
+        contact("c1", false, "https://a.example/?a=1&b=<2>", "a@a.example");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.export(ContactExportFormat.XLSX, null, out);
+
+        Map<String, String> parts = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                parts.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertTrue(parts.keySet().containsAll(List.of("[Content_Types].xml", "_rels/.rels",
+                "xl/workbook.xml", "xl/_rels/workbook.xml.rels", "xl/worksheets/sheet1.xml")));
+        String sheet = parts.get("xl/worksheets/sheet1.xml");
+        assertTrue(sheet.contains("<t>contact_id</t>"));
+        assertTrue(sheet.contains("<t>https://a.example/?a=1&amp;b=&lt;2&gt;</t>"));
+        assertTrue(sheet.endsWith("</sheetData></worksheet>"));
+        assertTrue(parts.get("xl/workbook.xml").contains("<sheet name=\"Contacts\" sheetId=\"1\" r:id=\"rId1\"/>"));
+    }
+
+    @Test
+    @DisplayName("Unknown formats should be rejected")
+    void shouldRejectUnknownFormat() {
+        assertEquals(ContactExportFormat.NDJSON, ContactExportFormat.of(" ndjson "));
+        assertThrows(RequestValidationException.class, () -> ContactExportFormat.of("pdf"));
+    }
+}
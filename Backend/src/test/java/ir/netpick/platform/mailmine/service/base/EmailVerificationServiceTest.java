@@ -0,0 +1,244 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import ir.netpick.platform.core.lock.DistributedLockService;
+import ir.netpick.platform.mailmine.dto.EmailVerificationReport;
+import ir.netpick.platform.mailmine.model.Contact;
+import ir.netpick.platform.mailmine.model.EmailVerification;
+import ir.netpick.platform.mailmine.repository.ContactRepository;
+import ir.netpick.platform.mailmine.repository.EmailVerificationRepository;
+import ir.netpick.platform.mailmine.verify.MailboxVerifier;
+import ir.netpick.platform.mailmine.verify.VerificationResult;
+import ir.netpick.platform.mailmine.verify.VerificationStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailVerificationServiceTest {
+
+    @Mock
+    private MailboxVerifier mailboxVerifier;
+
+    @Mock
+    private ContactRepository contactRepository;
+
+    @Mock
+    private EmailVerificationRepository emailVerificationRepository;
+
+    @Mock
+    private DistributedLockService lockService;
+
+    private EmailVerificationService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new EmailVerificationService(mailboxVerifier, contactRepository, emailVerificationRepository,
+                lockService);
+        setField(service, "batchSize", 2000);
+        setField(service, "maxRequestAddresses", 500);
+        setField(service, "recheckAfterDays", 30L);
+        setField(service, "maxAttempts", 4);
+        setField(service, "retryDelayMinutes", 5L);
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Contact contact(String... emails) {
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID());
+        contact.setEmails(new HashSet<>(List.of(emails)));
+        return contact;
+    }
+
+    private static VerificationResult result(String email, VerificationStatus status, Integer code) {
+        return new VerificationResult(email, status, "mx.shop.ir", code, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<EmailVerification> savedRows() {
+        ArgumentCaptor<List<EmailVerification>> saved = ArgumentCaptor.forClass(List.class);
+        verify(emailVerificationRepository).saveAll(saved.capture());
+        return saved.getValue();
+    }
+
+    @Test
+    @DisplayName("Should store each address result and give every contact its best status")
+    void shouldStoreResultsAndSummarizeContacts() {
+        Contact mixed = contact("good@shop.ir", "bad@shop.ir");
+        Contact greylisted = contact("later@shop.ir");
+        when(contactRepository.findUnverified(any())).thenReturn(List.of(mixed, greylisted));
+        when(emailVerificationRepository.findDueEmails(any(), any())).thenReturn(List.of());
+        when(emailVerificationRepository.findByEmailIn(anyCollection())).thenReturn(List.of());
+        when(mailboxVerifier.verify(anyCollection())).thenReturn(List.of(
+                result("good@shop.ir", VerificationStatus.VALID, 250),
+                result("bad@shop.ir", VerificationStatus.INVALID, 550),
+                result("later@shop.ir", VerificationStatus.DEFERRED, 451)));
+
+        EmailVerificationReport report = service.verifyContacts(100);
+
+        assertEquals(2, report.contacts());
+        assertEquals(3, report.probed());
+        assertEquals(1L, report.statuses().get(VerificationStatus.DEFERRED));
+        verify(contactRepository).updateVerification(eq(List.of(mixed.getId())), eq(VerificationStatus.VALID), any());
+        verify(contactRepository).updateVerification(eq(List.of(greylisted.getId())),
+                eq(VerificationStatus.DEFERRED), any());
+
+        EmailVerification deferred = savedRows().stream()
+                .filter(row -> row.getEmail().equals("later@shop.ir")).findFirst().orElseThrow();
+        assertEquals(1, deferred.getAttempts());
+        assertEquals(451, deferred.getSmtpCode());
+        assertEquals(deferred.getCheckedAt().plusMinutes(5), deferred.getNextAttemptAt());
+    }
+
+    @Test
+    @DisplayName("Should retry due deferred addresses and give up after the last attempt")
+    void shouldGiveUpAfterLastAttempt() {
+        EmailVerification row = new EmailVerification("later@shop.ir");
+        row.setStatus(VerificationStatus.DEFERRED);
+        row.setAttempts(3);
+        row.setCheckedAt(LocalDateTime.now().minusHours(2));
+        row.setNextAttemptAt(LocalDateTime.now().minusMinutes(1));
+        Contact contact = contact("later@shop.ir");
+        when(contactRepository.findUnverified(any())).thenReturn(List.of());
+        when(emailVerificationRepository.findDueEmails(any(), any())).thenReturn(List.of("later@shop.ir"));
+        when(contactRepository.findByEmailIn(List.of("later@shop.ir"))).thenReturn(List.of(contact));
+        when(emailVerificationRepository.findByEmailIn(anyCollection())).thenReturn(List.of(row));
+        when(mailboxVerifier.verify(List.of("later@shop.ir")))
+                .thenReturn(List.of(result("later@shop.ir", VerificationStatus.DEFERRED, 451)));
+
+        service.verifyContacts(100);
+
+        assertEquals(VerificationStatus.UNKNOWN, row.getStatus());
+        assertEquals(4, row.getAttempts());
+        assertNull(row.getNextAttemptAt());
+        verify(contactRepository).updateVerification(eq(List.of(contact.getId())), eq(VerificationStatus.UNKNOWN),
+                any());
+    }
+
+    @Test
+    @DisplayName("Should reuse recent results instead of probing again")
+    void shouldReuseFreshResults() {
+        EmailVerification row = new EmailVerification("good@shop.ir");
+        row.setStatus(VerificationStatus.VALID);
+        row.setAttempts(1);
+        row.setCheckedAt(LocalDateTime.now().minusDays(1));
+        Contact contact = contact("good@shop.ir");
+        when(contactRepository.findUnverified(any())).thenReturn(List.of(contact));
+        when(emailVerificationRepository.findDueEmails(any(), any())).thenReturn(List.of());
+        when(emailVerificationRepository.findByEmailIn(anyCollection())).thenReturn(List.of(row));
+
+        EmailVerificationReport report = service.verifyContacts(100);
+
+        assertEquals(0, report.probed());
+        verifyNoInteractions(mailboxVerifier);
+        verify(contactRepository).updateVerification(eq(List.of(contact.getId())), eq(VerificationStatus.VALID),
+                any());
+    }
+
+    @Test
+    @DisplayName("A contact whose addresses get no result should be marked UNKNOWN, not picked up again")
+    void shouldSettleContactsWithoutResults() {
+        Contact tooLong = contact("x".repeat(320) + "@shop.ir");
+        when(contactRepository.findUnverified(any())).thenReturn(List.of(tooLong));
+        when(emailVerificationRepository.findDueEmails(any(), any())).thenReturn(List.of());
+        when(emailVerificationRepository.findByEmailIn(anyCollection())).thenReturn(List.of());
+        when(mailboxVerifier.verify(anyCollection())).thenReturn(List.of(
+                result("x".repeat(320) + "@shop.ir", VerificationStatus.INVALID, null)));
+
+        service.verifyContacts(100);
+
+        verify(contactRepository).updateVerification(eq(List.of(tooLong.getId())), eq(VerificationStatus.UNKNOWN),
+                any());
+    }
+
+    @Test
+    @DisplayName("A conflict should only cost the rows it hit, and contacts without stored rows should stay unverified")
+    void shouldStoreRowByRowAfterConflict() {
+        Contact stored = contact("good@shop.ir");
+        Contact lost = contact("lost@shop.ir");
+        when(contactRepository.findUnverified(any())).thenReturn(List.of(stored, lost));
+        when(emailVerificationRepository.findDueEmails(any(), any())).thenReturn(List.of());
+        when(emailVerificationRepository.findByEmailIn(anyCollection())).thenReturn(List.of());
+        when(mailboxVerifier.verify(anyCollection())).thenReturn(List.of(
+                result("good@shop.ir", VerificationStatus.VALID, 250),
+                result("lost@shop.ir", VerificationStatus.INVALID, 550)));
+        when(emailVerificationRepository.saveAll(anyList()))
+                .thenThrow(new DataIntegrityViolationException("duplicate"));
+        when(emailVerificationRepository.save(any())).thenAnswer(call -> {
+            EmailVerification row = call.getArgument(0);
+            if (row.getEmail().equals("lost@shop.ir")) {
+                throw new DataIntegrityViolationException("duplicate");
+            }
+            return row;
+        });
+
+        EmailVerificationReport report = service.verifyContacts(100);
+
+        verify(emailVerificationRepository, times(2)).save(any());
+        verify(contactRepository).updateVerification(eq(List.of(stored.getId())), eq(VerificationStatus.VALID),
+                any());
+        verify(contactRepository, never()).updateVerification(eq(List.of(lost.getId())), any(), any());
+        assertEquals(1, report.contacts());
+    }
+
+    @Test
+    @DisplayName("Should store addresses lower-cased and match them to contacts whatever their case")
+    void shouldStoreLowerCasedAddresses() {
+        Contact contact = contact("Sales@Shop.ir");
+        when(contactRepository.findUnverified(any())).thenReturn(List.of(contact));
+        when(emailVerificationRepository.findDueEmails(any(), any())).thenReturn(List.of());
+        when(emailVerificationRepository.findByEmailIn(anyCollection())).thenReturn(List.of());
+        when(mailboxVerifier.verify(List.of("sales@shop.ir")))
+                .thenReturn(List.of(result("sales@shop.ir", VerificationStatus.INVALID, 550)));
+
+        service.verifyContacts(100);
+
+        assertEquals(List.of("sales@shop.ir"), savedRows().stream().map(EmailVerification::getEmail).toList());
+        verify(contactRepository).updateVerification(eq(List.of(contact.getId())), eq(VerificationStatus.INVALID),
+                any());
+    }
+
+    @Test
+    @DisplayName("The scheduled batch should run off the scheduler thread, one at a time")
+    void shouldRunScheduledBatchOnItsOwnThread() throws Exception {
+        setField(service, "scheduleEnabled", true);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        when(lockService.tryAcquire(eq("email-verification"), any())).thenAnswer(call -> {
+            threads.add(Thread.currentThread().getName());
+            release.await();
+            return Optional.empty();
+        });
+
+        service.verifyPending();
+        // Still running; the next tick must not queue a second batch
+        service.verifyPending();
+        verify(lockService, timeout(1000)).tryAcquire(eq("email-verification"), any());
+        release.countDown();
+        service.shutdown();
+
+        assertEquals(List.of("email-verification"), threads);
+        assertNotEquals("email-verification", Thread.currentThread().getName());
+    }
+}
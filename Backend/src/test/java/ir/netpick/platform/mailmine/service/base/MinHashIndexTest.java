@@ -0,0 +1,67 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinHashIndexTest {
+
+    private static String normalize(String text) {
+        return SearchQueryDeduplicator.canonical(text);
+    }
+
+    @Test
+    @DisplayName("Reordered and re-punctuated queries should be near-duplicates")
+    void shouldFindParaphrase() {
+        MinHashIndex index = new MinHashIndex(20, 5);
+        index.add(normalize("dental clinics in Tehran contact email"));
+
+        assertTrue(index.maxSimilarity(normalize("Contact email: dental clinics in Tehran")) >= 0.99);
+        assertTrue(index.maxSimilarity(normalize("dental clinic in Tehran contact emails")) >= 0.7);
+    }
+
+    @Test
+    @DisplayName("Unrelated queries should not be candidates")
+    void shouldIgnoreUnrelatedQuery() {
+        MinHashIndex index = new MinHashIndex(20, 5);
+        index.add(normalize("dental clinics in Tehran contact email"));
+        index.add(normalize("software companies Shiraz about us"));
+
+        assertTrue(index.maxSimilarity(normalize("wholesale textile suppliers Isfahan phone")) < 0.7);
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    @DisplayName("Pairs at the duplicate cut-off should nearly always be found as candidates")
+    void shouldFindPairsAtTheCutOff() {
+        Random random = new Random(42);
+        String[] words = { "dental", "clinic", "tehran", "contact", "email", "shiraz", "software", "company",
+                "wholesale", "textile", "supplier", "isfahan", "phone", "about", "office", "lawyer", "hotel",
+                "mashhad", "school", "doctor" };
+        int nearDuplicates = 0;
+        int found = 0;
+        for (int i = 0; i < 500; i++) {
+            String[] sentence = random.ints(6, 0, words.length).mapToObj(w -> words[w]).toArray(String[]::new);
+            String original = String.join(" ", sentence);
+            sentence[random.nextInt(sentence.length)] = words[random.nextInt(words.length)] + "s";
+            String variant = String.join(" ", sentence);
+
+            MinHashIndex index = new MinHashIndex(20, 5);
+            index.add(original);
+            // Full-signature estimate, independent of banding
+            double similarity = MinHashIndex.similarity(index.signature(original), index.signature(variant));
+            if (similarity >= 0.7 && similarity < 0.8) {
+                nearDuplicates++;
+                if (index.maxSimilarity(variant) > 0) {
+                    found++;
+                }
+            }
+        }
+
+        assertTrue(nearDuplicates > 20, "too few pairs near the cut-off: " + nearDuplicates);
+        assertTrue(found >= 0.9 * nearDuplicates, found + " of " + nearDuplicates + " found");
+    }
+}
@@ -0,0 +1,152 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import ir.netpick.platform.mailmine.model.ScrapeJob;
+import ir.netpick.platform.mailmine.repository.ContactRepository;
+import ir.netpick.platform.mailmine.repository.ScrapeJobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ScrapeJobPriorityServiceTest {
+
+    @Mock
+    private ScrapeJobRepository scrapeJobRepository;
+
+    @Mock
+    private ContactRepository contactRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ScrapeJobPriorityService priorityService;
+
+    @BeforeEach
+    void setUp() {
+        priorityService = new ScrapeJobPriorityService(scrapeJobRepository, contactRepository,
+                new TransactionTemplate(transactionManager));
+        setField(priorityService, "baselineYield", 0.2);
+        setField(priorityService, "priorWeight", 3.0);
+        setField(priorityService, "domainWeight", 1.0);
+        setField(priorityService, "queryWeight", 0.5);
+        setField(priorityService, "tldBoost", 0.1);
+        setField(priorityService, "pathBoost", 0.3);
+        setField(priorityService, "textBoost", 0.2);
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Nested
+    @DisplayName("assignPriorities Tests")
+    class AssignPrioritiesTests {
+        @Test
+        @DisplayName("Should rank jobs from high-yield domains first")
+        void shouldRankHighYieldDomainFirst() {
+            ScrapeJob rich = new ScrapeJob("https://www.rich.com/products");
+            ScrapeJob poor = new ScrapeJob("https://poor.com/products");
+            when(scrapeJobRepository.countScrapedByDomain(anyCollection()))
+                    .thenReturn(List.of(new Object[] { "rich.com", 10L }, new Object[] { "poor.com", 10L }));
+            when(contactRepository.countByScrapeJobDomain(anyCollection()))
+                    .thenReturn(List.<Object[]>of(new Object[] { "rich.com", 9L }));
+
+            priorityService.assignPriorities(List.of(rich, poor));
+
+            assertEquals("rich.com", rich.getDomain());
+            assertTrue(rich.getPriority() > poor.getPriority());
+        }
+
+        @Test
+        @DisplayName("Should boost contact pages on hinted TLDs")
+        void shouldBoostPathAndTldHints() {
+            ScrapeJob hinted = new ScrapeJob("https://shop.example.ir/contact-us");
+            ScrapeJob plain = new ScrapeJob("https://shop.example.com/blog/post");
+            when(scrapeJobRepository.countScrapedByDomain(anyCollection())).thenReturn(List.of());
+            when(contactRepository.countByScrapeJobDomain(anyCollection())).thenReturn(List.of());
+
+            priorityService.assignPriorities(List.of(hinted, plain));
+
+            assertEquals(0.4, hinted.getPriority() - plain.getPriority(), 1e-9);
+        }
+    }
+
+    @Nested
+    @DisplayName("Search result hints")
+    class SearchResultHintTests {
+        @Test
+        @DisplayName("Should boost results whose title or snippet mentions contact details")
+        void shouldBoostContactHintsInResult() {
+            ScrapeJob titled = new ScrapeJob("https://a.example.com/p/1", "تماس با ما - شرکت نمونه");
+            ScrapeJob snippeted = new ScrapeJob("https://b.example.com/p/2", "Products");
+            snippeted.setSnippet("Write to sales@b.example.com for a quote");
+            ScrapeJob plain = new ScrapeJob("https://c.example.com/p/3", "Products");
+            plain.setSnippet("Industrial pumps and valves");
+            when(scrapeJobRepository.countScrapedByDomain(anyCollection())).thenReturn(List.of());
+            when(contactRepository.countByScrapeJobDomain(anyCollection())).thenReturn(List.of());
+
+            priorityService.assignPriorities(List.of(titled, snippeted, plain));
+
+            assertEquals(0.2, titled.getPriority() - plain.getPriority(), 1e-9);
+            assertEquals(0.2, snippeted.getPriority() - plain.getPriority(), 1e-9);
+        }
+    }
+
+    @Nested
+    @DisplayName("rescorePendingJobs Tests")
+    class RescoreTests {
+        @Test
+        @DisplayName("Should page pending jobs by id and write only their scores")
+        void shouldWriteOnlyScores() {
+            ScrapeJob first = new ScrapeJob("https://a.example.com/contact");
+            first.setId(UUID.fromString("00000000-0000-0000-0000-000000000001"));
+            ScrapeJob second = new ScrapeJob("https://b.example.com/blog");
+            second.setId(UUID.fromString("00000000-0000-0000-0000-000000000002"));
+            when(scrapeJobRepository.findPendingJobsAfter(anyInt(), eq(new UUID(0, 0)), any()))
+                    .thenReturn(List.of(first, second));
+            when(scrapeJobRepository.findPendingJobsAfter(anyInt(), eq(second.getId()), any())).thenReturn(List.of());
+            when(scrapeJobRepository.countScrapedByDomain(anyCollection())).thenReturn(List.of());
+            when(contactRepository.countByScrapeJobDomain(anyCollection())).thenReturn(List.of());
+            // The second job was scraped meanwhile and is left alone
+            when(scrapeJobRepository.updatePendingPriority(eq(first.getId()), anyDouble(), eq("a.example.com")))
+                    .thenReturn(1);
+
+            priorityService.rescorePendingJobs();
+
+            verify(scrapeJobRepository).updatePendingPriority(first.getId(), first.getPriority(), "a.example.com");
+            verify(scrapeJobRepository).updatePendingPriority(second.getId(), second.getPriority(), "b.example.com");
+            verify(scrapeJobRepository, never()).saveAll(any());
+            verify(transactionManager).commit(any());
+        }
+    }
+
+    @Nested
+    @DisplayName("extractDomain Tests")
+    class ExtractDomainTests {
+        @Test
+        @DisplayName("Should strip www and lower-case the host")
+        void shouldNormalizeHost() {
+            assertEquals("example.com", ScrapeJobPriorityService.extractDomain("https://WWW.Example.com/a"));
+            assertNull(ScrapeJobPriorityService.extractDomain("not a url"));
+        }
+    }
+}
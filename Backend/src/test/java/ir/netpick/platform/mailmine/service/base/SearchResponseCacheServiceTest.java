@@ -0,0 +1,59 @@
+package ir.netpick.platform.mailmine.service.base;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResponseCacheServiceTest {
+
+    @Test
+    @DisplayName("normalize should ignore case and spacing only")
+    void normalizeNearlyIdenticalQueries() {
+        String a = SearchResponseCacheService.normalize("Shoe shop  Tehran, contact");
+        String b = SearchResponseCacheService.normalize(" shoe SHOP tehran,\tcontact ");
+
+        assertEquals(a, b);
+        assertEquals("shoe shop tehran, contact", a);
+    }
+
+    @Test
+    @DisplayName("normalize should keep search operators, punctuation and word order")
+    void normalizeKeepsOperators() {
+        assertNotEquals(SearchResponseCacheService.normalize("dentist -tehran"),
+                SearchResponseCacheService.normalize("dentist tehran"));
+        assertNotEquals(SearchResponseCacheService.normalize("\"dental clinic\" email"),
+                SearchResponseCacheService.normalize("dental clinic email"));
+        assertNotEquals(SearchResponseCacheService.normalize("site:example.ir contact"),
+                SearchResponseCacheService.normalize("site example ir contact"));
+        assertNotEquals(SearchResponseCacheService.normalize("shop tehran"),
+                SearchResponseCacheService.normalize("tehran shop"));
+        assertEquals("clinic OR dentist", SearchResponseCacheService.normalize("Clinic OR Dentist"));
+        assertEquals("clinic or dentist", SearchResponseCacheService.normalize("Clinic Or Dentist"));
+    }
+
+    @Test
+    @DisplayName("cache keys should differ by search engine and page size")
+    void cacheKeyScopedToEngineAndPageSize() {
+        String key = SearchResponseCacheService.cacheKey("shoe shop", "cx-1", 10, 1);
+
+        assertEquals(key, SearchResponseCacheService.cacheKey("shoe shop", "cx-1", 10, 1));
+        assertNotEquals(key, SearchResponseCacheService.cacheKey("shoe shop", "cx-2", 10, 1));
+        assertNotEquals(key, SearchResponseCacheService.cacheKey("shoe shop", "cx-1", 5, 1));
+        assertNotEquals(key, SearchResponseCacheService.cacheKey("shoe shop", "cx-1", 10, 11));
+    }
+
+    @Test
+    @DisplayName("normalize should unify Arabic and Persian letter variants")
+    void normalizeArabicPersianVariants() {
+        assertEquals(SearchResponseCacheService.normalize("کیف"),
+                SearchResponseCacheService.normalize("كيف"));
+    }
+
+    @Test
+    @DisplayName("normalize should handle null and blank input")
+    void normalizeBlank() {
+        assertEquals("", SearchResponseCacheService.normalize(null));
+        assertEquals("", SearchResponseCacheService.normalize("   "));
+    }
+}
@@ -0,0 +1,251 @@
+package ir.netpick.platform.mailmine.service.mid;
+
+import ir.netpick.platform.mailmine.metrics.ScrapeMetrics;
+import ir.netpick.platform.mailmine.model.ApiKey;
+import ir.netpick.platform.mailmine.model.LinkResult;
+import ir.netpick.platform.mailmine.model.ScrapeJob;
+import ir.netpick.platform.mailmine.model.SearchQuery;
+import ir.netpick.platform.mailmine.parser.MalformedResponseException;
+import ir.netpick.platform.mailmine.repository.ApiKeyRepository;
+import ir.netpick.platform.mailmine.repository.SearchQueryRepository;
+import ir.netpick.platform.mailmine.service.base.ApiKeyQuotaService;
+import ir.netpick.platform.mailmine.service.base.ScrapeJobService;
+import ir.netpick.platform.mailmine.service.base.SearchResponseCacheService;
+import ir.netpick.platform.mailmine.service.orch.PipelineControlService;
+import ir.netpick.platform.mailmine.service.orch.PipelineProgressTracker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ApiCallerTest {
+
+    @Mock
+    private ApiKeyRepository apiKeyRepository;
+    @Mock
+    private ScrapeJobService scrapeJobService;
+    @Mock
+    private SearchQueryRepository searchQueryRepository;
+    @Mock
+    private PipelineControlService pipelineControlService;
+    @Mock
+    private PipelineProgressTracker progressTracker;
+    @Mock
+    private SearchApiDispatcher searchApiDispatcher;
+    @Mock
+    private SearchResponseCacheService searchResponseCacheService;
+    @Mock
+    private ApiKeyQuotaService apiKeyQuotaService;
+    @Mock
+    private ScrapeMetrics scrapeMetrics;
+
+    private RecordingTransactionManager transactions;
+    private ApiCaller apiCaller;
+    private List<SearchQuery> queries;
+
+    // Resume point of every query as committed to the "database"
+    private final Map<UUID, Optional<LocalDateTime>> searched = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        transactions = new RecordingTransactionManager();
+        apiCaller = new ApiCaller(apiKeyRepository, scrapeJobService, searchQueryRepository, pipelineControlService,
+                progressTracker, searchApiDispatcher, searchResponseCacheService, apiKeyQuotaService,
+                new TransactionTemplate(transactions), scrapeMetrics);
+        setField(apiCaller, "maxPages", 1);
+        setField(apiCaller, "concurrency", 1);
+        setField(apiCaller, "commitEvery", 3);
+
+        queries = IntStream.range(0, 8).mapToObj(i -> {
+            SearchQuery query = new SearchQuery("query " + i);
+            query.setId(UUID.randomUUID());
+            return query;
+        }).toList();
+
+        List<ApiKey> keys = List.of(new ApiKey());
+        when(apiKeyRepository.findAll()).thenReturn(keys);
+        when(apiKeyQuotaService.usableKeys(keys)).thenReturn(keys);
+        when(apiKeyQuotaService.runBudget(keys)).thenReturn(1000);
+        when(searchQueryRepository.findPendingSearch(anyInt())).thenReturn(queries);
+        when(searchResponseCacheService.get(anyString(), any(), anyInt(), anyInt())).thenReturn(Optional.empty());
+        lenient().when(pipelineControlService.checkAndWait()).thenReturn(true);
+        lenient().when(searchApiDispatcher.fetchPage(anyString(), anyInt()))
+                .thenAnswer(call -> Mono.just(List.of(link("https://" + call.getArgument(0, String.class)
+                        .replace(' ', '-') + ".ir"))));
+        lenient().when(scrapeJobService.createJobs(anyList(), any()))
+                .thenAnswer(call -> call.getArgument(0, List.class).stream().map(url -> {
+                    ScrapeJob job = new ScrapeJob();
+                    job.setId(UUID.randomUUID());
+                    return job;
+                }).toList());
+        // Writes only become visible when their transaction commits
+        lenient().when(searchQueryRepository.markSearched(any(), anyInt(), any())).thenAnswer(call -> {
+            UUID id = call.getArgument(0);
+            LocalDateTime searchedAt = call.getArgument(2);
+            transactions.staged.add(() -> searched.put(id, Optional.ofNullable(searchedAt)));
+            return 1;
+        });
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static LinkResult link(String url) {
+        LinkResult link = new LinkResult();
+        link.setLink(url);
+        link.setTitle(url);
+        return link;
+    }
+
+    private boolean committed(int query) {
+        Optional<LocalDateTime> resumePoint = searched.get(queries.get(query).getId());
+        return resumePoint != null && resumePoint.isPresent();
+    }
+
+    @Test
+    @DisplayName("Should commit every few queries in its own transaction")
+    void shouldCommitPerChunk() {
+        apiCaller.callGoogleSearch();
+
+        // 8 queries in chunks of 3
+        assertEquals(3, transactions.commits.get());
+        assertEquals(0, transactions.rollbacks.get());
+        IntStream.range(0, 8).forEach(i -> assertTrue(committed(i), "query " + i));
+        verify(searchQueryRepository).findPendingSearch(anyInt());
+    }
+
+    @Test
+    @DisplayName("A stopped run should keep the queries it committed and leave the rest for the next run")
+    void shouldResumeAfterStop() throws InterruptedException {
+        AtomicInteger checks = new AtomicInteger();
+        when(pipelineControlService.checkAndWait()).thenAnswer(call -> checks.incrementAndGet() <= 4);
+
+        apiCaller.callGoogleSearch();
+
+        // The first chunk, then what was taken when the stop came
+        assertEquals(2, transactions.commits.get());
+        IntStream.range(0, 4).forEach(i -> assertTrue(committed(i), "query " + i));
+        IntStream.range(4, 8).forEach(i -> assertFalse(searched.containsKey(queries.get(i).getId()), "query " + i));
+    }
+
+    @Test
+    @DisplayName("A query with a failed page should be stored without a resume point")
+    void shouldNotResumePastFailedPages() {
+        when(searchApiDispatcher.fetchPage(eq("query 1"), anyInt()))
+                .thenReturn(Mono.error(new IllegalStateException("boom")));
+
+        apiCaller.callGoogleSearch();
+
+        assertEquals(Optional.empty(), searched.get(queries.get(1).getId()));
+        assertTrue(committed(0));
+        assertTrue(committed(2));
+    }
+
+    @Test
+    @DisplayName("Should fetch further pages only when the first page was full")
+    void shouldFetchFurtherPagesOnlyAfterFullFirstPage() {
+        setField(apiCaller, "maxPages", 3);
+        when(searchApiDispatcher.resultsPerPage()).thenReturn(2);
+        when(searchApiDispatcher.fetchPage(eq("query 1"), anyInt()))
+                .thenAnswer(call -> Mono.just(List.of(link("https://a-" + call.getArgument(1) + ".ir"),
+                        link("https://b-" + call.getArgument(1) + ".ir"))));
+
+        apiCaller.callGoogleSearch();
+
+        verify(searchApiDispatcher, times(3)).fetchPage(eq("query 1"), anyInt());
+        verify(searchApiDispatcher).fetchPage("query 0", 0);
+        verify(searchApiDispatcher, never()).fetchPage("query 0", 1);
+        verify(searchApiDispatcher, never()).fetchPage("query 0", 2);
+        assertTrue(committed(0));
+    }
+
+    @Test
+    @DisplayName("A malformed response should fail its page and stay out of the cache")
+    void shouldNotCacheMalformedResponse() {
+        when(searchApiDispatcher.fetchPage(eq("query 1"), anyInt()))
+                .thenReturn(Mono.error(new MalformedResponseException("Google API response ended after 4 items")));
+
+        apiCaller.callGoogleSearch();
+
+        assertEquals(Optional.empty(), searched.get(queries.get(1).getId()));
+        verify(searchResponseCacheService, never()).put(eq("query 1"), any(), anyInt(), anyInt(), anyString());
+        verify(searchResponseCacheService).put(eq("query 2"), any(), anyInt(), anyInt(), anyString());
+    }
+
+    @Test
+    @DisplayName("A failure part-way through a chunk should roll back only that chunk")
+    void shouldRollBackFailingChunk() {
+        when(scrapeJobService.createJobs(anyList(), any())).thenAnswer(call -> {
+            if (call.getArgument(1, SearchQuery.class) == queries.get(4)) {
+                throw new IllegalStateException("Database went away");
+            }
+            return List.of();
+        });
+
+        assertThrows(IllegalStateException.class, () -> apiCaller.callGoogleSearch());
+
+        // The first chunk stays; the second (queries 3-5) is rolled back once and not retried
+        assertEquals(1, transactions.commits.get());
+        assertEquals(1, transactions.rollbacks.get());
+        IntStream.range(0, 3).forEach(i -> assertTrue(committed(i), "query " + i));
+        IntStream.range(3, 8).forEach(i -> assertFalse(searched.containsKey(queries.get(i).getId()), "query " + i));
+    }
+
+    /**
+     * Applies the writes staged in a transaction on commit and drops them on rollback
+     */
+    private static class RecordingTransactionManager extends AbstractPlatformTransactionManager {
+
+        final List<Runnable> staged = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger commits = new AtomicInteger();
+        final AtomicInteger rollbacks = new AtomicInteger();
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            staged.clear();
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            commits.incrementAndGet();
+            staged.forEach(Runnable::run);
+            staged.clear();
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            rollbacks.incrementAndGet();
+            staged.clear();
+        }
+    }
+}
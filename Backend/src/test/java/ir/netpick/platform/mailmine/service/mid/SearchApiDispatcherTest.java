@@ -0,0 +1,116 @@
+package ir.netpick.platform.mailmine.service.mid;
+
+import com.sun.net.httpserver.HttpServer;
+import ir.netpick.platform.mailmine.model.ApiKey;
+import ir.netpick.platform.mailmine.model.LinkResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import reactor.core.publisher.Flux;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchApiDispatcherTest {
+
+    private HttpServer fakeCse;
+    private final Queue<String> requestedKeys = new ConcurrentLinkedQueue<>();
+    private SearchApiDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fakeCse = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        fakeCse.createContext("/customsearch/v1", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            String key = query.replaceAll(".*key=([^&]+).*", "$1");
+            requestedKeys.add(key);
+            byte[] body;
+            int status;
+            if (key.equals("exhausted")) {
+                status = 429;
+                body = "{}".getBytes(StandardCharsets.UTF_8);
+            } else {
+                status = 200;
+                String start = query.replaceAll(".*start=([0-9]+).*", "$1");
+                body = ("{\"items\":[{\"link\":\"https://example.com/" + start + "\"}]}")
+                        .getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        fakeCse.start();
+
+        dispatcher = new SearchApiDispatcher();
+        setField(dispatcher, "endpoint", "http://127.0.0.1:" + fakeCse.getAddress().getPort() + "/customsearch/v1");
+        setField(dispatcher, "resultsPerPage", 10);
+        setField(dispatcher, "perKeyQps", 100.0);
+        setField(dispatcher, "perKeyBurst", 10);
+        setField(dispatcher, "timeoutMs", 5000L);
+        setField(dispatcher, "maxRetriesPerPage", 3);
+        setField(dispatcher, "initialBackoffMs", 10L);
+        setField(dispatcher, "backoffMultiplier", 2.0);
+        setField(dispatcher, "maxBackoffMs", 50L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fakeCse.stop(0);
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ApiKey key(String value) {
+        ApiKey key = new ApiKey(value, 100, "unused", "engine");
+        key.setId(UUID.randomUUID());
+        return key;
+    }
+
+    @Test
+    @DisplayName("Should fetch all pages of a query in parallel from the configured endpoint")
+    void shouldFetchPagesFromConfiguredEndpoint() {
+        dispatcher.registerKeys(List.of(key("alpha"), key("beta")));
+
+        List<List<LinkResult>> pages = Flux.range(0, 3)
+                .flatMap(page -> dispatcher.fetchPage("shoe shop tehran", page))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertNotNull(pages);
+        assertEquals(3, pages.size());
+        assertTrue(pages.stream().flatMap(List::stream)
+                .anyMatch(link -> link.getLink().equals("https://example.com/21")));
+        assertTrue(requestedKeys.contains("alpha"));
+        assertTrue(requestedKeys.contains("beta"));
+    }
+
+    @Test
+    @DisplayName("Should retry a rate-limited request on another key")
+    void shouldRetryRateLimitedRequestOnAnotherKey() {
+        dispatcher.registerKeys(List.of(key("exhausted"), key("healthy")));
+
+        for (int i = 0; i < 4; i++) {
+            List<LinkResult> links = dispatcher.fetchPage("query " + i, 0).block(Duration.ofSeconds(10));
+            assertNotNull(links);
+            assertEquals("https://example.com/1", links.get(0).getLink());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.core.enums.PipelineStateEnum;
+import ir.netpick.platform.mailmine.model.Pipeline;
+import ir.netpick.platform.mailmine.service.base.PipelineService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PipelineControlServiceTest {
+
+    @Mock
+    private PipelineService pipelineService;
+
+    private void setField(Object target, String fieldName, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private Pipeline pipeline(UUID id) {
+        Pipeline pipeline = new Pipeline(PipelineStageEnum.SCRAPER_STARTED, PipelineStateEnum.RUNNING, LocalDateTime.now());
+        pipeline.setId(id);
+        when(pipelineService.getPipeline(id)).thenReturn(pipeline);
+        return pipeline;
+    }
+
+    @Test
+    @DisplayName("A paused stage should wake up as soon as its pipeline is resumed")
+    void shouldWakeWaiterOnResume() throws Exception {
+        PipelineControlService control = new PipelineControlService(pipelineService, new LocalPipelineControlPlane());
+        UUID id = UUID.randomUUID();
+        pipeline(id);
+        control.registerPipeline(id);
+        control.pausePipeline(id);
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            control.bindCurrentThread(id);
+            try {
+                return control.checkAndWait();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                control.unbindCurrentThread();
+            }
+        });
+
+        Thread.sleep(100);
+        assertFalse(waiter.isDone(), "stage should wait while paused");
+        control.resumePipeline(id);
+        assertTrue(waiter.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Pausing one pipeline should not stop another")
+    void shouldIsolatePipelines() throws Exception {
+        PipelineControlService control = new PipelineControlService(pipelineService, new LocalPipelineControlPlane());
+        UUID backfill = UUID.randomUUID();
+        UUID priority = UUID.randomUUID();
+        pipeline(backfill);
+        control.registerPipeline(backfill, new PipelineQuota(4, 0));
+        control.registerPipeline(priority, new PipelineQuota(1, 0));
+        control.pausePipeline(backfill);
+
+        control.bindCurrentThread(priority);
+        try {
+            assertFalse(control.shouldStop());
+            assertEquals(1, control.currentQuota().lanes());
+        } finally {
+            control.unbindCurrentThread();
+        }
+        assertEquals(List.of(backfill, priority), control.getActivePipelineIds());
+    }
+
+    @Test
+    @DisplayName("Proxy leases should prefer proxies no other pipeline holds")
+    void shouldLeaseDistinctProxies() {
+        PipelineControlService control = new PipelineControlService(pipelineService, new LocalPipelineControlPlane());
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        control.registerPipeline(first, new PipelineQuota(1, 2));
+        control.registerPipeline(second, new PipelineQuota(1, 2));
+        List<UUID> proxies = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+        control.bindCurrentThread(first);
+        List<UUID> firstLease = control.leaseProxies(proxies);
+        control.bindCurrentThread(second);
+        List<UUID> secondLease = control.leaseProxies(proxies);
+        control.unbindCurrentThread();
+
+        assertEquals(proxies.subList(0, 2), firstLease);
+        assertEquals(proxies.subList(2, 4), secondLease);
+    }
+
+    @Test
+    @DisplayName("Pausing on one instance should pause the pipeline's stages on another")
+    @SuppressWarnings("unchecked")
+    void shouldApplyRemoteStateChanges() throws Exception {
+        PipelineControlPlane plane = mock(PipelineControlPlane.class);
+        PipelineControlService control = new PipelineControlService(pipelineService, plane);
+        control.listenForRemoteChanges();
+        ArgumentCaptor<BiConsumer<UUID, PipelineStateEnum>> listener = ArgumentCaptor.forClass(BiConsumer.class);
+        verify(plane).onRemoteState(listener.capture());
+
+        UUID id = UUID.randomUUID();
+        pipeline(id);
+        control.registerPipeline(id);
+        control.pausePipeline(id);
+        verify(plane).publishState(id, PipelineStateEnum.PAUSED);
+
+        // Another instance resumes it
+        listener.getValue().accept(id, PipelineStateEnum.RUNNING);
+        assertEquals(PipelineStateEnum.RUNNING, control.getState(id));
+
+        // And cancels it; the waiting stage here stops at once
+        listener.getValue().accept(id, PipelineStateEnum.CANCELLED);
+        control.bindCurrentThread(id);
+        try {
+            assertFalse(control.checkAndWait());
+        } finally {
+            control.unbindCurrentThread();
+        }
+    }
+
+    @Test
+    @DisplayName("Joining a pipeline should take over its shared state")
+    void shouldTakeOverSharedStateOnJoin() {
+        PipelineControlPlane plane = mock(PipelineControlPlane.class);
+        PipelineControlService control = new PipelineControlService(pipelineService, plane);
+        UUID id = UUID.randomUUID();
+        when(plane.sharedState(id)).thenReturn(Optional.of(PipelineStateEnum.PAUSED));
+
+        control.joinPipeline(id, PipelineQuota.DEFAULT);
+
+        assertTrue(control.isPaused(id));
+        verify(plane).heartbeat(id);
+    }
+
+    @Test
+    @DisplayName("Joining a pipeline running on this instance should be refused and leave the owner's state alone")
+    void shouldRefuseJoiningLocalPipeline() {
+        PipelineControlPlane plane = mock(PipelineControlPlane.class);
+        PipelineControlService control = new PipelineControlService(pipelineService, plane);
+        UUID id = UUID.randomUUID();
+        control.registerPipeline(id, new PipelineQuota(4, 0));
+
+        assertThrows(IllegalStateException.class, () -> control.joinPipeline(id, PipelineQuota.DEFAULT));
+
+        assertTrue(control.isRegistered(id));
+        assertEquals(PipelineStateEnum.RUNNING, control.getState(id));
+        assertEquals(4, control.getQuota(id).orElseThrow().lanes());
+        verify(plane, never()).leave(id);
+    }
+
+    @Test
+    @DisplayName("Heartbeats should go on while a long job holds the scheduler thread")
+    void shouldHeartbeatWhileSchedulerIsBlocked() throws Exception {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.initialize();
+        CountDownLatch release = new CountDownLatch(1);
+        PipelineControlPlane plane = mock(PipelineControlPlane.class);
+        PipelineControlService control = new PipelineControlService(pipelineService, plane);
+        setField(control, "heartbeatMs", 20L);
+        try {
+            scheduler.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            UUID id = UUID.randomUUID();
+            control.registerPipeline(id);
+            control.startHeartbeat();
+
+            // One heartbeat on registration, the rest from the heartbeat thread
+            verify(plane, timeout(1000).atLeast(3)).heartbeat(id);
+        } finally {
+            control.stopHeartbeat();
+            release.countDown();
+            scheduler.shutdown();
+        }
+    }
+}
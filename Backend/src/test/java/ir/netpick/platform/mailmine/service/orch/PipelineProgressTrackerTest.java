@@ -0,0 +1,250 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.core.enums.PipelineStateEnum;
+import ir.netpick.platform.mailmine.dto.PipelineProgressEvent;
+import ir.netpick.platform.mailmine.dto.StageProgress;
+import ir.netpick.platform.mailmine.model.Pipeline;
+import ir.netpick.platform.mailmine.service.base.PipelineService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PipelineProgressTrackerTest {
+
+    @Mock
+    private PipelineService pipelineService;
+
+    private PipelineControlService control;
+    private PipelineProgressTracker tracker;
+    private Pipeline pipeline;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        control = new PipelineControlService(pipelineService, new LocalPipelineControlPlane());
+        tracker = new PipelineProgressTracker(pipelineService, control, new ObjectMapper(), new LocalPipelineControlPlane());
+        setField(tracker, "persistEveryMs", 0L);
+
+        pipeline = new Pipeline(PipelineStageEnum.SCRAPER_STARTED, PipelineStateEnum.RUNNING, LocalDateTime.now());
+        pipeline.setId(UUID.randomUUID());
+        control.registerPipeline(pipeline.getId());
+        control.bindCurrentThread(pipeline.getId());
+        tracker.start(pipeline, Set.of(PipelineStageEnum.SCRAPER_STARTED, PipelineStageEnum.PARSER_STARTED),
+                true, new PipelineQuota(2, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        control.unbindCurrentThread();
+    }
+
+    private void setField(Object target, String fieldName, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Test
+    @DisplayName("Counters recorded by stage threads should be persisted on the next tick")
+    void shouldPersistCounters() {
+        tracker.stageStarted(PipelineStageEnum.SCRAPER_STARTED, 10);
+        tracker.itemDone(PipelineStageEnum.SCRAPER_STARTED);
+        tracker.pageScraped();
+        tracker.itemDone(PipelineStageEnum.SCRAPER_STARTED);
+        tracker.error();
+        tracker.addToTotal(PipelineStageEnum.PARSER_STARTED, 1);
+
+        tracker.publish();
+
+        ArgumentCaptor<PipelineProgressEvent> event = ArgumentCaptor.forClass(PipelineProgressEvent.class);
+        verify(pipelineService).updateProgress(eq(pipeline.getId()), event.capture(), anyString());
+        assertEquals(2, event.getValue().itemsProcessed());
+        assertEquals(11, event.getValue().itemsTotal());
+        assertEquals(1, event.getValue().pagesScraped());
+        assertEquals(1, event.getValue().errorsCount());
+        assertEquals(PipelineStateEnum.RUNNING, event.getValue().state());
+    }
+
+    @Test
+    @DisplayName("Checkpoints should go on while a long job holds the scheduler thread")
+    void shouldCheckpointWhileSchedulerIsBlocked() throws Exception {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.initialize();
+        CountDownLatch release = new CountDownLatch(1);
+        setField(tracker, "intervalMs", 20L);
+        try {
+            scheduler.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            tracker.startTicking();
+
+            verify(pipelineService, timeout(1000).atLeast(2))
+                    .updateProgress(eq(pipeline.getId()), any(), anyString());
+        } finally {
+            tracker.stopTicking();
+            release.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Saving the pipeline should carry the live counters")
+    void shouldApplyCountersToEntity() {
+        tracker.linksCreated(7);
+        tracker.contactFound();
+
+        tracker.applyTo(pipeline);
+
+        assertEquals(7, pipeline.getLinksCreated());
+        assertEquals(1, pipeline.getContactsFound());
+    }
+
+    @Test
+    @DisplayName("Work recorded on an unbound thread should not be attributed to any pipeline")
+    void shouldIgnoreUnboundThreads() {
+        control.unbindCurrentThread();
+        control.registerPipeline(UUID.randomUUID());
+        tracker.pageScraped();
+
+        control.bindCurrentThread(pipeline.getId());
+        tracker.applyTo(pipeline);
+        assertEquals(0, pipeline.getPagesScraped());
+    }
+
+    @Test
+    @DisplayName("Checkpoint should list items in flight and read back")
+    void shouldCheckpointItemsInFlight() {
+        UUID job = UUID.randomUUID();
+        UUID finished = UUID.randomUUID();
+        tracker.begin(PipelineStageEnum.SCRAPER_STARTED, job);
+        tracker.begin(PipelineStageEnum.SCRAPER_STARTED, finished);
+        tracker.end(PipelineStageEnum.SCRAPER_STARTED, finished);
+        tracker.itemDone(PipelineStageEnum.SCRAPER_STARTED);
+
+        tracker.applyTo(pipeline);
+        PipelineCheckpoint checkpoint = tracker.readCheckpoint(pipeline.getCheckpoint());
+
+        assertNotNull(pipeline.getCheckpointAt());
+        assertTrue(checkpoint.streaming());
+        assertEquals(2, checkpoint.lanes());
+        assertEquals(List.of(job), checkpoint.jobsInFlight());
+        assertEquals(1L, checkpoint.processed().get(PipelineStageEnum.SCRAPER_STARTED));
+    }
+
+    @Test
+    @DisplayName("A resumed pipeline should continue from its stored counters")
+    void shouldSeedCountersOnResume() {
+        pipeline.setPagesScraped(40);
+        pipeline.setItemsProcessed(50);
+        tracker.start(pipeline, Set.of(PipelineStageEnum.PARSER_STARTED), false, PipelineQuota.DEFAULT);
+
+        tracker.pageScraped();
+        tracker.itemDone(PipelineStageEnum.PARSER_STARTED);
+        tracker.applyTo(pipeline);
+
+        assertEquals(41, pipeline.getPagesScraped());
+        assertEquals(51, pipeline.getItemsProcessed());
+    }
+
+    @Test
+    @DisplayName("A resumed owner should not count the work of joined instances twice")
+    void shouldNotDoubleCountJoinersOnResume() throws Exception {
+        PipelineControlPlane plane = mock(PipelineControlPlane.class);
+        PipelineProgressTracker resumed = new PipelineProgressTracker(pipelineService, control, new ObjectMapper(), plane);
+        pipeline.setItemsProcessed(50);
+        pipeline.setPagesScraped(40);
+        pipeline.setCheckpoint(new ObjectMapper().writeValueAsString(new PipelineCheckpoint(
+                Set.of(PipelineStageEnum.SCRAPER_STARTED), false, 1, 0, Map.of(), List.of(), List.of(),
+                new PipelineCheckpoint.Counters(20, 0, 15, 0, 0))));
+        // The joined instance is still running and has done 5 items and 3 pages more
+        PipelineProgressEvent joiner = new PipelineProgressEvent(pipeline.getId(), PipelineStateEnum.RUNNING,
+                PipelineStageEnum.SCRAPER_STARTED, 60, 25, 25, 0, 18, 0, 0, null, List.of(), Map.of());
+        when(plane.remoteProgress(pipeline.getId())).thenReturn(List.of(joiner));
+        resumed.start(pipeline, Set.of(PipelineStageEnum.SCRAPER_STARTED), false, PipelineQuota.DEFAULT);
+
+        resumed.pageScraped();
+        resumed.itemDone(PipelineStageEnum.SCRAPER_STARTED);
+        resumed.publish();
+        resumed.applyTo(pipeline);
+
+        assertEquals(56, pipeline.getItemsProcessed());
+        assertEquals(44, pipeline.getPagesScraped());
+        assertEquals(new PipelineCheckpoint.Counters(25, 0, 18, 0, 0),
+                resumed.readCheckpoint(pipeline.getCheckpoint()).joined());
+    }
+
+    @Test
+    @DisplayName("A resumed owner should keep the share of joined instances that are gone")
+    void shouldKeepShareOfLostJoinersOnResume() throws Exception {
+        pipeline.setItemsProcessed(50);
+        pipeline.setPagesScraped(40);
+        pipeline.setCheckpoint(new ObjectMapper().writeValueAsString(new PipelineCheckpoint(
+                Set.of(PipelineStageEnum.SCRAPER_STARTED), false, 1, 0, Map.of(), List.of(), List.of(),
+                new PipelineCheckpoint.Counters(20, 0, 15, 0, 0))));
+        tracker.start(pipeline, Set.of(PipelineStageEnum.SCRAPER_STARTED), false, PipelineQuota.DEFAULT);
+
+        tracker.pageScraped();
+        tracker.itemDone(PipelineStageEnum.SCRAPER_STARTED);
+        tracker.applyTo(pipeline);
+
+        assertEquals(51, pipeline.getItemsProcessed());
+        assertEquals(41, pipeline.getPagesScraped());
+    }
+
+    @Test
+    @DisplayName("Counters of other instances should be added to the pipeline's progress")
+    void shouldMergeRemoteProgress() {
+        PipelineProgressEvent local = new PipelineProgressEvent(pipeline.getId(), PipelineStateEnum.RUNNING,
+                PipelineStageEnum.SCRAPER_STARTED, 30, 10, 40, 0, 10, 3, 1, null,
+                List.of(new StageProgress(PipelineStageEnum.SCRAPER_STARTED, 10, 40, 1.0, 30L)),
+                Map.of("scrapedPages", 2));
+        PipelineProgressEvent remote = new PipelineProgressEvent(pipeline.getId(), PipelineStateEnum.RUNNING,
+                PipelineStageEnum.SCRAPER_STARTED, 12, 20, 20, 0, 20, 5, 0, null,
+                List.of(new StageProgress(PipelineStageEnum.SCRAPER_STARTED, 20, 20, 2.0, null)),
+                Map.of("scrapedPages", 1));
+
+        PipelineProgressEvent merged = PipelineProgressTracker.merge(local, List.of(remote));
+
+        assertEquals(30, merged.itemsProcessed());
+        assertEquals(60, merged.itemsTotal());
+        assertEquals(30, merged.pagesScraped());
+        assertEquals(8, merged.contactsFound());
+        assertEquals(30, merged.elapsedSeconds());
+        assertEquals(3, merged.queueDepths().get("scrapedPages"));
+        StageProgress scraper = merged.stages().get(0);
+        assertEquals(3.0, scraper.ratePerSecond());
+        assertEquals(10L, scraper.etaSeconds());
+        assertEquals(10L, merged.etaSeconds());
+    }
+}
@@ -0,0 +1,140 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.core.enums.PipelineStateEnum;
+import ir.netpick.platform.mailmine.model.Pipeline;
+import ir.netpick.platform.mailmine.repository.PipelineRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PipelineRecoveryServiceTest {
+
+    @Mock
+    private PipelineRepository pipelineRepository;
+
+    @Mock
+    private PipelineControlService pipelineControlService;
+
+    @Mock
+    private PipelineControlPlane controlPlane;
+
+    @Mock
+    private PipelineProgressTracker progressTracker;
+
+    @Mock
+    private ScrapeOrchestrationService orchestrationService;
+
+    @InjectMocks
+    private PipelineRecoveryService recoveryService;
+
+    private Pipeline pipeline;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        setField(recoveryService, "resume", true);
+        setField(recoveryService, "maxResumes", 3);
+        setField(recoveryService, "staleAfterSeconds", 120L);
+
+        pipeline = new Pipeline(PipelineStageEnum.SCRAPER_STARTED, PipelineStateEnum.RUNNING, LocalDateTime.now());
+        pipeline.setId(UUID.randomUUID());
+        pipeline.setCheckpoint("{}");
+        lenient().when(pipelineRepository.findStale(any(), any())).thenReturn(List.of(pipeline));
+    }
+
+    private void setField(Object target, String fieldName, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private PipelineCheckpoint checkpoint() {
+        return new PipelineCheckpoint(EnumSet.of(PipelineStageEnum.SCRAPER_STARTED), false, 1, 0,
+                Map.of(), List.of(), List.of(), null);
+    }
+
+    @Test
+    @DisplayName("An orphaned pipeline with a checkpoint should be resumed once claimed")
+    void shouldResumeOrphan() {
+        PipelineCheckpoint checkpoint = checkpoint();
+        when(progressTracker.readCheckpoint("{}")).thenReturn(checkpoint);
+        when(orchestrationService.tryReserveSlot()).thenReturn(true);
+        when(pipelineRepository.claimForRecovery(eq(pipeline.getId()), eq(0), any())).thenReturn(1);
+
+        recoveryService.recoverOrphanedPipelines();
+
+        verify(orchestrationService).resumeInterrupted(pipeline, checkpoint);
+        assertEquals(1, pipeline.getResumeCount());
+    }
+
+    @Test
+    @DisplayName("A pipeline resumed too often should be marked failed")
+    void shouldFailAfterMaxResumes() {
+        pipeline.setResumeCount(3);
+        when(progressTracker.readCheckpoint("{}")).thenReturn(checkpoint());
+        when(pipelineRepository.claimForRecovery(eq(pipeline.getId()), eq(3), any())).thenReturn(1);
+
+        recoveryService.recoverOrphanedPipelines();
+
+        assertEquals(PipelineStateEnum.FAILED, pipeline.getState());
+        verify(pipelineRepository).save(pipeline);
+        verify(orchestrationService, never()).resumeInterrupted(any(), any());
+    }
+
+    @Test
+    @DisplayName("A pipeline claimed by another instance or still running here should be left alone")
+    void shouldSkipClaimedOrLocalPipelines() {
+        when(progressTracker.readCheckpoint("{}")).thenReturn(checkpoint());
+        when(orchestrationService.tryReserveSlot()).thenReturn(true);
+        when(pipelineRepository.claimForRecovery(any(), anyInt(), any())).thenReturn(0);
+
+        recoveryService.recoverOrphanedPipelines();
+        when(pipelineControlService.getActivePipelineIds()).thenReturn(List.of(pipeline.getId()));
+        recoveryService.recoverOrphanedPipelines();
+
+        verify(pipelineRepository, times(1)).claimForRecovery(any(), anyInt(), any());
+        verify(orchestrationService, never()).resumeInterrupted(any(), any());
+    }
+
+    @Test
+    @DisplayName("A pipeline with a live worker on another instance should be left alone")
+    void shouldSkipPipelinesAliveElsewhere() {
+        when(controlPlane.isAlive(pipeline.getId())).thenReturn(true);
+
+        recoveryService.recoverOrphanedPipelines();
+
+        verify(pipelineRepository, never()).claimForRecovery(any(), anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("Sequential resume should skip completed stages")
+    void shouldSkipCompletedStages() {
+        Set<PipelineStageEnum> all = EnumSet.of(PipelineStageEnum.API_CALLER_STARTED,
+                PipelineStageEnum.SCRAPER_STARTED, PipelineStageEnum.PARSER_STARTED);
+
+        assertEquals(EnumSet.of(PipelineStageEnum.SCRAPER_STARTED, PipelineStageEnum.PARSER_STARTED),
+                ScrapeOrchestrationService.remainingSteps(all, PipelineStageEnum.API_CALLER_COMPLETE));
+        assertEquals(EnumSet.of(PipelineStageEnum.SCRAPER_STARTED, PipelineStageEnum.PARSER_STARTED),
+                ScrapeOrchestrationService.remainingSteps(all, PipelineStageEnum.SCRAPER_STARTED));
+        assertEquals(all, ScrapeOrchestrationService.remainingSteps(all, PipelineStageEnum.STARTED));
+    }
+}
@@ -0,0 +1,125 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.mailmine.model.Pipeline;
+import ir.netpick.platform.mailmine.service.base.PipelineService;
+import ir.netpick.platform.mailmine.service.base.ScrapeJobService;
+import ir.netpick.platform.mailmine.service.mid.ApiCaller;
+import ir.netpick.platform.mailmine.service.mid.DataProcessor;
+import ir.netpick.platform.mailmine.service.mid.Scraper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ScrapeOrchestrationServiceTest {
+
+    @Mock
+    private ApiCaller apiCaller;
+    @Mock
+    private Scraper scraper;
+    @Mock
+    private DataProcessor dataProcessor;
+    @Mock
+    private PipelineService pipelineService;
+    @Mock
+    private PipelineControlService pipelineControlService;
+    @Mock
+    private PipelineProgressTracker progressTracker;
+    @Mock
+    private ScrapeJobService scrapeJobService;
+
+    @InjectMocks
+    private ScrapeOrchestrationService orchestrationService;
+
+    @BeforeEach
+    void setUp() {
+        setField(orchestrationService, "maxConcurrent", 2);
+        orchestrationService.initSlots();
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent start requests should never reserve more than max-concurrent slots")
+    void shouldReserveSlotsAtomically() throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        try (ExecutorService requests = Executors.newFixedThreadPool(16)) {
+            List<CompletableFuture<Boolean>> reserved = IntStream.range(0, 16)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                        try {
+                            go.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return orchestrationService.tryReserveSlot();
+                    }, requests))
+                    .toList();
+            go.countDown();
+
+            assertEquals(2, reserved.stream().filter(CompletableFuture::join).count());
+        }
+    }
+
+    @Test
+    @DisplayName("A pipeline should give its slot back when it ends, even if it fails to start")
+    void shouldReleaseSlotWhenPipelineEnds() {
+        when(pipelineService.createPipeline(any(Pipeline.class))).thenThrow(new IllegalStateException("DB down"));
+        assertTrue(orchestrationService.tryReserveSlot());
+        assertTrue(orchestrationService.tryReserveSlot());
+        assertFalse(orchestrationService.tryReserveSlot());
+
+        assertThrows(IllegalStateException.class, () -> orchestrationService.executeSteps(
+                Set.of(PipelineStageEnum.PARSER_STARTED), false, orchestrationService.defaultQuota()));
+
+        assertTrue(orchestrationService.tryReserveSlot());
+        assertFalse(orchestrationService.tryReserveSlot());
+    }
+
+    @Test
+    @DisplayName("Joining a pipeline that runs on this instance should leave the owner registered")
+    void shouldNotUnregisterOwnerOnLocalJoin() {
+        Pipeline pipeline = new Pipeline();
+        pipeline.setId(UUID.randomUUID());
+        when(pipelineService.getPipeline(pipeline.getId())).thenReturn(pipeline);
+        doThrow(new IllegalStateException("already running here"))
+                .when(pipelineControlService).joinPipeline(eq(pipeline.getId()), any());
+        assertTrue(orchestrationService.tryReserveSlot());
+
+        orchestrationService.joinPipeline(pipeline.getId(), Set.of(PipelineStageEnum.SCRAPER_STARTED),
+                PipelineQuota.DEFAULT);
+
+        verify(pipelineControlService, never()).unregisterPipeline(any());
+        verify(progressTracker, never()).join(any(), any(), any());
+        verify(progressTracker, never()).finish(any());
+        verifyNoInteractions(scraper);
+        // The slot was given back
+        assertTrue(orchestrationService.tryReserveSlot());
+        assertTrue(orchestrationService.tryReserveSlot());
+    }
+}
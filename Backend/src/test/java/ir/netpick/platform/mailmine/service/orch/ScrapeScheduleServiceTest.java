@@ -0,0 +1,231 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import ir.netpick.platform.core.enums.PipelineStageEnum;
+import ir.netpick.platform.mailmine.dto.ApiQuotaReport;
+import ir.netpick.platform.mailmine.repository.PipelineRepository;
+import ir.netpick.platform.mailmine.service.base.ApiKeyQuotaService;
+import ir.netpick.platform.mailmine.service.base.ProxyService;
+import ir.netpick.platform.mailmine.service.base.ScrapeDataService;
+import ir.netpick.platform.mailmine.service.base.ScrapeJobService;
+import ir.netpick.platform.mailmine.service.base.SearchQueryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ScrapeScheduleServiceTest {
+
+    @Mock
+    private ScrapeOrchestrationService orchestrationService;
+
+    @Mock
+    private ScrapeJobService scrapeJobService;
+
+    @Mock
+    private ScrapeDataService scrapeDataService;
+
+    @Mock
+    private SearchQueryService searchQueryService;
+
+    @Mock
+    private ApiKeyQuotaService apiKeyQuotaService;
+
+    @Mock
+    private ProxyService proxyService;
+
+    @Mock
+    private PipelineRepository pipelineRepository;
+
+    private ScrapeScheduleState scheduleState;
+    private ScrapeScheduleService scheduleService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:schedule-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+                CREATE TABLE scrape_schedule_state (
+                    stage VARCHAR(64) PRIMARY KEY,
+                    last_run_at TIMESTAMP NOT NULL,
+                    backoff_until TIMESTAMP,
+                    backoff_failures INTEGER NOT NULL DEFAULT 0)""");
+        scheduleState = new ScrapeScheduleState(jdbcTemplate);
+        scheduleService = service();
+        lenient().when(orchestrationService.getActivePipelineIds()).thenReturn(List.of());
+        lenient().when(orchestrationService.tryReserveSlot()).thenReturn(true);
+        lenient().when(apiKeyQuotaService.quotaReport()).thenReturn(
+                new ApiQuotaReport(100, 0, 100, 30, LocalDateTime.now(), null, List.of()));
+    }
+
+    private ScrapeScheduleService service() throws Exception {
+        ScrapeScheduleService scheduleService = new ScrapeScheduleService(orchestrationService, scrapeJobService,
+                scrapeDataService, searchQueryService, apiKeyQuotaService, proxyService, scheduleState,
+                pipelineRepository);
+        setField(scheduleService, "enabled", true);
+        setField(scheduleService, "searchThreshold", 5L);
+        setField(scheduleService, "minSearchBudget", 10);
+        setField(scheduleService, "scrapeThreshold", 50L);
+        setField(scheduleService, "parseThreshold", 50L);
+        setField(scheduleService, "maxIdleMinutes", 180L);
+        setField(scheduleService, "cooldownMinutes", 0L);
+        setField(scheduleService, "minHealthyProxies", 1L);
+        setField(scheduleService, "minHealthyRatio", 0.2);
+        setField(scheduleService, "proxyBackoffMinutes", 5L);
+        setField(scheduleService, "maxProxyBackoffMinutes", 120L);
+        setField(scheduleService, "useProxy", true);
+        setField(scheduleService, "staleAfterSeconds", 120L);
+        return scheduleService;
+    }
+
+    private void setField(Object target, String fieldName, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private void backlog(long queries, long jobs, long unparsed) {
+        lenient().when(searchQueryService.countPendingSearch()).thenReturn(queries);
+        lenient().when(scrapeJobService.countPending()).thenReturn(jobs);
+        lenient().when(scrapeDataService.countUnparsed()).thenReturn(unparsed);
+    }
+
+    private void proxies(long active, long failed) {
+        lenient().when(proxyService.getProxyStats()).thenReturn(Map.of("active", active, "failed", failed));
+    }
+
+    @Test
+    @DisplayName("A scrape backlog over the threshold should start scraping and parsing")
+    void shouldRunStagesWithBacklog() {
+        backlog(0, 80, 0);
+        proxies(10, 2);
+
+        scheduleService.scheduledScrapeJob();
+
+        verify(orchestrationService).executeSteps(
+                EnumSet.of(PipelineStageEnum.SCRAPER_STARTED, PipelineStageEnum.PARSER_STARTED));
+    }
+
+    @Test
+    @DisplayName("Nothing should start while any pipeline is running")
+    void shouldNotOverlapRuns() {
+        when(orchestrationService.getActivePipelineIds()).thenReturn(List.of(UUID.randomUUID()));
+
+        scheduleService.scheduledScrapeJob();
+
+        verify(orchestrationService, never()).executeSteps(any());
+        verify(scrapeJobService, never()).countPending();
+    }
+
+    @Test
+    @DisplayName("Nothing should start while a pipeline on another replica keeps its checkpoint fresh")
+    void shouldNotOverlapRunsOnOtherReplicas() {
+        backlog(0, 80, 0);
+        proxies(10, 2);
+        when(pipelineRepository.countFresh(eq(PipelineRecoveryService.ACTIVE_STATES), any())).thenReturn(1L);
+
+        scheduleService.scheduledScrapeJob();
+
+        verify(orchestrationService, never()).executeSteps(any());
+        verify(orchestrationService, never()).tryReserveSlot();
+    }
+
+    @Test
+    @DisplayName("Small backlogs should wait, until they have waited too long")
+    void shouldRunSmallBacklogAfterIdling() {
+        backlog(0, 0, 3);
+        LocalDateTime now = LocalDateTime.now();
+
+        assertTrue(scheduleService.dueSteps(now).isEmpty());
+        assertEquals(EnumSet.of(PipelineStageEnum.PARSER_STARTED), scheduleService.dueSteps(now.plusHours(4)));
+    }
+
+    @Test
+    @DisplayName("Search should only run with enough API quota left")
+    void shouldRespectSearchBudget() {
+        backlog(20, 0, 0);
+        proxies(10, 0);
+        when(apiKeyQuotaService.quotaReport()).thenReturn(
+                new ApiQuotaReport(100, 95, 5, 5, LocalDateTime.now(), null, List.of()));
+
+        assertTrue(scheduleService.dueSteps(LocalDateTime.now()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Scraping should back off while proxies are unhealthy; parsing goes on")
+    void shouldBackOffOnUnhealthyProxies() {
+        backlog(0, 80, 60);
+        proxies(1, 40);
+        LocalDateTime now = LocalDateTime.now();
+
+        assertEquals(EnumSet.of(PipelineStageEnum.PARSER_STARTED), scheduleService.dueSteps(now));
+        // Within the backoff the proxies are not even looked at
+        scheduleService.dueSteps(now.plusMinutes(1));
+        verify(proxyService, times(1)).getProxyStats();
+
+        proxies(10, 40);
+        assertEquals(EnumSet.of(PipelineStageEnum.SCRAPER_STARTED, PipelineStageEnum.PARSER_STARTED),
+                scheduleService.dueSteps(now.plusMinutes(6)));
+    }
+
+    @Test
+    @DisplayName("A small search backlog should run once search idled, however often other stages ran")
+    void shouldNotStarveSmallSearchBacklog() {
+        backlog(3, 80, 0);
+        proxies(10, 0);
+        LocalDateTime now = LocalDateTime.now();
+
+        // Scraping runs every hour; search has not run since the clock started
+        for (int hour = 0; hour < 3; hour++) {
+            assertEquals(EnumSet.of(PipelineStageEnum.SCRAPER_STARTED, PipelineStageEnum.PARSER_STARTED),
+                    scheduleService.dueSteps(now.plusHours(hour)));
+            scheduleState.save(PipelineStageEnum.SCRAPER_STARTED,
+                    new ScrapeScheduleState.StageState(now.plusHours(hour), null, 0));
+        }
+        assertTrue(scheduleService.dueSteps(now.plusHours(4)).contains(PipelineStageEnum.API_CALLER_STARTED));
+    }
+
+    @Test
+    @DisplayName("Run times and proxy backoff should carry over to the next instance holding the check")
+    void shouldShareStateBetweenInstances() throws Exception {
+        backlog(0, 80, 60);
+        proxies(1, 40);
+        LocalDateTime now = LocalDateTime.now();
+        scheduleService.dueSteps(now);
+
+        ScrapeScheduleService other = service();
+        assertEquals(EnumSet.of(PipelineStageEnum.PARSER_STARTED), other.dueSteps(now.plusMinutes(1)));
+        verify(proxyService, times(1)).getProxyStats();
+
+        // A run started by the other instance puts its stages in cooldown here too
+        proxies(10, 0);
+        when(orchestrationService.getActivePipelineIds()).thenReturn(List.of());
+        scheduleService.scheduledScrapeJob();
+        verify(orchestrationService).executeSteps(EnumSet.of(PipelineStageEnum.PARSER_STARTED));
+        setField(other, "cooldownMinutes", 30L);
+        assertEquals(EnumSet.noneOf(PipelineStageEnum.class), other.dueSteps(LocalDateTime.now().plusMinutes(10)));
+    }
+}
@@ -0,0 +1,58 @@
+package ir.netpick.platform.mailmine.service.orch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageQueueTest {
+
+    @Test
+    @DisplayName("Producer should block on a full queue until the consumer takes an item")
+    void shouldApplyBackPressure() throws Exception {
+        StageQueue<Integer> queue = new StageQueue<>(1);
+        queue.put(1);
+
+        CountDownLatch secondPut = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            queue.put(2);
+            secondPut.countDown();
+        });
+        producer.start();
+
+        assertFalse(secondPut.await(200, TimeUnit.MILLISECONDS), "put should wait for room");
+        assertEquals(1, queue.poll(0));
+        assertTrue(secondPut.await(2, TimeUnit.SECONDS));
+        assertEquals(2, queue.poll(0));
+        producer.join();
+    }
+
+    @Test
+    @DisplayName("Abandoning the queue should release a blocked producer")
+    void shouldReleaseProducerWhenAbandoned() throws Exception {
+        StageQueue<Integer> queue = new StageQueue<>(1);
+        queue.put(1);
+
+        Thread producer = new Thread(() -> queue.put(2));
+        producer.start();
+        queue.abandon();
+
+        producer.join(2000);
+        assertFalse(producer.isAlive());
+    }
+
+    @Test
+    @DisplayName("Queue should count as drained only once closed and empty")
+    void shouldDrainAfterClose() throws Exception {
+        StageQueue<Integer> queue = new StageQueue<>(4);
+        queue.put(1);
+        queue.close();
+
+        assertFalse(queue.isDrained());
+        assertEquals(1, queue.poll(0));
+        assertTrue(queue.isDrained());
+    }
+}
@@ -0,0 +1,166 @@
+package ir.netpick.platform.mailmine.verify;
+
+import ir.netpick.platform.core.dns.DnsResolver;
+import ir.netpick.platform.core.dns.StubDnsBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MailboxVerifierTest {
+
+    private StubSmtpServer smtp;
+    private StubDnsBackend dns;
+    private MailboxVerifier verifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        smtp = new StubSmtpServer().mailbox("sales@shop.ir", "info@shop.ir");
+        dns = new StubDnsBackend()
+                .mx("shop.ir", "mx.shop.ir").a("mx.shop.ir", "127.0.0.1")
+                .mx("no-mail.ir", ".");
+        DnsResolver resolver = new DnsResolver(dns);
+        setField(resolver, "minTtlSeconds", 60L);
+        setField(resolver, "maxTtlSeconds", 86400L);
+        setField(resolver, "negativeTtlSeconds", 900L);
+        setField(resolver, "errorTtlSeconds", 30L);
+        setField(resolver, "maxEntries", 10_000);
+        setField(resolver, "queryTimeoutMs", 1000L);
+
+        verifier = new MailboxVerifier(resolver);
+        setField(verifier, "smtpPort", smtp.port());
+        setField(verifier, "heloName", "verifier.test");
+        setField(verifier, "mailFrom", "");
+        setField(verifier, "connectTimeoutMs", 2000);
+        setField(verifier, "readTimeoutMs", 2000);
+        setField(verifier, "maxConnections", 8);
+        setField(verifier, "perHostConnections", 2);
+        setField(verifier, "perDomainConcurrency", 1);
+        setField(verifier, "rcptPerTransaction", 25);
+        setField(verifier, "transactionsPerConnection", 4);
+        setField(verifier, "rcptIntervalMs", 0L);
+        setField(verifier, "catchAllTtlHours", 24L);
+        setField(verifier, "hostBackoffMinutes", 60L);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        smtp.close();
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<VerificationStatus> statuses(List<VerificationResult> results) {
+        return results.stream().map(VerificationResult::status).toList();
+    }
+
+    @Test
+    @DisplayName("Should classify addresses by syntax, MX and the RCPT reply, in input order")
+    void shouldClassifyAddresses() {
+        List<VerificationResult> results = verifier.verify(List.of(
+                "sales@shop.ir", "nobody@shop.ir", "x@no-mail.ir", "y@gone.ir", "not an email", "sales@shop.ir"));
+
+        assertEquals(List.of(VerificationStatus.VALID, VerificationStatus.INVALID, VerificationStatus.NO_MAIL_DOMAIN,
+                VerificationStatus.NO_MAIL_DOMAIN, VerificationStatus.BAD_SYNTAX), statuses(results));
+        assertEquals("mx.shop.ir", results.get(0).mxHost());
+        assertEquals(550, results.get(1).smtpCode());
+        assertEquals("Null MX", results.get(2).detail());
+        assertEquals(1, smtp.connections());
+    }
+
+    @Test
+    @DisplayName("Should ask about every domain of an MX host over one connection, resetting between transactions")
+    void shouldReuseConnectionPerHost() {
+        dns.mx("store.ir", "mx.shop.ir");
+        setField(verifier, "perHostConnections", 1);
+        List<String> addresses = Stream.concat(
+                IntStream.range(0, 40).mapToObj(i -> "user" + i + "@shop.ir"),
+                IntStream.range(0, 20).mapToObj(i -> "user" + i + "@store.ir")).toList();
+
+        List<VerificationResult> results = verifier.verify(addresses);
+
+        assertTrue(results.stream().allMatch(r -> r.status() == VerificationStatus.INVALID));
+        assertEquals(1, smtp.connections());
+        // 60 recipients and one catch-all probe per domain, 25 to a transaction
+        assertEquals(62, smtp.rcptCommands());
+        assertEquals(2, smtp.rsetCommands());
+    }
+
+    @Test
+    @DisplayName("Should not probe the addresses of a catch-all domain, and remember the domain")
+    void shouldDetectCatchAll() {
+        dns.mx("any.ir", "mx.shop.ir");
+        smtp.catchAll("any.ir");
+        List<String> addresses = IntStream.range(0, 10).mapToObj(i -> "user" + i + "@any.ir").toList();
+
+        List<VerificationResult> first = verifier.verify(addresses);
+        List<VerificationResult> second = verifier.verify(addresses);
+
+        assertTrue(first.stream().allMatch(r -> r.status() == VerificationStatus.CATCH_ALL));
+        assertTrue(second.stream().allMatch(r -> r.status() == VerificationStatus.CATCH_ALL));
+        assertEquals(1, smtp.rcptCommands());
+    }
+
+    @Test
+    @DisplayName("Should defer greylisted recipients and accept them on retry")
+    void shouldDeferGreylisted() {
+        smtp.greylist("new@shop.ir", 1);
+
+        VerificationResult first = verifier.verify(List.of("new@shop.ir")).get(0);
+        VerificationResult retry = verifier.verify(List.of("new@shop.ir")).get(0);
+
+        assertEquals(VerificationStatus.DEFERRED, first.status());
+        assertEquals(451, first.smtpCode());
+        assertEquals(VerificationStatus.VALID, retry.status());
+    }
+
+    @Test
+    @DisplayName("Should stop probing a host that blocks us and leave it alone afterwards")
+    void shouldBackOffBlockingHost() {
+        smtp.block("554 5.7.1 Service unavailable; Client host blocked using zen.spamhaus.org");
+        List<String> addresses = IntStream.range(0, 30).mapToObj(i -> "user" + i + "@shop.ir").toList();
+
+        List<VerificationResult> first = verifier.verify(addresses);
+        List<VerificationResult> second = verifier.verify(addresses);
+
+        assertTrue(first.stream().allMatch(r -> r.status() == VerificationStatus.DEFERRED));
+        assertTrue(second.stream().allMatch(r -> r.status() == VerificationStatus.DEFERRED));
+        assertTrue(second.get(0).detail().contains("spamhaus"));
+        assertEquals(1, smtp.rcptCommands());
+        assertEquals(1, smtp.connections());
+    }
+
+    @Test
+    @DisplayName("Should keep to the per-host connection limit")
+    void shouldLimitConnectionsPerHost() {
+        smtp.rcptDelay(2);
+        List<String> addresses = IntStream.range(0, 12)
+                .boxed()
+                .flatMap(d -> {
+                    dns.mx("d" + d + ".ir", "mx.shop.ir");
+                    return IntStream.range(0, 5).mapToObj(i -> "user" + i + "@d" + d + ".ir");
+                })
+                .toList();
+
+        List<VerificationResult> results = verifier.verify(addresses);
+
+        assertEquals(60, results.size());
+        assertTrue(results.stream().allMatch(r -> r.status() == VerificationStatus.INVALID));
+        assertEquals(2, smtp.connections());
+        assertTrue(smtp.maxActiveConnections() <= 2);
+    }
+}
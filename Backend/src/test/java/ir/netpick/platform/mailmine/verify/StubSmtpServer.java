@@ -0,0 +1,175 @@
+package ir.netpick.platform.mailmine.verify;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local SMTP server that answers the verification dialogue: known mailboxes
+ * are accepted, others rejected with 550 5.1.1; catch-all domains accept
+ * anyone, greylisted recipients get 451 a given number of times first. Counts
+ * connections and commands so tests can check reuse and limits.
+ */
+public class StubSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final Set<String> mailboxes = ConcurrentHashMap.newKeySet();
+    private final Set<String> catchAllDomains = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicInteger> greylisted = new ConcurrentHashMap<>();
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger maxActiveConnections = new AtomicInteger();
+    private final AtomicInteger rcptCommands = new AtomicInteger();
+    private final AtomicInteger rsetCommands = new AtomicInteger();
+    private volatile String blockReply;
+    private volatile long rcptDelayMs;
+
+    public StubSmtpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().start(this::acceptLoop);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public StubSmtpServer mailbox(String... addresses) {
+        for (String address : addresses) {
+            mailboxes.add(address.toLowerCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    public StubSmtpServer catchAll(String domain) {
+        catchAllDomains.add(domain);
+        return this;
+    }
+
+    /**
+     * Answer 451 the first {@code times} times the address is asked about
+     */
+    public StubSmtpServer greylist(String address, int times) {
+        greylisted.put(address.toLowerCase(Locale.ROOT), new AtomicInteger(times));
+        return mailbox(address);
+    }
+
+    /**
+     * Answer every RCPT with the given policy rejection
+     */
+    public StubSmtpServer block(String reply) {
+        this.blockReply = reply;
+        return this;
+    }
+
+    public StubSmtpServer rcptDelay(long millis) {
+        this.rcptDelayMs = millis;
+        return this;
+    }
+
+    public int connections() {
+        return connections.get();
+    }
+
+    public int maxActiveConnections() {
+        return maxActiveConnections.get();
+    }
+
+    public int rcptCommands() {
+        return rcptCommands.get();
+    }
+
+    public int rsetCommands() {
+        return rsetCommands.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : open) {
+            socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().start(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        open.add(socket);
+        connections.incrementAndGet();
+        maxActiveConnections.accumulateAndGet(activeConnections.incrementAndGet(), Math::max);
+        try (socket;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+            OutputStream out = socket.getOutputStream();
+            reply(out, "220 stub.test ESMTP ready");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase(Locale.ROOT);
+                if (command.startsWith("EHLO")) {
+                    reply(out, "250-stub.test greets you\r\n250-PIPELINING\r\n250 8BITMIME");
+                } else if (command.startsWith("HELO") || command.startsWith("MAIL FROM:")
+                        || command.startsWith("NOOP")) {
+                    reply(out, "250 OK");
+                } else if (command.startsWith("RSET")) {
+                    rsetCommands.incrementAndGet();
+                    reply(out, "250 OK");
+                } else if (command.startsWith("RCPT TO:")) {
+                    rcptCommands.incrementAndGet();
+                    if (rcptDelayMs > 0) {
+                        Thread.sleep(rcptDelayMs);
+                    }
+                    reply(out, rcpt(line.substring(line.indexOf('<') + 1, line.lastIndexOf('>'))));
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    reply(out, "502 5.5.2 Command not recognized");
+                }
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // Client went away
+        } finally {
+            activeConnections.decrementAndGet();
+            open.remove(socket);
+        }
+    }
+
+    private String rcpt(String recipient) {
+        String address = recipient.toLowerCase(Locale.ROOT);
+        if (blockReply != null) {
+            return blockReply;
+        }
+        AtomicInteger greylist = greylisted.get(address);
+        if (greylist != null && greylist.getAndDecrement() > 0) {
+            return "451 4.7.1 Greylisted, please try again later";
+        }
+        if (mailboxes.contains(address) || catchAllDomains.contains(address.substring(address.indexOf('@') + 1))) {
+            return "250 2.1.5 OK";
+        }
+        return "550 5.1.1 <" + recipient + ">: Recipient address rejected: User unknown";
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
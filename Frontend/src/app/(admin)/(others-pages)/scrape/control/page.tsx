@@ -4,6 +4,7 @@ import PageBreadcrumb from "@/components/common/PageBreadCrumb";
 import ComponentCard from "@/components/common/ComponentCard";
 import React, { useState, useEffect } from "react";
 import { useScrapeControls } from "@/hooks/useScrape";
+import { useApiQuota } from "@/hooks/useApiKeys";
 import Button from "@/components/ui/button/Button";
 import { useToast } from "@/context/ToastContext";
 import { PipelineStageEnum } from "@/services/scrapeService";
@@ -24,6 +25,7 @@ export default function ScrapeControlPage() {
         cancelPipeline,
         fetchStatus,
     } = useScrapeControls();
+    const { quota, refetch: fetchQuota } = useApiQuota();
 
     const [selectedSteps, setSelectedSteps] = useState<PipelineStageEnum[]>([]);
 
@@ -34,6 +36,12 @@ export default function ScrapeControlPage() {
         return () => clearInterval(interval);
     }, [fetchStatus]);
 
+    useEffect(() => {
+        // Quota moves slowly; refresh it once a minute
+        const interval = setInterval(fetchQuota, 60000);
+        return () => clearInterval(interval);
+    }, [fetchQuota]);
+
     const handleStartGoogleSearch = async () => {
         try {
             await startGoogleSearch();
@@ -137,6 +145,39 @@ export default function ScrapeControlPage() {
                     )}
                 </ComponentCard>
 
+                {/* Search API Quota Card */}
+                {quota && (
+                    <ComponentCard title="Search API Quota" desc={`Resets at ${new Date(quota.resetsAt).toLocaleString()}`}>
+                        <div className="grid grid-cols-2 sm:grid-cols-4 gap-4">
+                            <div>
+                                <p className="text-sm text-gray-500 dark:text-gray-400">Remaining today</p>
+                                <p className="text-lg font-semibold text-gray-800 dark:text-white/90">
+                                    {quota.remaining} / {quota.totalQuota}
+                                </p>
+                            </div>
+                            <div>
+                                <p className="text-sm text-gray-500 dark:text-gray-400">Used today</p>
+                                <p className="text-lg font-semibold text-gray-800 dark:text-white/90">{quota.usedToday}</p>
+                            </div>
+                            <div>
+                                <p className="text-sm text-gray-500 dark:text-gray-400">Next run budget</p>
+                                <p className="text-lg font-semibold text-gray-800 dark:text-white/90">{quota.runBudget}</p>
+                            </div>
+                            <div>
+                                <p className="text-sm text-gray-500 dark:text-gray-400">Predicted exhaustion</p>
+                                <p className="text-lg font-semibold text-gray-800 dark:text-white/90">
+                                    {quota.predictedExhaustion ? new Date(quota.predictedExhaustion).toLocaleTimeString() : '-'}
+                                </p>
+                            </div>
+                        </div>
+                        {quota.keys.some(k => k.exhausted) && (
+                            <p className="mt-2 text-sm text-red-500">
+                                {quota.keys.filter(k => k.exhausted).length} of {quota.keys.length} keys exhausted
+                            </p>
+                        )}
+                    </ComponentCard>
+                )}
+
                 <div className="grid grid-cols-1 xl:grid-cols-2 gap-6">
                     {/* Quick Actions */}
                     <ComponentCard title="Quick Actions" desc="Start individual pipeline steps or execute the full pipeline">
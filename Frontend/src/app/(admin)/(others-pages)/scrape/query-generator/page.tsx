@@ -42,7 +42,7 @@ export default function SearchQueryGeneratorPage() {
                 });
                 // Map the SearchQuery objects to strings using the 'sentence' property
                 setGeneratedQueries(result.queries.map(q => q.sentence));
-                addToast("success", "Success", `Generated and saved ${result.saved} queries`);
+                addToast("success", "Success", `Generated and saved ${result.saved} queries (${result.duplicates.length} near-duplicates skipped, ${Math.round(result.duplicateRate * 100)}%)`);
             } else {
                 const result = await SearchQueryGeneratorService.generateQueries({
                     topic,
@@ -1,7 +1,7 @@
 // useApiKeys.ts
 "use client";
 import { useState, useEffect, useCallback } from 'react';
-import ApiKeyService, { ApiKey } from '@/services/apiKeyService';
+import ApiKeyService, { ApiKey, ApiQuotaReport } from '@/services/apiKeyService';
 import { PageDTO } from '@/services/api';
 
 export const useApiKeys = (page: number = 1) => {
@@ -63,4 +63,24 @@ export const useApiKey = (id: string | null) => {
   return { apiKey, loading, error, refetch: fetchApiKey };
 };
 
+export const useApiQuota = () => {
+  const [quota, setQuota] = useState<ApiQuotaReport | null>(null);
+  const [error, setError] = useState<string | null>(null);
 
+  const fetchQuota = useCallback(async () => {
+    try {
+      const data = await ApiKeyService.getQuota();
+      setQuota(data);
+      setError(null);
+    } catch (err) {
+      setError('Failed to fetch API quota');
+      console.error('Error fetching API quota:', err);
+    }
+  }, []);
+
+  useEffect(() => {
+    fetchQuota();
+  }, [fetchQuota]);
+
+  return { quota, error, refetch: fetchQuota };
+};
@@ -20,6 +20,26 @@ export interface ApiKeyRequest {
   description?: string;
 }
 
+export interface ApiKeyQuota {
+  id: string;
+  description: string | null;
+  dailyQuota: number;
+  usedToday: number;
+  remaining: number;
+  exhausted: boolean;
+  predictedExhaustion: string | null;
+}
+
+export interface ApiQuotaReport {
+  totalQuota: number;
+  usedToday: number;
+  remaining: number;
+  runBudget: number;
+  resetsAt: string;
+  predictedExhaustion: string | null;
+  keys: ApiKeyQuota[];
+}
+
 class ApiKeyService {
   private basePath = '/api/v1/mailmine/scrape/api_keys';
 
@@ -44,6 +64,13 @@ class ApiKeyService {
     return await api.get<PageDTO<ApiKey>>(`${this.basePath}/all?page=${page}`);
   }
 
+  /**
+   * Get today's quota usage and remaining capacity of all API keys
+   */
+  public async getQuota(): Promise<ApiQuotaReport> {
+    return await api.get<ApiQuotaReport>(`${this.basePath}/quota`);
+  }
+
   /**
    * Get API key by ID
    */
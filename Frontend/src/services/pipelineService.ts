@@ -14,6 +14,8 @@ export interface Pipeline {
   pagesScraped: number;
   contactsFound: number;
   errorsCount: number;
+  checkpointAt: string | null;
+  resumeCount: number | null;
   createdAt: string;
   updatedAt: string;
 }
@@ -26,6 +28,30 @@ export interface PipelineStats {
   totalContactsFound: number;
 }
 
+export interface StageProgress {
+  stage: string;
+  processed: number;
+  total: number;
+  ratePerSecond: number;
+  etaSeconds: number | null;
+}
+
+export interface PipelineProgressEvent {
+  pipelineId: string;
+  state: string;
+  stage: string;
+  elapsedSeconds: number;
+  itemsProcessed: number;
+  itemsTotal: number;
+  linksCreated: number;
+  pagesScraped: number;
+  contactsFound: number;
+  errorsCount: number;
+  etaSeconds: number | null;
+  stages: StageProgress[];
+  queueDepths: Record<string, number>;
+}
+
 class PipelineService {
   private basePath = '/api/v1/mailmine/scrape/pipelines';
 
@@ -50,6 +76,13 @@ class PipelineService {
     return await api.get<PageDTO<Pipeline>>(`${this.basePath}/all?page=${page}`);
   }
 
+  /**
+   * Live progress stream: "progress" events while running, then one "complete" event
+   */
+  public createProgressEventSource(id: string): EventSource {
+    return new EventSource(`${this.basePath}/${id}/progress`);
+  }
+
   /**
    * Get pipeline by ID
    */
@@ -33,6 +33,9 @@ export interface GenerateResponse {
 export interface GenerateAndSaveResponse {
   queries: SearchQuery[];
   saved: number;
+  generated: number;
+  duplicates: string[];
+  duplicateRate: number;
 }
 
 export interface VariationResponse {